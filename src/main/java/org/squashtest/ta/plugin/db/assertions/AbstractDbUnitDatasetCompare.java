@@ -20,11 +20,24 @@
  */
 package org.squashtest.ta.plugin.db.assertions;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.dbunit.Assertion;
 import org.dbunit.DatabaseUnitException;
@@ -36,16 +49,23 @@ import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableMetaData;
-import org.dbunit.dataset.SortedTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.squashtest.ta.core.tools.OptionsReader;
+import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.components.Resource;
+import org.squashtest.ta.framework.exception.BadDataException;
 import org.squashtest.ta.framework.exception.BinaryAssertionFailedException;
 import org.squashtest.ta.framework.exception.IllegalConfigurationException;
 import org.squashtest.ta.framework.exception.TestAssertionFailure;
+import org.squashtest.ta.framework.test.result.ResourceAndContext;
+import org.squashtest.ta.framework.tools.TempDir;
 import org.squashtest.ta.plugin.commons.helpers.DiffReportBuilder;
+import org.squashtest.ta.plugin.commons.helpers.ExecutionReportResourceMetadata;
 import org.squashtest.ta.plugin.db.library.dbunit.PPKFilter;
 import org.squashtest.ta.plugin.db.library.dbunit.assertion.DbUnitAssertExtension;
+import org.squashtest.ta.plugin.db.library.dbunit.assertion.DiffRecordWriter;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 import org.squashtest.ta.plugin.db.resources.DbUnitFilterResource;
 import org.squashtest.ta.plugin.db.resources.DbUnitPPKFilter;
@@ -58,6 +78,22 @@ public abstract class AbstractDbUnitDatasetCompare {
 	protected static final String FIRST = "first";
 	protected static final String SECOND = "second";
 	
+	/** Option : the number of tables compared concurrently. */
+	protected static final String PARALLELISM_KEY = "parallelism";
+	/** Option : the number of differences after which the comparison stops. */
+	protected static final String MAX_DIFFERENCES_KEY = "max.diffs";
+	/** Option : the number of differences after which the comparison of a table stops. */
+	protected static final String MAX_TABLE_DIFFERENCES_KEY = "max.diffs.per.table";
+	/** Option : if true, the comparison stops at the first difference. */
+	protected static final String FAIL_FAST_KEY = "fail.fast";
+	/** Option : the format of an additional, machine readable, diff report. */
+	protected static final String REPORT_FORMAT_KEY = "report.format";
+	
+	private static final String TEXT_REPORT_FORMAT = "text";
+	private static final String REPORT_ENCODING = "UTF-8";
+	
+	private static final int NOT_COMPARED = -1;
+	
 	private static final Logger LOGGER = LoggerFactory.getLogger(AbstractDbUnitDatasetCompare.class);
 	
 	protected DbUnitDatasetResource expected;
@@ -65,6 +101,15 @@ public abstract class AbstractDbUnitDatasetCompare {
 	
 	protected DbUnitPPKFilter pseudoPrimaryKeys;
 	
+	/** Number of tables compared concurrently, 1 for a sequential comparison. */
+	private int parallelism = 1;
+	
+	private int maxDifferences = Integer.MAX_VALUE;
+	private int maxTableDifferences = Integer.MAX_VALUE;
+	private boolean failFast = false;
+	/** <code>null</code> if only the text report is written */
+	private DiffRecordWriter.Format recordFormat;
+	
 	/** Filters to apply before comparison. */
 	private List<DbUnitFilterResource> filters = new ArrayList<DbUnitFilterResource>();
 
@@ -93,7 +138,15 @@ public abstract class AbstractDbUnitDatasetCompare {
 	/**
 	 * This assertion needs no configuration, but will apply any injected
 	 * {@link DbUnitFilterResource} to both the expected and actual dataset
-	 * before comparing them.
+	 * before comparing them. A {@link FileResource} of options may also be given, with the options :
+	 * <ul>
+	 * 	<li><code>parallelism</code> : the number of tables compared concurrently (1, the default, for a sequential comparison).</li>
+	 * 	<li><code>max.diffs</code> : the number of differences after which the next tables are not compared (no limit by default).</li>
+	 * 	<li><code>max.diffs.per.table</code> : the number of differences after which the comparison of a table stops (no limit by default).</li>
+	 * 	<li><code>fail.fast</code> : if <code>true</code>, the comparison stops at the first difference.</li>
+	 * 	<li><code>report.format</code> : <code>text</code> (the default), or <code>jsonl</code> or <code>csv</code> to write the 
+	 * 	differences in this format too, in an additional report (see {@link DiffRecordWriter}).</li>
+	 * </ul>
 	 */
 	public void addConfiguration(Collection<Resource<?>> configuration) {
 		for (Resource<?> confElement : configuration) {
@@ -105,6 +158,8 @@ public abstract class AbstractDbUnitDatasetCompare {
 				} else {
 					LOGGER.warn("Redundant DbUnitPPKFilter configuration will be ignored.");
 				}
+			} else if (confElement instanceof FileResource) {
+				readOptions(((FileResource) confElement).getFile());
 			} else {
 				LOGGER.warn("Unrecognized configuration resource will be ignored (type: "
 						+ confElement.getClass().getName() + ")");
@@ -112,6 +167,91 @@ public abstract class AbstractDbUnitDatasetCompare {
 		}
 	}
 
+	private void readOptions(File file) {
+		Map<String, String> options;
+		try {
+			options = OptionsReader.BASIC_READER.getOptions(file);
+		} catch (IOException e) {
+			throw new IllegalConfigurationException("Dataset comparison : could not read the configuration", e);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalConfigurationException("Dataset comparison : could not read the configuration", e);
+		}
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			if (!applyOption(option.getKey(), option.getValue())) {
+				LOGGER.warn("Unrecognized option '" + option.getKey() + "' will be ignored.");
+			}
+		}
+	}
+
+	/**
+	 * Applies one option of the configuration. Subclasses supporting more options override this method.
+	 * 
+	 * @param key the option name.
+	 * @param value the option value.
+	 * @return <code>false</code> if the option is unknown.
+	 */
+	protected boolean applyOption(String key, String value) {
+		if (PARALLELISM_KEY.equals(key)) {
+			parallelism = readPositive(key, value);
+		} else if (MAX_DIFFERENCES_KEY.equals(key)) {
+			maxDifferences = readPositive(key, value);
+		} else if (MAX_TABLE_DIFFERENCES_KEY.equals(key)) {
+			maxTableDifferences = readPositive(key, value);
+		} else if (FAIL_FAST_KEY.equals(key)) {
+			failFast = readBoolean(key, value);
+		} else if (REPORT_FORMAT_KEY.equals(key)) {
+			recordFormat = readRecordFormat(value);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private int readPositive(String key, String value) {
+		try {
+			int number = Integer.parseInt(value.trim());
+			if (number < 1) {
+				throw new IllegalConfigurationException("Dataset comparison : " + key + " must be at least 1, found " + value);
+			}
+			return number;
+		} catch (NumberFormatException e) {
+			throw new IllegalConfigurationException("Dataset comparison : " + key + " must be a number, found " + value, e);
+		}
+	}
+
+	protected boolean readBoolean(String key, String value) {
+		String trimmed = value.trim();
+		if ("true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed)) {
+			return Boolean.parseBoolean(trimmed);
+		}
+		throw new IllegalConfigurationException("Dataset comparison : " + key + " must be true or false, found " + value);
+	}
+
+	private DiffRecordWriter.Format readRecordFormat(String value) {
+		if (TEXT_REPORT_FORMAT.equalsIgnoreCase(value.trim())) {
+			return null;
+		}
+		DiffRecordWriter.Format format = DiffRecordWriter.Format.forName(value);
+		if (format == null) {
+			throw new IllegalConfigurationException("Dataset comparison : " + REPORT_FORMAT_KEY + " must be one of text, jsonl or csv, found " + value);
+		}
+		return format;
+	}
+
+	/**
+	 * @return the number of differences after which the next tables are not compared.
+	 */
+	protected int getMaxDifferences() {
+		return failFast ? 1 : maxDifferences;
+	}
+
+	/**
+	 * @return the number of differences after which the comparison of a table stops.
+	 */
+	protected int getMaxTableDifferences() {
+		return failFast ? 1 : Math.min(maxTableDifferences, maxDifferences);
+	}
+
 	/**
 	 * @see BinaryAssertion#test()
 	 * @throws BinaryAssertionFailedException if the asserted condition is false.
@@ -120,8 +260,8 @@ public abstract class AbstractDbUnitDatasetCompare {
 			// extract datasets
 			IDataSet expectedDataset;
 			IDataSet actualDataset;
-			expectedDataset = expected.getDataset();
-			actualDataset = actual.getDataset();
+			expectedDataset = readableDataset(expected, false);
+			actualDataset = readableDataset(actual, supportsStreamedActual());
 	
 			// apply filters, if any
 			if (filters.size() > 0) {
@@ -133,6 +273,171 @@ public abstract class AbstractDbUnitDatasetCompare {
 			compare(expectedDataset, actualDataset);
 	}
 
+	/**
+	 * @return <code>true</code> if the comparison reads the actual dataset forward only, and may thus be given a streamed
+	 *         dataset (see {@link DbUnitDatasetResource#isStreamed()}). Streamed datasets are otherwise loaded in memory
+	 *         before the comparison.
+	 */
+	protected boolean supportsStreamedActual() {
+		return false;
+	}
+
+	private IDataSet readableDataset(DbUnitDatasetResource resource, boolean streamingSupported) {
+		IDataSet dataset = resource.getDataset();
+		if (resource.isStreamed() && !streamingSupported) {
+			try {
+				dataset = ColumnarDataSet.copyOf(dataset);
+			} catch (DataSetException e) {
+				throw new BadDataException("Failed to load the streamed dataset", e);
+			}
+		}
+		return dataset;
+	}
+
+	/**
+	 * Compares each table with its own failure handler, then collects the handlers in table order. If a parallelism above 1 was
+	 * configured, tables are compared concurrently on a {@link ForkJoinPool} (except for a streamed actual dataset, read forward
+	 * only) : the collected result, and the error thrown if a comparison failed, do not depend on the order the comparisons end.
+	 * <p>Once the overall difference budget is exhausted (see {@link #getMaxDifferences()}), the next tables are not compared.
+	 * In parallel mode a table is not started once the tables before it are known to exhaust the budget, so that the compared tables
+	 * are the same as in a sequential comparison.</p>
+	 * 
+	 * @param tableNames the tables to compare, in report order.
+	 * @param comparison the comparison of one table.
+	 * @return the tables that were not compared because the difference budget was exhausted.
+	 * @throws DatabaseUnitException if a comparison failed : the error of the first failed table is thrown.
+	 */
+	protected <H extends FailureHandler> List<String> compareTables(List<String> tableNames, final TableComparison<H> comparison)
+			throws DatabaseUnitException {
+		List<String> notCompared = new ArrayList<String>();
+		int differenceCount = 0;
+		int threads = Math.min(parallelism, tableNames.size());
+		if (threads <= 1 || supportsStreamedActual() && actual.isStreamed()) {
+			for (String tableName : tableNames) {
+				if (differenceCount >= getMaxDifferences()) {
+					notCompared.add(tableName);
+					continue;
+				}
+				H handler = comparison.newHandler();
+				comparison.compare(tableName, handler);
+				differenceCount += comparison.differenceCount(handler);
+				comparison.collect(tableName, handler);
+			}
+			return notCompared;
+		}
+		
+		LOGGER.debug("Comparing {} tables on {} threads", tableNames.size(), threads);
+		final AtomicIntegerArray counts = new AtomicIntegerArray(tableNames.size());
+		for (int index = 0; index < tableNames.size(); index++) {
+			counts.set(index, NOT_COMPARED);
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Future<H>> futures = new ArrayList<Future<H>>(tableNames.size());
+			for (int index = 0; index < tableNames.size(); index++) {
+				final int tableIndex = index;
+				final String tableName = tableNames.get(index);
+				futures.add(pool.submit(new Callable<H>() {
+					@Override
+					public H call() throws DatabaseUnitException {
+						if (isBudgetExhaustedBefore(counts, tableIndex)) {
+							return null;
+						}
+						H handler = comparison.newHandler();
+						comparison.compare(tableName, handler);
+						counts.set(tableIndex, comparison.differenceCount(handler));
+						return handler;
+					}
+				}));
+			}
+			Iterator<String> names = tableNames.iterator();
+			for (Future<H> future : futures) {
+				String tableName = names.next();
+				H handler = awaitComparison(future);
+				if (handler == null || differenceCount >= getMaxDifferences()) {
+					notCompared.add(tableName);
+					continue;
+				}
+				differenceCount += comparison.differenceCount(handler);
+				comparison.collect(tableName, handler);
+			}
+			return notCompared;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	/*
+	 * Only the tables already compared are known : if they exhaust the budget, the complete sequence of tables before the given one does too.
+	 */
+	private boolean isBudgetExhaustedBefore(AtomicIntegerArray counts, int tableIndex) {
+		int differenceCount = 0;
+		for (int index = 0; index < tableIndex; index++) {
+			differenceCount += Math.max(counts.get(index), 0);
+		}
+		return differenceCount >= getMaxDifferences();
+	}
+	
+	private <H> H awaitComparison(Future<H> future) throws DatabaseUnitException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof DatabaseUnitException) {
+				throw (DatabaseUnitException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new BadDataException("Dataset comparison failed", cause);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BadDataException("Dataset comparison interrupted", e);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if filters are applied to the datasets before they are compared.
+	 */
+	protected boolean hasFilters() {
+		return !filters.isEmpty();
+	}
+
+	/**
+	 * @return the format of the machine readable report, <code>null</code> if none was requested.
+	 */
+	protected DiffRecordWriter.Format getRecordFormat() {
+		return recordFormat;
+	}
+
+	/**
+	 * Creates a report file in the execution temporary directory.
+	 * 
+	 * @param extension the file extension, dot included.
+	 */
+	protected File createReportFile(String extension) throws IOException {
+		return File.createTempFile("binaryDataSet", extension, TempDir.getExecutionTempDir());
+	}
+
+	/**
+	 * @return a buffered writer on the report file : reports are written as they are built, without being held in memory.
+	 */
+	protected Writer openReportWriter(File reportFile) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), REPORT_ENCODING));
+	}
+
+	/**
+	 * @return the failure context entry of a report file.
+	 */
+	protected ResourceAndContext reportContext(File reportFile, String resourceName) {
+		ResourceAndContext diffContext = new ResourceAndContext();
+		diffContext.setResource(new FileResource(reportFile));
+		diffContext.setMetadata(new ExecutionReportResourceMetadata(getClass(), new Properties(), FileResource.class, resourceName));
+		return diffContext;
+	}
+
 	protected void logFailureReportingError(Exception e) {
 		LOGGER.error(
 				"Error while reporting assertion failure. Failure details won't be available.",
@@ -142,9 +447,37 @@ public abstract class AbstractDbUnitDatasetCompare {
 	
 	/********************************* Other class *****************************/
 	
+	/**
+	 * The comparison of one table, see {@link AbstractDbUnitDatasetCompare#compareTables(List, TableComparison)}.
+	 * 
+	 * @param <H> the failure handler type.
+	 */
+	protected interface TableComparison<H extends FailureHandler> {
+		/**
+		 * @return a new handler, used for one table only.
+		 */
+		H newHandler();
+		
+		/**
+		 * Compares one table. May be called concurrently for different tables.
+		 */
+		void compare(String tableName, H handler) throws DatabaseUnitException;
+		
+		/**
+		 * Collects the outcome of one table. Called in table order, by the thread that started the comparison, once the 
+		 * differences of the table have been counted : the handler may be emptied.
+		 */
+		void collect(String tableName, H handler);
+		
+		/**
+		 * @return the number of differences found in the table, counted in the overall difference budget.
+		 */
+		int differenceCount(H handler);
+	}
+	
 	/** package accessible for testability */
 	class AssertConnector {
-		public void assertEquals(SortedTable expected, SortedTable actual,
+		public void assertEquals(ITable expected, ITable actual,
 				FailureHandler failureHandler) throws DatabaseUnitException {
 			try{
 				Assertion.assertEquals(expected, actual, failureHandler);
@@ -165,6 +498,18 @@ public abstract class AbstractDbUnitDatasetCompare {
 			}
 		}
 		
+		public void assertContainsStreamed(ITable expected, ITable actual, FailureHandler failureHandler, List<String> primaryKeysName )throws DatabaseUnitException
+		{
+			try{
+				DbUnitAssertExtension assertion = new DbUnitAssertExtension();
+				assertion.assertContainsStreamed(expected, actual, failureHandler, primaryKeysName);
+			}catch (DbComparisonFailure dbcf) {
+				throw new BinaryAssertionFailedException("Dataset comparison threw dbunit error : "+dbcf.getMessage(),AbstractDbUnitDatasetCompare.this.expected,AbstractDbUnitDatasetCompare.this.actual,null);
+			}catch(AssertionError err){
+				throw new TestAssertionFailure(err.getMessage(), err);
+			}
+		}
+		
 	}
 	
 	/**
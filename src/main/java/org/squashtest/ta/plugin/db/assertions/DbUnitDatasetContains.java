@@ -22,10 +22,10 @@ package org.squashtest.ta.plugin.db.assertions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 
 import org.dbunit.DatabaseUnitException;
 import org.dbunit.assertion.FailureHandler;
@@ -36,17 +36,14 @@ import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableMetaData;
 import org.dbunit.dataset.SortedTable;
 import org.dbunit.dataset.filter.DefaultTableFilter;
-import org.squashtest.ta.core.tools.io.BinaryData;
 import org.squashtest.ta.framework.annotations.TABinaryAssertion;
 import org.squashtest.ta.framework.components.BinaryAssertion;
-import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.exception.BadDataException;
 import org.squashtest.ta.framework.exception.BinaryAssertionFailedException;
 import org.squashtest.ta.framework.test.result.ResourceAndContext;
-import org.squashtest.ta.framework.tools.TempDir;
-import org.squashtest.ta.plugin.commons.helpers.ExecutionReportResourceMetadata;
 import org.squashtest.ta.plugin.db.library.dbunit.ByTableIncludeExcludeColumnFilter;
 import org.squashtest.ta.plugin.db.library.dbunit.FilteredStructureDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.assertion.DiffRecordWriter;
 import org.squashtest.ta.plugin.db.library.dbunit.assertion.DifferenceExtension;
 import org.squashtest.ta.plugin.db.library.dbunit.assertion.FailureHandlerExtension;
 import org.squashtest.ta.plugin.db.library.dbunit.helper.LowerCasedTable;
@@ -55,6 +52,8 @@ import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 /**
  * Binary assertion that checks that effective dataset contains expected
  * dataset.
+ * A streamed effective dataset (see {@link DbUnitDatasetResource#isStreamed()}) is read
+ * once, forward only, instead of being loaded in memory.
  * 
  * @author edegenetais
  * 
@@ -65,6 +64,11 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 		implements
 		BinaryAssertion<DbUnitDatasetResource, DbUnitDatasetResource> {
 
+	@Override
+	protected boolean supportsStreamedActual() {
+		return true;
+	}
+
 	@Override
 	protected void compare(final IDataSet pExpected, final IDataSet pActual) {
 		try {
@@ -79,16 +83,38 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 			final FailureHandlerExtension myHandler = new FailureHandlerExtension();
 			final List<String> notFoundTables = new ArrayList<String>();
 
-			// Comparison is made between sorted tables
+			final List<String> foundTables = new ArrayList<String>();
 			for (String tableExpected : tableNamesExpected) {
 				if(isPresent(tableExpected, tableNamesActual, notFoundTables)){
-					performTableCompare(tableExpected, pExpected,
-						actualView, myHandler);
+					foundTables.add(tableExpected);
 				}
 			}
 
+			// Comparison is made between sorted tables
+			List<String> notComparedTables = compareTables(foundTables, new TableComparison<FailureHandlerExtension>() {
+				@Override
+				public FailureHandlerExtension newHandler() {
+					return new FailureHandlerExtension(getMaxTableDifferences());
+				}
+				
+				@Override
+				public void compare(String tableName, FailureHandlerExtension handler) throws DatabaseUnitException {
+					performTableCompare(tableName, pExpected, actualView, handler);
+				}
+				
+				@Override
+				public void collect(String tableName, FailureHandlerExtension handler) {
+					myHandler.addAll(handler);
+				}
+				
+				@Override
+				public int differenceCount(FailureHandlerExtension handler) {
+					return handler.getDifferenceCount();
+				}
+			});
+
 			if (myHandler.getSize() > 0 || !notFoundTables.isEmpty()) {
-				throwAssertionFailure(myHandler.getMap(), notFoundTables,
+				throwAssertionFailure(myHandler, notFoundTables, notComparedTables,
 						"The first dataset did not contain the second one.");
 			}
 		} catch (DataSetException bde) {
@@ -162,7 +188,11 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 				pExpected.getTableMetaData(currentTableName),
 				pActual.getTableMetaData(currentTableName));
 		List<String> primaryKeysName = getColumnName(primaryKeys);
-		if (primaryKeys == NO_PK_VALUE) {
+		if (actual.isStreamed()) {
+			// forward only : no sorting, the rows are matched in the order they are read
+			assertConnector.assertContainsStreamed(expTable, actTable, myHandler,
+					primaryKeysName);
+		} else if (primaryKeys == NO_PK_VALUE) {
 			assertConnector.assertContains(expTable, actTable, myHandler,
 					primaryKeysName);
 		} else {
@@ -174,15 +204,16 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 	}
 
 	protected void throwAssertionFailure(
-			Map<String, List<DifferenceExtension>> map,
-			List<String> notFoundTables, String message) {
+			FailureHandlerExtension handler,
+			List<String> notFoundTables, List<String> notComparedTables, String message) {
 		throw new BinaryAssertionFailedException(message, expected, actual,
-				buildDiffReport(map, notFoundTables));
+				buildDiffReport(handler, notFoundTables, notComparedTables));
 	}
 
 	private List<ResourceAndContext> buildDiffReport(
-			Map<String, List<DifferenceExtension>> map,
-			List<String> notFoundTables) {
+			FailureHandlerExtension handler,
+			List<String> notFoundTables, List<String> notComparedTables) {
+		Map<String, List<DifferenceExtension>> map = handler.getMap();
 		List<ResourceAndContext> context = new ArrayList<ResourceAndContext>();
 
 		try {
@@ -192,34 +223,38 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 			// DiffReportBuilder builder =
 			// diffReportBuilderFactory.newInstance();
 
-			StringBuilder builder = new StringBuilder();
-			builder.append("The dataset did not contain the expected data.").append("\n").append("\n");
-			if(!notFoundTables.isEmpty()){
-				builder.append("* Some table(s) was(were) not found:\n");
-				for (String message : notFoundTables) {
-					builder.append("\t- ").append(message).append("\n");
+			File tempFile = createReportFile(".diff");
+			Writer builder = openReportWriter(tempFile);
+			try {
+				builder.append("The dataset did not contain the expected data.").append("\n").append("\n");
+				if(!notFoundTables.isEmpty()){
+					builder.append("* Some table(s) was(were) not found:\n");
+					for (String message : notFoundTables) {
+						builder.append("\t- ").append(message).append("\n");
+					}
+					builder.append("\n").append("\n");
 				}
-				builder.append("\n").append("\n");
-			}
-			
-			if(!map.isEmpty())
-			{
+				
 				for (String tableName : map.keySet()) {
-					buildDiffTableReport(map, tableName, builder);
+					buildDiffTableReport(map, tableName, handler.getSkippedRows(tableName), builder);
 				}
+				
+				if(!notComparedTables.isEmpty()){
+					builder.append("* The following table(s) were not compared, the maximum number of differences having been reached:\n");
+					for (String tableName : notComparedTables) {
+						builder.append("\t- ").append(tableName).append("\n");
+					}
+					builder.append("\n");
+				}
+			} finally {
+				builder.close();
 			}
+			context.add(reportContext(tempFile, DIFF_RESOURCE_NAME));
 
-			File tempFile = File.createTempFile("binaryDataSet", ".diff", TempDir.getExecutionTempDir());
-			FileResource diff = new FileResource(tempFile);
-			BinaryData diffData = new BinaryData(builder.toString().getBytes(
-					"UTF-8"));
-			diffData.write(tempFile);
-			ResourceAndContext diffContext = new ResourceAndContext();
-			diffContext.setResource (diff);
-			diffContext.setMetadata ( new ExecutionReportResourceMetadata(
-					getClass(), new Properties(), FileResource.class,
-					DIFF_RESOURCE_NAME));
-			context.add(diffContext);
+			DiffRecordWriter.Format format = getRecordFormat();
+			if (format != null) {
+				context.add(buildDiffRecords(map, format));
+			}
 		} catch (IOException e) {
 			logFailureReportingError(e);
 		} catch (DataSetException e) {
@@ -228,9 +263,42 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 		return context;
 	}
 
+	/*
+	 * One record per column of each missing row : the actual value is the one of the potential match, if any.
+	 */
+	private ResourceAndContext buildDiffRecords(Map<String, List<DifferenceExtension>> map,
+			DiffRecordWriter.Format format) throws IOException, DataSetException {
+		File recordFile = createReportFile("." + format.getExtension());
+		DiffRecordWriter records = DiffRecordWriter.create(openReportWriter(recordFile), format);
+		try {
+			for (Map.Entry<String, List<DifferenceExtension>> entry : map.entrySet()) {
+				for (DifferenceExtension diff : entry.getValue()) {
+					writeMissingRow(records, entry.getKey(), diff);
+				}
+			}
+		} finally {
+			records.close();
+		}
+		return reportContext(recordFile, DIFF_RESOURCE_NAME + "." + format.getExtension());
+	}
+
+	private void writeMissingRow(DiffRecordWriter records, String tableName, DifferenceExtension diff)
+			throws IOException, DataSetException {
+		ITable table = diff.getExpectedTable();
+		DifferenceExtension.PotentialMatchStatus status = diff.getPotentialMatchstatus();
+		boolean matched = status == DifferenceExtension.PotentialMatchStatus.ONE_MATCH
+				|| status == DifferenceExtension.PotentialMatchStatus.MANY_MATCH;
+		for (Column column : table.getTableMetaData().getColumns()) {
+			String columnName = column.getColumnName();
+			Object actualValue = matched ? diff.getActualTable().getValue(diff.getPossibleRowIndex(), columnName) : null;
+			records.write(tableName, diff.getRowIndex(), columnName, table.getValue(diff.getRowIndex(), columnName),
+					actualValue, status.name().toLowerCase());
+		}
+	}
+
 	private void buildDiffTableReport(
 			Map<String, List<DifferenceExtension>> map, String tableName,
-			StringBuilder builder) throws DataSetException {
+			int skippedRows, Writer builder) throws DataSetException, IOException {
 		List<DifferenceExtension> diffList = map.get(tableName);
 		ITable table = diffList.get(0).getExpectedTable();
 		ITableMetaData metadata = table.getTableMetaData();
@@ -249,6 +317,7 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 
 		String tab;
 		String primaryKeys = "";
+		int skippedCount = 0;
 		for (DifferenceExtension diff : diffList) {
 			primaryKeys = diff.getPrimaryKeys().toString();
 			tab = "\t";
@@ -277,6 +346,10 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 				builder.append("\n");
 				break;
 
+			case SKIPPED:
+				skippedCount++;
+				break;
+
 			default:
 				// Disabled status
 				break;
@@ -295,7 +368,18 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 			builder.append("\" is: ");
 			builder.append(primaryKeys);
 			builder.append(".");
-
+			if (skippedCount > 0) {
+				builder.append("\nNote : Too many rows are missing, no potential match was searched for the last ");
+				builder.append(String.valueOf(skippedCount));
+				builder.append(" row(s).");
+			}
+		}
+		if (skippedRows > 0) {
+			builder.append("\nNote : The comparison stopped after ");
+			builder.append(String.valueOf(diffList.size()));
+			builder.append(" difference(s), the remaining ");
+			builder.append(String.valueOf(skippedRows));
+			builder.append(" row(s) were left out of this report.");
 		}
 		builder.append("\n");
 		builder.append("\n");
@@ -303,8 +387,8 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 
 	}
 
-	private void rowBuilder(StringBuilder builder, String tab, ITable table,
-			Column[] colList, int rowIndex) throws DataSetException {
+	private void rowBuilder(Writer builder, String tab, ITable table,
+			Column[] colList, int rowIndex) throws DataSetException, IOException {
 		builder.append(tab);
 		builder.append(" -");
 		for (Column column : colList) {
@@ -312,7 +396,7 @@ public class DbUnitDatasetContains extends AbstractDbUnitDatasetCompare
 			builder.append(" {");
 			builder.append(columnName);
 			builder.append("='");
-			builder.append(table.getValue(rowIndex, columnName));
+			builder.append(String.valueOf(table.getValue(rowIndex, columnName)));
 			builder.append("'}");
 		}
 		builder.append("\n");
@@ -20,13 +20,17 @@
  */
 package org.squashtest.ta.plugin.db.assertions;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Set;
 
 import org.dbunit.DatabaseUnitException;
 import org.dbunit.assertion.DiffCollectingFailureHandler;
@@ -39,18 +43,23 @@ import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableMetaData;
 import org.dbunit.dataset.NoSuchTableException;
 import org.dbunit.dataset.SortedTable;
-import org.squashtest.ta.core.tools.io.BinaryData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.squashtest.ta.framework.annotations.TABinaryAssertion;
 import org.squashtest.ta.framework.components.BinaryAssertion;
-import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.exception.BadDataException;
 import org.squashtest.ta.framework.exception.BinaryAssertionFailedException;
+import org.squashtest.ta.framework.exception.IllegalConfigurationException;
 import org.squashtest.ta.framework.exception.TestAssertionFailure;
 import org.squashtest.ta.framework.test.result.ResourceAndContext;
-import org.squashtest.ta.framework.tools.TempDir;
 import org.squashtest.ta.plugin.commons.helpers.DiffReportBuilder;
-import org.squashtest.ta.plugin.commons.helpers.ExecutionReportResourceMetadata;
+import org.squashtest.ta.plugin.db.library.dbunit.assertion.DiffRecordWriter;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.KeyOrder;
 import org.squashtest.ta.plugin.db.library.dbunit.helper.LowerCasedTable;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.TableFingerprint;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.TableSignature;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 
 /**
@@ -65,11 +74,47 @@ import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 		BinaryAssertion<DbUnitDatasetResource, DbUnitDatasetResource> {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(DbUnitDatasetEquals.class);
+
 	private static final String ERROR_MESSAGE = "The two compared datasets are different.";
 
 	private static final String VARIABLE_1 = "#ONE#";
 	private static final String VARIABLE_2 = "#TWO#";
 	
+	/** Option : whether both datasets are already sorted on the primary keys of their tables. */
+	private static final String SORTED_KEY = "sorted";
+	/** 
+	 * Option : if true (the default), tables holding the same rows are told apart by their fingerprint, without being sorted
+	 * and compared value by value (see {@link TableFingerprint}).
+	 */
+	private static final String FINGERPRINT_KEY = "fingerprint";
+	/** Option : the fingerprint size, 64 or 128 (the default) bits. The larger, the less likely a collision. */
+	private static final String FINGERPRINT_BITS_KEY = "fingerprint.bits";
+	/**
+	 * Option : if true (the default), tables of two datasets read from databases of the same vendor are first compared
+	 * through checksums computed in the databases (see {@link TableChecksum}), and only read if their checksums differ.
+	 * Checksums are not used when filters are applied. Tables already copied by the dump are only compared through the 
+	 * checksum taken when they were copied (see the <code>snapshot</code> option of <code>get.all</code>), if any.
+	 */
+	private static final String CHECKSUM_KEY = "checksum";
+	/** Status of the differences in the machine readable report. */
+	private static final String DIFFERENT_STATUS = "different";
+	
+	/**
+	 * Values of the <code>sorted</code> option. With AUTO, tables are checked before the comparison and only sorted if needed.
+	 * With TRUE the tables are trusted to be sorted (for instance read through an <code>ORDER BY</code> on the keys), 
+	 * with FALSE they are always sorted.
+	 */
+	private enum Presorted {
+		AUTO, TRUE, FALSE
+	}
+	
+	private Presorted presorted = Presorted.AUTO;
+	
+	private boolean fingerprint = true;
+	private int fingerprintBits = TableFingerprint.WIDE;
+	private boolean checksum = true;
+	
 	
 	@Override
 	protected void compare(final IDataSet pExpected, final IDataSet pActual) {
@@ -77,12 +122,14 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 			
 			//we first check that the two tables have as much tables, and that they have the same name.
 			checkTables(pExpected, pActual);
+			//tables with the same checksum in both databases need not be read at all
+			Set<String> identicalTables = findIdenticalTables(pExpected);
 			//then we check that each table have the same number of columns and rows.
-			checkColumnsNumber(pExpected, pActual);
-			checkRowsNumber(pExpected, pActual);
+			checkColumnsNumber(pExpected, pActual, identicalTables);
+			checkRowsNumber(pExpected, pActual, identicalTables);
 			
 			//if all that is correct, we compared rows as in DbUnitDatasetContains
-			compareRows(pExpected, pActual);
+			compareRows(pExpected, pActual, identicalTables);
 
 		} catch (DataSetException bde) {
 			throw new BinaryAssertionFailedException(ERROR_MESSAGE,	expected, actual, buildFailReport(bde.getMessage()));
@@ -108,16 +155,59 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 		
 		for (String tableName : pExpected.getTableNames()){
 			try{
-				pActual.getTable(tableName);
+				//the metadata is enough : tables with identical checksums are never read
+				pActual.getTableMetaData(tableName);
 			}catch(NoSuchTableException nste){
 				throw new DataSetException("The first dataset does not contains the "+tableName+" dataset.", nste);
 			}
 		}
 	}
 	
-	private void checkColumnsNumber(final IDataSet pExpected, final IDataSet pActual) throws DataSetException {
+	/*
+	 * The tables whose checksums match in the expected and actual databases.
+	 */
+	private Set<String> findIdenticalTables(final IDataSet pExpected) throws DataSetException {
+		Set<String> identicalTables = new HashSet<String>();
+		TableChecksum expectedChecksum = expected.getChecksum();
+		TableChecksum actualChecksum = actual.getChecksum();
+		if (!checksum || hasFilters() || expectedChecksum == null || actualChecksum == null 
+				|| !expectedChecksum.isComparableWith(actualChecksum)) {
+			return identicalTables;
+		}
+		for (String tableName : pExpected.getTableNames()) {
+			if (haveSameChecksum(tableName, expectedChecksum, actualChecksum)) {
+				identicalTables.add(tableName);
+			}
+		}
+		LOGGER.debug("{} table(s) out of {} have the same checksum in both databases", identicalTables.size(), pExpected.getTableNames().length);
+		return identicalTables;
+	}
+	
+	private boolean haveSameChecksum(String tableName, TableChecksum expectedChecksum, TableChecksum actualChecksum) throws DataSetException {
+		String expectedSignature = signature(expected.getDataset(), tableName, expectedChecksum);
+		return expectedSignature != null && expectedSignature.equals(signature(actual.getDataset(), tableName, actualChecksum));
+	}
+	
+	/*
+	 * Tables already copied from the database are only described by the signature taken when they were copied : the 
+	 * database may have changed since. Tables not copied yet would be read from the database as it is now.
+	 */
+	private String signature(IDataSet dataset, String tableName, TableChecksum checksum) throws DataSetException {
+		if (dataset instanceof ColumnarDataSet) {
+			ColumnarDataSet columnarDataSet = (ColumnarDataSet) dataset;
+			if (columnarDataSet.getCopiedTable(tableName) != null) {
+				return columnarDataSet.getCopiedSignature(tableName);
+			}
+		}
+		return new TableSignature(checksum).sign(dataset.getTableMetaData(tableName));
+	}
+	
+	private void checkColumnsNumber(final IDataSet pExpected, final IDataSet pActual, Set<String> identicalTables) throws DataSetException {
 		StringBuilder errorMessage = new StringBuilder("");
 		for (String tableName : pExpected.getTableNames()){
+			if (identicalTables.contains(tableName)) {
+				continue;
+			}
 			ITable tableExpected = new LowerCasedTable(pExpected.getTable(tableName));	
 			ITable tableActual = new LowerCasedTable(pActual.getTable(tableName));
 			final int nbColumnsExpected = tableExpected.getTableMetaData().getColumns().length;
@@ -142,9 +232,12 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 		}
 	}
 	
-	private void checkRowsNumber(final IDataSet pExpected, final IDataSet pActual) throws DataSetException {
+	private void checkRowsNumber(final IDataSet pExpected, final IDataSet pActual, Set<String> identicalTables) throws DataSetException {
 		StringBuilder errorMessage = new StringBuilder("");
 		for (String tableName : pExpected.getTableNames()){
+			if (identicalTables.contains(tableName)) {
+				continue;
+			}
 			ITable tableExpected = new LowerCasedTable(pExpected.getTable(tableName));	
 			ITable tableActual = new LowerCasedTable(pActual.getTable(tableName));
 			int nbRowsExpected = tableExpected.getRowCount();
@@ -179,48 +272,80 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 	private List<ResourceAndContext> buildFailReport(String message){
 		List<ResourceAndContext> context = new ArrayList<ResourceAndContext>();
 		try {
-			File tempFile = File.createTempFile("binaryDataSet", ".diff",TempDir.getExecutionTempDir());			
-			FileResource diff = new FileResource(tempFile);
-			BinaryData diffData = new BinaryData(message.getBytes(
-					"UTF-8"));
-			diffData.write(tempFile);
-			ResourceAndContext diffContext = new ResourceAndContext();
-			diffContext.setResource(diff);
-			diffContext.setMetadata(new ExecutionReportResourceMetadata(
-					getClass(), new Properties(), FileResource.class,
-					DIFF_RESOURCE_NAME));
-			context.add(diffContext);
+			File tempFile = createReportFile(".diff");
+			Writer report = openReportWriter(tempFile);
+			try {
+				report.write(message);
+			} finally {
+				report.close();
+			}
+			context.add(reportContext(tempFile, DIFF_RESOURCE_NAME));
 		} catch (IOException e) {
 			logFailureReportingError(e);
 		}
 		return context;
 	}
 
-	private void compareRows(IDataSet pExpected, IDataSet pActual) throws DatabaseUnitException {
+	private void compareRows(final IDataSet pExpected, final IDataSet pActual, Set<String> identicalTables) throws DatabaseUnitException {
 		
 		try {
-			String[] tableNames = pExpected.getTableNames();
+			List<String> tableNames = new ArrayList<String>();
+			for (String tableName : pExpected.getTableNames()) {
+				if (!identicalTables.contains(tableName)) {
+					tableNames.add(tableName);
+				}
+			}
 
-			// Handler which will eventually contain the differences found
-			// between Expected dataset and Actual dataset
-			DiffCollectingFailureHandler myHandler = new DiffCollectingFailureHandler();
+			// Differences found between Expected dataset and Actual dataset, written as each table is collected
+			final ComparisonReport report = new ComparisonReport();
+			
+			final List<String> failedTableNames = new ArrayList<String>();
 			
-			List<String> failedTableNames = new ArrayList<String>();
+			final Map<String, Integer> skippedRows = new LinkedHashMap<String, Integer>();
 
-			// Comparison is made between sorted tables
-			for (int i = 0; i < tableNames.length; i++) {
-				String tableName = tableNames[i];
-				try{
-					performTableCompare(tableName, pExpected, pActual, myHandler);
-				} catch (TestAssertionFailure taf) {
-					failedTableNames.add(tableName);
+			try {
+				// Comparison is made between sorted tables
+				List<String> notComparedTables = compareTables(tableNames, new TableComparison<TableFailureHandler>() {
+					@Override
+					public TableFailureHandler newHandler() {
+						return new TableFailureHandler(getMaxTableDifferences());
+					}
+				
+					@Override
+					public void compare(String tableName, TableFailureHandler handler) throws DatabaseUnitException {
+						try{
+							performTableCompare(tableName, pExpected, pActual, handler);
+						} catch (TestAssertionFailure taf) {
+							handler.compareIssue = true;
+						} catch (DifferenceBudgetExhausted exhausted) {
+							handler.skippedRows = exhausted.skippedRows;
+						}
+					}
+				
+					@SuppressWarnings("unchecked")//check forced by dbunit API...
+					@Override
+					public void collect(String tableName, TableFailureHandler handler) {
+						report.write(handler.getDiffList());
+						handler.getDiffList().clear();
+						if (handler.compareIssue) {
+							failedTableNames.add(tableName);
+						}
+						if (handler.skippedRows > 0) {
+							skippedRows.put(tableName, handler.skippedRows);
+						}
+					}
+				
+					@Override
+					public int differenceCount(TableFailureHandler handler) {
+						return handler.getDiffList().size() + (handler.compareIssue ? 1 : 0);
+					}
+				});
+				
+				if (report.hasDifferences() || !failedTableNames.isEmpty()) {
+					throwAssertionFailure(report, failedTableNames, skippedRows, notComparedTables);
 				}
-			}
-			
-			@SuppressWarnings("unchecked")//check forced by dbunit API...
-			List<Difference> diffList = myHandler.getDiffList();
-			if (!diffList.isEmpty() || !failedTableNames.isEmpty()) {
-				throwAssertionFailure(diffList, failedTableNames);
+			} finally {
+				report.close();
 			}
 		} catch (DataSetException bde) {
 			throw new BadDataException("Dataset comparison threw dbunit error",
@@ -256,6 +381,17 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 		} 
 		//If the expected table has no columns, we it as the empty array it is
 		
+		//If both tables hold the same rows, whatever their order, there is no difference to look for
+		if (fingerprint && TableFingerprint.haveSameRows(expTable, actTable, fingerprintBits)) {
+			return;
+		}
+		
+		if (primaryKeys != null && primaryKeys.length > 0 && isPresorted(expTable, actTable, primaryKeys)){
+			//both tables are already in key order : they are compared row by row, in one pass
+			assertConnector.assertEquals(expTable, actTable, myHandler);
+			return;
+		}
+		
 		if (primaryKeys != null && primaryKeys.length > 0){
 			expSortedTable = new SortedTable(expTable, primaryKeys);
 			actSortedTable = new SortedTable(actTable, primaryKeys);	
@@ -268,42 +404,77 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 				myHandler);
 	}
 	
-	private void throwAssertionFailure(List<Difference> diffList, List<String> failedTables) {
-		List<ResourceAndContext> context = new ArrayList<ResourceAndContext>();
-
-		try {/*
-			 * exceptions during the reporting building process should
-			 * not block assertion failure reporting or change the FAIL
-			 * state into an ERROR state
-			 */
-			DiffReportBuilder builder = buildComparisonReport(diffList);
-
-			File tempFile = File.createTempFile("binaryDataSet",".diff",TempDir.getExecutionTempDir());
-			
-			FileResource diff=new FileResource(tempFile);
-			StringBuilder reportBuilder=new StringBuilder(builder.toString());
-			if (!failedTables.isEmpty()){
-				reportBuilder.append("The Following tables had compare issues (most likely size differences)\n");
-				for (String tableName : failedTables) {
-					reportBuilder.append(tableName).append("\n");
-				}
+	private boolean isPresorted(ITable expTable, ITable actTable, Column[] primaryKeys) throws DataSetException {
+		switch (presorted) {
+		case TRUE:
+			return true;
+		case FALSE:
+			return false;
+		default:
+			return KeyOrder.areSorted(primaryKeys, expTable, actTable);
+		}
+	}
+	
+	@Override
+	protected boolean applyOption(String key, String value) {
+		if (SORTED_KEY.equals(key)) {
+			try {
+				presorted = Presorted.valueOf(value.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalConfigurationException("Dataset comparison : " + SORTED_KEY + " must be one of auto, true or false, found " + value, e);
 			}
-			BinaryData diffData=new BinaryData(reportBuilder.toString().getBytes("UTF-8"));
-			diffData.write(tempFile);
-			ResourceAndContext diffContext=new ResourceAndContext();
-			diffContext.setResource(diff);
-			diffContext.setMetadata(new ExecutionReportResourceMetadata(getClass(), new Properties(), FileResource.class, DIFF_RESOURCE_NAME));
-			context.add(diffContext);
-		} catch (IOException e) {
-			logFailureReportingError(e);
-		} catch (DataSetException e) {
-			logFailureReportingError(e);
+			return true;
 		}
+		if (CHECKSUM_KEY.equals(key)) {
+			checksum = readBoolean(key, value);
+			return true;
+		}
+		if (FINGERPRINT_KEY.equals(key)) {
+			fingerprint = readBoolean(key, value);
+			return true;
+		}
+		if (FINGERPRINT_BITS_KEY.equals(key)) {
+			String bits = value.trim();
+			if (!String.valueOf(TableFingerprint.NARROW).equals(bits) && !String.valueOf(TableFingerprint.WIDE).equals(bits)) {
+				throw new IllegalConfigurationException("Dataset comparison : " + FINGERPRINT_BITS_KEY + " must be " 
+						+ TableFingerprint.NARROW + " or " + TableFingerprint.WIDE + ", found " + value);
+			}
+			fingerprintBits = Integer.parseInt(bits);
+			return true;
+		}
+		return super.applyOption(key, value);
+	}
+	
+	private void throwAssertionFailure(ComparisonReport report, List<String> failedTables, Map<String, Integer> skippedRows, 
+			List<String> notComparedTables) {
+		/*
+		 * exceptions during the reporting building process should
+		 * not block assertion failure reporting or change the FAIL
+		 * state into an ERROR state
+		 */
+		StringBuilder summary = new StringBuilder();
+		if (!failedTables.isEmpty()){
+			summary.append("The Following tables had compare issues (most likely size differences)\n");
+			for (String tableName : failedTables) {
+				summary.append(tableName).append("\n");
+			}
+		}
+		for (Map.Entry<String, Integer> skipped : skippedRows.entrySet()) {
+			summary.append("The comparison of table ").append(skipped.getKey()).append(" stopped at the maximum number of differences, ")
+				.append(skipped.getValue()).append(" row(s) were not compared\n");
+		}
+		if (!notComparedTables.isEmpty()){
+			summary.append("The following tables were not compared, the maximum number of differences having been reached\n");
+			for (String tableName : notComparedTables) {
+				summary.append(tableName).append("\n");
+			}
+		}
+		report.writeSummary(summary.toString());
 
 		throw new BinaryAssertionFailedException(
 				
 				"The actual dataset was different from the expected one",
-				expected, actual, context);
+				expected, actual, report.close());
 	}
 
 	public DiffReportBuilder buildComparisonReport(List<Difference> diffList)
@@ -312,16 +483,163 @@ public class DbUnitDatasetEquals extends AbstractDbUnitDatasetCompare implements
 		DiffReportBuilder builder = diffReportBuilderFactory
 				.newInstance();
 		for (Difference diff : diffList) {
-			ITable table = diff.getExpectedTable();
+			addDiffElement(builder, diff);
+		}
+		return builder;
+	}
+	
+	private void addDiffElement(DiffReportBuilder builder, Difference diff) throws DataSetException {
+		ITable table = diff.getExpectedTable();
 
-			int rowId = diff.getRowIndex();
-			Map<String, String> pkSet = getPkSet(diff);
+		int rowId = diff.getRowIndex();
+		Map<String, String> pkSet = getPkSet(diff);
 
-			builder.addDiffElement(pkSet, rowId, table
-					.getTableMetaData().getTableName(), diff
-					.getColumnName(), diff.getExpectedValue(), diff
-					.getActualValue());
+		builder.addDiffElement(pkSet, rowId, table
+				.getTableMetaData().getTableName(), diff
+				.getColumnName(), diff.getExpectedValue(), diff
+				.getActualValue());
+	}
+	
+	/**
+	 * The text report, and the machine readable one if requested, of the differences : each difference is formatted on its own
+	 * and written at once, as the tables are collected, so that neither the differences nor the text of the report are held
+	 * in memory. The report files are created with the first differences written.
+	 * <p>Exceptions while writing are logged and stop the reporting : they should not change the FAIL state into an ERROR state.</p>
+	 */
+	private final class ComparisonReport {
+		private final DiffRecordWriter.Format format = getRecordFormat();
+		private File reportFile;
+		private Writer report;
+		private File recordFile;
+		private DiffRecordWriter records;
+		private boolean differences;
+		private boolean broken;
+		private boolean closed;
+		
+		private void open() throws IOException {
+			if (reportFile == null) {
+				reportFile = createReportFile(".diff");
+				report = openReportWriter(reportFile);
+				if (format != null) {
+					recordFile = createReportFile("." + format.getExtension());
+					records = DiffRecordWriter.create(openReportWriter(recordFile), format);
+				}
+			}
+		}
+		
+		private void write(List<Difference> diffList) {
+			if (diffList.isEmpty()) {
+				return;
+			}
+			differences = true;
+			if (broken) {
+				return;
+			}
+			try {
+				open();
+				for (Difference diff : diffList) {
+					DiffReportBuilder builder = diffReportBuilderFactory.newInstance();
+					addDiffElement(builder, diff);
+					report.write(builder.toString());
+					if (records != null) {
+						records.write(diff.getExpectedTable().getTableMetaData().getTableName(), diff.getRowIndex(),
+								diff.getColumnName(), diff.getExpectedValue(), diff.getActualValue(), DIFFERENT_STATUS);
+					}
+				}
+			} catch (IOException e) {
+				fail(e);
+			} catch (DataSetException e) {
+				fail(e);
+			}
+		}
+		
+		private void writeSummary(String summary) {
+			if (broken) {
+				return;
+			}
+			try {
+				open();
+				report.write(summary);
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+		
+		private boolean hasDifferences() {
+			return differences;
+		}
+		
+		private void fail(Exception e) {
+			logFailureReportingError(e);
+			broken = true;
+		}
+		
+		/**
+		 * Closes the report files, once.
+		 * @return the failure context entries of the reports, none if writing them failed.
+		 */
+		private List<ResourceAndContext> close() {
+			List<ResourceAndContext> context = new ArrayList<ResourceAndContext>();
+			if (closed || reportFile == null) {
+				closed = true;
+				return context;
+			}
+			closed = true;
+			closeQuietly(report);
+			closeQuietly(records);
+			if (!broken) {
+				context.add(reportContext(reportFile, DIFF_RESOURCE_NAME));
+				if (recordFile != null) {
+					context.add(reportContext(recordFile, DIFF_RESOURCE_NAME + "." + format.getExtension()));
+				}
+			}
+			return context;
+		}
+		
+		private void closeQuietly(Closeable closeable) {
+			if (closeable == null) {
+				return;
+			}
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+	
+	/**
+	 * Collects the differences of one table, and whether the comparison failed before comparing the values.
+	 * The comparison is interrupted (by a {@link DifferenceBudgetExhausted}) once the maximum number of differences is reached.
+	 */
+	private static class TableFailureHandler extends DiffCollectingFailureHandler {
+		private final int maxDifferences;
+		private boolean compareIssue;
+		private int skippedRows;
+		
+		private TableFailureHandler(int maxDifferences) {
+			this.maxDifferences = maxDifferences;
+		}
+		
+		@Override
+		public void handle(Difference diff) {
+			super.handle(diff);
+			if (getDiffList().size() >= maxDifferences) {
+				throw new DifferenceBudgetExhausted(diff.getExpectedTable().getRowCount() - diff.getRowIndex() - 1);
+			}
+		}
+	}
+	
+	/**
+	 * Thrown through the DbUnit comparison to stop it.
+	 */
+	private static class DifferenceBudgetExhausted extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private final int skippedRows;
+		
+		private DifferenceBudgetExhausted(int skippedRows) {
+			super(null, null, false, false);
+			this.skippedRows = skippedRows;
 		}
-		return builder;
 	}
 }
@@ -68,6 +68,10 @@ public abstract class AbstractDbUnitCommand {
 	public void setTarget(DatabaseTarget target) {
 		database=target;
 	}
+	
+	protected DatabaseTarget getDatabase(){
+		return database;
+	}
 
 	protected void putConfiguration(Collection<Resource<?>> confResources){
 		configuration.addAll(confResources);
@@ -84,13 +88,7 @@ public abstract class AbstractDbUnitCommand {
 		
 				Connection conn = database.getConnection();
 		
-				String schemaName = database.getConfiguration().getProperty(DatabaseTarget.SQUASH_TA_DATABASE_SCHEMA_KEY);
-				
-				IDatabaseConnection connection = new DatabaseConnection(conn,schemaName);
-				
-				if (config!=null){
-					config.configure(connection);
-				}
+				IDatabaseConnection connection = createDbUnitConnection(conn);
 				
 				if (filter!=null){
 					DatabaseConfig connConfiguration = connection.getConfig();
@@ -101,6 +99,38 @@ public abstract class AbstractDbUnitCommand {
 				return connection;
 	}
 	
+	/**
+	 * Configure a dbunit {@link IDatabaseConnection} on another jdbc connection, the same way as an existing one. 
+	 * The pseudo primary key definitions are not computed again.
+	 * @param conn the jdbc connection.
+	 * @param model a dbunit connection returned by {@link #buildDbUnitConnection()}.
+	 * @return the dbunit connection.
+	 * @throws DatabaseUnitException
+	 */
+	protected IDatabaseConnection buildDbUnitConnection(Connection conn, IDatabaseConnection model) 
+			throws DatabaseUnitException {
+		
+				IDatabaseConnection connection = createDbUnitConnection(conn);
+				
+				if (filter!=null){
+					Object primaryKeyFilter = model.getConfig().getProperty(DatabaseConfig.PROPERTY_PRIMARY_KEY_FILTER);
+					connection.getConfig().setProperty(DatabaseConfig.PROPERTY_PRIMARY_KEY_FILTER, primaryKeyFilter);
+				}
+				
+				return connection;
+	}
+	
+	private IDatabaseConnection createDbUnitConnection(Connection conn) throws DatabaseUnitException {
+		String schemaName = database.getConfiguration().getProperty(DatabaseTarget.SQUASH_TA_DATABASE_SCHEMA_KEY);
+		
+		IDatabaseConnection connection = new DatabaseConnection(conn,schemaName);
+		
+		if (config!=null){
+			config.configure(connection);
+		}
+		return connection;
+	}
+	
 	/**
 	 * The only acceptable FileResource will be to configure the DbOperation. 
 	 */
@@ -137,11 +167,25 @@ public abstract class AbstractDbUnitCommand {
 		StringBuilder columnList=new StringBuilder();
 
 		Properties pkProps=new Properties();
-		for(String tableName:dataset.getDataset().getTableNames()){
+		String[] tableNames=dataset.getDataset().getTableNames();
+		DatabaseMetadataExplorer metadataExplorer=null;
+		for(String tableName:tableNames){
+			if(!filter.hasPpk(tableName)){
+				metadataExplorer=database.getMetadataExplorer();
+				break;
+			}
+		}
+		/*
+		 * the keys of all tables of the schema are read at once, and kept by the target for the next commands. 
+		 * Without schema, that would be the keys of the whole database : they are read table by table instead.
+		 */
+		if(metadataExplorer!=null && metadataExplorer.getSchemaName()!=null){
+			metadataExplorer.prefetch();
+		}
+		for(String tableName:tableNames){
 			if(filter.hasPpk(tableName)){
 				pkProps = extractMetadataFromPpk(pkProps, tableName);
 			}else{
-				DatabaseMetadataExplorer metadataExplorer=database.getMetadataExplorer();
 				List<String> pkList=metadataExplorer.getPrimaryKeyNames(tableName);
 				for(String pkName:pkList){
 					columnList.append(pkName).append(",");
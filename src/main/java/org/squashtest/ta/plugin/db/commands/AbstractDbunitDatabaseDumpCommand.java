@@ -20,24 +20,68 @@
  */
 package org.squashtest.ta.plugin.db.commands;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.DatabaseConfig;
 import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.filter.IColumnFilter;
+import org.dbunit.dataset.filter.ITableFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.squashtest.ta.core.tools.ExceptionLogger;
+import org.squashtest.ta.core.tools.OptionsReader;
 import org.squashtest.ta.framework.annotations.TACommand;
 import org.squashtest.ta.framework.components.Command;
+import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.components.Resource;
+import org.squashtest.ta.framework.exception.BadDataException;
+import org.squashtest.ta.framework.exception.IllegalConfigurationException;
 import org.squashtest.ta.framework.exception.InstructionRuntimeException;
+import org.squashtest.ta.plugin.db.library.dbunit.CompositeColumnFilter;
+import org.squashtest.ta.plugin.db.library.dbunit.CompositeTableFilter;
+import org.squashtest.ta.plugin.db.library.dbunit.PrefetchedDatabaseDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.SelectiveDatabaseDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.TableSignature;
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
+import org.squashtest.ta.plugin.db.resources.DbUnitFilterResource;
+import org.squashtest.ta.plugin.db.targets.DatabaseTarget;
 
 /**
  * Common behavior for both the legacy {@link LegacyDbunitDatabaseDumpCommand} and new {@link DbunitDatabaseDumpCommand}
  * versions of the dbunit database dump command.
+ * <p>Accepts as configuration a {@link FileResource} of options :
+ * 	<ul>
+ * 		<li><code>parallel.connections</code> : if greater than 1, all tables are read at once, concurrently, on up to that many 
+ * 		pooled connections (default : tables are read one by one on the connection of the test, when first used). The 
+ * 		pooled connections only see committed data : the option is refused if the connection of the test is not in 
+ * 		auto-commit mode, as its pending changes would be missing from the dump.</li>
+ * 		<li><code>snapshot</code> : if <code>true</code>, each table is signed with its checksum, computed in the database, 
+ * 		when it is copied (see {@link TableSignature}), so that the dump may be used as the baseline of a later dump and 
+ * 		the <code>equal</code> assertion may compare the copied tables through their checksums (default : <code>false</code>).</li>
+ * 	</ul>
+ * </p>
+ * <p>Also accepts a {@link DbUnitDatasetResource} : a previous snapshot dump of the same database, used as baseline. 
+ * The tables the baseline copied are taken from it if their signature did not change since they were copied, the others 
+ * are read. The result is itself a snapshot. Tables without signature (see {@link TableChecksum}) are always read.</p>
+ * <p>If the target keeps the schema metadata on disk (see {@link DatabaseTarget#hasMetadataCache()}), the tables are 
+ * described from that metadata instead of being introspected through JDBC.</p>
+ * <p>Also accepts {@link DbUnitFilterResource}s : tables refused by a table filter are not read at all, and columns refused 
+ * by a column filter are left out of the SELECT statements. Primary keys are always read, even if the filter hides them.</p>
  * 
  * @author edegenetais
  * 
@@ -48,6 +92,22 @@ public abstract class AbstractDbunitDatabaseDumpCommand extends AbstractDbUnitCo
     private static final Logger LOGGER = LoggerFactory.getLogger(DbunitDatabaseDumpCommand.class);
     private static final ExceptionLogger EXCEPTION_LOGGER = new ExceptionLogger(DbunitDatabaseDumpCommand.class,
             InstructionRuntimeException.class);
+    
+    private static final String PARALLEL_CONNECTIONS = "parallel.connections";
+    
+    private static final String SNAPSHOT = "snapshot";
+    
+    private static final String[] DEFAULT_TABLE_TYPES = {"TABLE"};
+    
+    private int parallelConnections = 0;
+    
+    private boolean snapshot = false;
+    
+    private DbUnitDatasetResource baseline;
+    
+    private List<ITableFilter> tableFilters = new ArrayList<ITableFilter>();
+    
+    private List<IColumnFilter> columnFilters = new ArrayList<IColumnFilter>();
 
     /**
      * Implementation for the {@link Command#addConfiguration()} method (only subclasses effectively implement the
@@ -66,10 +126,45 @@ public abstract class AbstractDbunitDatabaseDumpCommand extends AbstractDbUnitCo
         try {
             configure();
 
-            IDatabaseConnection connection = buildDbUnitConnection();
+            final IDatabaseConnection connection = buildDbUnitConnection();
 
-            IDataSet dataset = connection.createDataSet();
-            DbUnitDatasetResource result = new DbUnitDatasetResource(dataset, true);
+            IDataSet discovered = discover(connection);
+            if (!tableFilters.isEmpty() || !columnFilters.isEmpty()) {
+            	discovered = new SelectiveDatabaseDataSet(discovered, connection, tableFilter(), columnFilter());
+            }
+            
+            // tables may also be compared through checksums computed in the database, without reading them
+            TableChecksum checksum = new TableChecksum(connection.getConnection(), connection.getSchema());
+            
+            Map<String, ColumnarTable> unchangedTables = Collections.emptyMap();
+            Map<String, String> unchangedSignatures = Collections.emptyMap();
+            if (baseline != null) {
+            	DumpSnapshot tracker = new DumpSnapshot(checksum);
+            	tracker.compare(discovered, baseline);
+            	unchangedTables = tracker.getUnchangedTables();
+            	unchangedSignatures = tracker.getUnchangedSignatures();
+            }
+            
+            IDataSet dataset;
+            if (parallelConnections > 1) {
+            	// tables are all read now, each one on one of the pooled connections
+            	if (!connection.getConnection().getAutoCommit()) {
+            		throw new IllegalConfigurationException("database dump : "+PARALLEL_CONNECTIONS
+            				+" requires the test connection to be in auto-commit mode : the pooled connections would not see its uncommitted changes.");
+            	}
+            	ParallelTableDump dump = new ParallelTableDump(new ParallelTableDump.ConnectionProvider() {
+					@Override
+					public IDatabaseConnection open() throws DatabaseUnitException, SQLException {
+						return buildDbUnitConnection(getDatabase().openPooledConnection(), connection);
+					}
+				}, parallelConnections, snapshot || baseline != null);
+            	dataset = dump.dump(discovered, unchangedTables, unchangedSignatures);
+            } else {
+            	// tables are read from the database when first used, and then kept in memory
+            	TableSignature signature = snapshot || baseline != null ? new TableSignature(checksum) : null;
+            	dataset = new ColumnarDataSet(discovered, signature, unchangedTables, unchangedSignatures);
+            }
+            DbUnitDatasetResource result = new DbUnitDatasetResource(dataset, true, checksum);
 
             return result;
         } catch (DatabaseUnitException ex) {
@@ -91,7 +186,82 @@ public abstract class AbstractDbunitDatabaseDumpCommand extends AbstractDbUnitCo
 
     @Override
     protected void applySpecificConfiguration(Resource<?> element) {
-        LOGGER.warn("Unrecognized configuration element:" + element.toString() + " will be ignored!");
+        if (element instanceof DbUnitFilterResource) {
+            DbUnitFilterResource filter = (DbUnitFilterResource) element;
+            if (filter.getTableFilter() != null) {
+                tableFilters.add(filter.getTableFilter());
+            }
+            if (filter.getColumnFilter() != null) {
+                columnFilters.add(filter.getColumnFilter());
+            }
+        } else if (element instanceof FileResource) {
+            Map<String, String> options = readConf(((FileResource) element).getFile());
+            if (options.containsKey(PARALLEL_CONNECTIONS)) {
+                parallelConnections = readCount(options, PARALLEL_CONNECTIONS);
+            }
+            if (options.containsKey(SNAPSHOT)) {
+                snapshot = Boolean.parseBoolean(options.get(SNAPSHOT).trim());
+            }
+        } else if (element instanceof DbUnitDatasetResource) {
+            baseline = (DbUnitDatasetResource) element;
+        } else {
+            LOGGER.warn("Unrecognized configuration element:" + element.toString() + " will be ignored!");
+        }
+    }
+
+    /*
+     * With an on-disk metadata cache, the tables are described from the cached metadata instead of DbUnit's introspection. 
+     * DbUnit still describes them when it lists other table types, qualifies table names, or when no schema is set.
+     */
+    private IDataSet discover(IDatabaseConnection connection) throws SQLException, DataSetException {
+        DatabaseTarget database = getDatabase();
+        DatabaseConfig config = connection.getConfig();
+        String[] tableTypes = (String[]) config.getProperty(DatabaseConfig.PROPERTY_TABLE_TYPE);
+        if (database.hasMetadataCache() && connection.getSchema() != null
+                && !config.getFeature(DatabaseConfig.FEATURE_QUALIFIED_TABLE_NAMES)
+                && (tableTypes == null || Arrays.equals(tableTypes, DEFAULT_TABLE_TYPES))) {
+            DatabaseMetadataExplorer explorer = database.getMetadataExplorer();
+            explorer.prefetch();
+            return new PrefetchedDatabaseDataSet(explorer, connection);
+        }
+        return connection.createDataSet();
+    }
+
+    private ITableFilter tableFilter() {
+        return tableFilters.isEmpty() ? null : new CompositeTableFilter(tableFilters);
+    }
+
+    private IColumnFilter columnFilter() {
+        if (columnFilters.isEmpty()) {
+            return null;
+        }
+        CompositeColumnFilter filter = new CompositeColumnFilter();
+        filter.addFilters(columnFilters.toArray(new IColumnFilter[columnFilters.size()]));
+        return filter;
+    }
+
+    private int readCount(Map<String, String> options, String key) {
+        String value = options.get(key);
+        try {
+            int count = Integer.parseInt(value.trim());
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException nfe) {
+            //reported below
+        }
+        throw new BadDataException("Database dump: \"" + value + "\" is not a valid value for \"" + key
+                + "\" parameter. It must be a positive integer");
+    }
+
+    private Map<String, String> readConf(File file) {
+        try {
+            return OptionsReader.BASIC_READER.getOptions(file);
+        } catch (IOException ex) {
+            throw new BadDataException("Database dump: an error occurred while reading the configuration : " + ex.getMessage(), ex);
+        } catch (IllegalArgumentException ex) {
+            throw new BadDataException("Database dump: an error occurred while reading the configuration : " + ex.getMessage(), ex);
+        }
     }
 
 }
@@ -0,0 +1,101 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.commands;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.TableSignature;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
+import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
+
+/**
+ * <p>Finds the tables of a previous dump of a database (the baseline) that did not change since they were copied, so that
+ * they are not read again. Each table of the baseline is compared through the signature it was given when it was copied
+ * (see {@link TableSignature}), with the signature of the table as it is now : rows copied after the baseline was dumped
+ * are therefore never mistaken for the current ones.</p>
+ * 
+ * <p>Tables the baseline did not copy, or copied without signature (unsupported database or column types), are always read.</p>
+ */
+class DumpSnapshot {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DumpSnapshot.class);
+
+	private final TableChecksum checksum;
+	private final TableSignature signature;
+	private final Map<String, ColumnarTable> unchangedTables = new HashMap<String, ColumnarTable>();
+	private final Map<String, String> unchangedSignatures = new HashMap<String, String>();
+
+	/**
+	 * @param checksum computes the table checksums in the dumped database.
+	 */
+	DumpSnapshot(TableChecksum checksum){
+		this.checksum = checksum;
+		this.signature = new TableSignature(checksum);
+	}
+
+	/**
+	 * Looks for the tables of the baseline that did not change. They are then available through {@link #getUnchangedTables()}
+	 * and {@link #getUnchangedSignatures()}.
+	 * @param discovered the dataset of the database.
+	 * @param baseline a previous dump of the database.
+	 * @throws DataSetException if the table metadata could not be read.
+	 */
+	void compare(IDataSet discovered, DbUnitDatasetResource baseline) throws DataSetException{
+		if (baseline.getChecksum() == null || !checksum.isComparableWith(baseline.getChecksum())
+				|| !(baseline.getDataset() instanceof ColumnarDataSet)){
+			LOGGER.warn("database : the baseline dataset was not dumped from a similar database, all tables will be read");
+			return;
+		}
+		ColumnarDataSet baselineTables = (ColumnarDataSet) baseline.getDataset();
+		String[] tableNames = discovered.getTableNames();
+		for (String tableName : tableNames){
+			ColumnarTable table = baselineTables.getCopiedTable(tableName);
+			String baselineSignature = baselineTables.getCopiedSignature(tableName);
+			if (table != null && baselineSignature != null
+					&& baselineSignature.equals(signature.sign(discovered.getTableMetaData(tableName)))){
+				unchangedTables.put(tableName, table);
+				unchangedSignatures.put(tableName, baselineSignature);
+			}
+		}
+		LOGGER.debug("database : {} table(s) out of {} did not change since the baseline", unchangedTables.size(), tableNames.length);
+	}
+
+	/**
+	 * @return the tables of the baseline that did not change, by table name.
+	 */
+	Map<String, ColumnarTable> getUnchangedTables(){
+		return unchangedTables;
+	}
+
+	/**
+	 * @return the signatures of the tables of the baseline that did not change, by table name.
+	 */
+	Map<String, String> getUnchangedSignatures(){
+		return unchangedSignatures;
+	}
+}
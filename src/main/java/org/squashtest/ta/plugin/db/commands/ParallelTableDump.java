@@ -0,0 +1,245 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.commands;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbunit.DatabaseUnitException;
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.IResultSetTableFactory;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITableMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.TableSignature;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
+
+/**
+ * <p>Reads all the tables of a database dataset concurrently. The tables and their metadata are discovered once, on the 
+ * connection of the calling thread. Then each worker opens its own connection and reads the next table not taken yet, 
+ * until all tables are read.</p>
+ * 
+ * <p>The tables are copied in memory (see {@link ColumnarTable}) and keep the order of the discovered dataset. If tables 
+ * could not be read, the failure reported is the one of the first of these tables in the dataset order.</p>
+ */
+class ParallelTableDump {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelTableDump.class);
+
+	/**
+	 * Opens the dbunit connections of the workers.
+	 */
+	interface ConnectionProvider {
+		/**
+		 * @return a new dbunit connection, closed by the worker when it is done.
+		 */
+		IDatabaseConnection open() throws DatabaseUnitException, SQLException;
+	}
+
+	private final ConnectionProvider provider;
+	private final int connections;
+	private final boolean signTables;
+
+	/**
+	 * @param provider opens the connections of the workers.
+	 * @param connections the maximum number of tables read at the same time.
+	 * @param signTables whether each table is signed (see {@link TableSignature}) right after it is copied, on the 
+	 * connection it was read from.
+	 */
+	ParallelTableDump(ConnectionProvider provider, int connections, boolean signTables){
+		this.provider = provider;
+		this.connections = connections;
+		this.signTables = signTables;
+	}
+
+	/**
+	 * @param discovered the dataset of the database, as created by {@link IDatabaseConnection#createDataSet()}.
+	 * @return a copy of all the tables.
+	 * @throws DataSetException if the table list or a table could not be read.
+	 */
+	ColumnarDataSet dump(IDataSet discovered) throws DataSetException{
+		return dump(discovered, Collections.<String, ColumnarTable>emptyMap(), Collections.<String, String>emptyMap());
+	}
+
+	/**
+	 * @param discovered the dataset of the database, as created by {@link IDatabaseConnection#createDataSet()}.
+	 * @param copiedTables tables already copied, by name (as in the discovered dataset) : they are not read again.
+	 * @param copiedSignatures the signatures of the tables already copied, by name.
+	 * @return a copy of all the tables.
+	 * @throws DataSetException if the table list or a table could not be read.
+	 */
+	ColumnarDataSet dump(IDataSet discovered, Map<String, ColumnarTable> copiedTables, Map<String, String> copiedSignatures) 
+			throws DataSetException{
+		final String[] tableNames = discovered.getTableNames();
+		final ITableMetaData[] metaData = new ITableMetaData[tableNames.length];
+		final ColumnarTable[] tables = new ColumnarTable[tableNames.length];
+		final String[] signatures = new String[tableNames.length];
+		int tablesToRead = 0;
+		for (int index = 0; index < tableNames.length; index++){
+			tables[index] = copiedTables.get(tableNames[index]);
+			if (tables[index] != null){
+				signatures[index] = copiedSignatures.get(tableNames[index]);
+				continue;
+			}
+			tablesToRead++;
+			metaData[index] = discovered.getTableMetaData(tableNames[index]);
+			// the metadata is loaded lazily from the discovery connection : it is loaded here, once, and then only read by the workers
+			metaData[index].getColumns();
+			metaData[index].getPrimaryKeys();
+		}
+
+		final AtomicInteger nextTable = new AtomicInteger();
+		final AtomicBoolean failed = new AtomicBoolean();
+		if (tablesToRead == 0){
+			return new ColumnarDataSet(tableNames, tables, signatures, discovered.isCaseSensitiveTableNames());
+		}
+		int workers = Math.max(1, Math.min(connections, tablesToRead));
+		LOGGER.debug("database : reading {} tables on up to {} connections", tablesToRead, workers);
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers, new WorkerFactory());
+		try{
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+			for (int worker = 0; worker < workers; worker++){
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws TableReadFailure {
+						readTables(metaData, tables, signatures, nextTable, failed);
+						return null;
+					}
+				}));
+			}
+
+			TableReadFailure firstFailure = null;
+			for (Future<Void> future : futures){
+				try{
+					future.get();
+				}catch(ExecutionException ex){
+					TableReadFailure failure = (TableReadFailure) ex.getCause();
+					if (firstFailure == null || failure.tableIndex < firstFailure.tableIndex){
+						firstFailure = failure;
+					}
+				}catch(InterruptedException ex){
+					Thread.currentThread().interrupt();
+					throw new DataSetException("database : interrupted while waiting for the tables to be read", ex);
+				}
+			}
+			if (firstFailure != null){
+				String table = firstFailure.tableIndex < 0 ? "" : " '"+tableNames[firstFailure.tableIndex]+"'";
+				throw new DataSetException("database : could not read table"+table+". "+firstFailure.getCause().getMessage(), firstFailure.getCause());
+			}
+		}finally{
+			pool.shutdownNow();
+		}
+		return new ColumnarDataSet(tableNames, tables, signatures, discovered.isCaseSensitiveTableNames());
+	}
+
+	/*
+	 * Tables are read as DatabaseDataSet#getTable(String) does, on the connection of the worker.
+	 */
+	private void readTables(ITableMetaData[] metaData, ColumnarTable[] tables, String[] signatures, AtomicInteger nextTable, 
+			AtomicBoolean failed) throws TableReadFailure{
+		IDatabaseConnection connection;
+		TableSignature signature = null;
+		try{
+			connection = provider.open();
+		}catch(Exception ex){
+			failed.set(true);
+			throw new TableReadFailure(-1, ex);
+		}
+		if (signTables){
+			try{
+				signature = new TableSignature(new TableChecksum(connection.getConnection(), connection.getSchema()));
+			}catch(SQLException ex){
+				close(connection);
+				failed.set(true);
+				throw new TableReadFailure(-1, ex);
+			}
+		}
+		try{
+			IResultSetTableFactory factory = (IResultSetTableFactory) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_RESULTSET_TABLE_FACTORY);
+			int index;
+			while (!failed.get() && (index = nextTable.getAndIncrement()) < metaData.length){
+				if (tables[index] != null){
+					continue;
+				}
+				try{
+					tables[index] = new ColumnarTable(factory.createTable(metaData[index], connection));
+					if (signature != null){
+						signatures[index] = signature.sign(metaData[index]);
+					}
+				}catch(Exception ex){
+					failed.set(true);
+					throw new TableReadFailure(index, ex);
+				}
+			}
+		}finally{
+			close(connection);
+		}
+	}
+
+	private void close(IDatabaseConnection connection){
+		try{
+			connection.close();
+		}catch(SQLException ex){
+			if (LOGGER.isWarnEnabled()){
+				LOGGER.warn("database : error occured while releasing connection", ex);
+			}
+		}
+	}
+
+	private static final class TableReadFailure extends Exception{
+		private static final long serialVersionUID = 1L;
+		/** -1 if the connection could not be opened */
+		private final int tableIndex;
+
+		private TableReadFailure(int tableIndex, Exception cause){
+			super(cause);
+			this.tableIndex = tableIndex;
+		}
+	}
+
+	private static final class WorkerFactory implements ThreadFactory{
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "database-dump-"+count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -20,14 +20,23 @@
  */
 package org.squashtest.ta.plugin.db.commands;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
+import org.squashtest.ta.core.tools.OptionsReader;
 import org.squashtest.ta.framework.annotations.TACommand;
 import org.squashtest.ta.framework.components.Command;
+import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.components.Resource;
+import org.squashtest.ta.framework.exception.BadDataException;
+import org.squashtest.ta.plugin.db.library.sql.SQLTemplate;
 import org.squashtest.ta.plugin.db.resources.SQLIndexedParameters;
 import org.squashtest.ta.plugin.db.resources.SQLNamedParameters;
 import org.squashtest.ta.plugin.db.resources.SQLQuery;
@@ -43,8 +52,13 @@ import org.squashtest.ta.plugin.db.targets.DatabaseTarget;
  * 	<ul>
  * 		<li>{@link SQLIndexedParameters}</li>
  * 		<li>{@link SQLNamedParameters}</li>
+ * 		<li>a {@link FileResource} of options : <code>bind.parameters=true</code> binds the parameters to a prepared statement
+ * 		instead of inlining them in the sql text (default : <code>false</code>)</li>
  * 	</ul>
  * </p>
+ * <p>In bind mode, quoted parameter values are unquoted and an unquoted <code>null</code> is bound as sql NULL, so that the same
+ * parameter files can be used in both modes. Unquoted numbers and booleans are bound as such, quoted values as strings
+ * (see {@link SQLTemplate#toBindValue(String)}). Every parameter of the query must then be given a value.</p>
  * @author bsiri
  *
  */
@@ -52,9 +66,12 @@ import org.squashtest.ta.plugin.db.targets.DatabaseTarget;
 public class SimpleExecuteSQLQueryCommand implements Command<SQLQuery, DatabaseTarget> {
 
 	
+	private static final String BIND_PARAMETERS = "bind.parameters";
+	
 	private List<Resource<?>> configuration = new ArrayList<Resource<?>>();
 	private DatabaseTarget database;
 	private SQLQuery query;
+	private boolean bind = false;
 	
 	@Override
 	public void addConfiguration(Collection<Resource<?>> configuration) {
@@ -74,9 +91,16 @@ public class SimpleExecuteSQLQueryCommand implements Command<SQLQuery, DatabaseT
 	@Override
 	public SQLResultSet apply() {
 		
-		applyParameters();		
+		getOptions();
 		
-		ResultSet result = database.execute(query.getQuery());
+		ResultSet result;
+		if (bind){
+			SQLTemplate template = SQLTemplate.parse(query.getQuery());
+			result = database.execute(template.getSql(), bindParameters(template));
+		}else{
+			applyParameters();		
+			result = database.execute(query.getQuery());
+		}
 		
 		
 		if (result==null){
@@ -101,7 +125,7 @@ public class SimpleExecuteSQLQueryCommand implements Command<SQLQuery, DatabaseT
 				query = ((SQLIndexedParameters)resource).setParams(query);
 			}else if (SQLNamedParameters.class.isAssignableFrom(resource.getClass())){
 				query = ((SQLNamedParameters)resource).setParams(query);
-			}else{
+			}else if (!FileResource.class.isAssignableFrom(resource.getClass())){
 				throw new IllegalArgumentException("execute sql : the supplied configuration is not related to sql query parameterization");
 			}
 		}
@@ -109,6 +133,82 @@ public class SimpleExecuteSQLQueryCommand implements Command<SQLQuery, DatabaseT
 		this.query = new SQLQuery(query);
 		
 	}
+	
+	/**
+	 * Maps the parameter resources to the parameter indexes of the template : indexed parameters fill the positional
+	 * parameters in order, named parameters fill every occurrence of their name.
+	 * 
+	 * @return the values to bind, in parameter index order.
+	 */
+	protected List<Object> bindParameters(SQLTemplate template){
+		
+		Object[] values = new Object[template.getParameterCount()];
+		boolean[] set = new boolean[values.length];
+		List<Integer> positional = template.getPositionalIndexes();
+		int nextPositional = 0;
+		
+		for (Resource<?> resource : configuration){
+			if (SQLIndexedParameters.class.isAssignableFrom(resource.getClass())){
+				for (String value : ((SQLIndexedParameters)resource).getValues()){
+					if (nextPositional >= positional.size()){
+						break;
+					}
+					int index = positional.get(nextPositional++) - 1;
+					values[index] = SQLTemplate.toBindValue(value);
+					set[index] = true;
+				}
+			}else if (SQLNamedParameters.class.isAssignableFrom(resource.getClass())){
+				SQLNamedParameters named = (SQLNamedParameters)resource;
+				for (Entry<String, List<Integer>> entry : template.getNamedIndexes().entrySet()){
+					String value = named.getParam(entry.getKey());
+					if (value!=null){
+						for (Integer index : entry.getValue()){
+							values[index-1] = SQLTemplate.toBindValue(value);
+							set[index-1] = true;
+						}
+					}
+				}
+			}else if (!FileResource.class.isAssignableFrom(resource.getClass())){
+				throw new IllegalArgumentException("execute sql : the supplied configuration is not related to sql query parameterization");
+			}
+		}
+		
+		for (int i = 0; i < set.length; i++){
+			if (!set[i]){
+				throw new BadDataException("execute sql : no value was supplied for parameter #"+(i+1)+" of query '"+query.getQuery()+"'");
+			}
+		}
+		
+		return Arrays.asList(values);
+	}
+	
+	protected void getOptions() {
+		for (Resource<?> resource : configuration) {
+			if (FileResource.class.isAssignableFrom(resource.getClass())) {
+				Map<String, String> options = readConf(((FileResource) resource).getFile());
+				String value = options.get(BIND_PARAMETERS);
+				if (value == null){
+					continue;
+				}
+				if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+					bind = Boolean.parseBoolean(value);
+				} else {
+					throw new BadDataException("Execute SQL query: \"" + value
+							+ "\" is not a valid value for \""+BIND_PARAMETERS+"\" parameter. It can only be \"true\" or \"false\"");
+				}
+			}
+		}
+	}
+	
+	private Map<String, String> readConf(File file) {
+		try {
+			return OptionsReader.BASIC_READER.getOptions(file);
+		} catch (IOException ex) {
+			throw new BadDataException("Execute SQL query command: an error occurred while reading the configuration : "+ex.getMessage(), ex);
+		} catch (IllegalArgumentException ex) {
+			throw new BadDataException("Execute SQL query command: an error occurred while reading the configuration : "+ex.getMessage(), ex);
+		}
+	}
 
 		
 	@Override
@@ -20,28 +20,48 @@
  */
 package org.squashtest.ta.plugin.db.commands;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.squashtest.ta.core.tools.OptionsReader;
 import org.squashtest.ta.framework.annotations.TACommand;
 import org.squashtest.ta.framework.components.Command;
 import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.components.Resource;
 import org.squashtest.ta.framework.exception.BadDataException;
-import org.squashtest.ta.plugin.db.resources.SQLResultSet;
+import org.squashtest.ta.plugin.db.library.sql.BatchChunk;
+import org.squashtest.ta.plugin.db.library.sql.ScriptPartitioner;
 import org.squashtest.ta.plugin.db.resources.SQLScript;
+import org.squashtest.ta.plugin.db.resources.SQLScriptResult;
 import org.squashtest.ta.plugin.db.targets.DatabaseTarget;
 
 /**
  * <p>
  * Will take a sql script and execute it against the given database
  * </p>
+ * <p>Accepts as configuration a {@link FileResource} of options :
+ * 	<ul>
+ * 		<li><code>keep.separator</code> : whether the trailing <code>;</code> of the statements is sent to the database (default : <code>true</code>)</li>
+ * 		<li><code>batch.size</code> : the maximum number of statements sent in one JDBC batch (default : the commit interval if set, 1000 statements otherwise)</li>
+ * 		<li><code>commit.interval</code> : the number of statements between two commits (default : one commit at the end)</li>
+ * 		<li><code>parallel.connections</code> : if greater than 1, independent parts of the script run concurrently on up to that
+ * 		many pooled connections, each part in its own transaction (<code>commit.interval</code> is then ignored)</li>
+ * 		<li><code>parallel.partition</code> : how the script is split in independent parts, <code>table</code> (the default) groups
+ * 		the INSERT/UPDATE/DELETE/MERGE statements reading no other table by target table, <code>section</code> follows 
+ * 		<code>/&#42; @section name &#42;/</code> markers. Any statement outside a part waits for the previous ones to complete 
+ * 		and runs alone. The parts run in no particular order : tables linked by a foreign key must be loaded in parts 
+ * 		separated by such a statement, or by a <code>/&#42; @section serial &#42;/</code> section.</li>
+ * 	</ul>
+ * </p>
+ * <p>The result is a {@link SQLScriptResult} holding the timings and update counts of each batch.</p>
  * 
  * @author bsiri
  * 
@@ -49,11 +69,21 @@ import org.squashtest.ta.plugin.db.targets.DatabaseTarget;
 @TACommand("execute")
 public class SimpleExecuteSQLScriptCommand implements Command<SQLScript, DatabaseTarget> {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleExecuteSQLScriptCommand.class);
+
 	private DatabaseTarget database;
 	private SQLScript query;
 	private Collection<Resource<?>> configuration = new LinkedList<Resource<?>>();
 	private final static String KEEP_SEPARATOR = "keep.separator";
+	private final static String BATCH_SIZE = "batch.size";
+	private final static String COMMIT_INTERVAL = "commit.interval";
+	private final static String PARALLEL_CONNECTIONS = "parallel.connections";
+	private final static String PARALLEL_PARTITION = "parallel.partition";
 	private boolean keep = true;
+	private int batchSize = 0;
+	private int commitInterval = 0;
+	private int parallelConnections = 0;
+	private String parallelPartition = "table";
 
 	@Override
 	public void addConfiguration(Collection<Resource<?>> configuration) {
@@ -71,30 +101,35 @@ public class SimpleExecuteSQLScriptCommand implements Command<SQLScript, Databas
 	}
 
 	@Override
-	public SQLResultSet apply() {
+	public SQLScriptResult apply() {
 		getOptions();
-		List<String> queryToExecute = query.getBatch();
-		if(!keep){
-			queryToExecute = removeSeparator(queryToExecute);
+		//statements are consumed as they are read, so that streamed scripts are never loaded as a whole
+		Iterator<String> statements = query.statements();
+		try{
+			Iterator<String> queryToExecute = keep ? statements : new SeparatorRemover(statements);
+			List<BatchChunk> chunks;
+			if (parallelConnections > 1){
+				if (commitInterval > 0){
+					LOGGER.warn("Execute SQL script: {} is ignored in parallel mode, each part of the script is committed once", COMMIT_INTERVAL);
+				}
+				chunks = database.executeInParallel(queryToExecute, readPartitioner(), parallelConnections, batchSize);
+			}else{
+				chunks = database.execute(queryToExecute, batchSize, commitInterval);
+			}
+			return new SQLScriptResult(chunks);
+		}finally{
+			close(statements);
 		}
-		database.execute(queryToExecute);
-		// TODO : check the result
-		// int[] result = database.execute(queryToExecute);
-		return null;
-
 	}
 
-	private List<String> removeSeparator(List<String> queryToProcess) {
-		List<String> processedList = new ArrayList<String>(queryToProcess.size());
-		for (String aquery : queryToProcess) {
-			aquery = aquery.trim();
-			if(aquery.endsWith(";")){
-				processedList.add(aquery.substring(0,aquery.length()-1));
-			}else{
-                            processedList.add(aquery);
-                        }
+	private void close(Iterator<String> statements){
+		if (statements instanceof Closeable){
+			try {
+				((Closeable) statements).close();
+			} catch (IOException e) {
+				LOGGER.warn("Execute SQL script: failed to close the script", e);
+			}
 		}
-		return processedList;
 	}
 
 	protected void getOptions() {
@@ -114,6 +149,41 @@ public class SimpleExecuteSQLScriptCommand implements Command<SQLScript, Databas
 						+ "\" is not a valid value for \"keep.saparator\" parameter. It can only be \"true\" or \"false\"");
 			}
 		}
+		if (options!= null && options.containsKey(BATCH_SIZE)) {
+			batchSize = readCount(options, BATCH_SIZE);
+		}
+		if (options!= null && options.containsKey(COMMIT_INTERVAL)) {
+			commitInterval = readCount(options, COMMIT_INTERVAL);
+		}
+		if (options!= null && options.containsKey(PARALLEL_CONNECTIONS)) {
+			parallelConnections = readCount(options, PARALLEL_CONNECTIONS);
+		}
+		if (options!= null && options.containsKey(PARALLEL_PARTITION)) {
+			parallelPartition = options.get(PARALLEL_PARTITION);
+		}
+	}
+	
+	private ScriptPartitioner readPartitioner(){
+		try{
+			return ScriptPartitioner.forName(parallelPartition);
+		}catch(IllegalArgumentException ex){
+			throw new BadDataException("Execute SQL script: \"" + parallelPartition
+					+ "\" is not a valid value for \""+PARALLEL_PARTITION+"\" parameter. It can only be \"table\" or \"section\"", ex);
+		}
+	}
+	
+	private int readCount(Map<String, String> options, String key){
+		String value = options.get(key);
+		try{
+			int count = Integer.parseInt(value.trim());
+			if (count >= 0){
+				return count;
+			}
+		}catch(NumberFormatException nfe){
+			//reported below
+		}
+		throw new BadDataException("Execute SQL script: \"" + value
+				+ "\" is not a valid value for \""+key+"\" parameter. It must be a positive integer (0 for no limit)");
 	}
 
 	/**
@@ -136,4 +206,32 @@ public class SimpleExecuteSQLScriptCommand implements Command<SQLScript, Databas
 		// nothing
 	}
 
+	private static final class SeparatorRemover implements Iterator<String> {
+		private final Iterator<String> statements;
+
+		private SeparatorRemover(Iterator<String> statements){
+			this.statements = statements;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return statements.hasNext();
+		}
+
+		@Override
+		public String next() {
+			String aquery = statements.next().trim();
+			if(aquery.endsWith(";")){
+				return aquery.substring(0,aquery.length()-1);
+			}else{
+				return aquery;
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
 }
@@ -52,10 +52,12 @@ public abstract class AbstractFileToSQL {
     private static final OptionsReader OPTIONS_READER = OptionsReader.BASIC_READER;
     /** Key to access the SQL query file encoding in the option fileresource.*/
     private static final String ENCODING_OPTION_KEY = "encoding";
-    /** Key to access the SQL query file encoding in the option fileresource.*/
+    /** Key to access the SQL script statement delimiter in the option fileresource.*/
     private static final String DELIMITER_OPTION_KEY = "delimiter";
     /** The encoding of the file describing the query.*/
     private String queryEncoding;
+    /** The statement delimiter of the script.*/
+    private String queryDelimiter;
 
     public AbstractFileToSQL() {}
     
@@ -88,10 +90,10 @@ public abstract class AbstractFileToSQL {
     }
 
 
-/////////////////////////////////////////////////////////// REMOVE THIS BITCH //////////////////////////////////////////////////////////
     /**
-     * Exctracts the delimiter file from an Option formatted {@link FileResource}
-     * containing the DELIMITER_OPTION_KEY.
+     * Exctracts the statement delimiter from an Option formatted {@link FileResource}
+     * containing the DELIMITER_OPTION_KEY. Option files without this key are silently ignored,
+     * since they may hold the encoding only.
      * @param resource The file resource used as a configuration.
      */
     protected void extractDelimiter(FileResource resource) throws InstructionRuntimeException {
@@ -100,18 +102,25 @@ public abstract class AbstractFileToSQL {
             if (OPTIONS_READER.isOptions(optionFile) ) {
                 final Map<String, String> optionMap = OPTIONS_READER.getFilteredOptions(optionFile);
                 if (optionMap.containsKey(DELIMITER_OPTION_KEY)) {
-System.out.println(" 33333333333333333333333333333333333333333333333        " + optionMap.get(DELIMITER_OPTION_KEY));
-                } else {
-                    LOGGER.warn("Ignoring option file resource {}. A valid {} converter configuration must contain the key {}", resource, getComponentRepresentation(), ENCODING_OPTION_KEY);
+                    if (queryDelimiter==null) {
+                        queryDelimiter = optionMap.get(DELIMITER_OPTION_KEY);
+                        LOGGER.debug("{} defined as statement delimiter", queryDelimiter);
+                    } else {
+                        LOGGER.warn("Ignoring unexpected extra valid configuration resource {}. Delimiter {} is already set",resource, queryDelimiter);
+                    }
                 }
-            } else {
-                LOGGER.warn("Ignoring non optionfile formated file resource {}", resource);
             }
         } catch (IOException e) {
             throw new InstructionRuntimeException("Impossible to read file encapsulated in FileResource " + resource, e);
         }
     }
-/////////////////////////////////////////////////////////// REMOVE THIS BITCH //////////////////////////////////////////////////////////
+    
+    /**
+     * @return the statement delimiter given in the configuration, or <code>null</code> to use the default one.
+     */
+    protected String getDelimiterFromConfiguration() {
+        return queryDelimiter;
+    }
 	
     /** 
      * Uses given encoding configuration to define what charset to use
@@ -33,6 +33,7 @@ import org.squashtest.ta.framework.components.Resource;
 import org.squashtest.ta.framework.components.ResourceConverter;
 import org.squashtest.ta.framework.exception.BadDataException;
 import org.squashtest.ta.plugin.commons.resources.DirectoryResource;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 
 /**
@@ -79,7 +80,7 @@ public class CSVToDataset implements ResourceConverter<DirectoryResource, DbUnit
 			rDataSet.addReplacementObject(new String("[NULL]"), null);
 			rDataSet.addReplacementObject(new String("[null]"), null);
 			
-			dbUnitDataResource = new DbUnitDatasetResource(rDataSet,false);
+			dbUnitDataResource = new DbUnitDatasetResource(ColumnarDataSet.copyOf(rDataSet),false);
 		} catch (DataSetException dse) {
 			throw new BadDataException("file not found!!!!!\n", dse);
 		} 
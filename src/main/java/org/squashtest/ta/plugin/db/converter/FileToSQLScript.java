@@ -20,30 +20,19 @@
  */
 package org.squashtest.ta.plugin.db.converter;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.logging.Level;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.squashtest.ta.core.tools.OptionsReader;
-import org.squashtest.ta.core.tools.io.StorageSizeUnit;
 import org.squashtest.ta.framework.annotations.TAResourceConverter;
 import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.components.Resource;
 import org.squashtest.ta.framework.components.ResourceConverter;
 import org.squashtest.ta.framework.exception.BadDataException;
-import org.squashtest.ta.framework.exception.InstructionRuntimeException;
 import org.squashtest.ta.framework.tools.ComponentRepresentation;
-import org.squashtest.ta.plugin.db.library.sql.SQLFormatUtils;
 import org.squashtest.ta.plugin.db.resources.SQLScript;
+import org.squashtest.ta.plugin.db.resources.StreamedSQLScript;
 
 
 @TAResourceConverter("script")
@@ -74,43 +63,16 @@ public class FileToSQLScript extends AbstractFileToSQL
         }
 	}
 
+	/**
+	 * The script is not loaded : the returned {@link StreamedSQLScript} reads its statements from the file when it is executed.
+	 */
 	@Override
 	public SQLScript convert(FileResource resource) {
-            SQLScript resultQuery = null;
-            Charset cs = getCharsetFromConfiguration();
-		try (
-                FileInputStream fis = new FileInputStream(resource.getFile());
-                InputStreamReader isr = new InputStreamReader(fis, cs);
-                BufferedReader br = new BufferedReader(isr);
-            ){
-
-			String query = "";
-                        List<String> script = new ArrayList<String>();
-			String line;
-			while ((line = br.readLine()) != null) {
-				if (line.contains("--")){
-					//we take away the comments behind --
-					line = line.substring(0,line.indexOf("--"));
-				}
-                                query = SQLFormatUtils.stripComments(query);
-                                query = SQLFormatUtils.stripWhiteLines(query);
-				query = query.concat(" ").concat(line);
-                                script.add(query);
-                                query = "";
-			}
-			try{
-			resultQuery = new SQLScript(script);
-			}catch(BadDataException bde){
-				String message = "The SQL query "+resource.getFile().getName()+"can not contain more than one query. If you want to execute several queries with a single file, convert it to a SQL script";
-				throw new BadDataException(message, bde);
-			}
-		} catch (FileNotFoundException fnfe) {
-			throw new BadDataException("file not found!!!!!\n",fnfe);
-		} catch (IOException ioe) {
-			throw new InstructionRuntimeException("Resource convert I/O error",ioe);
+		File file = resource.getFile();
+		if (!file.isFile()) {
+			throw new BadDataException("file not found!!!!!\n", new FileNotFoundException(file.getPath()));
 		}
-        
-		return resultQuery;
+		return new StreamedSQLScript(file, getCharsetFromConfiguration(), getDelimiterFromConfiguration());
 	}
 
 	@Override
@@ -29,7 +29,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.dbunit.database.CachedResultSetTable;
 import org.dbunit.database.ForwardOnlyResultSetTable;
 import org.dbunit.database.IResultSetTable;
 import org.dbunit.dataset.Column;
@@ -37,6 +36,7 @@ import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.DefaultDataSet;
 import org.dbunit.dataset.DefaultTableMetaData;
 import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableMetaData;
 import org.dbunit.dataset.datatype.DataType;
 import org.dbunit.dataset.datatype.DataTypeException;
@@ -49,6 +49,7 @@ import org.squashtest.ta.framework.components.Resource;
 import org.squashtest.ta.framework.components.ResourceConverter;
 import org.squashtest.ta.framework.exception.IllegalConfigurationException;
 import org.squashtest.ta.framework.exception.InstructionRuntimeException;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 import org.squashtest.ta.plugin.db.resources.SQLResultSet;
 
@@ -68,6 +69,9 @@ import org.squashtest.ta.plugin.db.resources.SQLResultSet;
  * 	<ul>
  * 		<li>tablename : &lt;the table name &gt;. It will state that the current result set / data set represents
  * 		the said table</li>
+ * 		<li>streaming : &lt;true|false&gt; (default false). When true, the rows are not copied in memory : they are read from
+ * 		the result set as the consumer of the dataset (assertion, xml export...) asks for them. Such a dataset can only be read
+ * 		once, row after row. See also the <code>squashtest.ta.database.fetch.size</code> database setting.</li>
  * 	</ul>
  * </p>
  * 
@@ -92,8 +96,13 @@ public class ResultSetToDataset implements ResourceConverter<SQLResultSet, DbUni
 	
 	private Collection<Resource<?>> config = new LinkedList<Resource<?>>();
 	
+	private static final String TABLE_NAME_OPTION = "tablename";
+	private static final String STREAMING_OPTION = "streaming";
+	
 	private String tableName="default";
 	
+	private boolean streaming=false;
+	
 	
 	@Override
 	public float rateRelevance(SQLResultSet input) {
@@ -114,13 +123,17 @@ public class ResultSetToDataset implements ResourceConverter<SQLResultSet, DbUni
 			ResultSet result = resource.getResultSet();
 			ITableMetaData data = buildMetadata(result);
 			
-			IResultSetTable table = new ForwardOnlyResultSetTable(data, result);
-			table = new CachedResultSetTable(table);
+			IResultSetTable resultTable = new ForwardOnlyResultSetTable(data, result);
+			ITable table = resultTable;
+			if (!streaming){
+				table = new ColumnarTable(resultTable);
+				resultTable.close();
+			}
 			
 			IDataSet dataset = new DefaultDataSet(table);
 			
 			//we set hasMetadata to false here because we only include the type information, but no indication about primary key status
-			return new DbUnitDatasetResource(dataset,false);
+			return new DbUnitDatasetResource(dataset,false,streaming);
 			
 		}catch(SQLException ex){
 			throw logAndBuildException("converter from result set to dataset : an error occured while creating the dataset, caused by :", ex);
@@ -150,19 +163,34 @@ public class ResultSetToDataset implements ResourceConverter<SQLResultSet, DbUni
 
 				Map<String, String> options = OptionsReader.BASIC_READER.getOptions(((FileResource)resource).getFile());
 				
+				_setStreaming(options);
 				_setTableName(options);
 			}
 		}		
 	}
 	
 	private void _setTableName(Map<String, String> options){
-		String name = options.get("tablename");
+		String name = options.get(TABLE_NAME_OPTION);
 		if ((name!=null) && (! name.isEmpty())) tableName=name;
-		else{
+		else if (! options.containsKey(STREAMING_OPTION)){
 			throw logAndBuildIllegalConfiguration("converter from result set to dataset : file supplied as configuration was empty", null);				
 		}		
 	}
 	
+	private void _setStreaming(Map<String, String> options){
+		String value = options.get(STREAMING_OPTION);
+		if (value==null){
+			return;
+		}
+		if ("true".equalsIgnoreCase(value.trim())){
+			streaming=true;
+		}else if ("false".equalsIgnoreCase(value.trim())){
+			streaming=false;
+		}else{
+			throw logAndBuildIllegalConfiguration("converter from result set to dataset : '"+value+"' is not a valid value for option '"+STREAMING_OPTION+"', true or false expected", null);
+		}
+	}
+	
 	protected ITableMetaData buildMetadata(ResultSet resultSet){
 		try{
 			
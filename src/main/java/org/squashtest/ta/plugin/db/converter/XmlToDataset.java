@@ -36,6 +36,7 @@ import org.squashtest.ta.framework.components.Resource;
 import org.squashtest.ta.framework.components.ResourceConverter;
 import org.squashtest.ta.framework.exception.BadDataException;
 import org.squashtest.ta.plugin.commons.resources.XMLResource;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 import org.xml.sax.InputSource;
 
@@ -87,7 +88,7 @@ public class XmlToDataset implements ResourceConverter<XMLResource, DbUnitDatase
 			rDataSet.addReplacementObject(new String("[null]"), null);
 			
 			//we set hasMetadata to false here because the xml dataset includes no metadata
-		    dbUnitDataResource = new DbUnitDatasetResource(rDataSet,false);
+		    dbUnitDataResource = new DbUnitDatasetResource(ColumnarDataSet.copyOf(rDataSet),false);
 		} catch (FileNotFoundException fnfe) {
 			throw new BadDataException("file not found!!!!!\n", fnfe);
 		} catch (DataSetException e) {
@@ -23,6 +23,8 @@ package org.squashtest.ta.plugin.db.library.dbunit;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,16 +34,30 @@ import org.dbunit.dataset.filter.IColumnFilter;
 import org.squashtest.ta.framework.exception.InstructionRuntimeException;
 
 /**
- * Column filter to define column filtering table-wise. Tables are recognized by regex.
+ * Column filter to define column filtering table-wise. Tables are recognized by regex. The filter matching a table name 
+ * is only searched once for each table name.
  * @author edegenetais
  *
  */
 public class ByTableIncludeExcludeColumnFilter implements IColumnFilter {
+	private static final IColumnFilter NO_FILTER=new YesColumnFilter();
+	
 	private Map<String,Pattern> patternMap=new HashMap<String, Pattern>();
 	private Map<String,DefaultColumnFilter> filterMap=new HashMap<String, DefaultColumnFilter>();
+	private ConcurrentMap<String,IColumnFilter> tableFilterMap=new ConcurrentHashMap<String, IColumnFilter>();
+	
 	@Override
 	public boolean accept(String tableName, Column column) {
-		boolean accept=true;
+		IColumnFilter tableFilter=tableFilterMap.get(tableName);
+		if(tableFilter==null){
+			tableFilter=findTableFilter(tableName);
+			tableFilterMap.put(tableName, tableFilter);
+		}
+		return tableFilter.accept(tableName, column);
+	}
+	
+	private IColumnFilter findTableFilter(String tableName) {
+		IColumnFilter tableFilter=NO_FILTER;
 		String previousMatch=null;
 		for(Entry<String, Pattern> patternEntry:patternMap.entrySet()){
 			//if we find some table regex matching the table name, let's go
@@ -57,11 +73,11 @@ public class ByTableIncludeExcludeColumnFilter implements IColumnFilter {
 									+ tableName
 									+ " and have column filtering configuration.");
 				}
-				accept=filterMap.get(patternEntry.getKey()).accept(tableName, column);
+				tableFilter=filterMap.get(patternEntry.getKey());
 				previousMatch=patternEntry.getKey();
 			}
 		}
-		return accept;
+		return tableFilter;
 	}
 	
 	public void addColumnIncludeFilter(String tableRegex, String columnRegex){
@@ -79,6 +95,7 @@ public class ByTableIncludeExcludeColumnFilter implements IColumnFilter {
 		if(filterMap.containsKey(tableRegex)){
 			filter=filterMap.get(tableRegex);
 		}else{
+			tableFilterMap.clear();
 			filter=new DefaultColumnFilter();
 			filterMap.put(tableRegex, filter);
 			Pattern pattern=Pattern.compile(tableRegex);
@@ -0,0 +1,175 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.filter.IColumnFilter;
+
+/**
+ * Column filter evaluated once per table : the first time a table is filtered, the whole filter chain is applied to each 
+ * of its columns and the result is kept as a boolean mask, together with the filtered metadata. The next views of the 
+ * same table (same name and same columns) reuse them without calling the filter chain again.
+ */
+public final class CompiledColumnFilter implements IColumnFilter {
+
+	private final IColumnFilter filter;
+	private final ConcurrentMap<String, TableMask> masks = new ConcurrentHashMap<String, TableMask>();
+
+	private CompiledColumnFilter(IColumnFilter filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * @param filter the filter to compile.
+	 * @return the compiled filter (the given filter itself if it already is a compiled one).
+	 */
+	public static CompiledColumnFilter compile(IColumnFilter filter) {
+		if (filter == null) {
+			throw new IllegalArgumentException("columnFilter null");
+		}
+		if (filter instanceof CompiledColumnFilter) {
+			return (CompiledColumnFilter) filter;
+		}
+		return new CompiledColumnFilter(filter);
+	}
+
+	@Override
+	public boolean accept(String tableName, Column column) {
+		return filter.accept(tableName, column);
+	}
+
+	/**
+	 * @param metaData the metadata of a table.
+	 * @return the metadata of the table, restricted to the accepted columns and primary keys.
+	 * @throws DataSetException if the table columns cannot be read.
+	 */
+	public ITableMetaData filter(ITableMetaData metaData) throws DataSetException {
+		String tableName = metaData.getTableName();
+		Column[] columns = metaData.getColumns();
+		Column[] primaryKeys = metaData.getPrimaryKeys();
+		TableMask mask = masks.get(tableName);
+		if (mask == null || !mask.isFor(columns, primaryKeys)) {
+			mask = new TableMask(tableName, columns, primaryKeys);
+			masks.put(tableName, mask);
+		}
+		return mask.filteredMetaData;
+	}
+
+	/**
+	 * @param table a table.
+	 * @return a view of the table exposing only the accepted columns.
+	 * @throws DataSetException if the table columns cannot be read.
+	 */
+	public ITable filter(ITable table) throws DataSetException {
+		return new FilteredTable(table, filter(table.getTableMetaData()));
+	}
+
+	@Override
+	public String toString() {
+		return "compiled{" + filter + "}";
+	}
+
+	private final class TableMask {
+		private final Column[] columns;
+		private final Column[] primaryKeys;
+		private final boolean[] accepted;
+		private final ITableMetaData filteredMetaData;
+
+		private TableMask(String tableName, Column[] columns, Column[] primaryKeys) {
+			this.columns = columns;
+			this.primaryKeys = primaryKeys;
+			this.accepted = new boolean[columns.length];
+			List<Column> acceptedColumns = new ArrayList<Column>(columns.length);
+			for (int column = 0; column < columns.length; column++) {
+				accepted[column] = filter.accept(tableName, columns[column]);
+				if (accepted[column]) {
+					acceptedColumns.add(columns[column]);
+				}
+			}
+			List<Column> acceptedKeys = new ArrayList<Column>();
+			if (primaryKeys != null) {
+				for (Column key : primaryKeys) {
+					if (isAccepted(tableName, key)) {
+						acceptedKeys.add(key);
+					}
+				}
+			}
+			this.filteredMetaData = new DefaultTableMetaData(tableName, 
+					acceptedColumns.toArray(new Column[acceptedColumns.size()]), 
+					acceptedKeys.toArray(new Column[acceptedKeys.size()]));
+		}
+
+		/*
+		 * Primary keys are table columns, their filtering result is already known.
+		 */
+		private boolean isAccepted(String tableName, Column key) {
+			for (int column = 0; column < columns.length; column++) {
+				if (columns[column] == key) {
+					return accepted[column];
+				}
+			}
+			return filter.accept(tableName, key);
+		}
+
+		private boolean isFor(Column[] tableColumns, Column[] tablePrimaryKeys) {
+			return (tableColumns == columns || Arrays.equals(tableColumns, columns)) 
+					&& (tablePrimaryKeys == primaryKeys || Arrays.equals(tablePrimaryKeys, primaryKeys));
+		}
+	}
+
+	/*
+	 * Values are read from the original table, as in ColumnFilterTable.
+	 */
+	private static final class FilteredTable implements ITable {
+		private final ITable table;
+		private final ITableMetaData metaData;
+
+		private FilteredTable(ITable table, ITableMetaData metaData) {
+			this.table = table;
+			this.metaData = metaData;
+		}
+
+		@Override
+		public ITableMetaData getTableMetaData() {
+			return metaData;
+		}
+
+		@Override
+		public int getRowCount() {
+			return table.getRowCount();
+		}
+
+		@Override
+		public Object getValue(int row, String column) throws DataSetException {
+			return table.getValue(row, column);
+		}
+	}
+}
@@ -23,7 +23,6 @@ package org.squashtest.ta.plugin.db.library.dbunit;
 import java.util.Properties;
 
 import org.dbunit.dataset.AbstractDataSet;
-import org.dbunit.dataset.ColumnFilterTable;
 import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ITable;
@@ -33,14 +32,15 @@ import org.dbunit.dataset.filter.IColumnFilter;
 
 /**
  * Ported from CATS.
- * Decorates the tables of a dataset and exposes only some columns from them.
+ * Decorates the tables of a dataset and exposes only some columns from them. The filter is compiled (see {@link CompiledColumnFilter}), 
+ * so that it is evaluated once for each table, not each time the table is read.
  * 
  * @author gf
  * @author edegenetais
  * 
  */
 public class FilteredColumnDataSet extends AbstractDataSet implements IDataSet {
-	private final IColumnFilter columnFilter;
+	private final CompiledColumnFilter columnFilter;
 	private final IDataSet filteredDataSet;
 
 	/**
@@ -70,9 +70,9 @@ public class FilteredColumnDataSet extends AbstractDataSet implements IDataSet {
 			NoPKFilter pkFilter=new NoPKFilter(filteredDataSet, pseudoPrimaryKeys);
 			CompositeColumnFilter compositeFilter=new CompositeColumnFilter();
 			compositeFilter.addFilters(columnFilter,pkFilter);
-			this.columnFilter=compositeFilter;
+			this.columnFilter=CompiledColumnFilter.compile(compositeFilter);
 		}else{
-			this.columnFilter = columnFilter;
+			this.columnFilter = CompiledColumnFilter.compile(columnFilter);
 		}
 		this.filteredDataSet = filteredDataSet;
 	}
@@ -94,7 +94,7 @@ public class FilteredColumnDataSet extends AbstractDataSet implements IDataSet {
 			private final ITableIterator filteredTableIterator = createFilteredIterator(reversed);
 
 			public ITable getTable() throws DataSetException {
-				return new ColumnFilterTable(filteredTableIterator.getTable(), columnFilter);
+				return columnFilter.filter(filteredTableIterator.getTable());
 			}
 
 			public ITableMetaData getTableMetaData() throws DataSetException {
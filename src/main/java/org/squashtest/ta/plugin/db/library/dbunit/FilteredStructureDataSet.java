@@ -33,7 +33,9 @@ import org.dbunit.dataset.filter.ITableFilter;
 
 /**
  * Ported from CATS.
- * Decorates a dataset and exposes only some tables from it. Tables are also decorated to expose only some columns.
+ * Decorates a dataset and exposes only some tables from it. Tables are also decorated to expose only some columns : the 
+ * column filter is compiled (see {@link CompiledColumnFilter}), and a filter compiled beforehand keeps its table masks from 
+ * one dataset to the next.
  * 
  * @author gf
  * @author edegenetais
@@ -71,6 +73,7 @@ public class FilteredStructureDataSet implements IDataSet {
 		}else{
 			actualColumnFilter=columnFilter;
 		}
+		actualColumnFilter=CompiledColumnFilter.compile(actualColumnFilter);
 		
 		filteredDataSet = filterColumns(filterTables(decoratedDataSet, tableFilter), actualColumnFilter);
 		
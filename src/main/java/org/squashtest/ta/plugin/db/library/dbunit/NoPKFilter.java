@@ -20,7 +20,11 @@
  */
 package org.squashtest.ta.plugin.db.library.dbunit;
 
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.dbunit.dataset.Column;
 import org.dbunit.dataset.DataSetException;
@@ -42,6 +46,9 @@ public class NoPKFilter implements IColumnFilter {
 	
 	private PPKFilter delegatePPKFilter;
 	
+	/** Primary key names, by table name : the table is only looked up once */
+	private ConcurrentMap<String, Set<String>> primaryKeyNames=new ConcurrentHashMap<String, Set<String>>();
+	
 	public NoPKFilter(IDataSet dataSet) {
 		if(dataSet==null){
 			throw new IllegalArgumentException("dataset cannot be null");
@@ -86,16 +93,17 @@ public class NoPKFilter implements IColumnFilter {
 	 *             in case the PK metadata lookup fails.
 	 */
 	private boolean acceptIfNotGenuinePK(String tableName, Column column) throws DataSetException {
-		boolean accepted=true;
-		ITable table=targetDataset.getTable(tableName);
-		ITableMetaData metadata=table.getTableMetaData();
-		for(Column pk:metadata.getPrimaryKeys()){
-			if(pk.getColumnName().equals(column.getColumnName())){
-				accepted=false;
-				break;
+		Set<String> keys=primaryKeyNames.get(tableName);
+		if(keys==null){
+			keys=new HashSet<String>();
+			ITable table=targetDataset.getTable(tableName);
+			ITableMetaData metadata=table.getTableMetaData();
+			for(Column pk:metadata.getPrimaryKeys()){
+				keys.add(pk.getColumnName());
 			}
+			primaryKeyNames.put(tableName, keys);
 		}
-		return accepted;
+		return !keys.contains(column.getColumnName());
 	}
 
 }
@@ -0,0 +1,210 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.DatabaseTableIterator;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.IResultSetTableFactory;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.NoSuchTableException;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.datatype.DataTypeException;
+import org.dbunit.dataset.datatype.IDataTypeFactory;
+import org.dbunit.dataset.filter.IColumnFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer;
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer.ColumnDescription;
+
+/**
+ * Database dataset described from the metadata prefetched by a {@link DatabaseMetadataExplorer} (possibly read from its
+ * on-disk cache) instead of DbUnit's own introspection. Column types are resolved by the data type factory of the 
+ * connection, and primary keys by its primary key filter if any, as in a DbUnit database dataset : columns of a type the 
+ * factory does not recognize are left out.
+ * <p>Tables are read the way DbUnit reads the tables of a database dataset, from the table metadata.</p>
+ */
+public class PrefetchedDatabaseDataSet implements IDataSet {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchedDatabaseDataSet.class);
+
+	private final DatabaseMetadataExplorer explorer;
+	private final IDatabaseConnection connection;
+	private final String[] tableNames;
+	private final boolean caseSensitiveTableNames;
+	private final Map<String, String> tableNamesByKey = new HashMap<String, String>();
+	private final Map<String, ITableMetaData> metaData = new HashMap<String, ITableMetaData>();
+
+	/**
+	 * @param explorer the metadata explorer, whose schema has been prefetched.
+	 * @param connection the connection the tables are read from.
+	 */
+	public PrefetchedDatabaseDataSet(DatabaseMetadataExplorer explorer, IDatabaseConnection connection) {
+		List<String> prefetched = explorer.getPrefetchedTableNames();
+		if (prefetched == null) {
+			throw new IllegalArgumentException("the metadata of the schema has not been prefetched");
+		}
+		this.explorer = explorer;
+		this.connection = connection;
+		this.tableNames = prefetched.toArray(new String[prefetched.size()]);
+		this.caseSensitiveTableNames = connection.getConfig().getFeature(DatabaseConfig.FEATURE_CASE_SENSITIVE_TABLE_NAMES);
+		for (String name : tableNames) {
+			tableNamesByKey.put(key(name), name);
+		}
+	}
+
+	@Override
+	public String[] getTableNames() throws DataSetException {
+		return tableNames.clone();
+	}
+
+	@Override
+	public synchronized ITableMetaData getTableMetaData(String tableName) throws DataSetException {
+		String name = tableNamesByKey.get(key(tableName));
+		if (name == null) {
+			throw new NoSuchTableException(tableName);
+		}
+		ITableMetaData tableMetaData = metaData.get(name);
+		if (tableMetaData == null) {
+			tableMetaData = describe(name);
+			metaData.put(name, tableMetaData);
+		}
+		return tableMetaData;
+	}
+
+	@Override
+	public ITable getTable(String tableName) throws DataSetException {
+		ITableMetaData tableMetaData = getTableMetaData(tableName);
+		IResultSetTableFactory factory = (IResultSetTableFactory) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_RESULTSET_TABLE_FACTORY);
+		try {
+			return factory.createTable(tableMetaData, connection);
+		} catch (SQLException ex) {
+			throw new DataSetException(ex);
+		}
+	}
+
+	/**
+	 * @deprecated see {@link IDataSet#getTables()}
+	 */
+	@Deprecated
+	@Override
+	public ITable[] getTables() throws DataSetException {
+		String[] names = getTableNames();
+		ITable[] result = new ITable[names.length];
+		for (int index = 0; index < names.length; index++) {
+			result[index] = getTable(names[index]);
+		}
+		return result;
+	}
+
+	@Override
+	public ITableIterator iterator() throws DataSetException {
+		return new DatabaseTableIterator(getTableNames(), this);
+	}
+
+	@Override
+	public ITableIterator reverseIterator() throws DataSetException {
+		String[] names = getTableNames();
+		String[] reversed = new String[names.length];
+		for (int index = 0; index < names.length; index++) {
+			reversed[names.length - 1 - index] = names[index];
+		}
+		return new DatabaseTableIterator(reversed, this);
+	}
+
+	@Override
+	public boolean isCaseSensitiveTableNames() {
+		return caseSensitiveTableNames;
+	}
+
+	private ITableMetaData describe(String tableName) throws DataSetException {
+		DatabaseConfig config = connection.getConfig();
+		IDataTypeFactory dataTypeFactory = (IDataTypeFactory) config.getProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY);
+		IColumnFilter primaryKeyFilter = (IColumnFilter) config.getProperty(DatabaseConfig.PROPERTY_PRIMARY_KEY_FILTER);
+		try {
+			List<ColumnDescription> descriptions = explorer.getColumns(tableName);
+			List<Column> tableColumns = new ArrayList<Column>(descriptions.size());
+			Map<String, Column> columnsByName = new HashMap<String, Column>();
+			for (ColumnDescription description : descriptions) {
+				Column column = createColumn(dataTypeFactory, tableName, description);
+				if (column != null) {
+					tableColumns.add(column);
+					columnsByName.put(description.getName().toUpperCase(Locale.ENGLISH), column);
+				}
+			}
+			Column[] columns = tableColumns.toArray(new Column[tableColumns.size()]);
+			List<Column> primaryKeys = new ArrayList<Column>();
+			if (primaryKeyFilter != null) {
+				for (Column column : columns) {
+					if (primaryKeyFilter.accept(tableName, column)) {
+						primaryKeys.add(column);
+					}
+				}
+			} else {
+				for (String primaryKey : explorer.getPrimaryKeyNames(tableName)) {
+					Column column = columnsByName.get(primaryKey.toUpperCase(Locale.ENGLISH));
+					if (column != null) {
+						primaryKeys.add(column);
+					}
+				}
+			}
+			return new DefaultTableMetaData(tableName, columns, primaryKeys.toArray(new Column[primaryKeys.size()]));
+		} catch (DataTypeException ex) {
+			throw new DataSetException("database : unknown type for a column of table " + tableName, ex);
+		} catch (SQLException ex) {
+			throw new DataSetException(ex);
+		}
+	}
+
+	/*
+	 * As DbUnit's SQLHelper#createColumn : columns whose type is not recognized are left out.
+	 */
+	private Column createColumn(IDataTypeFactory dataTypeFactory, String tableName, ColumnDescription description) 
+			throws DataTypeException {
+		DataType dataType = dataTypeFactory.createDataType(description.getSqlType(), description.getTypeName(), tableName, 
+				description.getName());
+		if (dataType == DataType.UNKNOWN) {
+			LOGGER.warn("{}.{} data type ({}, '{}') not recognized and will be ignored. See FAQ for more information.", 
+					tableName, description.getName(), description.getSqlType(), description.getTypeName());
+			return null;
+		}
+		return new Column(description.getName(), dataType, description.getTypeName(), 
+				Column.nullableValue(description.getNullable()), description.getDefaultValue(), description.getRemarks(), 
+				Column.AutoIncrement.autoIncrementValue(description.getAutoIncrement()));
+	}
+
+	private String key(String tableName) {
+		return caseSensitiveTableNames ? tableName : tableName.toUpperCase(Locale.ENGLISH);
+	}
+}
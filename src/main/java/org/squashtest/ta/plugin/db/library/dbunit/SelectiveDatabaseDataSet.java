@@ -0,0 +1,181 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.DatabaseTableIterator;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.IResultSetTableFactory;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.NoSuchTableException;
+import org.dbunit.dataset.filter.IColumnFilter;
+import org.dbunit.dataset.filter.ITableFilter;
+
+/**
+ * Database dataset whose filters are applied before the data is read : tables refused by the table filter are neither
+ * described nor read, and the SELECT statement of each table only lists the columns accepted by the column filter, and 
+ * the primary keys : they are kept even if the column filter refuses them, as rows are identified by them.
+ * <p>Tables are read the way DbUnit reads the tables of a database dataset, from the (filtered) table metadata.</p>
+ */
+public class SelectiveDatabaseDataSet implements IDataSet {
+
+	private final IDataSet discovered;
+	private final IDatabaseConnection connection;
+	private final ITableFilter tableFilter;
+	private final CompiledColumnFilter columnFilter;
+	private String[] tableNames;
+	private Set<String> acceptedTables;
+
+	/**
+	 * @param discovered the database dataset, as created by {@link IDatabaseConnection#createDataSet()}.
+	 * @param connection the connection the tables are read from.
+	 * @param tableFilter the table filter, <code>null</code> to keep all tables.
+	 * @param columnFilter the column filter, <code>null</code> to keep all columns.
+	 */
+	public SelectiveDatabaseDataSet(IDataSet discovered, IDatabaseConnection connection, ITableFilter tableFilter, IColumnFilter columnFilter) {
+		if (discovered == null) {
+			throw new IllegalArgumentException("discovered dataset null");
+		}
+		this.discovered = discovered;
+		this.connection = connection;
+		this.tableFilter = tableFilter;
+		this.columnFilter = columnFilter == null ? null : CompiledColumnFilter.compile(columnFilter);
+	}
+
+	@Override
+	public synchronized String[] getTableNames() throws DataSetException {
+		if (tableNames == null) {
+			tableNames = tableFilter == null ? discovered.getTableNames() : tableFilter.getTableNames(discovered);
+			acceptedTables = new HashSet<String>(tableNames.length * 2);
+			for (String name : tableNames) {
+				acceptedTables.add(key(name));
+			}
+		}
+		return tableNames.clone();
+	}
+
+	@Override
+	public ITableMetaData getTableMetaData(String tableName) throws DataSetException {
+		checkAccepted(tableName);
+		ITableMetaData metaData = discovered.getTableMetaData(tableName);
+		if (columnFilter == null) {
+			return metaData;
+		}
+		ITableMetaData filtered = columnFilter.filter(metaData);
+		Column[] primaryKeys = metaData.getPrimaryKeys();
+		if (primaryKeys == null || filtered.getPrimaryKeys().length == primaryKeys.length) {
+			return filtered;
+		}
+		return keepPrimaryKeys(metaData, filtered);
+	}
+
+	/*
+	 * The refused primary keys are put back, the columns keep the table order.
+	 */
+	private ITableMetaData keepPrimaryKeys(ITableMetaData metaData, ITableMetaData filtered) throws DataSetException {
+		Set<String> kept = new HashSet<String>();
+		for (Column column : filtered.getColumns()) {
+			kept.add(column.getColumnName());
+		}
+		Column[] primaryKeys = metaData.getPrimaryKeys();
+		for (Column key : primaryKeys) {
+			kept.add(key.getColumnName());
+		}
+		List<Column> columns = new ArrayList<Column>(kept.size());
+		for (Column column : metaData.getColumns()) {
+			if (kept.contains(column.getColumnName())) {
+				columns.add(column);
+			}
+		}
+		return new DefaultTableMetaData(metaData.getTableName(), columns.toArray(new Column[columns.size()]), primaryKeys);
+	}
+
+	@Override
+	public ITable getTable(String tableName) throws DataSetException {
+		ITableMetaData metaData = getTableMetaData(tableName);
+		IResultSetTableFactory factory = (IResultSetTableFactory) connection.getConfig().getProperty(DatabaseConfig.PROPERTY_RESULTSET_TABLE_FACTORY);
+		try {
+			return factory.createTable(metaData, connection);
+		} catch (SQLException ex) {
+			throw new DataSetException(ex);
+		}
+	}
+
+	/**
+	 * @deprecated see {@link IDataSet#getTables()}
+	 */
+	@Deprecated
+	@Override
+	public ITable[] getTables() throws DataSetException {
+		String[] names = getTableNames();
+		ITable[] result = new ITable[names.length];
+		for (int index = 0; index < names.length; index++) {
+			result[index] = getTable(names[index]);
+		}
+		return result;
+	}
+
+	@Override
+	public ITableIterator iterator() throws DataSetException {
+		return new DatabaseTableIterator(getTableNames(), this);
+	}
+
+	@Override
+	public ITableIterator reverseIterator() throws DataSetException {
+		String[] names = getTableNames();
+		String[] reversed = new String[names.length];
+		for (int index = 0; index < names.length; index++) {
+			reversed[names.length - 1 - index] = names[index];
+		}
+		return new DatabaseTableIterator(reversed, this);
+	}
+
+	@Override
+	public boolean isCaseSensitiveTableNames() {
+		return discovered.isCaseSensitiveTableNames();
+	}
+
+	private void checkAccepted(String tableName) throws DataSetException {
+		getTableNames();
+		synchronized (this) {
+			if (!acceptedTables.contains(key(tableName))) {
+				throw new NoSuchTableException(tableName);
+			}
+		}
+	}
+
+	private String key(String tableName) {
+		return isCaseSensitiveTableNames() ? tableName : tableName.toUpperCase(Locale.ENGLISH);
+	}
+}
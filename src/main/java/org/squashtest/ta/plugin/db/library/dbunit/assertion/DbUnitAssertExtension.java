@@ -21,6 +21,7 @@
 package org.squashtest.ta.plugin.db.library.dbunit.assertion;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.dbunit.DatabaseUnitException;
@@ -29,12 +30,14 @@ import org.dbunit.assertion.FailureHandler;
 import org.dbunit.dataset.Column;
 import org.dbunit.dataset.Columns;
 import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.DefaultTable;
 import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableMetaData;
-import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.RowOutOfBoundsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.squashtest.ta.framework.exception.BrokenTestException;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.IndexedTable;
 
 /**
  * This class extends dbunit DbUnitAssert classes. 
@@ -48,8 +51,28 @@ public class DbUnitAssertExtension extends DbUnitAssert {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(DbUnitAssert.class);
 	
+    /**
+     * Default maximum number of missing rows for which a potential match is searched.
+     */
+    public static final int DEFAULT_MAX_POTENTIAL_MATCH_SEARCHES = 1000;
+	
     private List<String> primaryKeysName;
     
+    private int maxPotentialMatchSearches = DEFAULT_MAX_POTENTIAL_MATCH_SEARCHES;
+    
+    /**
+     * Caps the number of missing rows (per table) for which a potential match is searched : the potential match of the following 
+     * missing rows is skipped, so that a massive failure is still reported quickly.
+     * 
+     * @param maxPotentialMatchSearches the maximum number of searches, {@link #DEFAULT_MAX_POTENTIAL_MATCH_SEARCHES} by default.
+     */
+    public void setMaxPotentialMatchSearches(int maxPotentialMatchSearches) {
+    	if (maxPotentialMatchSearches < 0) {
+    		throw new IllegalArgumentException("The maximum number of potential match searches must not be negative : "+maxPotentialMatchSearches);
+    	}
+    	this.maxPotentialMatchSearches = maxPotentialMatchSearches;
+    }
+    
     /**
      * This check if the expected dataset is contains inside the actual dataset.
      * The actual dataset could have more column and / or more row than the expected dataset.</br>
@@ -105,6 +128,41 @@ public class DbUnitAssertExtension extends DbUnitAssert {
             return;
         }
 
+        ComparisonColumn[] comparisonCols = checkColumns(expectedMetaData, actualMetaData, failureHandler);
+
+        // Finally compare the data
+        compareData(expectedTable, actualTable, comparisonCols, failureHandler);
+    }
+    
+    /**
+     * Same check as {@link #assertContains(ITable, ITable, FailureHandler, List)}, for an actual table that can only be read
+     * forward (typically a table streamed from a database result set) : its row count is unknown and each of its rows is read once.
+     * Only the expected rows, and for each of them at most one potential match, are kept in memory. The actual table is read until all 
+     * expected rows have been found, or until its end.
+     * 
+     * @param expectedTable The expected dataset
+     * @param actualTable The actual dataset, read forward only.
+     * @param failureHandler The assert exception handler
+     * @param primaryKeysName The list of primary key to use for potential match feature. 
+     * @throws DatabaseUnitException Exception occurs the assert contains process. 
+     */
+    public void assertContainsStreamed(ITable expectedTable, ITable actualTable,
+            FailureHandler failureHandler, List<String> primaryKeysName) throws DatabaseUnitException
+    {
+    	LOGGER.debug(
+                "assertContainsStreamed(expectedTable={}, actualTable={}, failureHandler={}) - start",
+                new Object[] { expectedTable, actualTable, failureHandler });
+    	
+    	this.primaryKeysName = primaryKeysName;
+    	
+    	ComparisonColumn[] comparisonCols = checkColumns(expectedTable.getTableMetaData(), actualTable.getTableMetaData(), failureHandler);
+    	
+    	compareStreamedData(expectedTable, actualTable, comparisonCols, failureHandler);
+    }
+    
+    private ComparisonColumn[] checkColumns(ITableMetaData expectedMetaData, ITableMetaData actualMetaData, 
+    		FailureHandler failureHandler) throws DataSetException
+    {
         // Put the columns into the same order
         Column[] expectedColumns = Columns.getSortedColumns(expectedMetaData);
         Column[] actualColumns = Columns.getSortedColumns(actualMetaData);
@@ -120,11 +178,8 @@ public class DbUnitAssertExtension extends DbUnitAssert {
         }
 
         // Get the datatypes to be used for comparing the sorted columns
-        ComparisonColumn[] comparisonCols = getComparisonColumns(expectedTableName,
+        return getComparisonColumns(expectedMetaData.getTableName(),
                 expectedColumns, actualColumns, failureHandler);
-
-        // Finally compare the data
-        compareData(expectedTable, actualTable, comparisonCols, failureHandler);
     }
     
     @Override
@@ -150,8 +205,8 @@ public class DbUnitAssertExtension extends DbUnitAssert {
     
     
     @Override
-    protected void compareData(ITable expectedTable, ITable actualTable,
-            ComparisonColumn[] comparisonCols, FailureHandler failureHandler)
+    protected void compareData(ITable expectedTable, final ITable actualTable,
+            final ComparisonColumn[] comparisonCols, FailureHandler failureHandler)
             throws DataSetException
     {
         LOGGER.debug("compareData(expectedTable={}, actualTable={}, "
@@ -176,85 +231,74 @@ public class DbUnitAssertExtension extends DbUnitAssert {
                     "The parameter 'failureHandler' must not be null");
         }
 
-        List<Integer> possibleRowFromActual = new ArrayList<Integer>(actualTable.getRowCount());
-    	for (int index = 0; index < actualTable.getRowCount(); index++) {
-    			possibleRowFromActual.add(index);
-		}
+        // index the actual rows once, then look each expected row up in the index
+        int actualRowCount = actualTable.getRowCount();
+        final int[] actualColumns = columnIndexes(actualTable, comparisonCols);
+        int[] expectedColumns = columnIndexes(expectedTable, comparisonCols);
+        RowIndex actualIndex = new RowIndex(comparisonCols, actualRowCount);
+        for (int rowFromActual = 0; rowFromActual < actualRowCount; rowFromActual++) {
+        	actualIndex.add(rowFromActual, readRow(actualTable, rowFromActual, comparisonCols, actualColumns));
+        }
     	
     	List<DifferenceExtension> diffList = new ArrayList<DifferenceExtension>();
     	
         // iterate over all rows
         for (int rowFromExpected = 0; rowFromExpected < expectedTable.getRowCount(); rowFromExpected++) {
         	
-        	List<Integer> possibleRowForExpectedLine = new ArrayList<Integer>(possibleRowFromActual);
+        	final Object[] expectedRow = readRow(expectedTable, rowFromExpected, comparisonCols, expectedColumns);
         	
-            for (int column = 0; column < comparisonCols.length; column++) {
-                ComparisonColumn compareColumn = comparisonCols[column];
-                String columnName = compareColumn.getColumnName();
-                DataType dataType = compareColumn.getDataType();
-                List<Integer> toRemove = new ArrayList<Integer>();
-                for (Integer lineFromActual : possibleRowForExpectedLine) {
-                	Object expectedValue = expectedTable.getValue(rowFromExpected, columnName);
-                    Object actualValue = actualTable.getValue(lineFromActual, columnName);
-                    if (dataType.compare(expectedValue, actualValue) != 0) {
-                    	toRemove.add(lineFromActual);
-                    }
-                }
-                possibleRowForExpectedLine.removeAll(toRemove);
-            }
-            if (possibleRowForExpectedLine.size()==1){
-            	// Row lineFromExpected from expected table match the row from actual table contains in the List
-            	possibleRowFromActual.remove(possibleRowForExpectedLine.get(0));
-            } else if(possibleRowForExpectedLine.size() > 1) {
-            	// The row lineFromExpected from expected table match the rows from actual table contains in the List
-            	// => Many rows match we take the first row for match.
-
-            	// We remove the selected row from the list of possible row
-            	possibleRowFromActual.remove(possibleRowForExpectedLine.get(0));
-            } else {
+        	// The first matching row from actual table (if many rows match) is consumed by the expected row
+        	int matchingRow = actualIndex.takeFirst(expectedRow, new RowIndex.RowMatcher() {
+				@Override
+				public boolean matches(int row) throws DataSetException {
+					return matchesRow(expectedRow, actualTable, row, comparisonCols, actualColumns);
+				}
+			});
+            if (matchingRow < 0) {
             	// No match found
             	DifferenceExtension diff = new DifferenceExtension(expectedTable, actualTable, rowFromExpected);
             	diffList.add(diff);
             	failureHandler.handle(diff);
+            	if (isFull(failureHandler, diff)) {
+            		// the difference budget of the table is exhausted : the next rows are not inspected
+            		skipRows(failureHandler, diff, expectedTable.getRowCount() - rowFromExpected - 1);
+            		break;
+            	}
             }	
             
         }
         
-  
         if(primaryKeysName.size() > 0 ){
-            // The potential match by reducing the column to primary key column
+            // The potential match by reducing the column to primary key column : the actual rows that are left are indexed once 
+        	// by their primary key values, then each missing expected row is looked up in this index.
+        	final int[] keyColumns = keyColumns(comparisonCols);
+        	final ComparisonColumn[] keyCols = keyComparisonColumns(comparisonCols, keyColumns);
+        	final int[] actualKeyColumns = columnIndexes(actualTable, keyCols);
+        	int[] expectedKeyColumns = columnIndexes(expectedTable, keyCols);
+        	RowIndex keyIndex = new RowIndex(keyCols, actualRowCount);
+        	for (Integer rowFromActual : actualIndex.remainingRows()) {
+        		keyIndex.add(rowFromActual, readRow(actualTable, rowFromActual, keyCols, actualKeyColumns));
+        	}
         	
+        	int searchedCount = 0;
         	for (DifferenceExtension difference : diffList) {
-        		int rowIndex = difference.getRowIndex();
-        		List<Integer> possibleRowForExpectedLine = new ArrayList<Integer>(possibleRowFromActual);
-                for (int column = 0; column < comparisonCols.length; column++) {
-                	
-                    ComparisonColumn compareColumn = comparisonCols[column];
-                    String columnName = compareColumn.getColumnName();
-                    
-                    if(primaryKeysName.contains(columnName)){
-	                
-                    	DataType dataType = compareColumn.getDataType();
-	                    List<Integer> toRemove = new ArrayList<Integer>();
-	                    for (Integer lineFromActual : possibleRowForExpectedLine) {
-	                    	Object expectedValue = expectedTable.getValue( rowIndex, columnName);
-	                        Object actualValue = actualTable.getValue(lineFromActual, columnName);
-	                        if (dataType.compare(expectedValue, actualValue) != 0) {
-	                        	toRemove.add(lineFromActual);
-	                        }
-	                    }
-	                    possibleRowForExpectedLine.removeAll(toRemove);
-	                    
-                    }
-                }
+        		if (searchedCount++ >= maxPotentialMatchSearches) {
+        			difference.skipPotentialMatch(primaryKeysName);
+        			continue;
+        		}
+        		final Object[] expectedKey = readRow(expectedTable, difference.getRowIndex(), keyCols, expectedKeyColumns);
+        		List<Integer> possibleRowForExpectedLine = keyIndex.find(expectedKey, new RowIndex.RowMatcher() {
+					@Override
+					public boolean matches(int row) throws DataSetException {
+						return matchesRow(expectedKey, actualTable, row, keyCols, actualKeyColumns);
+					}
+				}, 2);
                 if (possibleRowForExpectedLine.size()==1){
                 	// Row lineFromExpected from expected table match the row from actual table contains in the List
                 	difference.addOnePotentialMatch(possibleRowForExpectedLine.get(0),primaryKeysName);
                 } else if(possibleRowForExpectedLine.size() > 1) {
-                	// The row lineFromExpected from expected table match the rows from actual table contains in the List
-                	// => Many rows match we take the first row for match.
-
-                	// We remove the selected row from the list of possible row
+                	// The row lineFromExpected from expected table match many rows from actual table 
+                	// => we take the first row for match.
                 	difference.addManyPotentialMatch(possibleRowForExpectedLine.get(0),primaryKeysName);
                 } else {
                 	// No match found 
@@ -262,8 +306,230 @@ public class DbUnitAssertExtension extends DbUnitAssert {
                 }
     		}
         }
-        
-
+    }
+    
+    /*
+     * Single pass over the actual table : each actual row is matched against the first expected row not found yet. 
+     * Actual rows that match no expected row are the candidates for the potential matches (reduced to the primary key columns)
+     * of the expected rows that are still missing : the candidates are looked up in an index of the expected rows by primary key,
+     * the first candidate of each expected row is copied, the others only counted.
+     */
+    private void compareStreamedData(ITable expectedTable, ITable actualTable,
+            final ComparisonColumn[] comparisonCols, FailureHandler failureHandler)
+            throws DataSetException
+    {
+    	int expectedRowCount = expectedTable.getRowCount();
+    	final Object[][] expectedRows = new Object[expectedRowCount][];
+    	int[] expectedColumns = columnIndexes(expectedTable, comparisonCols);
+    	for (int row = 0; row < expectedRowCount; row++) {
+    		expectedRows[row] = readRow(expectedTable, row, comparisonCols, expectedColumns);
+    	}
+    	
+    	RowIndex expectedIndex = new RowIndex(comparisonCols, expectedRowCount);
+    	for (int row = 0; row < expectedRowCount; row++) {
+    		expectedIndex.add(row, expectedRows[row]);
+    	}
+    	
+    	boolean potentialMatchEnabled = !primaryKeysName.isEmpty();
+    	final int[] keyColumns = keyColumns(comparisonCols);
+    	RowIndex expectedKeyIndex = null;
+    	if (potentialMatchEnabled) {
+    		expectedKeyIndex = new RowIndex(keyComparisonColumns(comparisonCols, keyColumns), expectedRowCount);
+    		for (int row = 0; row < expectedRowCount; row++) {
+    			expectedKeyIndex.add(row, project(expectedRows[row], keyColumns));
+    		}
+    	}
+    	
+    	int missingRowCount = expectedRowCount;
+    	int[] potentialMatchRow = new int[expectedRowCount];
+    	int[] potentialMatchCount = new int[expectedRowCount];
+    	ITableMetaData actualMetaData = actualTable.getTableMetaData();
+    	DefaultTable potentialMatches = new DefaultTable(actualMetaData);
+    	int[] actualColumns = columnIndexes(actualTable, comparisonCols);
+    	
+    	int rowFromActual = 0;
+    	while (missingRowCount > 0) {
+    		final Object[] actualRow;
+    		try {
+    			actualRow = readRow(actualTable, rowFromActual, comparisonCols, actualColumns);
+    		} catch (RowOutOfBoundsException endOfTable) {
+    			break;
+    		}
+    		
+    		int matchingRow = expectedIndex.takeFirst(actualRow, new RowIndex.RowMatcher() {
+				@Override
+				public boolean matches(int row) throws DataSetException {
+					return matchesColumns(expectedRows[row], actualRow, comparisonCols, null);
+				}
+			});
+    		if (matchingRow >= 0) {
+    			missingRowCount--;
+    		} else if (potentialMatchEnabled) {
+    			int copiedRow = -1;
+    			List<Integer> candidates = expectedKeyIndex.find(project(actualRow, keyColumns), new RowIndex.RowMatcher() {
+					@Override
+					public boolean matches(int row) throws DataSetException {
+						return matchesColumns(expectedRows[row], actualRow, comparisonCols, keyColumns);
+					}
+				}, Integer.MAX_VALUE);
+    			for (Integer rowFromExpected : candidates) {
+    				if (!expectedIndex.isConsumed(rowFromExpected)) {
+    					if (potentialMatchCount[rowFromExpected] == 0) {
+    						if (copiedRow < 0) {
+    							copiedRow = copyRow(actualTable, rowFromActual, potentialMatches);
+    						}
+    						potentialMatchRow[rowFromExpected] = copiedRow;
+    					}
+    					potentialMatchCount[rowFromExpected]++;
+    				}
+    			}
+    		}
+    		rowFromActual++;
+    	}
+    	
+    	int searchedCount = 0;
+    	for (int rowFromExpected = 0; rowFromExpected < expectedRowCount; rowFromExpected++) {
+    		if (expectedIndex.isConsumed(rowFromExpected)) {
+    			continue;
+    		}
+    		DifferenceExtension diff = new DifferenceExtension(expectedTable, potentialMatches, rowFromExpected);
+    		failureHandler.handle(diff);
+    		if (potentialMatchEnabled) {
+    			if (searchedCount++ >= maxPotentialMatchSearches) {
+    				diff.skipPotentialMatch(primaryKeysName);
+    			} else if (potentialMatchCount[rowFromExpected] == 1) {
+    				diff.addOnePotentialMatch(potentialMatchRow[rowFromExpected], primaryKeysName);
+    			} else if (potentialMatchCount[rowFromExpected] > 1) {
+    				diff.addManyPotentialMatch(potentialMatchRow[rowFromExpected], primaryKeysName);
+    			} else {
+    				diff.addNoPotentialMatch(primaryKeysName);
+    			}
+    		}
+    		if (isFull(failureHandler, diff)) {
+    			// the difference budget of the table is exhausted : the next rows are not inspected
+    			skipRows(failureHandler, diff, expectedRowCount - rowFromExpected - 1);
+    			break;
+    		}
+    	}
+    }
+    
+    private static boolean isFull(FailureHandler failureHandler, DifferenceExtension diff) {
+    	return failureHandler instanceof FailureHandlerExtension 
+    			&& ((FailureHandlerExtension) failureHandler).isFull(diff.getActualTable().getTableMetaData().getTableName());
+    }
+    
+    private static void skipRows(FailureHandler failureHandler, DifferenceExtension diff, int rowCount) {
+    	if (rowCount > 0) {
+    		((FailureHandlerExtension) failureHandler).addSkippedRows(diff.getActualTable().getTableMetaData().getTableName(), rowCount);
+    	}
+    }
+    
+    /*
+     * The indexes (among the comparison columns) of the primary key columns.
+     */
+    private int[] keyColumns(ComparisonColumn[] comparisonCols) {
+    	int[] keyColumns = new int[comparisonCols.length];
+    	int count = 0;
+    	for (int column = 0; column < comparisonCols.length; column++) {
+    		if (primaryKeysName.contains(comparisonCols[column].getColumnName())) {
+    			keyColumns[count++] = column;
+    		}
+    	}
+    	return Arrays.copyOf(keyColumns, count);
+    }
+    
+    private static ComparisonColumn[] keyComparisonColumns(ComparisonColumn[] comparisonCols, int[] keyColumns) {
+    	ComparisonColumn[] keyCols = new ComparisonColumn[keyColumns.length];
+    	for (int index = 0; index < keyColumns.length; index++) {
+    		keyCols[index] = comparisonCols[keyColumns[index]];
+    	}
+    	return keyCols;
+    }
+    
+    private static Object[] project(Object[] row, int[] columns) {
+    	Object[] values = new Object[columns.length];
+    	for (int index = 0; index < columns.length; index++) {
+    		values[index] = row[columns[index]];
+    	}
+    	return values;
+    }
+    
+    /*
+     * The indexes of the comparison columns in the table, looked up once for the whole table. 
+     * null if the table can only be read by column name.
+     */
+    private static int[] columnIndexes(ITable table, ComparisonColumn[] comparisonCols) throws DataSetException {
+    	if (!(table instanceof IndexedTable)) {
+    		return null;
+    	}
+    	int[] indexes = new int[comparisonCols.length];
+    	for (int column = 0; column < comparisonCols.length; column++) {
+    		indexes[column] = ((IndexedTable) table).getColumnIndex(comparisonCols[column].getColumnName());
+    	}
+    	return indexes;
+    }
+    
+    /**
+     * @param indexes the column indexes returned by {@link #columnIndexes(ITable, ComparisonColumn[])}.
+     */
+    private static Object valueAt(ITable table, int row, ComparisonColumn[] comparisonCols, int[] indexes, int column) 
+    		throws DataSetException {
+    	if (indexes == null) {
+    		return table.getValue(row, comparisonCols[column].getColumnName());
+    	}
+    	return ((IndexedTable) table).getValue(row, indexes[column]);
+    }
+    
+    private Object[] readRow(ITable table, int row, ComparisonColumn[] comparisonCols, int[] indexes) throws DataSetException {
+    	Object[] values = new Object[comparisonCols.length];
+    	for (int column = 0; column < comparisonCols.length; column++) {
+    		values[column] = valueAt(table, row, comparisonCols, indexes, column);
+    	}
+    	return values;
+    }
+    
+    /*
+     * Copies a whole actual row (not only the compared columns) for the diff report. 
+     */
+    private int copyRow(ITable table, int row, DefaultTable copy) throws DataSetException {
+    	Column[] columns = copy.getTableMetaData().getColumns();
+    	Object[] values = new Object[columns.length];
+    	boolean indexed = table instanceof IndexedTable && table.getTableMetaData() == copy.getTableMetaData();
+    	for (int column = 0; column < columns.length; column++) {
+    		values[column] = indexed ? ((IndexedTable) table).getValue(row, column) 
+    				: table.getValue(row, columns[column].getColumnName());
+    	}
+    	copy.addRow(values);
+    	return copy.getRowCount() - 1;
+    }
+    
+    /*
+     * Compares an expected row with an actual row, reading the actual values only until a difference is found.
+     */
+    private boolean matchesRow(Object[] expectedRow, ITable actualTable, int row, ComparisonColumn[] comparisonCols, 
+    		int[] indexes) throws DataSetException {
+    	for (int column = 0; column < comparisonCols.length; column++) {
+    		Object actualValue = valueAt(actualTable, row, comparisonCols, indexes, column);
+    		if (comparisonCols[column].getDataType().compare(expectedRow[column], actualValue) != 0) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    /**
+     * @param columns the indexes of the columns to compare, <code>null</code> to compare all columns.
+     */
+    private boolean matchesColumns(Object[] expectedRow, Object[] actualRow, ComparisonColumn[] comparisonCols, 
+    		int[] columns) throws DataSetException {
+    	int count = columns == null ? comparisonCols.length : columns.length;
+    	for (int index = 0; index < count; index++) {
+    		int column = columns == null ? index : columns[index];
+    		if (comparisonCols[column].getDataType().compare(expectedRow[column], actualRow[column]) != 0) {
+    			return false;
+    		}
+    	}
+    	return true;
     }
 	
 }
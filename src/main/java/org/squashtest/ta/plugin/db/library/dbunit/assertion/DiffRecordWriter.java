@@ -0,0 +1,218 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.assertion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the differences found by a dataset comparison as machine readable records, one record per line, so that large diff 
+ * reports can be parsed without loading them whole. Each record has the fields : <code>table</code>, <code>row</code>, 
+ * <code>column</code>, <code>expected</code>, <code>actual</code> and <code>status</code>. <code>null</code> values are written as 
+ * JSON <code>null</code> or as an empty (unquoted) CSV field.
+ */
+public abstract class DiffRecordWriter implements Closeable {
+
+	private static final String[] FIELDS = {"table", "row", "column", "expected", "actual", "status"};
+
+	/**
+	 * The available record formats.
+	 */
+	public enum Format {
+		/** one JSON object per line */
+		JSONL("jsonl"),
+		/** comma separated values, with a header line */
+		CSV("csv");
+
+		private final String extension;
+
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		public String getExtension() {
+			return extension;
+		}
+
+		/**
+		 * @param name the format name, case insensitive.
+		 * @return the format, or <code>null</code> if there is no such format.
+		 */
+		public static Format forName(String name) {
+			for (Format format : values()) {
+				if (format.extension.equalsIgnoreCase(name.trim())) {
+					return format;
+				}
+			}
+			return null;
+		}
+	}
+
+	protected final Writer out;
+
+	private DiffRecordWriter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * @param out the writer receiving the records. It is closed with this record writer.
+	 * @param format the record format.
+	 * @return the record writer.
+	 * @throws IOException if the header could not be written.
+	 */
+	public static DiffRecordWriter create(Writer out, Format format) throws IOException {
+		DiffRecordWriter writer = format == Format.CSV ? new CsvWriter(out) : new JsonLinesWriter(out);
+		writer.start();
+		return writer;
+	}
+
+	/**
+	 * Writes one record.
+	 * 
+	 * @param table the table name.
+	 * @param row the row index in the expected table.
+	 * @param column the column name.
+	 * @param expected the expected value.
+	 * @param actual the actual value, <code>null</code> if there is none.
+	 * @param status the kind of difference.
+	 * @throws IOException if the record could not be written.
+	 */
+	public void write(String table, int row, String column, Object expected, Object actual, String status) throws IOException {
+		Object[] values = {table, row, column, expected, actual, status};
+		writeRecord(values);
+	}
+
+	protected void start() throws IOException {
+		// no header by default
+	}
+
+	protected abstract void writeRecord(Object[] values) throws IOException;
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private static final class JsonLinesWriter extends DiffRecordWriter {
+
+		private JsonLinesWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		protected void writeRecord(Object[] values) throws IOException {
+			out.write('{');
+			for (int field = 0; field < FIELDS.length; field++) {
+				if (field > 0) {
+					out.write(',');
+				}
+				writeString(FIELDS[field]);
+				out.write(':');
+				Object value = values[field];
+				if (value == null) {
+					out.write("null");
+				} else if (value instanceof Integer) {
+					out.write(value.toString());
+				} else {
+					writeString(value.toString());
+				}
+			}
+			out.write("}\n");
+		}
+
+		private void writeString(String text) throws IOException {
+			out.write('"');
+			for (int index = 0; index < text.length(); index++) {
+				char character = text.charAt(index);
+				switch (character) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					if (character < 0x20) {
+						out.write(String.format("\\u%04x", (int) character));
+					} else {
+						out.write(character);
+					}
+					break;
+				}
+			}
+			out.write('"');
+		}
+	}
+
+	private static final class CsvWriter extends DiffRecordWriter {
+
+		private CsvWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		protected void start() throws IOException {
+			writeRecord(FIELDS);
+		}
+
+		@Override
+		protected void writeRecord(Object[] values) throws IOException {
+			for (int field = 0; field < values.length; field++) {
+				if (field > 0) {
+					out.write(',');
+				}
+				Object value = values[field];
+				if (value != null) {
+					writeField(value.toString());
+				}
+			}
+			out.write("\r\n");
+		}
+
+		/*
+		 * Empty texts are quoted, to tell them from null values.
+		 */
+		private void writeField(String text) throws IOException {
+			boolean quoted = text.isEmpty();
+			for (int index = 0; index < text.length() && !quoted; index++) {
+				char character = text.charAt(index);
+				quoted = character == ',' || character == '"' || character == '\n' || character == '\r';
+			}
+			if (quoted) {
+				out.write('"');
+				out.write(text.replace("\"", "\"\""));
+				out.write('"');
+			} else {
+				out.write(text);
+			}
+		}
+	}
+}
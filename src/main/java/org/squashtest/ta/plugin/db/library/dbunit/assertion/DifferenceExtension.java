@@ -55,6 +55,14 @@ public class DifferenceExtension extends Difference {
 		status=PotentialMatchStatus.NO_MATCH;
 		this.primaryKeysName=primaryKeysName;
 	}
+	
+	/**
+	 * The potential match could have been searched, but was not (too many differences were found).
+	 */
+	public void skipPotentialMatch( List<String> primaryKeysName) {
+		status=PotentialMatchStatus.SKIPPED;
+		this.primaryKeysName=primaryKeysName;
+	}
 
 	public int getPossibleRowIndex() {
 		return possibleRow;
@@ -78,7 +86,7 @@ public class DifferenceExtension extends Difference {
 	
 	
 	public enum PotentialMatchStatus {
-		DISABLED, NO_MATCH, ONE_MATCH, MANY_MATCH;
+		DISABLED, NO_MATCH, ONE_MATCH, MANY_MATCH, SKIPPED;
 	}
 	
 	
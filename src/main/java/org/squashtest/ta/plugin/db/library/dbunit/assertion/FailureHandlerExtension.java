@@ -21,18 +21,39 @@
 package org.squashtest.ta.plugin.db.library.dbunit.assertion;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.dbunit.assertion.DefaultFailureHandler;
 import org.dbunit.assertion.Difference;
 
+/**
+ * Collects the {@link DifferenceExtension}s by table, tables being kept in the order of their first difference.
+ * This handler is thread-safe : tables may be compared concurrently with the same handler.
+ * <p>The number of differences collected per table may be capped : once a table is full (see {@link #isFull(String)}),
+ * the comparison of this table should stop and record how many rows it did not inspect.</p>
+ */
 public class FailureHandlerExtension extends DefaultFailureHandler {
 	
-	private Map<String, List<DifferenceExtension>> mapTableDiffList = new HashMap<String, List<DifferenceExtension>>();
+	private Map<String, List<DifferenceExtension>> mapTableDiffList = new LinkedHashMap<String, List<DifferenceExtension>>();
+	
+	private Map<String, Integer> skippedRows = new LinkedHashMap<String, Integer>();
+	
+	private final int maxDifferencesPerTable;
+	
+	public FailureHandlerExtension() {
+		this(Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @param maxDifferencesPerTable the number of differences after which a table is full.
+	 */
+	public FailureHandlerExtension(int maxDifferencesPerTable) {
+		this.maxDifferencesPerTable = maxDifferencesPerTable;
+	}
     
-    public void handle(Difference diff) 
+    public synchronized void handle(Difference diff) 
     {
         if(DifferenceExtension.class.isAssignableFrom(diff.getClass())){
         	DifferenceExtension diffExt = (DifferenceExtension) diff;
@@ -51,17 +72,79 @@ public class FailureHandlerExtension extends DefaultFailureHandler {
     /**
      * @return The list of collected {@link DifferenceExtension}s for the table given in argument.
      */
-    public List<DifferenceExtension> getDiffList(String tableName) 
+    public synchronized List<DifferenceExtension> getDiffList(String tableName) 
     {
         return mapTableDiffList.get(tableName);
     }
     
-    public Map<String, List<DifferenceExtension>> getMap() {
+    public synchronized Map<String, List<DifferenceExtension>> getMap() {
 		return mapTableDiffList;
 	}
     
-    public int getSize() {
+    public synchronized int getSize() {
 		return mapTableDiffList.size();
 	}
+    
+    /**
+     * @return the number of differences collected for all tables.
+     */
+    public synchronized int getDifferenceCount() {
+    	int count = 0;
+    	for (List<DifferenceExtension> list : mapTableDiffList.values()) {
+    		count += list.size();
+    	}
+    	return count;
+    }
+    
+    /**
+     * @return <code>true</code> if the maximum number of differences has been collected for the table.
+     */
+    public synchronized boolean isFull(String tableName) {
+    	List<DifferenceExtension> list = mapTableDiffList.get(tableName);
+    	return list != null && list.size() >= maxDifferencesPerTable;
+    }
+    
+    /**
+     * Records rows of a full table that were not inspected.
+     */
+    public synchronized void addSkippedRows(String tableName, int rowCount) {
+    	Integer previous = skippedRows.get(tableName);
+    	skippedRows.put(tableName, previous == null ? rowCount : previous + rowCount);
+    }
+    
+    /**
+     * @return the number of rows of the table that were not inspected, 0 if the table was compared until its end.
+     */
+    public synchronized int getSkippedRows(String tableName) {
+    	Integer count = skippedRows.get(tableName);
+    	return count == null ? 0 : count;
+    }
+    
+    /**
+     * Adds the differences collected by another handler, after the ones already collected.
+     * 
+     * @param other the other handler.
+     */
+    public void addAll(FailureHandlerExtension other) {
+    	Map<String, List<DifferenceExtension>> otherMap;
+    	Map<String, Integer> otherSkippedRows;
+    	synchronized (other) {
+    		otherMap = new LinkedHashMap<String, List<DifferenceExtension>>(other.mapTableDiffList);
+    		otherSkippedRows = new LinkedHashMap<String, Integer>(other.skippedRows);
+    	}
+    	synchronized (this) {
+    		for (Map.Entry<String, Integer> entry : otherSkippedRows.entrySet()) {
+    			addSkippedRows(entry.getKey(), entry.getValue());
+    		}
+    		for (Map.Entry<String, List<DifferenceExtension>> entry : otherMap.entrySet()) {
+    			List<DifferenceExtension> list = mapTableDiffList.get(entry.getKey());
+    			if (list == null) {
+    				mapTableDiffList.put(entry.getKey(), new ArrayList<DifferenceExtension>(entry.getValue()));
+    			} else {
+    				list.addAll(entry.getValue());
+    			}
+    		}
+    	}
+    }
 
 }
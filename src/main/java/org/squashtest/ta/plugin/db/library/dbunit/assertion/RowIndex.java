@@ -0,0 +1,230 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.assertion;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+
+import org.dbunit.assertion.DbUnitAssert.ComparisonColumn;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.datatype.TypeCastException;
+
+/**
+ * <p>Hash index of the rows of a table on their comparison column values, used to match the rows of two tables without
+ * comparing each row of the first table to each row of the second.</p>
+ * 
+ * <p>Values are hashed after being cast by the column {@link DataType}, so that values the data type considers equal get
+ * the same hash (e.g. <code>"12"</code> and <code>12</code> in an integer column, <code>1.0</code> and <code>1.00</code> in a
+ * decimal column). Columns whose data type equality is not known to be consistent with such a hash (unknown type, tolerant 
+ * number types...) do not take part in the hash : the index is less selective but still correct, since the candidate
+ * rows are always checked with {@link DataType#compare(Object, Object)}.</p>
+ * 
+ * <p>Rows must be added in increasing order, not necessarily all of them. A row found by {@link #takeFirst(Object[], RowMatcher)} 
+ * is consumed : it will not be found again.</p>
+ */
+final class RowIndex {
+
+	private static final String DBUNIT_DATATYPE_PACKAGE = DataType.class.getPackage().getName();
+
+	/**
+	 * Checks a candidate row of the index.
+	 */
+	interface RowMatcher {
+		boolean matches(int row) throws DataSetException;
+	}
+
+	private final ComparisonColumn[] columns;
+	private final boolean[] hashable;
+	private final int mask;
+	private final int[] heads;
+	private final int[] tails;
+	private final int[] next;
+	private final int[] hashes;
+	private final BitSet consumed = new BitSet();
+
+	/**
+	 * @param columns the comparison columns.
+	 * @param rowCount the number of rows of the table : rows that will be indexed are lower than this.
+	 */
+	RowIndex(ComparisonColumn[] columns, int rowCount) {
+		this.columns = columns;
+		this.hashable = new boolean[columns.length];
+		for (int column = 0; column < columns.length; column++) {
+			hashable[column] = isHashable(columns[column].getDataType());
+		}
+		int capacity = 2;
+		while (capacity < rowCount * 2 && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		this.mask = capacity - 1;
+		this.heads = new int[capacity];
+		this.tails = new int[capacity];
+		Arrays.fill(heads, -1);
+		this.next = new int[rowCount];
+		this.hashes = new int[rowCount];
+	}
+
+	/**
+	 * @param row the row index, greater than the one of the previously added row.
+	 * @param values the row values, in comparison column order.
+	 * @throws DataSetException if a value could not be cast to the data type of its column.
+	 */
+	void add(int row, Object[] values) throws DataSetException {
+		int hash = hash(values);
+		int slot = slot(hash);
+		hashes[row] = hash;
+		next[row] = -1;
+		if (heads[slot] < 0) {
+			heads[slot] = row;
+		} else {
+			next[tails[slot]] = row;
+		}
+		tails[slot] = row;
+	}
+
+	/**
+	 * Finds and consumes the first (lowest index) row that has the same hash as the given values and is accepted by the
+	 * matcher.
+	 * 
+	 * @param values the values to look for, in comparison column order.
+	 * @param matcher the final check of the candidate rows.
+	 * @return the index of the row, or -1 if there is none.
+	 * @throws DataSetException if the matcher failed or a value could not be cast to the data type of its column.
+	 */
+	int takeFirst(Object[] values, RowMatcher matcher) throws DataSetException {
+		int hash = hash(values);
+		int slot = slot(hash);
+		int previous = -1;
+		for (int row = heads[slot]; row >= 0; row = next[row]) {
+			if (hashes[row] == hash && matcher.matches(row)) {
+				unlink(slot, previous, row);
+				return row;
+			}
+			previous = row;
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first rows that have the same hash as the given values and are accepted by the matcher. Rows are not consumed.
+	 * 
+	 * @param values the values to look for, in comparison column order.
+	 * @param matcher the final check of the candidate rows.
+	 * @param limit the maximum number of rows to find.
+	 * @return the rows found, in increasing order.
+	 * @throws DataSetException if the matcher failed or a value could not be cast to the data type of its column.
+	 */
+	List<Integer> find(Object[] values, RowMatcher matcher, int limit) throws DataSetException {
+		List<Integer> found = new ArrayList<Integer>(Math.min(limit, 4));
+		int hash = hash(values);
+		for (int row = heads[slot(hash)]; row >= 0 && found.size() < limit; row = next[row]) {
+			if (hashes[row] == hash && matcher.matches(row)) {
+				found.add(row);
+			}
+		}
+		return found;
+	}
+
+	boolean isConsumed(int row) {
+		return consumed.get(row);
+	}
+
+	/**
+	 * @return the rows not consumed yet, in increasing order.
+	 */
+	List<Integer> remainingRows() {
+		List<Integer> remaining = new ArrayList<Integer>(next.length - consumed.cardinality());
+		for (int row = consumed.nextClearBit(0); row < next.length; row = consumed.nextClearBit(row + 1)) {
+			remaining.add(row);
+		}
+		return remaining;
+	}
+
+	private void unlink(int slot, int previous, int row) {
+		if (previous < 0) {
+			heads[slot] = next[row];
+		} else {
+			next[previous] = next[row];
+		}
+		if (tails[slot] == row) {
+			tails[slot] = previous;
+		}
+		consumed.set(row);
+	}
+
+	private int slot(int hash) {
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private int hash(Object[] values) throws DataSetException {
+		int hash = 1;
+		for (int column = 0; column < values.length; column++) {
+			try {
+				hash = 31 * hash + (hashable[column] ? hashValue(columns[column].getDataType(), values[column]) : 0);
+			} catch (TypeCastException ex) {
+				// hashing it to a constant would turn the bad value into a missing row
+				throw new DataSetException("column '" + columns[column].getColumnName() + "' : " + ex.getMessage(), ex);
+			}
+		}
+		return hash;
+	}
+
+	/*
+	 * Strings are hashed ignoring case : this is consistent with both case sensitive and case insensitive data types.
+	 */
+	private static int hashValue(DataType dataType, Object value) throws TypeCastException {
+		if (value == null) {
+			return 0;
+		}
+		Object normalized = dataType.typeCast(value);
+		if (normalized instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) normalized;
+			return decimal.signum() == 0 ? 0 : decimal.stripTrailingZeros().hashCode();
+		} else if (normalized instanceof String) {
+			return ignoreCaseHash((String) normalized);
+		} else if (normalized instanceof byte[]) {
+			return Arrays.hashCode((byte[]) normalized);
+		} else if (normalized instanceof Number || normalized instanceof Date || normalized instanceof Boolean) {
+			return normalized.hashCode();
+		} else {
+			return 0;
+		}
+	}
+
+	private static int ignoreCaseHash(String value) {
+		int hash = 0;
+		for (int index = 0; index < value.length(); index++) {
+			hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(value.charAt(index)));
+		}
+		return hash;
+	}
+
+	private static boolean isHashable(DataType dataType) {
+		return dataType != null && dataType != DataType.UNKNOWN
+				&& DBUNIT_DATATYPE_PACKAGE.equals(dataType.getClass().getPackage().getName())
+				&& !dataType.getClass().getSimpleName().contains("Tolerant");
+	}
+}
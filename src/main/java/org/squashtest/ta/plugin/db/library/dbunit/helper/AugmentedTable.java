@@ -21,24 +21,23 @@
 package org.squashtest.ta.plugin.db.library.dbunit.helper;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.dbunit.dataset.Column;
 import org.dbunit.dataset.DataSetException;
 import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableMetaData;
-import org.dbunit.dataset.NoSuchColumnException;
 
 /**
  * Class to merge additional data into an existing {@link ITable}.
+ * <p>Columns are looked up (case insensitively) in a {@link ColumnIndex} built once, and the additional rows are stored 
+ * by column index.</p>
  * @author edegenetais
  *
  */
-public class AugmentedTable implements ITable {
+public class AugmentedTable implements IndexedTable {
 	private ITable augmentedTable;
-	private List<Map<String, Object>> values = new ArrayList<Map<String, Object>>();
+	private List<Object[]> values = new ArrayList<Object[]>();
+	private ColumnIndex columnIndex;
 
 	public AugmentedTable(ITable originalTable) {
 		this.augmentedTable = originalTable;
@@ -56,18 +55,26 @@ public class AugmentedTable implements ITable {
 
 	@Override
 	public Object getValue(int row, String column) throws DataSetException {
+		return getValue(row, getColumnIndex(column));
+	}
+
+	@Override
+	public int getColumnIndex(String columnName) throws DataSetException {
+		return columnIndex().indexOf(columnName);
+	}
+
+	@Override
+	public Object getValue(int row, int column) throws DataSetException {
 		if (row < 0) {
 			throw new IllegalArgumentException("Negative index: " + row);
 		}
 		
-		checkColumnExists(column);
-		
 		if (row < augmentedTable.getRowCount() //if within original data, fetch'em from the original table
 				|| row > getRowCount()			//if over augmented size, let the original ITable handle the illegal row index its way...
 				) {
-			return augmentedTable.getValue(row, column);
+			return augmentedTable.getValue(row, columnIndex().getColumnName(column));
 		} else {
-			return values.get(additionalDataRowId(row)).get(column);
+			return values.get(additionalDataRowId(row))[column];
 		}
 	}
 
@@ -97,15 +104,18 @@ public class AugmentedTable implements ITable {
 		if (row < 0) {
 			throw new IllegalArgumentException("Negative index: " + row);
 		}
-		checkColumnExists(columnName);
+		int column = getColumnIndex(columnName);
 
 			int addedRowIndex=additionalDataRowId(row);
 			if (addedRowIndex < 0) {
 				throw new IllegalArgumentException("Row index collides with existing row from original table: " + row);
 			} else if (addedRowIndex < values.size()) {
-				return values.get(addedRowIndex).put(columnName, value);
+				Object[] rowData = values.get(addedRowIndex);
+				Object previous = rowData[column];
+				rowData[column] = value;
+				return previous;
 			} else if (addedRowIndex == values.size()) {
-				return createNewRow(columnName, value);
+				return createNewRow(column, value);
 			} else {
 				throw new IllegalArgumentException("Row index " + row
 						+ " leaves a gap in merged table, given current size ("
@@ -114,12 +124,10 @@ public class AugmentedTable implements ITable {
 
 	}
 
-	private Object createNewRow(String columnName, Object value)
-			throws DataSetException {
-		HashMap<String, Object> rowData = new HashMap<String, Object>(
-				augmentedTable.getTableMetaData().getColumns().length);
+	private Object createNewRow(int column, Object value) {
+		Object[] rowData = new Object[columnIndex.size()];
 		values.add(rowData);
-		rowData.put(columnName, value);
+		rowData[column] = value;
 		return null;
 	}
 
@@ -127,19 +135,11 @@ public class AugmentedTable implements ITable {
 		return row-augmentedTable.getRowCount();
 	}
 
-	private void checkColumnExists(String columnName) throws DataSetException,
-			NoSuchColumnException {
-		Column[] existingColumns = augmentedTable.getTableMetaData()
-				.getColumns();
-		boolean searching = true;
-		for (int index = 0; searching && index < existingColumns.length; index++) {
-			if (existingColumns[index].getColumnName().equalsIgnoreCase(columnName)) {
-				searching = false;
-			}
-		}
-		if (searching) {
-			throw new NoSuchColumnException(augmentedTable.getTableMetaData()
-					.getTableName(), columnName);
+	private ColumnIndex columnIndex() throws DataSetException {
+		if (columnIndex == null) {
+			ITableMetaData metaData = augmentedTable.getTableMetaData();
+			columnIndex = new ColumnIndex(metaData.getTableName(), metaData.getColumns());
 		}
+		return columnIndex;
 	}
 }
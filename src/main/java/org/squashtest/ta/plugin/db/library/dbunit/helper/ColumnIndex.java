@@ -0,0 +1,84 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.NoSuchColumnException;
+
+/**
+ * Case insensitive index of the columns of a table, by name. If several columns only differ by case, the first one is found.
+ */
+public final class ColumnIndex {
+
+	private final String tableName;
+	private final String[] columnNames;
+	private final Map<String, Integer> indexes;
+
+	/**
+	 * @param tableName the table name, for error messages.
+	 * @param columns the table columns.
+	 */
+	public ColumnIndex(String tableName, Column[] columns) {
+		this.tableName = tableName;
+		this.columnNames = new String[columns.length];
+		this.indexes = new HashMap<String, Integer>(columns.length * 2);
+		for (int column = 0; column < columns.length; column++) {
+			columnNames[column] = columns[column].getColumnName();
+			String key = key(columnNames[column]);
+			if (!indexes.containsKey(key)) {
+				indexes.put(key, column);
+			}
+		}
+	}
+
+	/**
+	 * @param columnName the column name, case insensitive.
+	 * @return the column index.
+	 * @throws NoSuchColumnException if there is no such column.
+	 */
+	public int indexOf(String columnName) throws NoSuchColumnException {
+		Integer index = columnName == null ? null : indexes.get(key(columnName));
+		if (index == null) {
+			throw new NoSuchColumnException(tableName, columnName);
+		}
+		return index;
+	}
+
+	/**
+	 * @param column the column index.
+	 * @return the column name, in its original case.
+	 */
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	public int size() {
+		return columnNames.length;
+	}
+
+	private static String key(String columnName) {
+		return columnName.toUpperCase(Locale.ENGLISH);
+	}
+}
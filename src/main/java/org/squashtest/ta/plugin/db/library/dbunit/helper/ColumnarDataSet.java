@@ -0,0 +1,261 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableIterator;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.NoSuchTableException;
+
+/**
+ * Dataset whose tables are {@link ColumnarTable} copies of the tables of another dataset. 
+ * <p>Tables are copied the first time they are read, and then kept : a table is never read twice from the source dataset. 
+ * Use {@link #copyOf(IDataSet)} to copy all tables at once and release the source dataset.</p>
+ * <p>Tables read from a database may be signed when they are copied (see {@link TableSignature}) : the signature then
+ * describes the copied rows, whatever happened in the database since.</p>
+ */
+public class ColumnarDataSet implements IDataSet {
+
+	/** <code>null</code> once every table has been copied */
+	private IDataSet source;
+	private String[] tableNames;
+	private final boolean caseSensitiveTableNames;
+	private final Map<String, ColumnarTable> tables = new HashMap<String, ColumnarTable>();
+	private final TableSignature signature;
+	/** signatures of the copied tables, computed when they were copied */
+	private final Map<String, String> signatures = new HashMap<String, String>();
+
+	/**
+	 * @param source the dataset to copy table by table, as its tables are read.
+	 */
+	public ColumnarDataSet(IDataSet source) {
+		this(source, null);
+	}
+
+	/**
+	 * @param source the dataset to copy table by table, as its tables are read.
+	 * @param signature signs each table when it is copied, <code>null</code> if tables are not signed.
+	 */
+	public ColumnarDataSet(IDataSet source, TableSignature signature) {
+		this.source = source;
+		this.caseSensitiveTableNames = source.isCaseSensitiveTableNames();
+		this.signature = signature;
+	}
+
+	/**
+	 * @param source the dataset to copy table by table, as its tables are read.
+	 * @param signature signs each table when it is copied, <code>null</code> if tables are not signed.
+	 * @param copiedTables tables already copied, by name : they are not read from the source dataset.
+	 * @param copiedSignatures the signatures of the tables already copied, by name.
+	 */
+	public ColumnarDataSet(IDataSet source, TableSignature signature, Map<String, ColumnarTable> copiedTables, 
+			Map<String, String> copiedSignatures) {
+		this(source, signature);
+		for (Map.Entry<String, ColumnarTable> table : copiedTables.entrySet()) {
+			tables.put(key(table.getKey()), table.getValue());
+		}
+		for (Map.Entry<String, String> copiedSignature : copiedSignatures.entrySet()) {
+			signatures.put(key(copiedSignature.getKey()), copiedSignature.getValue());
+		}
+	}
+
+	/**
+	 * @param tableNames the table names, in dataset order.
+	 * @param copiedTables the tables, already copied, in the same order.
+	 * @param caseSensitiveTableNames whether table names are case sensitive.
+	 */
+	public ColumnarDataSet(String[] tableNames, ColumnarTable[] copiedTables, boolean caseSensitiveTableNames) {
+		this(tableNames, copiedTables, new String[tableNames.length], caseSensitiveTableNames);
+	}
+
+	/**
+	 * @param tableNames the table names, in dataset order.
+	 * @param copiedTables the tables, already copied, in the same order.
+	 * @param copiedSignatures the signatures of the tables when they were copied, in the same order (<code>null</code> 
+	 * for tables without signature).
+	 * @param caseSensitiveTableNames whether table names are case sensitive.
+	 */
+	public ColumnarDataSet(String[] tableNames, ColumnarTable[] copiedTables, String[] copiedSignatures, boolean caseSensitiveTableNames) {
+		if (tableNames.length != copiedTables.length || tableNames.length != copiedSignatures.length) {
+			throw new IllegalArgumentException(tableNames.length + " table names for " + copiedTables.length + " tables and " 
+					+ copiedSignatures.length + " signatures");
+		}
+		this.caseSensitiveTableNames = caseSensitiveTableNames;
+		this.signature = null;
+		this.tableNames = tableNames.clone();
+		for (int index = 0; index < tableNames.length; index++) {
+			tables.put(key(tableNames[index]), copiedTables[index]);
+			if (copiedSignatures[index] != null) {
+				signatures.put(key(tableNames[index]), copiedSignatures[index]);
+			}
+		}
+	}
+
+	/**
+	 * @param source the dataset to copy.
+	 * @return a copy of all the tables of the dataset, which holds no reference to the source dataset.
+	 * @throws DataSetException if the source dataset could not be read.
+	 */
+	public static ColumnarDataSet copyOf(IDataSet source) throws DataSetException {
+		ColumnarDataSet copy = new ColumnarDataSet(source);
+		copy.copyAll();
+		return copy;
+	}
+
+	private synchronized void copyAll() throws DataSetException {
+		if (source != null) {
+			String[] names = source.getTableNames();
+			for (String name : names) {
+				getTable(name);
+			}
+			tableNames = names;
+			source = null;
+		}
+	}
+
+	@Override
+	public synchronized String[] getTableNames() throws DataSetException {
+		return source == null ? tableNames.clone() : source.getTableNames();
+	}
+
+	@Override
+	public synchronized ITableMetaData getTableMetaData(String tableName) throws DataSetException {
+		ColumnarTable table = tables.get(key(tableName));
+		if (table != null) {
+			return table.getTableMetaData();
+		} else if (source != null) {
+			return source.getTableMetaData(tableName);
+		} else {
+			throw new NoSuchTableException(tableName);
+		}
+	}
+
+	/**
+	 * @param tableName the table name.
+	 * @return the table if it has already been copied, <code>null</code> otherwise.
+	 */
+	public synchronized ColumnarTable getCopiedTable(String tableName) {
+		return tables.get(key(tableName));
+	}
+
+	/**
+	 * @param tableName the table name.
+	 * @return the signature of the table when it was copied, <code>null</code> if it has not been copied yet or has no 
+	 * signature (see {@link TableSignature}).
+	 */
+	public synchronized String getCopiedSignature(String tableName) {
+		return signatures.get(key(tableName));
+	}
+
+	@Override
+	public synchronized ITable getTable(String tableName) throws DataSetException {
+		String key = key(tableName);
+		ColumnarTable table = tables.get(key);
+		if (table == null) {
+			if (source == null) {
+				throw new NoSuchTableException(tableName);
+			}
+			table = new ColumnarTable(source.getTable(tableName));
+			tables.put(key, table);
+			if (signature != null) {
+				// signed right after the copy, so that the signature describes the copied rows
+				String tableSignature = signature.sign(table.getTableMetaData());
+				if (tableSignature != null) {
+					signatures.put(key, tableSignature);
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @deprecated see {@link IDataSet#getTables()}
+	 */
+	@Deprecated
+	@Override
+	public ITable[] getTables() throws DataSetException {
+		String[] names = getTableNames();
+		ITable[] result = new ITable[names.length];
+		for (int index = 0; index < names.length; index++) {
+			result[index] = getTable(names[index]);
+		}
+		return result;
+	}
+
+	@Override
+	public ITableIterator iterator() throws DataSetException {
+		return new TableIterator(getTableNames(), false);
+	}
+
+	@Override
+	public ITableIterator reverseIterator() throws DataSetException {
+		return new TableIterator(getTableNames(), true);
+	}
+
+	@Override
+	public boolean isCaseSensitiveTableNames() {
+		return caseSensitiveTableNames;
+	}
+
+	private String key(String tableName) {
+		return caseSensitiveTableNames ? tableName : tableName.toUpperCase(Locale.ENGLISH);
+	}
+
+	/*
+	 * Tables are only copied when the iterator reaches them.
+	 */
+	private final class TableIterator implements ITableIterator {
+		private final String[] names;
+		private final boolean reversed;
+		private int position = -1;
+
+		private TableIterator(String[] names, boolean reversed) {
+			this.names = names;
+			this.reversed = reversed;
+		}
+
+		@Override
+		public boolean next() throws DataSetException {
+			position++;
+			return position < names.length;
+		}
+
+		@Override
+		public ITableMetaData getTableMetaData() throws DataSetException {
+			return ColumnarDataSet.this.getTableMetaData(currentName());
+		}
+
+		@Override
+		public ITable getTable() throws DataSetException {
+			return ColumnarDataSet.this.getTable(currentName());
+		}
+
+		private String currentName() {
+			return names[reversed ? names.length - 1 - position : position];
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.RowOutOfBoundsException;
+
+/**
+ * <p>Read only, in memory copy of an {@link ITable}, stored column by column instead of one <code>Object[]</code> per row.</p>
+ * 
+ * <p>Each column is stored according to the class of its values : <code>Integer</code>, <code>Long</code> and <code>Double</code> values
+ * in primitive arrays, <code>BigDecimal</code> values as an unscaled <code>long</code> and a scale, sql dates, times and timestamps as 
+ * their time in milliseconds (plus nanoseconds for timestamps), and strings in a dictionary (each distinct string is kept once). 
+ * Nulls are recorded in a bitmap. A column whose values do not all share the same class (or do not fit the above) falls back
+ * to an <code>Object[]</code>.</p>
+ * 
+ * <p>{@link #getValue(int, String)} rebuilds values equal to the copied ones.</p>
+ */
+public class ColumnarTable implements IndexedTable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final ITableMetaData metaData;
+	private final ColumnStore[] columns;
+	private int rowCount;
+
+	/**
+	 * Copies a table. The source table is read row after row, only once : it may be a forward only table.
+	 * 
+	 * @param source the table to copy.
+	 * @throws DataSetException if the source table could not be read.
+	 */
+	public ColumnarTable(ITable source) throws DataSetException {
+		this.metaData = source.getTableMetaData();
+		Column[] sourceColumns = metaData.getColumns();
+		int knownRowCount = knownRowCount(source);
+		int capacity = knownRowCount < 0 ? INITIAL_CAPACITY : Math.max(knownRowCount, 1);
+		this.columns = new ColumnStore[sourceColumns.length];
+		for (int column = 0; column < columns.length; column++) {
+			columns[column] = new ColumnStore(capacity);
+		}
+
+		int row = 0;
+		while (knownRowCount < 0 || row < knownRowCount) {
+			try {
+				for (int column = 0; column < columns.length; column++) {
+					columns[column].add(source.getValue(row, sourceColumns[column].getColumnName()));
+				}
+			} catch (RowOutOfBoundsException endOfTable) {
+				break;
+			}
+			row++;
+		}
+		this.rowCount = row;
+		for (ColumnStore column : columns) {
+			column.trim();
+		}
+	}
+
+	/*
+	 * Forward only tables do not know their row count : they are read until the end.
+	 */
+	private static int knownRowCount(ITable source) {
+		try {
+			return source.getRowCount();
+		} catch (UnsupportedOperationException forwardOnly) {
+			return -1;
+		}
+	}
+
+	@Override
+	public ITableMetaData getTableMetaData() {
+		return metaData;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public Object getValue(int row, String column) throws DataSetException {
+		return getValue(row, metaData.getColumnIndex(column));
+	}
+
+	@Override
+	public int getColumnIndex(String columnName) throws DataSetException {
+		return metaData.getColumnIndex(columnName);
+	}
+
+	@Override
+	public Object getValue(int row, int column) throws DataSetException {
+		if (row < 0) {
+			throw new IllegalArgumentException("Negative index: " + row);
+		}
+		if (row >= rowCount) {
+			throw new RowOutOfBoundsException(row + " > " + (rowCount - 1));
+		}
+		return columns[column].get(row);
+	}
+
+	/**
+	 * @param column the column index, in the table metadata column order.
+	 * @return <code>true</code> if the column values are kept in primitive arrays or in a dictionary, <code>false</code>
+	 *         if it fell back to an array of objects (or holds only nulls).
+	 */
+	public boolean isEncoded(int column) {
+		return columns[column].kind != Kind.NONE && columns[column].kind != Kind.OBJECT;
+	}
+
+	private enum Kind {
+		/** only nulls so far */
+		NONE,
+		INT,
+		LONG,
+		DOUBLE,
+		DECIMAL,
+		DATE,
+		TIME,
+		TIMESTAMP,
+		STRING,
+		OBJECT;
+
+		private static Kind of(Object value) {
+			Class<?> type = value.getClass();
+			if (type == Integer.class) {
+				return INT;
+			} else if (type == Long.class) {
+				return LONG;
+			} else if (type == Double.class) {
+				return DOUBLE;
+			} else if (type == BigDecimal.class) {
+				return ((BigDecimal) value).unscaledValue().bitLength() < Long.SIZE ? DECIMAL : OBJECT;
+			} else if (type == java.sql.Date.class) {
+				return DATE;
+			} else if (type == Time.class) {
+				return TIME;
+			} else if (type == Timestamp.class) {
+				return TIMESTAMP;
+			} else if (type == String.class) {
+				return STRING;
+			} else {
+				return OBJECT;
+			}
+		}
+	}
+
+	/*
+	 * One column. Depending on the kind, values are spread over longs (integer value, unscaled value or time), ints 
+	 * (integer value, scale, nanos or dictionary code) and doubles. 
+	 */
+	private static final class ColumnStore {
+		private Kind kind = Kind.NONE;
+		private int size;
+		private int capacity;
+		private final BitSet nulls = new BitSet();
+		private int[] ints;
+		private long[] longs;
+		private double[] doubles;
+		private Object[] objects;
+		private Map<String, Integer> dictionaryIndex;
+		private List<String> dictionary;
+
+		private ColumnStore(int capacity) {
+			this.capacity = capacity;
+		}
+
+		private void add(Object value) {
+			if (size == capacity) {
+				grow();
+			}
+			if (value == null) {
+				nulls.set(size);
+			} else {
+				if (kind == Kind.NONE) {
+					allocate(Kind.of(value));
+				} else if (kind != Kind.OBJECT && Kind.of(value) != kind) {
+					fallBackToObjects();
+				}
+				store(value);
+			}
+			size++;
+		}
+
+		private void store(Object value) {
+			switch (kind) {
+			case INT:
+				ints[size] = (Integer) value;
+				break;
+			case LONG:
+				longs[size] = (Long) value;
+				break;
+			case DOUBLE:
+				doubles[size] = (Double) value;
+				break;
+			case DECIMAL:
+				longs[size] = ((BigDecimal) value).unscaledValue().longValue();
+				ints[size] = ((BigDecimal) value).scale();
+				break;
+			case DATE:
+			case TIME:
+				longs[size] = ((java.util.Date) value).getTime();
+				break;
+			case TIMESTAMP:
+				longs[size] = ((Timestamp) value).getTime();
+				ints[size] = ((Timestamp) value).getNanos();
+				break;
+			case STRING:
+				ints[size] = encode((String) value);
+				break;
+			default:
+				objects[size] = value;
+				break;
+			}
+		}
+
+		private Object get(int row) {
+			if (nulls.get(row)) {
+				return null;
+			}
+			switch (kind) {
+			case INT:
+				return ints[row];
+			case LONG:
+				return longs[row];
+			case DOUBLE:
+				return doubles[row];
+			case DECIMAL:
+				return new BigDecimal(BigInteger.valueOf(longs[row]), ints[row]);
+			case DATE:
+				return new java.sql.Date(longs[row]);
+			case TIME:
+				return new Time(longs[row]);
+			case TIMESTAMP:
+				Timestamp timestamp = new Timestamp(longs[row]);
+				timestamp.setNanos(ints[row]);
+				return timestamp;
+			case STRING:
+				return dictionary.get(ints[row]);
+			default:
+				return objects[row];
+			}
+		}
+
+		private int encode(String value) {
+			Integer code = dictionaryIndex.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(value);
+				dictionaryIndex.put(value, code);
+			}
+			return code;
+		}
+
+		private void allocate(Kind newKind) {
+			kind = newKind;
+			switch (kind) {
+			case INT:
+				ints = new int[capacity];
+				break;
+			case DOUBLE:
+				doubles = new double[capacity];
+				break;
+			case LONG:
+			case DATE:
+			case TIME:
+				longs = new long[capacity];
+				break;
+			case DECIMAL:
+			case TIMESTAMP:
+				longs = new long[capacity];
+				ints = new int[capacity];
+				break;
+			case STRING:
+				ints = new int[capacity];
+				dictionary = new ArrayList<String>();
+				dictionaryIndex = new HashMap<String, Integer>();
+				break;
+			default:
+				objects = new Object[capacity];
+				break;
+			}
+		}
+
+		private void fallBackToObjects() {
+			Object[] values = new Object[capacity];
+			for (int row = 0; row < size; row++) {
+				values[row] = get(row);
+			}
+			ints = null;
+			longs = null;
+			doubles = null;
+			dictionary = null;
+			dictionaryIndex = null;
+			kind = Kind.OBJECT;
+			objects = values;
+		}
+
+		private void grow() {
+			resize(capacity + Math.max(capacity >> 1, INITIAL_CAPACITY));
+		}
+
+		/*
+		 * Once the table is complete : release the spare capacity and the dictionary lookup map.
+		 */
+		private void trim() {
+			if (size < capacity) {
+				resize(size);
+			}
+			dictionaryIndex = null;
+		}
+
+		private void resize(int newCapacity) {
+			capacity = newCapacity;
+			if (ints != null) {
+				ints = Arrays.copyOf(ints, newCapacity);
+			}
+			if (longs != null) {
+				longs = Arrays.copyOf(longs, newCapacity);
+			}
+			if (doubles != null) {
+				doubles = Arrays.copyOf(doubles, newCapacity);
+			}
+			if (objects != null) {
+				objects = Arrays.copyOf(objects, newCapacity);
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+
+/**
+ * A table whose values may also be read by column index, in the column order of its metadata : the column is looked up by name 
+ * once, instead of once for each value read.
+ */
+public interface IndexedTable extends ITable {
+
+	/**
+	 * @param columnName the column name, case insensitive.
+	 * @return the index of the column, in the column order of the table metadata.
+	 * @throws DataSetException if there is no such column.
+	 */
+	int getColumnIndex(String columnName) throws DataSetException;
+
+	/**
+	 * @param row the row index.
+	 * @param column the column index, as returned by {@link #getColumnIndex(String)}.
+	 * @return the value.
+	 * @throws DataSetException if the row does not exist.
+	 */
+	Object getValue(int row, int column) throws DataSetException;
+}
@@ -0,0 +1,84 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+
+/**
+ * Checks whether the rows of a table are already sorted on key columns (typically because they were read with an 
+ * <code>ORDER BY</code> on these columns), in which case sorting the table again can be skipped.
+ * <p>Values are ordered by their {@link org.dbunit.dataset.datatype.DataType}, <code>null</code> coming first. The check is a
+ * single pass over the table, which only keeps the key values of the previous row.</p>
+ */
+public final class KeyOrder {
+
+	private KeyOrder() {
+	}
+
+	/**
+	 * @param table the table to check.
+	 * @param keys the key columns, the first one being the most significant.
+	 * @return <code>true</code> if each row key is greater than or equal to the key of the previous row.
+	 * @throws DataSetException if the values could not be read or compared.
+	 */
+	public static boolean isSorted(ITable table, Column[] keys) throws DataSetException {
+		int rowCount = table.getRowCount();
+		Object[] previous = new Object[keys.length];
+		Object[] current = new Object[keys.length];
+		for (int row = 0; row < rowCount; row++) {
+			for (int column = 0; column < keys.length; column++) {
+				current[column] = table.getValue(row, keys[column].getColumnName());
+			}
+			if (row > 0 && compare(keys, previous, current) > 0) {
+				return false;
+			}
+			Object[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return true;
+	}
+
+	/**
+	 * @return <code>true</code> if all tables are sorted on the key columns.
+	 * @see #isSorted(ITable, Column[])
+	 */
+	public static boolean areSorted(Column[] keys, ITable... tables) throws DataSetException {
+		for (ITable table : tables) {
+			if (!isSorted(table, keys)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int compare(Column[] keys, Object[] left, Object[] right) throws DataSetException {
+		for (int column = 0; column < keys.length; column++) {
+			int result = keys[column].getDataType().compare(left[column], right[column]);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+}
@@ -28,12 +28,17 @@ import org.dbunit.dataset.LowerCaseTableMetaData;
 
 /**
  * Class to create an ITable with all its collumn with an undercase name from an existing table with columns having an uppercase name
+ * <p>Columns are looked up in a {@link ColumnIndex} built once. If the original table is an {@link IndexedTable}, its values
+ * are read by index too.</p>
  * @author fgaillard
  *
  */
-public class LowerCasedTable implements ITable {
+public class LowerCasedTable implements IndexedTable {
 	private ITable lowerCasedTable;
 	private LowerCaseTableMetaData lowerCaseMetaData;
+	private final ColumnIndex columnIndex;
+	/** the column indexes in the original table, <code>null</code> if it is not indexed */
+	private final int[] originalIndexes;
 	
 	public LowerCasedTable(ITable originalTable) throws DataSetException {
 		this.lowerCasedTable = originalTable;
@@ -43,6 +48,15 @@ public class LowerCasedTable implements ITable {
 		} else {
 			this.lowerCaseMetaData = new LowerCaseTableMetaData(itmd.getTableName(), itmd.getColumns(), new Column[]{});
 		}
+		this.columnIndex = new ColumnIndex(itmd.getTableName(), itmd.getColumns());
+		if (originalTable instanceof IndexedTable) {
+			this.originalIndexes = new int[columnIndex.size()];
+			for (int column = 0; column < originalIndexes.length; column++) {
+				originalIndexes[column] = ((IndexedTable) originalTable).getColumnIndex(columnIndex.getColumnName(column));
+			}
+		} else {
+			this.originalIndexes = null;
+		}
 	}
 
 	@Override
@@ -57,9 +71,22 @@ public class LowerCasedTable implements ITable {
 
 	@Override
 	public Object getValue(int row, String column) throws DataSetException {
+		return getValue(row, columnIndex.indexOf(column));
+	}
+
+	@Override
+	public int getColumnIndex(String columnName) throws DataSetException {
+		return columnIndex.indexOf(columnName);
+	}
+
+	@Override
+	public Object getValue(int row, int column) throws DataSetException {
 		if (row < 0) {
 			throw new IllegalArgumentException("Negative index: " + row);
 		}
-		return lowerCasedTable.getValue(row, column);
+		if (originalIndexes != null) {
+			return ((IndexedTable) lowerCasedTable).getValue(row, originalIndexes[column]);
+		}
+		return lowerCasedTable.getValue(row, columnIndex.getColumnName(column));
 	}
 }
@@ -0,0 +1,280 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITable;
+import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.NoSuchColumnException;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.datatype.TypeCastException;
+
+/**
+ * <p>Order independent fingerprint of the rows of a table, used to tell that two tables hold the same rows without sorting 
+ * and comparing them value by value.</p>
+ * 
+ * <p>Each row is hashed on 64 or 128 bits, over the values cast by the column {@link DataType}, so that values the data type
+ * considers equal hash the same (e.g. <code>"12"</code> and <code>12</code> in an integer column, <code>1.0</code> and 
+ * <code>1.00</code> in a decimal column). The table fingerprint is the sum of its row hashes : it does not depend on the
+ * row order, and unlike a xor, identical rows do not cancel each other.</p>
+ * 
+ * <p>Only matching fingerprints are meaningful : two tables are known to be equal (up to a hash collision) when their
+ * fingerprints match, and must be compared value by value otherwise. Tables whose columns differ, or whose data types are
+ * unknown or tolerant (their equality cannot be hashed), get no fingerprint at all.</p>
+ */
+public final class TableFingerprint {
+
+	/** The supported hash sizes, in bits. */
+	public static final int NARROW = 64;
+	public static final int WIDE = 128;
+
+	private static final String DBUNIT_DATATYPE_PACKAGE = DataType.class.getPackage().getName();
+
+	private static final long LOW_SEED = 0xcbf29ce484222325L;
+	private static final long HIGH_SEED = 0x84222325cbf29ce4L;
+	private static final long LOW_PRIME = 0x100000001b3L;
+	private static final long HIGH_PRIME = 0x9e3779b97f4a7c15L;
+
+	/* type tags, so that values of different types do not hash the same */
+	private static final int NULL_TAG = 1;
+	private static final int STRING_TAG = 2;
+	private static final int NUMBER_TAG = 3;
+	private static final int DATE_TAG = 4;
+	private static final int BOOLEAN_TAG = 5;
+	private static final int BYTES_TAG = 6;
+
+	private final int rowCount;
+	private final long low;
+	private final long high;
+
+	private TableFingerprint(int rowCount, long low, long high) {
+		this.rowCount = rowCount;
+		this.low = low;
+		this.high = high;
+	}
+
+	/**
+	 * Checks whether two tables hold the same rows, in any order.
+	 * 
+	 * @param expected the expected table.
+	 * @param actual the actual table.
+	 * @param bits the hash size : {@link #NARROW} or {@link #WIDE}.
+	 * @return <code>true</code> if both tables have a fingerprint and they match. <code>false</code> means the tables 
+	 * may or may not be equal.
+	 * @throws DataSetException if the values could not be read.
+	 */
+	public static boolean haveSameRows(ITable expected, ITable actual, int bits) throws DataSetException {
+		if (bits != NARROW && bits != WIDE) {
+			throw new IllegalArgumentException("Fingerprints are " + NARROW + " or " + WIDE + " bits wide, not " + bits);
+		}
+		if (expected.getRowCount() != actual.getRowCount()) {
+			return false;
+		}
+		Column[] expectedColumns = expected.getTableMetaData().getColumns();
+		Column[] actualColumns = actualColumns(expectedColumns, actual.getTableMetaData());
+		if (actualColumns == null) {
+			return false;
+		}
+		DataType[] types = new DataType[expectedColumns.length];
+		for (int column = 0; column < expectedColumns.length; column++) {
+			types[column] = comparisonType(expectedColumns[column].getDataType(), actualColumns[column].getDataType());
+			if (types[column] == null) {
+				return false;
+			}
+		}
+		TableFingerprint expectedFingerprint = compute(expected, expectedColumns, types, bits == WIDE);
+		if (expectedFingerprint == null) {
+			return false;
+		}
+		return expectedFingerprint.equals(compute(actual, actualColumns, types, bits == WIDE));
+	}
+
+	/*
+	 * The actual columns, in expected column order, or null if the column names differ.
+	 */
+	private static Column[] actualColumns(Column[] expectedColumns, ITableMetaData actualMetaData) throws DataSetException {
+		Column[] actualColumns = actualMetaData.getColumns();
+		if (actualColumns.length != expectedColumns.length) {
+			return null;
+		}
+		Column[] ordered = new Column[expectedColumns.length];
+		for (int column = 0; column < expectedColumns.length; column++) {
+			try {
+				ordered[column] = actualColumns[actualMetaData.getColumnIndex(expectedColumns[column].getColumnName())];
+			} catch (NoSuchColumnException e) {
+				return null;
+			}
+		}
+		return ordered;
+	}
+
+	/*
+	 * The data type DbUnit compares the column values with, if its equality can be hashed.
+	 */
+	private static DataType comparisonType(DataType expectedType, DataType actualType) {
+		DataType type;
+		if (expectedType == null || expectedType == DataType.UNKNOWN) {
+			type = actualType;
+		} else if (actualType == null || actualType == DataType.UNKNOWN || actualType.getClass() == expectedType.getClass()) {
+			type = expectedType;
+		} else {
+			return null;
+		}
+		boolean hashable = type != null && type != DataType.UNKNOWN
+				&& DBUNIT_DATATYPE_PACKAGE.equals(type.getClass().getPackage().getName())
+				&& !type.getClass().getSimpleName().contains("Tolerant");
+		return hashable ? type : null;
+	}
+
+	/*
+	 * null if a value could not be hashed.
+	 */
+	private static TableFingerprint compute(ITable table, Column[] columns, DataType[] types, boolean wide) throws DataSetException {
+		RowHasher hasher = new RowHasher(wide);
+		long low = 0;
+		long high = 0;
+		int rowCount = table.getRowCount();
+		for (int row = 0; row < rowCount; row++) {
+			hasher.reset();
+			for (int column = 0; column < columns.length; column++) {
+				if (!hasher.addValue(types[column], table.getValue(row, columns[column].getColumnName()))) {
+					return null;
+				}
+			}
+			low += mix(hasher.low);
+			high += wide ? mix(hasher.high) : 0;
+		}
+		return new TableFingerprint(rowCount, low, high);
+	}
+
+	/*
+	 * The 64 bits finalizer of MurmurHash3.
+	 */
+	private static long mix(long hash) {
+		long mixed = hash;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xff51afd7ed558ccdL;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xc4ceb9fe1a85ec53L;
+		mixed ^= mixed >>> 33;
+		return mixed;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof TableFingerprint)) {
+			return false;
+		}
+		TableFingerprint other = (TableFingerprint) obj;
+		return rowCount == other.rowCount && low == other.low && high == other.high;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (low ^ (low >>> 32));
+	}
+
+	/**
+	 * Hashes the values of one row on two independent 64 bits lanes, the second one being only computed for wide hashes.
+	 */
+	private static final class RowHasher {
+		private final boolean wide;
+		private long low;
+		private long high;
+
+		private RowHasher(boolean wide) {
+			this.wide = wide;
+		}
+
+		private void reset() {
+			low = LOW_SEED;
+			high = HIGH_SEED;
+		}
+
+		private void add(long value) {
+			low = (low ^ value) * LOW_PRIME;
+			if (wide) {
+				high = Long.rotateLeft(high ^ value, 29) * HIGH_PRIME;
+			}
+		}
+
+		private void add(String text) {
+			add(text.length());
+			for (int index = 0; index < text.length(); index++) {
+				add(text.charAt(index));
+			}
+		}
+
+		/*
+		 * The cast value is hashed in a form that is equal for values the data type considers equal, and only for them.
+		 */
+		private boolean addValue(DataType type, Object value) {
+			Object cast;
+			try {
+				cast = type.typeCast(value);
+			} catch (TypeCastException e) {
+				// the comparison will report it
+				return false;
+			}
+			if (cast == null) {
+				add(NULL_TAG);
+			} else if (cast instanceof String) {
+				add(STRING_TAG);
+				add((String) cast);
+			} else if (cast instanceof BigDecimal) {
+				BigDecimal decimal = (BigDecimal) cast;
+				add(NUMBER_TAG);
+				add(decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toString());
+			} else if (cast instanceof Double) {
+				add(NUMBER_TAG);
+				add(Double.doubleToLongBits((Double) cast));
+			} else if (cast instanceof Float) {
+				add(NUMBER_TAG);
+				add(Float.floatToIntBits((Float) cast));
+			} else if (cast instanceof Number) {
+				add(NUMBER_TAG);
+				add(cast.toString());
+			} else if (cast instanceof Date) {
+				add(DATE_TAG);
+				add(((Date) cast).getTime());
+				add(cast instanceof Timestamp ? ((Timestamp) cast).getNanos() : 0);
+			} else if (cast instanceof Boolean) {
+				add(BOOLEAN_TAG);
+				add(((Boolean) cast) ? 1 : 0);
+			} else if (cast instanceof byte[]) {
+				byte[] bytes = (byte[]) cast;
+				add(BYTES_TAG);
+				add(bytes.length);
+				for (byte b : bytes) {
+					add(b);
+				}
+			} else {
+				return false;
+			}
+			return true;
+		}
+	}
+}
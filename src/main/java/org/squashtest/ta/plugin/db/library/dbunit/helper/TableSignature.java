@@ -0,0 +1,85 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper;
+
+import java.sql.SQLException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DataSetException;
+import org.dbunit.dataset.ITableMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
+
+/**
+ * Signature of a database table : its column names and data types, and the checksum of its rows, computed in the database 
+ * (see {@link TableChecksum}). The columns are hashed in name order, so that tables whose columns are listed in another order
+ * get the same signature. Two tables with the same signature hold the same rows, up to a hash collision. The data types are
+ * part of the signature because the checksum hashes the text of the values : <code>1</code> as an INTEGER and as a BIGINT
+ * or a VARCHAR give the same checksum, though DbUnit does not consider these columns equal.
+ */
+public class TableSignature {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TableSignature.class);
+
+	private final TableChecksum checksum;
+
+	/**
+	 * @param checksum computes the checksums in the database the tables are read from.
+	 */
+	public TableSignature(TableChecksum checksum) {
+		this.checksum = checksum;
+	}
+
+	/**
+	 * @param metaData the table metadata, as read from the database.
+	 * @return the signature of the current rows of the table, or <code>null</code> if it has no checksum.
+	 * @throws DataSetException if the table metadata could not be read.
+	 */
+	public String sign(ITableMetaData metaData) throws DataSetException {
+		if (!checksum.isSupported()) {
+			return null;
+		}
+		SortedMap<String, Column> columns = new TreeMap<String, Column>();
+		for (Column column : metaData.getColumns()) {
+			columns.put(column.getColumnName().toLowerCase(), column);
+		}
+		String[] names = new String[columns.size()];
+		int[] types = new int[columns.size()];
+		StringBuilder signature = new StringBuilder();
+		int index = 0;
+		for (Column column : columns.values()) {
+			names[index] = column.getColumnName();
+			types[index] = column.getDataType().getSqlType();
+			signature.append(names[index].toLowerCase()).append(':').append(column.getDataType()).append(':').append(types[index]).append(',');
+			index++;
+		}
+		try {
+			String value = checksum.compute(metaData.getTableName(), names, types);
+			return value == null ? null : signature.append(value).toString();
+		} catch (SQLException ex) {
+			LOGGER.warn("Could not compute the checksum of table " + metaData.getTableName() + ", its rows will be read", ex);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of one JDBC batch (<code>executeBatch()</code> call) of a chunked script execution.
+ */
+public final class BatchChunk {
+
+	private final int firstStatement;
+	private final int[] updateCounts;
+	private final long elapsedMillis;
+	private final boolean committed;
+
+	/**
+	 * @param firstStatement the (0-based) index in the script of the first statement of the chunk
+	 * @param updateCounts the update counts returned by the driver
+	 * @param elapsedMillis the execution time of the chunk, commit included
+	 * @param committed whether the transaction was committed after this chunk
+	 */
+	public BatchChunk(int firstStatement, int[] updateCounts, long elapsedMillis, boolean committed){
+		this.firstStatement = firstStatement;
+		this.updateCounts = updateCounts.clone();
+		this.elapsedMillis = elapsedMillis;
+		this.committed = committed;
+	}
+
+	public int getFirstStatement() {
+		return firstStatement;
+	}
+
+	public int getStatementCount() {
+		return updateCounts.length;
+	}
+
+	public int[] getUpdateCounts() {
+		return updateCounts.clone();
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	@Override
+	public String toString() {
+		return "statements "+firstStatement+" to "+(firstStatement+updateCounts.length-1)+" : "+elapsedMillis+" ms"
+				+(committed ? ", committed" : "")+", update counts "+Arrays.toString(updateCounts);
+	}
+}
@@ -24,27 +24,134 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.sql.SchemaMetadataCache.CachedSchema;
 
 /**
  * Adapter to give easy access to database metadata.
+ * <p>Metadata is cached : it is read once, either table by table as it is requested, or for the whole schema at once 
+ * through {@link #prefetch()}. The cache may be read from several threads, and is emptied by {@link #invalidate()}, 
+ * for instance after the structure of the database changed. The prefetched metadata may also be kept on disk, see 
+ * {@link SchemaMetadataCache}.</p>
  * 
  * @author edegenetais
  * 
  */
 public class DatabaseMetadataExplorer {
 	
+	private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseMetadataExplorer.class);
+	
+	private static final int TABLE_SCHEMA_RS_INDEX = 2;
+	private static final int TABLE_NAME_RS_INDEX = 3;
 	private static final int PRIMARY_KEY_PK_INDEX_RS_INDEX = 5;
 	private static final int PRIMARY_KEY_COLUMN_NAME_RS_INDEX = 4;
+	private static final int COLUMN_NAME_RS_INDEX = 4;
+	private static final int COLUMN_DATA_TYPE_RS_INDEX = 5;
+	private static final int COLUMN_TYPE_NAME_RS_INDEX = 6;
+	private static final int COLUMN_NULLABLE_RS_INDEX = 11;
+	private static final int COLUMN_REMARKS_RS_INDEX = 12;
+	private static final int COLUMN_DEFAULT_RS_INDEX = 13;
+	private static final int COLUMN_AUTOINCREMENT_RS_INDEX = 23;
+	
+	/** the table types listed by {@link #prefetch()}, as DbUnit does by default */
+	private static final String[] TABLE_TYPES = {"TABLE"};
 	
 	private DatabaseMetaData metadata;
 	private String schemaName;
+	private SchemaMetadataCache cache;
 
-	private Map<String, List<String>> pkCache=new HashMap<String, List<String>>();
+	private final ConcurrentMap<String, List<String>> pkCache=new ConcurrentHashMap<String, List<String>>();
+	private final ConcurrentMap<String, List<ColumnDescription>> columnCache=new ConcurrentHashMap<String, List<ColumnDescription>>();
+	/** the tables of the schema, in metadata order, <code>null</code> until the schema is prefetched */
+	private volatile List<String> tableNames;
+	/** the schema version the prefetched metadata belongs to, <code>null</code> if unknown */
+	private String prefetchedVersion;
+	
+	/**
+	 * Description of a column, as given by {@link DatabaseMetaData#getColumns(String, String, String, String)}.
+	 */
+	public static final class ColumnDescription {
+		private final String name;
+		private final int sqlType;
+		private final String typeName;
+		private final int nullable;
+		private final String defaultValue;
+		private final String remarks;
+		private final String autoIncrement;
+		
+		public ColumnDescription(String name, int sqlType, String typeName) {
+			this(name, sqlType, typeName, DatabaseMetaData.columnNullableUnknown, null, null, "");
+		}
+		
+		public ColumnDescription(String name, int sqlType, String typeName, int nullable, String defaultValue, String remarks, 
+				String autoIncrement) {
+			this.name = name;
+			this.sqlType = sqlType;
+			this.typeName = typeName;
+			this.nullable = nullable;
+			this.defaultValue = defaultValue;
+			this.remarks = remarks;
+			this.autoIncrement = autoIncrement;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * @return the {@link java.sql.Types} of the column.
+		 */
+		public int getSqlType() {
+			return sqlType;
+		}
+		
+		/**
+		 * @return the database specific type name of the column.
+		 */
+		public String getTypeName() {
+			return typeName;
+		}
+		
+		/**
+		 * @return the {@link DatabaseMetaData} nullability of the column (<code>columnNoNulls</code>, <code>columnNullable</code> 
+		 * or <code>columnNullableUnknown</code>).
+		 */
+		public int getNullable() {
+			return nullable;
+		}
+		
+		/**
+		 * @return the default value of the column, <code>null</code> if none.
+		 */
+		public String getDefaultValue() {
+			return defaultValue;
+		}
+		
+		public String getRemarks() {
+			return remarks;
+		}
+		
+		/**
+		 * @return <code>YES</code>, <code>NO</code> or an empty string if unknown.
+		 */
+		public String getAutoIncrement() {
+			return autoIncrement;
+		}
+	}
 	
 	/**
 	 * Create a metadata explorer for a given set of metadata and a given schema (if available).
@@ -55,6 +162,17 @@ public class DatabaseMetadataExplorer {
 		this.metadata = metadata;
 		this.schemaName = schemaName;
 	}
+	
+	/**
+	 * Create a metadata explorer whose prefetched metadata is kept on disk, across test runs.
+	 * @param metadata the JDBC metadata reference.
+	 * @param schemaName the referenced schema name. May be null if no schema filtering is needed.
+	 * @param cache the on-disk cache of the schema metadata.
+	 */
+	public DatabaseMetadataExplorer(DatabaseMetaData metadata, String schemaName, SchemaMetadataCache cache) {
+		this(metadata, schemaName);
+		this.cache = cache;
+	}
 
 	/**
 	 * Search the metadata for the list of primary keys of a given table.
@@ -62,30 +180,260 @@ public class DatabaseMetadataExplorer {
 	 * @return a list of string containing the columns of the primary key in their order.
 	 * @throws SQLException in case of error during metadata extraction.
 	 */
-	public synchronized List<String> getPrimaryKeyNames(String table) throws SQLException {
+	public List<String> getPrimaryKeyNames(String table) throws SQLException {
 		List<String> pkList = pkCache.get(table);
 		if (pkList == null) {
-
-			SortedMap<Integer, String> pkMap = new TreeMap<Integer, String>();
-			ResultSet pkRs = metadata.getPrimaryKeys(null, schemaName, table);
-			while (pkRs.next()) {
-				String columnName = pkRs
-						.getString(PRIMARY_KEY_COLUMN_NAME_RS_INDEX);
-				Integer pkIndex = pkRs.getInt(PRIMARY_KEY_PK_INDEX_RS_INDEX);
-				if (pkRs.wasNull()) {// some DBMS drivers (eg: SQlite) don't
-										// give the pk index...
-					pkMap.put(pkRs.getRow(), columnName);
-				} else {
-					pkMap.put(pkIndex, columnName);
+			synchronized (this) {
+				ResultSet pkRs = metadata.getPrimaryKeys(null, schemaName, table);
+				try {
+					pkList = readPrimaryKeys(pkRs, table).get(table);
+				} finally {
+					pkRs.close();
 				}
 			}
-			pkRs.close();
-			pkList = new ArrayList<String>(pkMap.values());
+			pkList = pkList == null ? Collections.<String>emptyList() : pkList;
+			pkCache.put(table, pkList);
 		}
 		return pkList;
 	}
 	
+	/**
+	 * Search the metadata for the columns of a given table.
+	 * @param table name of the table to lookup.
+	 * @return the columns of the table, in their order.
+	 * @throws SQLException in case of error during metadata extraction.
+	 */
+	public List<ColumnDescription> getColumns(String table) throws SQLException {
+		List<ColumnDescription> columns = columnCache.get(table);
+		if (columns == null) {
+			synchronized (this) {
+				ResultSet columnRs = metadata.getColumns(null, schemaName, table, null);
+				try {
+					columns = readColumns(columnRs, table).get(table);
+				} finally {
+					columnRs.close();
+				}
+			}
+			columns = columns == null ? Collections.<ColumnDescription>emptyList() : columns;
+			columnCache.put(table, columns);
+		}
+		return columns;
+	}
+	
+	/**
+	 * @return the tables of the schema (views and other table types excluded), in metadata order, if the schema was 
+	 * prefetched, <code>null</code> otherwise.
+	 */
+	public List<String> getPrefetchedTableNames() {
+		return tableNames;
+	}
+	
+	/**
+	 * @return the schema name, <code>null</code> if the metadata is not filtered by schema.
+	 */
+	public String getSchemaName() {
+		return schemaName;
+	}
+	
+	/**
+	 * Loads the tables, columns and primary keys of the whole schema, in one metadata call each, unless already done.
+	 * Drivers that cannot list the primary keys of a whole schema get them table by table, as they are requested.
+	 * <p>If the explorer has an on-disk cache, the schema version is queried on each call : the metadata already prefetched 
+	 * is forgotten if the version changed (or could not be queried). The metadata is then read from the cache while the 
+	 * schema version did not change, and written to the cache otherwise.</p>
+	 * @throws SQLException in case of error during metadata extraction.
+	 */
+	public synchronized void prefetch() throws SQLException {
+		if (tableNames != null && cache == null) {
+			return;
+		}
+		String version = null;
+		if (cache != null) {
+			try {
+				version = cache.version(metadata.getConnection());
+			} catch (SQLException ex) {
+				LOGGER.warn("database : the schema version query failed, the metadata cache will not be used", ex);
+			}
+		}
+		if (tableNames != null) {
+			if (version != null && version.equals(prefetchedVersion)) {
+				return;
+			}
+			LOGGER.debug("database : the schema version changed, its metadata will be read again");
+			invalidate();
+		}
+		prefetchedVersion = version;
+		if (version != null) {
+			CachedSchema cached = cache.load(metadata.getURL(), schemaName, version);
+			if (cached != null) {
+				apply(cached);
+				LOGGER.debug("database : loaded the metadata of {} tables from the cache", tableNames.size());
+				return;
+			}
+		}
+		CachedSchema schema = readSchema();
+		apply(schema);
+		LOGGER.debug("database : prefetched the metadata of {} tables", tableNames.size());
+		if (version != null) {
+			cache.store(metadata.getURL(), schemaName, version, schema);
+		}
+	}
+	
+	/**
+	 * Forgets all the cached metadata, which will be read again from the database when next requested.
+	 */
+	public synchronized void invalidate() {
+		tableNames = null;
+		pkCache.clear();
+		columnCache.clear();
+	}
+	
+	private void apply(CachedSchema schema) {
+		columnCache.putAll(schema.getColumns());
+		pkCache.putAll(schema.getPrimaryKeys());
+		tableNames = schema.getTableNames();
+	}
+	
+	private CachedSchema readSchema() throws SQLException {
+		Set<String> tables = new LinkedHashSet<String>();
+		ResultSet tableRs = metadata.getTables(null, schemaName, "%", TABLE_TYPES);
+		try {
+			while (tableRs.next()) {
+				tables.add(tableRs.getString(TABLE_NAME_RS_INDEX));
+			}
+		} finally {
+			tableRs.close();
+		}
+		
+		Map<String, List<ColumnDescription>> columns;
+		ResultSet columnRs = metadata.getColumns(null, schemaName, null, null);
+		try {
+			columns = readColumns(columnRs, null);
+		} finally {
+			columnRs.close();
+		}
+		// tables in several schemas have been left out of the columns
+		tables.retainAll(columns.keySet());
+		
+		Map<String, List<String>> primaryKeys = null;
+		try {
+			ResultSet pkRs = metadata.getPrimaryKeys(null, schemaName, null);
+			try {
+				primaryKeys = readPrimaryKeys(pkRs, null);
+			} finally {
+				pkRs.close();
+			}
+		} catch (SQLException ex) {
+			LOGGER.debug("database : the driver could not list the primary keys of the whole schema, they will be read table by table", ex);
+		}
+		// drivers that ignore a null table name list no key at all : we cannot tell tables without primary key apart
+		Map<String, List<String>> knownKeys = new HashMap<String, List<String>>();
+		if (primaryKeys != null && !primaryKeys.isEmpty()) {
+			for (String table : columns.keySet()) {
+				List<String> pkList = primaryKeys.get(table);
+				knownKeys.put(table, pkList == null ? Collections.<String>emptyList() : pkList);
+			}
+		}
+		return new CachedSchema(Collections.unmodifiableList(new ArrayList<String>(tables)), columns, knownKeys);
+	}
+	
 	public void dispose() throws SQLException{
 		metadata.getConnection().close();
 	}
+	
+	/*
+	 * If no table is given, the rows are those of the whole schema : tables of the same name in several schemas (if the 
+	 * schema is not set) are then left out, and read table by table.
+	 */
+	private Map<String, List<String>> readPrimaryKeys(ResultSet pkRs, String requestedTable) throws SQLException {
+		Map<String, SortedMap<Integer, String>> pkMaps = new LinkedHashMap<String, SortedMap<Integer, String>>();
+		SchemaTracker schemas = new SchemaTracker();
+		while (pkRs.next()) {
+			String table = requestedTable;
+			if (table == null) {
+				table = pkRs.getString(TABLE_NAME_RS_INDEX);
+				schemas.add(table, pkRs.getString(TABLE_SCHEMA_RS_INDEX));
+			}
+			SortedMap<Integer, String> pkMap = pkMaps.get(table);
+			if (pkMap == null) {
+				pkMap = new TreeMap<Integer, String>();
+				pkMaps.put(table, pkMap);
+			}
+			String columnName = pkRs
+					.getString(PRIMARY_KEY_COLUMN_NAME_RS_INDEX);
+			Integer pkIndex = pkRs.getInt(PRIMARY_KEY_PK_INDEX_RS_INDEX);
+			if (pkRs.wasNull()) {// some DBMS drivers (eg: SQlite) don't
+									// give the pk index...
+				pkMap.put(pkRs.getRow(), columnName);
+			} else {
+				pkMap.put(pkIndex, columnName);
+			}
+		}
+		Map<String, List<String>> primaryKeys = new HashMap<String, List<String>>();
+		for (Map.Entry<String, SortedMap<Integer, String>> pkMap : pkMaps.entrySet()) {
+			if (!schemas.isAmbiguous(pkMap.getKey())) {
+				primaryKeys.put(pkMap.getKey(), Collections.unmodifiableList(new ArrayList<String>(pkMap.getValue().values())));
+			}
+		}
+		return primaryKeys;
+	}
+	
+	/*
+	 * Columns are listed in table and ordinal position order. The table name is a pattern : other tables may be listed
+	 * too. Tables in several schemas are only left out when listing the whole schema, as for the primary keys.
+	 */
+	private Map<String, List<ColumnDescription>> readColumns(ResultSet columnRs, String requestedTable) throws SQLException {
+		Map<String, List<ColumnDescription>> columns = new LinkedHashMap<String, List<ColumnDescription>>();
+		SchemaTracker schemas = new SchemaTracker();
+		while (columnRs.next()) {
+			String table = columnRs.getString(TABLE_NAME_RS_INDEX);
+			if (requestedTable == null) {
+				schemas.add(table, columnRs.getString(TABLE_SCHEMA_RS_INDEX));
+			}
+			List<ColumnDescription> tableColumns = columns.get(table);
+			if (tableColumns == null) {
+				tableColumns = new ArrayList<ColumnDescription>();
+				columns.put(table, tableColumns);
+			}
+			tableColumns.add(new ColumnDescription(columnRs.getString(COLUMN_NAME_RS_INDEX), 
+					columnRs.getInt(COLUMN_DATA_TYPE_RS_INDEX), columnRs.getString(COLUMN_TYPE_NAME_RS_INDEX), 
+					columnRs.getInt(COLUMN_NULLABLE_RS_INDEX), columnRs.getString(COLUMN_DEFAULT_RS_INDEX), 
+					columnRs.getString(COLUMN_REMARKS_RS_INDEX), autoIncrement(columnRs)));
+		}
+		for (Map.Entry<String, List<ColumnDescription>> tableColumns : columns.entrySet()) {
+			tableColumns.setValue(Collections.unmodifiableList(tableColumns.getValue()));
+		}
+		columns.keySet().removeAll(schemas.ambiguousTables);
+		return columns;
+	}
+	
+	/*
+	 * IS_AUTOINCREMENT only exists since JDBC 4.1 : older drivers do not know it, as in DbUnit.
+	 */
+	private String autoIncrement(ResultSet columnRs) {
+		try {
+			String autoIncrement = columnRs.getString(COLUMN_AUTOINCREMENT_RS_INDEX);
+			return autoIncrement == null ? "" : autoIncrement;
+		} catch (SQLException ex) {
+			LOGGER.debug("database : the driver does not tell whether columns are auto-incremented", ex);
+			return "";
+		}
+	}
+	
+	private static final class SchemaTracker {
+		private final Map<String, String> schemaByTable = new HashMap<String, String>();
+		private final Set<String> ambiguousTables = new HashSet<String>();
+		
+		void add(String table, String schema) {
+			String key = schema == null ? "" : schema;
+			String previous = schemaByTable.put(table, key);
+			if (previous != null && !previous.equals(key)) {
+				ambiguousTables.add(table);
+			}
+		}
+		
+		boolean isAmbiguous(String table) {
+			return ambiguousTables.contains(table);
+		}
+	}
 }
@@ -24,50 +24,86 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer.TokenHandler;
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer.TokenType;
 
+/**
+ * Sql text utilities. They all run in a single pass of the {@link SQLLexer}, so that quoted values, comments and
+ * dollar quoted text are handled consistently.
+ */
 public class SQLFormatUtils {
 	
 	
 	/**
-	 * The comments between comment symboles are deleted
+	 * The comments (<code>/* *&#47;</code> and <code>--</code>) are deleted. Comment markers inside quoted values are left untouched.
 	 * @param entryString
 	 * @return the string without comments
 	 */
 	public static String stripComments(String entryString){
-		if (entryString.contains("/*")){
-			String[] tabedString = entryString.split("\\/\\*");
-			String takeAwayComment="";
-			for (int i=0; i<tabedString.length; i++) {
-				if (i==0){
-					takeAwayComment = takeAwayComment.concat(tabedString[0]);
-				}
-				else {
-					if (tabedString[i].contains("*/")){
-						//We strip the text contained before the */ characters and replace them with an empty string
-						takeAwayComment = takeAwayComment.concat(tabedString[i].substring(tabedString[i].indexOf("*/")).replace("*/", ""));
-					}
+		final StringBuilder builder = new StringBuilder(entryString.length());
+		new SQLLexer().lex(entryString, new TokenHandler() {
+			@Override
+			public void onToken(TokenType type, CharSequence text, int start, int end) {
+				if (type != TokenType.BLOCK_COMMENT && type != TokenType.LINE_COMMENT){
+					builder.append(text, start, end);
 				}
 			}
-			return takeAwayComment;
-		} else {
-			//no comments in the string we return it as it is
-			return entryString;
-		}
+		});
+		return builder.toString();
 	}
 	
 
 	/**
-	 * the white lines contained in the file have all been concatenated to the file
-	 * this method is recursive to replace all the double spaces "  " by single spaces until there are no more double spaces
+	 * the white lines contained in the file have all been concatenated to the file : 
+	 * every run of spaces outside quoted values is replaced by a single space.
 	 * @param entryString
 	 * @return
 	 */
 	public static  String stripWhiteLines(String entryString){
-		String resultString = entryString.replace("  ", " ");
-		if (entryString.contains("  ")){
-			resultString = stripWhiteLines(resultString);
-		}
-		return resultString;
+		final StringBuilder builder = new StringBuilder(entryString.length());
+		new SQLLexer().lex(entryString, new TokenHandler() {
+			@Override
+			public void onToken(TokenType type, CharSequence text, int start, int end) {
+				if (type == TokenType.WHITESPACE){
+					for (int i = start; i < end; i++){
+						char character = text.charAt(i);
+						if (i == start || character != ' ' || text.charAt(i-1) != ' '){
+							builder.append(character);
+						}
+					}
+				}else{
+					builder.append(text, start, end);
+				}
+			}
+		});
+		return builder.toString();
+	}
+	
+	
+	/**
+	 * Normalizes a sql string so that two strings differing only by their layout give the same result : leading and trailing
+	 * whitespaces are removed and every run of whitespaces outside quoted values is replaced by one space.
+	 * Quoted values are left untouched. The run of whitespaces ending a <code>--</code> comment is replaced by a line break instead,
+	 * otherwise the code following the comment would become part of it.
+	 * @param sql the sql string
+	 * @return the normalized sql string
+	 */
+	public static String normalizeWhitespaces(String sql){
+		final String trimmed = sql.trim();
+		final StringBuilder builder = new StringBuilder(trimmed.length());
+		new SQLLexer().lex(trimmed, new TokenHandler() {
+			private TokenType previous;
+			@Override
+			public void onToken(TokenType type, CharSequence text, int start, int end) {
+				if (type == TokenType.WHITESPACE){
+					builder.append(previous == TokenType.LINE_COMMENT ? '\n' : ' ');
+				}else{
+					builder.append(text, start, end);
+				}
+				previous = type;
+			}
+		});
+		return builder.toString();
 	}
 	
 	
@@ -82,90 +118,45 @@ public class SQLFormatUtils {
 	 */
 	public static List<String> splitInstructions(String script) {
 		List<String> instructions = new ArrayList<String>();
-		String query = "";
-		boolean insideValue = false;
-		for (char character : script.toCharArray()){
-			//we read each character, and add it into a String
-			query += character;
-			
-			if (character == '\'' || character == '\"' ){
-				/* every time we meet a quotation mark, this boolean change its value
-				 * - we are not inside a value? it is an open quotation mark, and now we are
-				 * - we are inside a value? It is a closed quotation mark, and we are note anymore*/	
-				insideValue = insideValue?false:true;
-				
-			}else if (character == ';' && !insideValue){
-				/* if we meet a semicolon that is not inside quotation marks, it is the end of the instruction.
-				 * (if it is inside quotation marks, that is just a regular character of the concerned value) */
-				instructions = addToList(query, instructions);
-				query = "";
-			}
+		for (int[] offsets : SQLLexer.statementOffsets(script, SQLLexer.DEFAULT_DELIMITER)){
+			addToList(script.substring(offsets[0], offsets[1]), instructions);
 		}
-		instructions = addToList(query, instructions);
 		return instructions;
 	}
-        
-        public static List<String> splitSQLScript(List<String> script) {
-            
-            String DEFAULT_DELIMITER = ";";
-            String PL_SQL_DELIMITER = "@@";
-            boolean inPlsqlBlock = false;
-            
+	
+	/**
+	 * Split a script, given line by line, in executable blocks. See {@link SQLScriptSplitter} for the rules.
+	 * @param script the lines of the script
+	 * @return the blocks
+	 */
+	public static List<String> splitSQLScript(List<String> script) {
+		return splitSQLScript(script, SQLLexer.DEFAULT_DELIMITER);
+	}
+	
+	/**
+	 * Split a script, given line by line, in executable blocks. See {@link SQLScriptSplitter} for the rules.
+	 * @param script the lines of the script
+	 * @param delimiter the statement delimiter
+	 * @return the blocks
+	 */
+	public static List<String> splitSQLScript(List<String> script, String delimiter) {
+		SQLScriptSplitter splitter = new SQLScriptSplitter(delimiter);
 		List<String> queryBlocks = new ArrayList<String>();
-		StringBuffer command = null;
-                
-                for (String line : script){
-                    if (command == null) {
-                        command = new StringBuffer();
-                    }
-                    String trimmedLine = line.trim();
-                    if (trimmedLine.startsWith(PL_SQL_DELIMITER) || trimmedLine.endsWith(PL_SQL_DELIMITER)) {
-                        if (inPlsqlBlock == false) {
-            		   inPlsqlBlock = true;
-                        } else {
-                               inPlsqlBlock = false;
-                        }
-                    }
-                    // Interpret SQL Comment & Some statement that are not executable
-                    if (trimmedLine.startsWith("--")
-                       || trimmedLine.startsWith("//")
-                       || trimmedLine.startsWith("#")
-                       || trimmedLine.toLowerCase().startsWith("rem inserting into")
-                       || trimmedLine.toLowerCase().startsWith("set define off")) {
-                        // do nothing...
-                    } else if (inPlsqlBlock == true) {
-                        command.append(line.replace(PL_SQL_DELIMITER, " "));
-                    } else if (trimmedLine.endsWith(DEFAULT_DELIMITER) || trimmedLine.endsWith(PL_SQL_DELIMITER)) { // Line is end of statement
-                        // Append
-                        if (trimmedLine.endsWith(DEFAULT_DELIMITER)) {
-                            command.append(line.substring(0, line.lastIndexOf(DEFAULT_DELIMITER)));
-                            command.append(";");
-                        } else if (trimmedLine.endsWith(PL_SQL_DELIMITER)) {
-                            command.append(line.substring(0, line.lastIndexOf(PL_SQL_DELIMITER)));
-                            command.append(" ");
-                        }
-                        queryBlocks = addToBlock(command.toString(), queryBlocks);
-                        command = null;
-                    } else { // Line is middle of a statement
-                   // Append
-                        command.append(line);
-                        command.append(" ");
-                    }
-                }
-                return queryBlocks;
-        }
+		for (String line : script){
+			String block = splitter.addLine(line);
+			if (block != null){
+				queryBlocks.add(block);
+			}
+		}
+		return queryBlocks;
+	}
 	
 	private static List<String> addToList(String query, List<String> instructions){
 		String queryTrim = query.trim();
 		if (!StringUtils.isBlank(queryTrim) && !queryTrim.equals(";")){
-			instructions.add(queryTrim.trim());
+			instructions.add(queryTrim);
 		}
 		return instructions;
 	}
         
-        private static List<String> addToBlock(String query, List<String> instructions){
-		instructions.add(query);
-		return instructions;
-	}
-        
 }
@@ -0,0 +1,314 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Single pass sql lexer. It cuts a text into tokens, reported to a {@link TokenHandler} as offsets in the text : no
+ * substring is built by the lexer itself.</p>
+ *
+ * <p>It knows about single and double quoted text (doubled quotes being escaped quotes), <code>--</code> and <code>/* *&#47;</code>
+ * comments, Postgres dollar quoted text (<code>$$...$$</code>, <code>$tag$...$tag$</code>) and a configurable statement
+ * delimiter (<code>;</code> by default).</p>
+ *
+ * <p>The lexer may be fed several consecutive chunks of the same text : a quoted text or a comment still open at the end
+ * of a chunk is reported as a token up to the end of the chunk, and continued in the next one. Chunks must be cut at
+ * line boundaries (as done when reading a script line by line), so that no delimiter, comment or quote marker is cut
+ * in half. The line terminator may be left out : a <code>--</code> comment ends with its chunk.</p>
+ */
+public final class SQLLexer {
+
+	/** The default statement delimiter. */
+	public static final String DEFAULT_DELIMITER = ";";
+
+	public enum TokenType {
+		/** sql code that is neither whitespace nor anything below */
+		CODE,
+		WHITESPACE,
+		/** single or double quoted text, quotes included */
+		QUOTED,
+		/** dollar quoted text, tags included */
+		DOLLAR_QUOTED,
+		/** <code>--</code> comment, up to the end of line (excluded) */
+		LINE_COMMENT,
+		/** <code>/* *&#47;</code> comment, markers included */
+		BLOCK_COMMENT,
+		/** the statement delimiter */
+		DELIMITER
+	}
+
+	/**
+	 * Receives the tokens found by the lexer.
+	 */
+	public interface TokenHandler{
+		/**
+		 * @param type the token type
+		 * @param text the lexed text
+		 * @param start the offset of the first character of the token
+		 * @param end the offset following the last character of the token
+		 */
+		void onToken(TokenType type, CharSequence text, int start, int end);
+	}
+
+	private final String delimiter;
+
+	/* state carried over from one chunk to the next */
+	private TokenType openToken;
+	private char openQuote;
+	private String openDollarTag;
+
+	public SQLLexer(){
+		this(DEFAULT_DELIMITER);
+	}
+
+	/**
+	 * @param delimiter the statement delimiter. If <code>null</code> or blank, the default delimiter is used.
+	 */
+	public SQLLexer(String delimiter){
+		this.delimiter = delimiter == null || delimiter.trim().isEmpty() ? DEFAULT_DELIMITER : delimiter.trim();
+	}
+
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * @return <code>true</code> if the last chunk ended inside a quoted text or a comment.
+	 */
+	public boolean isInsideToken(){
+		return openToken != null;
+	}
+
+	/**
+	 * Forgets about any token left open by the previous chunks.
+	 */
+	public void reset(){
+		openToken = null;
+		openDollarTag = null;
+	}
+
+	/**
+	 * Finds the statements of a text.
+	 * @param text the text to split
+	 * @param delimiter the statement delimiter, or <code>null</code> for the default one.
+	 * @return the <code>{start, end}</code> offsets of each statement, delimiter included. The last statement
+	 * may have no delimiter.
+	 */
+	public static List<int[]> statementOffsets(CharSequence text, String delimiter){
+		final List<int[]> offsets = new ArrayList<int[]>();
+		final int[] statementStart = {0};
+		new SQLLexer(delimiter).lex(text, new TokenHandler() {
+			@Override
+			public void onToken(TokenType type, CharSequence lexed, int start, int end) {
+				if (type == TokenType.DELIMITER){
+					offsets.add(new int[]{statementStart[0], end});
+					statementStart[0] = end;
+				}
+			}
+		});
+		if (statementStart[0] < text.length()){
+			offsets.add(new int[]{statementStart[0], text.length()});
+		}
+		return offsets;
+	}
+
+	/**
+	 * Lexes a chunk of text.
+	 * @param text the chunk
+	 * @param handler the handler receiving the tokens
+	 */
+	public void lex(CharSequence text, TokenHandler handler){
+		int length = text.length();
+		int i = 0;
+		if (openToken != null && length > 0){
+			i = continueOpenToken(text, 0, handler);
+		}
+		while (i < length){
+			char character = text.charAt(i);
+			int end;
+			TokenType type;
+			if (character == '\'' || character == '"'){
+				type = TokenType.QUOTED;
+				end = endOfQuoted(text, i+1, character);
+			}else if (character == '-' && next(text, i) == '-'){
+				type = TokenType.LINE_COMMENT;
+				end = endOfLineComment(text, i+2);
+			}else if (character == '/' && next(text, i) == '*'){
+				type = TokenType.BLOCK_COMMENT;
+				end = endOfBlockComment(text, i+2);
+			}else if (character == '$' && (end = dollarTagEnd(text, i)) > 0){
+				type = TokenType.DOLLAR_QUOTED;
+				openDollarTag = text.subSequence(i, end).toString();
+				end = endOfDollarQuoted(text, end);
+			}else if (startsWith(text, i, delimiter)){
+				type = TokenType.DELIMITER;
+				end = i + delimiter.length();
+			}else if (Character.isWhitespace(character)){
+				type = TokenType.WHITESPACE;
+				end = i+1;
+				while (end < length && Character.isWhitespace(text.charAt(end))){
+					end++;
+				}
+			}else{
+				type = TokenType.CODE;
+				end = endOfCode(text, i+1);
+			}
+			handler.onToken(type, text, i, end);
+			i = end;
+		}
+	}
+
+	private int continueOpenToken(CharSequence text, int start, TokenHandler handler){
+		TokenType type = openToken;
+		int end;
+		switch(type){
+		case QUOTED :
+			end = endOfQuoted(text, start, openQuote);
+			break;
+		case BLOCK_COMMENT :
+			end = endOfBlockComment(text, start);
+			break;
+		default :
+			end = endOfDollarQuoted(text, start);
+			break;
+		}
+		handler.onToken(type, text, start, end);
+		return end;
+	}
+
+	private int endOfQuoted(CharSequence text, int from, char quote){
+		int length = text.length();
+		int i = from;
+		while (i < length){
+			if (text.charAt(i) == quote){
+				if (i+1 < length && text.charAt(i+1) == quote){
+					i += 2;
+					continue;
+				}
+				openToken = null;
+				return i+1;
+			}
+			i++;
+		}
+		openToken = TokenType.QUOTED;
+		openQuote = quote;
+		return length;
+	}
+
+	private int endOfLineComment(CharSequence text, int from){
+		int length = text.length();
+		for (int i = from; i < length; i++){
+			char character = text.charAt(i);
+			if (character == '\n' || character == '\r'){
+				openToken = null;
+				return i;
+			}
+		}
+		//chunks are cut at line boundaries : the end of the chunk is the end of the line
+		openToken = null;
+		return length;
+	}
+
+	private int endOfBlockComment(CharSequence text, int from){
+		int length = text.length();
+		for (int i = from; i+1 < length; i++){
+			if (text.charAt(i) == '*' && text.charAt(i+1) == '/'){
+				openToken = null;
+				return i+2;
+			}
+		}
+		openToken = TokenType.BLOCK_COMMENT;
+		return length;
+	}
+
+	private int endOfDollarQuoted(CharSequence text, int from){
+		int length = text.length();
+		for (int i = from; i < length; i++){
+			if (text.charAt(i) == '$' && startsWith(text, i, openDollarTag)){
+				int end = i + openDollarTag.length();
+				openToken = null;
+				openDollarTag = null;
+				return end;
+			}
+		}
+		openToken = TokenType.DOLLAR_QUOTED;
+		return length;
+	}
+
+	/*
+	 * CODE tokens stop at anything that may start another token.
+	 */
+	private int endOfCode(CharSequence text, int from){
+		int length = text.length();
+		char delimiterStart = delimiter.charAt(0);
+		int i = from;
+		while (i < length){
+			char character = text.charAt(i);
+			if (character == '\'' || character == '"' || character == '-' || character == '/' || character == '$'
+				|| character == delimiterStart || Character.isWhitespace(character)){
+				return i;
+			}
+			i++;
+		}
+		return length;
+	}
+
+	/*
+	 * A dollar quote opening tag is $$ or $identifier$, not preceded by an identifier character
+	 * (Postgres identifiers may contain $) nor followed by a digit (positional parameters such as $1).
+	 */
+	private static int dollarTagEnd(CharSequence text, int start){
+		if (start > 0 && isIdentifierChar(text.charAt(start-1))){
+			return -1;
+		}
+		int length = text.length();
+		int i = start+1;
+		if (i < length && !Character.isLetter(text.charAt(i)) && text.charAt(i) != '_' && text.charAt(i) != '$'){
+			return -1;
+		}
+		while (i < length && isIdentifierChar(text.charAt(i))){
+			i++;
+		}
+		return i < length && text.charAt(i) == '$' ? i+1 : -1;
+	}
+
+	private static boolean isIdentifierChar(char character){
+		return Character.isLetterOrDigit(character) || character == '_';
+	}
+
+	private static char next(CharSequence text, int index){
+		return index+1 < text.length() ? text.charAt(index+1) : 0;
+	}
+
+	private static boolean startsWith(CharSequence text, int offset, String prefix){
+		if (offset + prefix.length() > text.length()){
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++){
+			if (text.charAt(offset+i) != prefix.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.framework.exception.InstructionRuntimeException;
+
+/**
+ * Reads the statements of a sql script lazily, one line at a time, through a {@link SQLScriptSplitter} : only the statement
+ * being read is held in memory. The reader is closed once the last statement has been read, or by {@link #close()} if
+ * the iteration is stopped before.
+ */
+public final class SQLScriptReader implements Iterator<String>, Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SQLScriptReader.class);
+
+	private final BufferedReader reader;
+	private final SQLScriptSplitter splitter;
+	private String next;
+	private boolean closed = false;
+
+	/**
+	 * @param reader the script source. It is owned by this object from now on.
+	 * @param delimiter the statement delimiter, or <code>null</code> for the default one.
+	 */
+	public SQLScriptReader(BufferedReader reader, String delimiter){
+		this.reader = reader;
+		this.splitter = new SQLScriptSplitter(delimiter);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !closed){
+			next = readStatement();
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()){
+			throw new NoSuchElementException();
+		}
+		String statement = next;
+		next = null;
+		return statement;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("sql script statements can't be removed");
+	}
+
+	@Override
+	public void close() {
+		if (!closed){
+			closed = true;
+			try {
+				reader.close();
+			} catch (IOException e) {
+				LOGGER.warn("Failed to close the sql script", e);
+			}
+		}
+	}
+
+	private String readStatement(){
+		try{
+			String line;
+			while ((line = reader.readLine()) != null){
+				//lines are prefixed by a space like when the script is loaded in memory, so that both give the same statements
+				String statement = splitter.addLine(" ".concat(line));
+				if (statement != null){
+					return statement;
+				}
+			}
+			close();
+			return null;
+		}catch(IOException e){
+			close();
+			throw new InstructionRuntimeException("Sql script read I/O error", e);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer.TokenHandler;
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer.TokenType;
+
+/**
+ * <p>Incremental, line based sql script splitter : the script is fed one line at a time and each complete statement is
+ * handed back as soon as its last line has been read. This is the engine behind {@link SQLFormatUtils#splitSQLScript(java.util.List)}.</p>
+ *
+ * <p>The rules are :
+ * 	<ul>
+ * 		<li>a line whose last significant token is the delimiter ends the statement. Text after the delimiter (comments) is dropped, and so are <code>--</code> comments.
+ * 		With the default delimiter the statement keeps its trailing <code>;</code>, custom delimiters are removed.</li>
+ * 		<li>lines starting with <code>--</code>, <code>//</code>, <code>#</code>, <code>rem inserting into</code> or <code>set define off</code> are skipped,</li>
+ * 		<li>lines between a line starting or ending with <code>@@</code> and the next one are a PL/SQL block : delimiters are not
+ * 		interpreted and <code>@@</code> markers are replaced by spaces,</li>
+ * 		<li>none of the above applies to a line continuing a quoted text or a comment opened on a previous line.</li>
+ * 	</ul>
+ * </p>
+ */
+public final class SQLScriptSplitter {
+
+	private static final String PL_SQL_DELIMITER = "@@";
+
+	private final SQLLexer lexer;
+	private final boolean keepDelimiter;
+	private final StringBuilder command = new StringBuilder();
+	private final LineEndFinder lineEndFinder = new LineEndFinder();
+	private boolean inPlsqlBlock = false;
+
+	public SQLScriptSplitter(){
+		this(SQLLexer.DEFAULT_DELIMITER);
+	}
+
+	/**
+	 * @param delimiter the statement delimiter, or <code>null</code> for the default one.
+	 */
+	public SQLScriptSplitter(String delimiter){
+		this.lexer = new SQLLexer(delimiter);
+		this.keepDelimiter = SQLLexer.DEFAULT_DELIMITER.equals(lexer.getDelimiter());
+	}
+
+	/**
+	 * @param line the next line of the script.
+	 * @return the statement completed by this line, or <code>null</code> if the statement goes on.
+	 */
+	public String addLine(String line){
+		boolean continuing = lexer.isInsideToken();
+		String trimmedLine = line.trim();
+		if (!continuing && (trimmedLine.startsWith(PL_SQL_DELIMITER) || trimmedLine.endsWith(PL_SQL_DELIMITER))) {
+			inPlsqlBlock = !inPlsqlBlock;
+		}
+		if (!continuing && isIgnored(trimmedLine)) {
+			return null;
+		}
+		if (inPlsqlBlock) {
+			lexer.reset();
+			command.append(line.replace(PL_SQL_DELIMITER, " "));
+			return null;
+		}
+
+		lineEndFinder.reset();
+		lexer.lex(line, lineEndFinder);
+		StringBuilder code = lineEndFinder.code;
+		if (!lexer.isInsideToken() && lineEndFinder.delimiterStart >= 0) {
+			command.append(code, 0, lineEndFinder.delimiterStart);
+			if (keepDelimiter) {
+				command.append(SQLLexer.DEFAULT_DELIMITER);
+			}
+			return flush();
+		} else if (!lexer.isInsideToken() && trimmedLine.endsWith(PL_SQL_DELIMITER)) {
+			int blockEnd = code.lastIndexOf(PL_SQL_DELIMITER);
+			command.append(code, 0, blockEnd < 0 ? code.length() : blockEnd);
+			command.append(' ');
+			return flush();
+		} else {
+			command.append(code);
+			command.append(' ');
+			return null;
+		}
+	}
+
+	private String flush(){
+		String statement = command.toString();
+		command.setLength(0);
+		return statement;
+	}
+
+	/*
+	 * Sql comments and some statements that are not executable.
+	 */
+	private static boolean isIgnored(String trimmedLine){
+		if (trimmedLine.startsWith("--") || trimmedLine.startsWith("//") || trimmedLine.startsWith("#")) {
+			return true;
+		}
+		String lowerCased = trimmedLine.toLowerCase();
+		return lowerCased.startsWith("rem inserting into") || lowerCased.startsWith("set define off");
+	}
+
+	/*
+	 * Copies the line without its -- comment (lines are joined, it would swallow the next ones), and remembers where
+	 * the last delimiter of the line is, as long as only whitespaces and comments follow it.
+	 */
+	private static final class LineEndFinder implements TokenHandler {
+		private final StringBuilder code = new StringBuilder();
+		private int delimiterStart;
+
+		private void reset(){
+			code.setLength(0);
+			delimiterStart = -1;
+		}
+
+		@Override
+		public void onToken(TokenType type, CharSequence text, int start, int end) {
+			if (type == TokenType.LINE_COMMENT){
+				return;
+			}
+			switch (type) {
+			case DELIMITER :
+				delimiterStart = code.length();
+				break;
+			case WHITESPACE :
+			case BLOCK_COMMENT :
+				break;
+			default :
+				delimiterStart = -1;
+				break;
+			}
+			code.append(text, start, end);
+		}
+	}
+}
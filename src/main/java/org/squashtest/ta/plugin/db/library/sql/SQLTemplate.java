@@ -0,0 +1,200 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A sql query parsed once for parameter binding. Positional parameters (<code>?</code>) and named parameters
+ * (<code>:name</code>) are located outside quoted values and comments, and named parameters are replaced by
+ * <code>?</code> so that the resulting sql can be handed to {@link java.sql.Connection#prepareStatement(String)}.</p>
+ *
+ * <p>Each parameter gets the (1-based) JDBC index it will be bound to. A named parameter used several times
+ * in the query gets one index per occurrence.</p>
+ *
+ * <p>Postgres style casts (<code>::type</code>) are not mistaken for named parameters.</p>
+ */
+public final class SQLTemplate {
+
+	private static final String NULL_LITERAL = "null";
+
+	private static final Pattern INTEGER_LITERAL = Pattern.compile("[+-]?\\d+");
+
+	private static final Pattern DECIMAL_LITERAL = Pattern.compile("[+-]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?");
+
+	private final String sql;
+	private final List<Integer> positionalIndexes;
+	private final Map<String, List<Integer>> namedIndexes;
+	private final int parameterCount;
+
+	private SQLTemplate(String sql, List<Integer> positionalIndexes, Map<String, List<Integer>> namedIndexes, int parameterCount){
+		this.sql = sql;
+		this.positionalIndexes = Collections.unmodifiableList(positionalIndexes);
+		this.namedIndexes = Collections.unmodifiableMap(namedIndexes);
+		this.parameterCount = parameterCount;
+	}
+
+	/**
+	 * Parses a sql query.
+	 * @param query the sql query, with <code>?</code> and/or <code>:name</code> parameters.
+	 * @return the parsed template.
+	 */
+	public static SQLTemplate parse(String query){
+		StringBuilder jdbcSql = new StringBuilder(query.length());
+		List<Integer> positional = new ArrayList<Integer>();
+		Map<String, List<Integer>> named = new LinkedHashMap<String, List<Integer>>();
+		int count = 0;
+		int length = query.length();
+		int i = 0;
+		while (i < length){
+			char character = query.charAt(i);
+			int end;
+			if (character == '\'' || character == '"'){
+				end = skipQuoted(query, i, character);
+			}else if (character == '-' && i+1 < length && query.charAt(i+1) == '-'){
+				end = skipUntil(query, i+2, "\n");
+			}else if (character == '/' && i+1 < length && query.charAt(i+1) == '*'){
+				end = skipUntil(query, i+2, "*/");
+			}else if (character == '?'){
+				positional.add(++count);
+				jdbcSql.append('?');
+				i++;
+				continue;
+			}else if (character == ':' && i+1 < length && query.charAt(i+1) == ':'){
+				end = i+2;
+			}else if (character == ':' && i+1 < length && isNameChar(query.charAt(i+1))){
+				end = i+1;
+				while (end < length && isNameChar(query.charAt(end))){
+					end++;
+				}
+				String name = query.substring(i+1, end);
+				List<Integer> indexes = named.get(name);
+				if (indexes == null){
+					indexes = new ArrayList<Integer>(1);
+					named.put(name, indexes);
+				}
+				indexes.add(++count);
+				jdbcSql.append('?');
+				i = end;
+				continue;
+			}else{
+				end = i+1;
+			}
+			jdbcSql.append(query, i, end);
+			i = end;
+		}
+		return new SQLTemplate(jdbcSql.toString(), positional, named, count);
+	}
+
+	/**
+	 * @return the sql to prepare, every parameter being a <code>?</code>.
+	 */
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * @return the total number of parameter markers in the query.
+	 */
+	public int getParameterCount() {
+		return parameterCount;
+	}
+
+	/**
+	 * @return the JDBC indexes of the positional parameters, in order of appearance.
+	 */
+	public List<Integer> getPositionalIndexes() {
+		return positionalIndexes;
+	}
+
+	/**
+	 * @return the JDBC indexes of each named parameter, by parameter name.
+	 */
+	public Map<String, List<Integer>> getNamedIndexes() {
+		return namedIndexes;
+	}
+
+	/**
+	 * Converts a parameter value written for the inlining mode into the value to bind : a single quoted literal is unquoted
+	 * (doubled quotes being unescaped), an unquoted <code>null</code> is the sql NULL, unquoted numbers are bound as 
+	 * {@link Long} (or {@link BigDecimal} if they have a fractional part, an exponent or are too large), so that strict drivers
+	 * accept them for numeric columns, unquoted <code>true</code> and <code>false</code> are bound as {@link Boolean}. 
+	 * Any other value is bound as it is.
+	 * @param value the parameter value, as it would have been inlined in the sql.
+	 * @return the value to bind.
+	 */
+	public static Object toBindValue(String value){
+		if (value == null){
+			return null;
+		}
+		String trimmed = value.trim();
+		if (trimmed.length() >= 2 && trimmed.charAt(0) == '\'' && trimmed.charAt(trimmed.length()-1) == '\''){
+			return trimmed.substring(1, trimmed.length()-1).replace("''", "'");
+		}
+		if (NULL_LITERAL.equalsIgnoreCase(trimmed)){
+			return null;
+		}
+		if (INTEGER_LITERAL.matcher(trimmed).matches()){
+			try{
+				return Long.valueOf(trimmed.startsWith("+") ? trimmed.substring(1) : trimmed);
+			}catch(NumberFormatException tooLarge){
+				return new BigDecimal(trimmed);
+			}
+		}
+		if (DECIMAL_LITERAL.matcher(trimmed).matches()){
+			return new BigDecimal(trimmed);
+		}
+		if (Boolean.TRUE.toString().equalsIgnoreCase(trimmed) || Boolean.FALSE.toString().equalsIgnoreCase(trimmed)){
+			return Boolean.valueOf(trimmed);
+		}
+		return value;
+	}
+
+	private static boolean isNameChar(char character){
+		return Character.isLetterOrDigit(character) || character == '_' || character == '-';
+	}
+
+	private static int skipQuoted(String query, int start, char quote){
+		int i = start+1;
+		while (i < query.length()){
+			if (query.charAt(i) == quote){
+				if (i+1 < query.length() && query.charAt(i+1) == quote){
+					i += 2;
+					continue;
+				}
+				return i+1;
+			}
+			i++;
+		}
+		return query.length();
+	}
+
+	private static int skipUntil(String query, int start, String terminator){
+		int index = query.indexOf(terminator, start);
+		return index < 0 ? query.length() : index + terminator.length();
+	}
+}
@@ -0,0 +1,306 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer.ColumnDescription;
+
+/**
+ * <p>On-disk cache of the metadata of a schema (tables, columns and primary keys), kept across test runs. There is one 
+ * file per database url and schema, in the cache directory.</p>
+ * 
+ * <p>The cached metadata is only used while the schema is at the same version : the version is the result of a query 
+ * given by the user, which must change whenever the structure of the schema changes (for instance the last DDL time 
+ * of the objects of the schema).</p>
+ */
+public class SchemaMetadataCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SchemaMetadataCache.class);
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String VERSION_SEPARATOR = "/";
+	
+	/** changed whenever the content of the files changes : files of another format are read again from the database */
+	private static final String FORMAT_KEY = "format";
+	private static final String FORMAT = "2";
+	private static final String URL_KEY = "url";
+	private static final String SCHEMA_KEY = "schema";
+	private static final String VERSION_KEY = "version";
+	private static final String TABLE_COUNT_KEY = "tables";
+	private static final String TABLE_PREFIX = "table.";
+	private static final String NAME_SUFFIX = ".name";
+	private static final String COLUMN_COUNT_SUFFIX = ".columns";
+	private static final String COLUMN_INFIX = ".column.";
+	private static final String TYPE_SUFFIX = ".type";
+	private static final String TYPE_NAME_SUFFIX = ".typeName";
+	private static final String NULLABLE_SUFFIX = ".nullable";
+	private static final String DEFAULT_SUFFIX = ".default";
+	private static final String REMARKS_SUFFIX = ".remarks";
+	private static final String AUTOINCREMENT_SUFFIX = ".autoIncrement";
+	private static final String PK_SUFFIX = ".pk";
+	private static final String PK_INFIX = ".pk.";
+	
+	private final File directory;
+	private final String versionQuery;
+	
+	/**
+	 * Metadata of a schema, as read from the cache.
+	 */
+	public static final class CachedSchema {
+		private final List<String> tableNames;
+		private final Map<String, List<ColumnDescription>> columns;
+		private final Map<String, List<String>> primaryKeys;
+		
+		CachedSchema(List<String> tableNames, Map<String, List<ColumnDescription>> columns, Map<String, List<String>> primaryKeys) {
+			this.tableNames = tableNames;
+			this.columns = columns;
+			this.primaryKeys = primaryKeys;
+		}
+		
+		public List<String> getTableNames() {
+			return tableNames;
+		}
+		
+		/**
+		 * @return the columns, by table name.
+		 */
+		public Map<String, List<ColumnDescription>> getColumns() {
+			return columns;
+		}
+		
+		/**
+		 * @return the primary keys, by table name. Tables whose primary key was not known when the cache was written are 
+		 * missing.
+		 */
+		public Map<String, List<String>> getPrimaryKeys() {
+			return primaryKeys;
+		}
+	}
+	
+	/**
+	 * @param directory the directory of the cache files, created if needed.
+	 * @param versionQuery the query returning the version of the schema.
+	 */
+	public SchemaMetadataCache(File directory, String versionQuery) {
+		this.directory = directory;
+		this.versionQuery = versionQuery;
+	}
+	
+	/**
+	 * @param connection a connection to the database.
+	 * @return the current version of the schema : the values of all the rows returned by the version query.
+	 * @throws SQLException if the version query failed.
+	 */
+	public String version(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			ResultSet result = statement.executeQuery(versionQuery);
+			ResultSetMetaData metadata = result.getMetaData();
+			StringBuilder version = new StringBuilder();
+			while (result.next()) {
+				for (int column = 1; column <= metadata.getColumnCount(); column++) {
+					version.append(version.length() > 0 ? VERSION_SEPARATOR : "").append(result.getString(column));
+				}
+			}
+			return version.toString();
+		}
+	}
+	
+	/**
+	 * @param url the url of the database.
+	 * @param schemaName the schema, may be <code>null</code>.
+	 * @param version the current version of the schema, see {@link #version(Connection)}.
+	 * @return the cached metadata, or <code>null</code> if there is none for this version of the schema.
+	 */
+	public CachedSchema load(String url, String schemaName, String version) {
+		File file = cacheFile(url, schemaName);
+		if (!file.isFile()) {
+			return null;
+		}
+		Properties cache = new Properties();
+		try (InputStream input = new FileInputStream(file)) {
+			cache.load(input);
+		} catch (IOException ex) {
+			LOGGER.warn("database : could not read the metadata cache file " + file.getAbsolutePath() + ", the metadata will be read from the database", ex);
+			return null;
+		}
+		if (!FORMAT.equals(cache.getProperty(FORMAT_KEY))) {
+			LOGGER.info("database : the metadata cache file was written by another version, the metadata will be read from the database");
+			return null;
+		}
+		if (!url.equals(cache.getProperty(URL_KEY)) || !String.valueOf(schemaName).equals(cache.getProperty(SCHEMA_KEY))
+				|| !version.equals(cache.getProperty(VERSION_KEY))) {
+			LOGGER.info("database : the schema changed since its metadata was cached, the metadata will be read from the database");
+			return null;
+		}
+		try {
+			return read(cache);
+		} catch (RuntimeException ex) {
+			LOGGER.warn("database : the metadata cache file " + file.getAbsolutePath() + " is corrupted, the metadata will be read from the database", ex);
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the metadata of the schema in the cache. Failures are only logged : the metadata will be read again 
+	 * from the database next time.
+	 * @param url the url of the database.
+	 * @param schemaName the schema, may be <code>null</code>.
+	 * @param version the version of the schema the metadata was read at.
+	 * @param schema the metadata.
+	 */
+	public void store(String url, String schemaName, String version, CachedSchema schema) {
+		Properties cache = new Properties();
+		cache.setProperty(FORMAT_KEY, FORMAT);
+		cache.setProperty(URL_KEY, url);
+		cache.setProperty(SCHEMA_KEY, String.valueOf(schemaName));
+		cache.setProperty(VERSION_KEY, version);
+		List<String> tableNames = schema.getTableNames();
+		cache.setProperty(TABLE_COUNT_KEY, Integer.toString(tableNames.size()));
+		for (int table = 0; table < tableNames.size(); table++) {
+			String prefix = TABLE_PREFIX + table;
+			String name = tableNames.get(table);
+			cache.setProperty(prefix + NAME_SUFFIX, name);
+			List<ColumnDescription> columns = schema.getColumns().get(name);
+			columns = columns == null ? Collections.<ColumnDescription>emptyList() : columns;
+			cache.setProperty(prefix + COLUMN_COUNT_SUFFIX, Integer.toString(columns.size()));
+			for (int column = 0; column < columns.size(); column++) {
+				String columnPrefix = prefix + COLUMN_INFIX + column;
+				ColumnDescription description = columns.get(column);
+				cache.setProperty(columnPrefix + NAME_SUFFIX, description.getName());
+				cache.setProperty(columnPrefix + TYPE_SUFFIX, Integer.toString(description.getSqlType()));
+				setOptional(cache, columnPrefix + TYPE_NAME_SUFFIX, description.getTypeName());
+				cache.setProperty(columnPrefix + NULLABLE_SUFFIX, Integer.toString(description.getNullable()));
+				setOptional(cache, columnPrefix + DEFAULT_SUFFIX, description.getDefaultValue());
+				setOptional(cache, columnPrefix + REMARKS_SUFFIX, description.getRemarks());
+				setOptional(cache, columnPrefix + AUTOINCREMENT_SUFFIX, description.getAutoIncrement());
+			}
+			List<String> primaryKey = schema.getPrimaryKeys().get(name);
+			if (primaryKey != null) {
+				cache.setProperty(prefix + PK_SUFFIX, Integer.toString(primaryKey.size()));
+				for (int column = 0; column < primaryKey.size(); column++) {
+					cache.setProperty(prefix + PK_INFIX + column, primaryKey.get(column));
+				}
+			}
+		}
+		
+		File file = cacheFile(url, schemaName);
+		// written aside, then moved : concurrent runs never read a partially written file
+		File temporary = new File(directory, file.getName() + "." + System.nanoTime() + ".tmp");
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("could not create directory " + directory.getAbsolutePath());
+			}
+			try (OutputStream output = new FileOutputStream(temporary)) {
+				cache.store(output, "database metadata cache");
+			}
+			if (file.exists() && !file.delete() || !temporary.renameTo(file)) {
+				throw new IOException("could not replace " + file.getAbsolutePath());
+			}
+		} catch (IOException ex) {
+			LOGGER.warn("database : could not write the metadata cache file " + file.getAbsolutePath(), ex);
+			if (temporary.exists() && !temporary.delete()) {
+				temporary.deleteOnExit();
+			}
+		}
+	}
+	
+	private CachedSchema read(Properties cache) {
+		int tableCount = Integer.parseInt(required(cache, TABLE_COUNT_KEY));
+		List<String> tableNames = new ArrayList<String>(tableCount);
+		Map<String, List<ColumnDescription>> columns = new HashMap<String, List<ColumnDescription>>();
+		Map<String, List<String>> primaryKeys = new HashMap<String, List<String>>();
+		for (int table = 0; table < tableCount; table++) {
+			String prefix = TABLE_PREFIX + table;
+			String name = required(cache, prefix + NAME_SUFFIX);
+			tableNames.add(name);
+			int columnCount = Integer.parseInt(required(cache, prefix + COLUMN_COUNT_SUFFIX));
+			List<ColumnDescription> tableColumns = new ArrayList<ColumnDescription>(columnCount);
+			for (int column = 0; column < columnCount; column++) {
+				String columnPrefix = prefix + COLUMN_INFIX + column;
+				tableColumns.add(new ColumnDescription(required(cache, columnPrefix + NAME_SUFFIX),
+						Integer.parseInt(required(cache, columnPrefix + TYPE_SUFFIX)), cache.getProperty(columnPrefix + TYPE_NAME_SUFFIX),
+						Integer.parseInt(required(cache, columnPrefix + NULLABLE_SUFFIX)), cache.getProperty(columnPrefix + DEFAULT_SUFFIX),
+						cache.getProperty(columnPrefix + REMARKS_SUFFIX), cache.getProperty(columnPrefix + AUTOINCREMENT_SUFFIX, "")));
+			}
+			columns.put(name, Collections.unmodifiableList(tableColumns));
+			String pkCount = cache.getProperty(prefix + PK_SUFFIX);
+			if (pkCount != null) {
+				List<String> primaryKey = new ArrayList<String>();
+				for (int column = 0; column < Integer.parseInt(pkCount); column++) {
+					primaryKey.add(required(cache, prefix + PK_INFIX + column));
+				}
+				primaryKeys.put(name, Collections.unmodifiableList(primaryKey));
+			}
+		}
+		return new CachedSchema(Collections.unmodifiableList(tableNames), columns, primaryKeys);
+	}
+	
+	private String required(Properties cache, String key) {
+		String value = cache.getProperty(key);
+		if (value == null) {
+			throw new IllegalStateException("missing entry " + key);
+		}
+		return value;
+	}
+	
+	private void setOptional(Properties cache, String key, String value) {
+		if (value != null) {
+			cache.setProperty(key, value);
+		}
+	}
+	
+	private File cacheFile(String url, String schemaName) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest((url + "\n" + schemaName).getBytes(UTF8));
+			StringBuilder name = new StringBuilder("metadata-");
+			for (byte value : hash) {
+				name.append(String.format("%02x", value & 0xff));
+			}
+			return new File(directory, name.append(".properties").toString());
+		} catch (NoSuchAlgorithmException ex) {
+			// every java platform implements SHA-1
+			throw new IllegalStateException(ex);
+		}
+	}
+}
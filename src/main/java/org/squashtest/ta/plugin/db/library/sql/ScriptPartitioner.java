@@ -0,0 +1,129 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer.TokenHandler;
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer.TokenType;
+
+/**
+ * <p>Assigns the statements of a script to partitions which may be executed concurrently. Statements that can't be 
+ * assigned to a partition ({@link #partitionOf(String)} returns <code>null</code>) are barriers : everything before them
+ * must be done before they run, and they must be done before anything after them runs.</p>
+ * 
+ * <p>Partitions run in separate transactions, with no order between them : statements depending on rows written by 
+ * another partition, such as inserts into a table with a foreign key to a table loaded in the same segment, must be 
+ * separated from them by a barrier statement, or put in their own section (see {@link #bySection()}).</p>
+ * 
+ * <p>Partitioners may be stateful : use a new instance for each script.</p>
+ */
+public abstract class ScriptPartitioner {
+
+	/** leading whitespaces and block comments of a statement */
+	private static final String LEADING_COMMENTS = "^\\s*(?:/\\*.*?\\*/\\s*)*";
+
+	private static final Pattern SECTION_MARKER = Pattern.compile("^\\s*/\\*\\s*@section\\s+([\\w.$-]+)\\s*\\*/", Pattern.DOTALL);
+
+	private static final Pattern TARGET_TABLE = Pattern.compile(
+			LEADING_COMMENTS + "(?:insert\\s+into|update|delete(?:\\s+from)?|merge\\s+into)\\s+(\"[^\"]+\"(?:\\.\"[^\"]+\")?|[\\w.$#]+)",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/** keywords introducing another table than the target one, after the target table */
+	private static final Pattern OTHER_TABLE = Pattern.compile("\\b(?:select|from|join|using)\\b", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * @param statement the next statement of the script
+	 * @return the partition of the statement, or <code>null</code> if it is a barrier.
+	 */
+	public abstract String partitionOf(String statement);
+
+	/**
+	 * @return a partitioner grouping the <code>INSERT</code>, <code>UPDATE</code>, <code>DELETE</code> and <code>MERGE</code> 
+	 * statements by target table. Statements reading another table (<code>INSERT ... SELECT</code>, subqueries, joins, 
+	 * <code>MERGE ... USING</code>) and any other statement are barriers. Dependencies through foreign keys are not detected.
+	 */
+	public static ScriptPartitioner byTable(){
+		return new ScriptPartitioner() {
+			@Override
+			public String partitionOf(String statement) {
+				Matcher matcher = TARGET_TABLE.matcher(statement);
+				if (matcher.find() && !readsOtherTables(statement.substring(matcher.end()))){
+					String table = matcher.group(1);
+					//quoted identifiers are case sensitive
+					return table.startsWith("\"") ? table : table.toUpperCase(Locale.ENGLISH);
+				}
+				return null;
+			}
+		};
+	}
+
+	/*
+	 * Looks for the keywords outside of quoted values and comments.
+	 */
+	private static boolean readsOtherTables(String statementEnd){
+		final StringBuilder code = new StringBuilder(statementEnd.length());
+		new SQLLexer().lex(statementEnd, new TokenHandler() {
+			@Override
+			public void onToken(TokenType type, CharSequence text, int start, int end) {
+				if (type == TokenType.CODE){
+					code.append(text, start, end).append(' ');
+				}
+			}
+		});
+		return OTHER_TABLE.matcher(code).find();
+	}
+
+	/**
+	 * @return a partitioner driven by explicit section markers : a statement starting with <code>/&#42; @section name &#42;/</code>
+	 * opens the section <code>name</code>, and the following statements belong to it until the next marker. Statements
+	 * before the first marker, or in a section named <code>serial</code>, are barriers.
+	 */
+	public static ScriptPartitioner bySection(){
+		return new ScriptPartitioner() {
+			private String section;
+			@Override
+			public String partitionOf(String statement) {
+				Matcher matcher = SECTION_MARKER.matcher(statement);
+				if (matcher.find()){
+					section = "serial".equalsIgnoreCase(matcher.group(1)) ? null : matcher.group(1);
+				}
+				return section;
+			}
+		};
+	}
+
+	/**
+	 * @param name <code>table</code> or <code>section</code>, case insensitive
+	 * @return a new partitioner of that kind
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	public static ScriptPartitioner forName(String name){
+		if ("table".equalsIgnoreCase(name.trim())){
+			return byTable();
+		}else if ("section".equalsIgnoreCase(name.trim())){
+			return bySection();
+		}
+		throw new IllegalArgumentException("unknown script partitioning '"+name+"', should be one of 'table' or 'section'");
+	}
+}
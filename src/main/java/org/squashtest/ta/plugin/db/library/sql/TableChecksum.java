@@ -0,0 +1,317 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Computes, inside the database, an order independent checksum of the rows of a table : the row count and the sum of a 
+ * hash of each row. Two tables with the same checksum hold the same rows, up to a hash collision, and the rows never
+ * leave the database.</p>
+ * 
+ * <p>The hash is computed with vendor specific sql, for H2 (1.4.198 or later), PostgreSQL, Oracle, MySQL (or MariaDB) and
+ * SQL Server. Each row is hashed over a text rendering of its values, which is only the same for two databases of the same
+ * vendor : checksums are only comparable if {@link #isComparableWith(TableChecksum)}. Only character, integer, decimal,
+ * boolean and date/time columns are rendered, tables with other columns (large objects, binaries, floating point numbers...) 
+ * have no checksum.</p>
+ */
+public class TableChecksum {
+
+	private static final String NULL_MARKER = "'N'";
+	private static final String LENGTH_SEPARATOR = "':'";
+	private static final String CHECKSUM_SEPARATOR = "/";
+
+	/**
+	 * The vendor specific sql.
+	 */
+	private enum Dialect {
+		H2 {
+			@Override
+			String render(String column, int sqlType) {
+				return "CAST(" + column + " AS VARCHAR)";
+			}
+			@Override
+			String hashSum(String row) {
+				return oraHashSum(row);
+			}
+		},
+		POSTGRESQL {
+			@Override
+			String render(String column, int sqlType) {
+				return "CAST(" + column + " AS TEXT)";
+			}
+			@Override
+			String hashSum(String row) {
+				return "SUM(('x' || SUBSTR(MD5(" + row + "), 1, 16))::BIT(64)::BIGINT), "
+						+ "SUM(('x' || SUBSTR(MD5(" + row + "), 17, 16))::BIT(64)::BIGINT)";
+			}
+		},
+		ORACLE {
+			@Override
+			String render(String column, int sqlType) {
+				if (isDateTime(sqlType)) {
+					return "TO_CHAR(CAST(" + column + " AS TIMESTAMP), 'YYYY-MM-DD HH24:MI:SS.FF9')";
+				} else if (isCharacter(sqlType)) {
+					return "TO_CHAR(" + column + ")";
+				} else {
+					return "TO_CHAR(" + column + ", 'TM9')";
+				}
+			}
+			@Override
+			String hashSum(String row) {
+				return oraHashSum(row);
+			}
+		},
+		MYSQL {
+			@Override
+			String render(String column, int sqlType) {
+				return "CAST(" + column + " AS CHAR)";
+			}
+			@Override
+			String length(String text) {
+				return "CHAR_LENGTH(" + text + ")";
+			}
+			@Override
+			String concat(List<String> parts) {
+				StringBuilder concat = new StringBuilder("CONCAT(");
+				for (int part = 0; part < parts.size(); part++) {
+					concat.append(part > 0 ? ", " : "").append(parts.get(part));
+				}
+				return concat.append(')').toString();
+			}
+			@Override
+			String hashSum(String row) {
+				return "SUM(CAST(CONV(SUBSTRING(MD5(" + row + "), 1, 16), 16, 10) AS UNSIGNED)), "
+						+ "SUM(CAST(CONV(SUBSTRING(MD5(" + row + "), 17, 16), 16, 10) AS UNSIGNED))";
+			}
+		},
+		SQLSERVER {
+			@Override
+			String render(String column, int sqlType) {
+				if (isDateTime(sqlType)) {
+					return "CONVERT(NVARCHAR(33), " + column + ", 126)";
+				} else if (isCharacter(sqlType)) {
+					// not truncated, whatever the length of the values
+					return "CAST(" + column + " AS NVARCHAR(MAX))";
+				}
+				return "CAST(" + column + " AS NVARCHAR(40))";
+			}
+			@Override
+			String length(String text) {
+				return "CAST(DATALENGTH(" + text + ") AS NVARCHAR(12))";
+			}
+			@Override
+			String concat(List<String> parts) {
+				StringBuilder concat = new StringBuilder("(");
+				for (int part = 0; part < parts.size(); part++) {
+					concat.append(part > 0 ? " + " : "").append(parts.get(part));
+				}
+				return concat.append(')').toString();
+			}
+			@Override
+			String hashSum(String row) {
+				return "SUM(CAST(CAST(SUBSTRING(HASHBYTES('MD5', " + row + "), 1, 8) AS BIGINT) AS DECIMAL(38, 0))), "
+						+ "SUM(CAST(CAST(SUBSTRING(HASHBYTES('MD5', " + row + "), 9, 8) AS BIGINT) AS DECIMAL(38, 0)))";
+			}
+		};
+
+		/**
+		 * @return the expression rendering the non null values of the column as text.
+		 */
+		abstract String render(String column, int sqlType);
+
+		/**
+		 * @return the select list of the sums of the row hashes.
+		 */
+		abstract String hashSum(String row);
+
+		String length(String text) {
+			return "LENGTH(" + text + ")";
+		}
+
+		String concat(List<String> parts) {
+			StringBuilder concat = new StringBuilder("(");
+			for (int part = 0; part < parts.size(); part++) {
+				concat.append(part > 0 ? " || " : "").append(parts.get(part));
+			}
+			return concat.append(')').toString();
+		}
+
+		static Dialect forProduct(String productName) {
+			String product = productName == null ? "" : productName.toLowerCase(Locale.ENGLISH);
+			if (product.startsWith("h2")) {
+				return H2;
+			} else if (product.contains("postgresql")) {
+				return POSTGRESQL;
+			} else if (product.contains("oracle")) {
+				return ORACLE;
+			} else if (product.contains("mysql") || product.contains("mariadb")) {
+				return MYSQL;
+			} else if (product.contains("sql server")) {
+				return SQLSERVER;
+			}
+			return null;
+		}
+
+		private static String oraHashSum(String row) {
+			return "SUM(ORA_HASH(" + row + ", 4294967295, 0)), SUM(ORA_HASH(" + row + ", 4294967295, 1))";
+		}
+	}
+
+	private final Connection connection;
+	private final String schemaName;
+	private final String productName;
+	private final String quote;
+	private final Dialect dialect;
+
+	/**
+	 * @param connection the connection to the database.
+	 * @param schemaName the schema of the tables, may be <code>null</code> if the tables are not qualified.
+	 * @throws SQLException if the database metadata could not be read.
+	 */
+	public TableChecksum(Connection connection, String schemaName) throws SQLException {
+		this.connection = connection;
+		this.schemaName = schemaName;
+		this.productName = connection.getMetaData().getDatabaseProductName();
+		String quoteString = connection.getMetaData().getIdentifierQuoteString();
+		this.quote = quoteString == null ? "" : quoteString.trim();
+		this.dialect = Dialect.forProduct(productName);
+	}
+
+	/**
+	 * @return <code>true</code> if checksums can be computed in this database.
+	 */
+	public boolean isSupported() {
+		return dialect != null;
+	}
+
+	/**
+	 * @param other checksums of another database.
+	 * @return <code>true</code> if the checksums of both databases are computed the same way, and may be compared.
+	 */
+	public boolean isComparableWith(TableChecksum other) {
+		return isSupported() && dialect == other.dialect && productName.equals(other.productName);
+	}
+
+	/**
+	 * @param table the table name.
+	 * @param columns the columns to hash, in the order they are hashed.
+	 * @param sqlTypes the {@link Types} of the columns.
+	 * @return the checksum query, or <code>null</code> if the checksum cannot be computed for these columns.
+	 */
+	public String query(String table, String[] columns, int[] sqlTypes) {
+		if (dialect == null || columns.length == 0) {
+			return null;
+		}
+		List<String> elements = new ArrayList<String>(columns.length);
+		for (int column = 0; column < columns.length; column++) {
+			if (!isRendered(sqlTypes[column])) {
+				return null;
+			}
+			String name = quote(columns[column]);
+			String text = dialect.render(name, sqlTypes[column]);
+			List<String> value = new ArrayList<String>(3);
+			value.add(dialect.length(text));
+			value.add(LENGTH_SEPARATOR);
+			value.add(text);
+			elements.add("CASE WHEN " + name + " IS NULL THEN " + NULL_MARKER + " ELSE " + dialect.concat(value) + " END");
+		}
+		String row = elements.size() == 1 ? elements.get(0) : dialect.concat(elements);
+		return "SELECT COUNT(*), " + dialect.hashSum(row) + " FROM " + qualifiedName(table);
+	}
+
+	/**
+	 * @param table the table name.
+	 * @param columns the columns to hash, in the order they are hashed.
+	 * @param sqlTypes the {@link Types} of the columns.
+	 * @return the checksum of the table, or <code>null</code> if it cannot be computed for these columns.
+	 * @throws SQLException if the checksum query failed.
+	 */
+	public String compute(String table, String[] columns, int[] sqlTypes) throws SQLException {
+		String query = query(table, columns, sqlTypes);
+		if (query == null) {
+			return null;
+		}
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet result = statement.executeQuery(query);
+			if (!result.next()) {
+				return null;
+			}
+			ResultSetMetaData metadata = result.getMetaData();
+			StringBuilder checksum = new StringBuilder();
+			for (int column = 1; column <= metadata.getColumnCount(); column++) {
+				checksum.append(column > 1 ? CHECKSUM_SEPARATOR : "").append(result.getString(column));
+			}
+			return checksum.toString();
+		} finally {
+			statement.close();
+		}
+	}
+
+	private String qualifiedName(String table) {
+		StringBuilder name = new StringBuilder();
+		if (schemaName != null && !schemaName.isEmpty() && table.indexOf('.') < 0) {
+			name.append(quote(schemaName)).append('.');
+		}
+		String[] parts = table.split("\\.");
+		for (int part = 0; part < parts.length; part++) {
+			name.append(part > 0 ? "." : "").append(quote(parts[part]));
+		}
+		return name.toString();
+	}
+
+	private String quote(String identifier) {
+		return quote + identifier + quote;
+	}
+
+	private static boolean isRendered(int sqlType) {
+		switch (sqlType) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return true;
+		default:
+			return isCharacter(sqlType) || isDateTime(sqlType);
+		}
+	}
+
+	private static boolean isCharacter(int sqlType) {
+		return sqlType == Types.CHAR || sqlType == Types.VARCHAR || sqlType == Types.NCHAR || sqlType == Types.NVARCHAR;
+	}
+
+	private static boolean isDateTime(int sqlType) {
+		return sqlType == Types.DATE || sqlType == Types.TIME || sqlType == Types.TIMESTAMP;
+	}
+}
@@ -30,12 +30,15 @@ import org.squashtest.ta.framework.components.Resource;
 import org.squashtest.ta.plugin.db.library.dbunit.CompositeColumnFilter;
 import org.squashtest.ta.plugin.db.library.dbunit.CompositeTableFilter;
 import org.squashtest.ta.plugin.db.library.dbunit.FilteredStructureDataSet;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
 
 @TAResource("dataset.dbunit")
 public class DbUnitDatasetResource implements Resource<DbUnitDatasetResource> {
 
 	private IDataSet dataset;
 	private boolean hasMetadata=false;
+	private boolean streamed=false;
+	private TableChecksum checksum;
 	
 	public IDataSet getDataset() {
 		return dataset;
@@ -48,6 +51,22 @@ public class DbUnitDatasetResource implements Resource<DbUnitDatasetResource> {
 	public boolean hasMetadata(){
 		return hasMetadata;
 	}
+	
+	/**
+	 * @return <code>true</code> if the dataset tables are read forward only, straight from their source : they must be read
+	 * once, row after row, and their row count is unknown. <code>false</code> if the dataset allows random access.
+	 */
+	public boolean isStreamed(){
+		return streamed;
+	}
+
+	/**
+	 * @return the table checksums of the database the dataset was read from, or <code>null</code> if the dataset was not
+	 * read from a database.
+	 */
+	public TableChecksum getChecksum(){
+		return checksum;
+	}
 
 	/**
 	 * Default constructor for Spring enumeration only.
@@ -65,8 +84,38 @@ public class DbUnitDatasetResource implements Resource<DbUnitDatasetResource> {
 	 *            does.
 	 */
 	public DbUnitDatasetResource(IDataSet dataSet,boolean hasMetadata){
+		this(dataSet,hasMetadata,false);
+	}
+	
+	/**
+	 * Create a dataset resource from a dbunit dataset.
+	 * 
+	 * @param dataSet
+	 *            the dataset to reference.
+	 * @param hasMetadata
+	 *            see {@link #DbUnitDatasetResource(IDataSet, boolean)}
+	 * @param streamed
+	 *            pass <code>true</code> if the dataset tables are forward only (see {@link #isStreamed()}).
+	 */
+	public DbUnitDatasetResource(IDataSet dataSet,boolean hasMetadata,boolean streamed){
 		this.dataset=dataSet;
 		this.hasMetadata=hasMetadata;
+		this.streamed=streamed;
+	}
+	
+	/**
+	 * Create a dataset resource from the dbunit dataset of a database.
+	 * 
+	 * @param dataSet
+	 *            the dataset to reference.
+	 * @param hasMetadata
+	 *            see {@link #DbUnitDatasetResource(IDataSet, boolean)}
+	 * @param checksum
+	 *            computes the checksums of the tables in the database the dataset reads them from.
+	 */
+	public DbUnitDatasetResource(IDataSet dataSet,boolean hasMetadata,TableChecksum checksum){
+		this(dataSet,hasMetadata,false);
+		this.checksum=checksum;
 	}
 	
 	public DbUnitDatasetResource(List<ITableFilter> tableFilters, List<IColumnFilter> filters, IDataSet unFilteredDataset,boolean hasMetadata){
@@ -82,8 +131,11 @@ public class DbUnitDatasetResource implements Resource<DbUnitDatasetResource> {
 		/*
 		 * shallow copy here. Please note that this does not endanger tests data
 		 * as the dataset is NOT the original object, and a readonly interface.
+		 * A streamed dataset is still read only once, whichever copy reads it.
 		 */
-		return new DbUnitDatasetResource(this.dataset,this.hasMetadata);
+		DbUnitDatasetResource copy=new DbUnitDatasetResource(this.dataset,this.hasMetadata,this.streamed);
+		copy.checksum=this.checksum;
+		return copy;
 	}
 
 	@Override
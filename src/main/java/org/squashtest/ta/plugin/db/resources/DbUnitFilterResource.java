@@ -27,6 +27,7 @@ import org.dbunit.dataset.filter.IColumnFilter;
 import org.dbunit.dataset.filter.ITableFilter;
 import org.squashtest.ta.framework.annotations.TAResource;
 import org.squashtest.ta.framework.components.Resource;
+import org.squashtest.ta.plugin.db.library.dbunit.CompiledColumnFilter;
 import org.squashtest.ta.plugin.db.library.dbunit.FilteredColumnDataSet;
 import org.squashtest.ta.plugin.db.library.dbunit.FilteredStructureDataSet;
 import org.squashtest.ta.plugin.db.library.dbunit.YesColumnFilter;
@@ -48,7 +49,7 @@ public class DbUnitFilterResource implements Resource<DbUnitFilterResource>{
 
 	/** Table component of the filter. */
 	private ITableFilter tableFilter;
-	/** Column component of the filter. */
+	/** Column component of the filter, compiled so that all the datasets filtered by the resource share its table masks. */
 	private IColumnFilter columnFilter;
 	
 	/** Wether to hide PK or not */
@@ -66,7 +67,7 @@ public class DbUnitFilterResource implements Resource<DbUnitFilterResource>{
 	 */
 	public DbUnitFilterResource(ITableFilter filter){
 		this.tableFilter=filter;
-		this.columnFilter=new YesColumnFilter();
+		this.columnFilter=compile(new YesColumnFilter());
 	}
 	
 	/**
@@ -75,7 +76,7 @@ public class DbUnitFilterResource implements Resource<DbUnitFilterResource>{
 	 * This configuration will not hide primary keys.
 	 */
 	public DbUnitFilterResource(IColumnFilter filter){
-		this.columnFilter=filter;
+		this.columnFilter=compile(filter);
 	}
 	
 	/**
@@ -85,7 +86,7 @@ public class DbUnitFilterResource implements Resource<DbUnitFilterResource>{
 	 */
 	public DbUnitFilterResource(FilterConfiguration configuration, Properties pseudoPrimaryKeys){
 		this.tableFilter=configuration.getTableFilter();
-		this.columnFilter=configuration.getColumnFilter();
+		this.columnFilter=compile(configuration.getColumnFilter());
 		this.hidePK=configuration.hasRemovePK();
 		this.pseudoPrimaryKeys=pseudoPrimaryKeys;
 	}
@@ -100,16 +101,34 @@ public class DbUnitFilterResource implements Resource<DbUnitFilterResource>{
 			IColumnFilter columnFilter, boolean hidePK,
 			Properties pseudoPrimaryKeys) {
 		this.tableFilter = tableFilter;
-		this.columnFilter = columnFilter;
+		this.columnFilter = compile(columnFilter);
 		this.hidePK = hidePK;
 		this.pseudoPrimaryKeys = pseudoPrimaryKeys;
 	}
 
+	private static IColumnFilter compile(IColumnFilter columnFilter){
+		return columnFilter==null ? null : CompiledColumnFilter.compile(columnFilter);
+	}
+
 	@Override
 	public DbUnitFilterResource copy() {
 		return new DbUnitFilterResource(tableFilter,columnFilter,hidePK,pseudoPrimaryKeys);
 	}
 
+	/**
+	 * @return the table component of the filter, <code>null</code> if tables are not filtered.
+	 */
+	public ITableFilter getTableFilter() {
+		return tableFilter;
+	}
+
+	/**
+	 * @return the column component of the filter (primary keys hiding excluded), <code>null</code> if columns are not filtered.
+	 */
+	public IColumnFilter getColumnFilter() {
+		return columnFilter;
+	}
+
 	@Override
 	public void cleanUp() {
 		//noop (GC will be enough)
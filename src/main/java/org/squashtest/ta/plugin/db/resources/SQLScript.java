@@ -22,6 +22,8 @@ package org.squashtest.ta.plugin.db.resources;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.squashtest.ta.framework.annotations.TAResource;
@@ -30,7 +32,7 @@ import org.squashtest.ta.plugin.db.library.sql.SQLFormatUtils;
 
 /**
  * Pretty much the same than sql.query, but is not limited to one statement.
- *
+ * See {@link StreamedSQLScript} for scripts read from their file as they are executed.
  */
 
 
@@ -43,8 +45,15 @@ public class SQLScript implements Resource<SQLScript> {
 	public SQLScript(){}
 	
 	public SQLScript(List<String> script){
-		//List<String> instructions = SQLFormatUtils.splitInstructions(script);
-                List<String> instructions = SQLFormatUtils.splitSQLScript(script);
+		this(script, null);
+	}
+	
+	/**
+	 * @param script the lines of the script
+	 * @param delimiter the statement delimiter, or <code>null</code> for the default one (<code>;</code>)
+	 */
+	public SQLScript(List<String> script, String delimiter){
+                List<String> instructions = SQLFormatUtils.splitSQLScript(script, delimiter);
 		for (String instruction : instructions){
 			this.batch.add(instruction);
 		}
@@ -52,7 +61,10 @@ public class SQLScript implements Resource<SQLScript> {
 	
 	@Override
 	public SQLScript copy() {
-		return new SQLScript(getBatch());
+		//the batch is already split : it is copied as it is, so that statements split on a custom delimiter are kept apart
+		SQLScript copy = new SQLScript();
+		copy.batch.addAll(batch);
+		return copy;
 	}
 	
 
@@ -61,6 +73,14 @@ public class SQLScript implements Resource<SQLScript> {
 		
 	}
 	
+	/**
+	 * @return an iterator over the statements of the script. If it is also {@link java.io.Closeable}, it must be closed 
+	 * when the iteration is stopped before its end.
+	 */
+	public Iterator<String> statements(){
+		return Collections.unmodifiableList(batch).iterator();
+	}
+	
 	public List<String> getBatch(){
 		List<String> newBatch = new ArrayList<String>();
 		newBatch.addAll(batch);
@@ -69,8 +89,9 @@ public class SQLScript implements Resource<SQLScript> {
 	
 	public String getBatchAsString() {
 		StringBuilder builder=  new StringBuilder();
-		for (String instr : batch){
-			builder.append(instr);
+		Iterator<String> instructions = statements();
+		while (instructions.hasNext()){
+			builder.append(instructions.next());
 		}
 		return builder.toString();
 	}
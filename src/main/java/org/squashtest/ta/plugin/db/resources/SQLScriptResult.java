@@ -0,0 +1,94 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.squashtest.ta.framework.annotations.TAResource;
+import org.squashtest.ta.framework.components.Resource;
+import org.squashtest.ta.plugin.db.library.sql.BatchChunk;
+
+/**
+ * Result of the execution of a {@link SQLScript} : the timings and update counts of each JDBC batch the script was sent in.
+ */
+@TAResource("result.script.sql")
+public class SQLScriptResult implements Resource<SQLScriptResult> {
+
+	private List<BatchChunk> chunks = new ArrayList<BatchChunk>();
+
+	public SQLScriptResult(){}
+
+	public SQLScriptResult(List<BatchChunk> chunks){
+		this.chunks = new ArrayList<BatchChunk>(chunks);
+	}
+
+	@Override
+	public SQLScriptResult copy() {
+		return new SQLScriptResult(chunks);
+	}
+
+	@Override
+	public void cleanUp() {
+		//nothing
+	}
+
+	public List<BatchChunk> getChunks(){
+		return Collections.unmodifiableList(chunks);
+	}
+
+	/**
+	 * @return the number of statements executed
+	 */
+	public int getStatementCount(){
+		int count = 0;
+		for (BatchChunk chunk : chunks){
+			count += chunk.getStatementCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the update counts of all statements, in script order
+	 */
+	public int[] getUpdateCounts(){
+		int[] counts = new int[getStatementCount()];
+		int offset = 0;
+		for (BatchChunk chunk : chunks){
+			int[] chunkCounts = chunk.getUpdateCounts();
+			System.arraycopy(chunkCounts, 0, counts, offset, chunkCounts.length);
+			offset += chunkCounts.length;
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the total execution time
+	 */
+	public long getElapsedMillis(){
+		long elapsed = 0;
+		for (BatchChunk chunk : chunks){
+			elapsed += chunk.getElapsedMillis();
+		}
+		return elapsed;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.resources;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.squashtest.ta.framework.exception.InstructionRuntimeException;
+import org.squashtest.ta.plugin.db.library.sql.SQLScriptReader;
+
+/**
+ * A {@link SQLScript} backed by its source file : the statements are read lazily each time {@link #statements()} is called,
+ * so the script is never held in memory as a whole (unless {@link #getBatch()} is called).
+ */
+public class StreamedSQLScript extends SQLScript {
+
+	private final File file;
+	private final Charset charset;
+	private final String delimiter;
+
+	/**
+	 * @param file the script file
+	 * @param charset the script encoding
+	 * @param delimiter the statement delimiter, or <code>null</code> for the default one (<code>;</code>)
+	 */
+	public StreamedSQLScript(File file, Charset charset, String delimiter){
+		super();
+		this.file = file;
+		this.charset = charset;
+		this.delimiter = delimiter;
+	}
+
+	@Override
+	public StreamedSQLScript copy() {
+		//the source file is not modified, both scripts may share it
+		return new StreamedSQLScript(file, charset, delimiter);
+	}
+
+	/**
+	 * @return a {@link SQLScriptReader} over the source file. It must be closed if the iteration is stopped before its end.
+	 */
+	@Override
+	public Iterator<String> statements() {
+		try {
+			return new SQLScriptReader(new BufferedReader(new InputStreamReader(new FileInputStream(file), charset)), delimiter);
+		} catch (FileNotFoundException e) {
+			throw new InstructionRuntimeException("Sql script read I/O error on "+file.getName(), e);
+		}
+	}
+
+	/**
+	 * Loads the whole script in memory : prefer {@link #statements()}.
+	 */
+	@Override
+	public List<String> getBatch() {
+		List<String> batch = new ArrayList<String>();
+		Iterator<String> iterator = statements();
+		while (iterator.hasNext()){
+			batch.add(iterator.next());
+		}
+		return batch;
+	}
+}
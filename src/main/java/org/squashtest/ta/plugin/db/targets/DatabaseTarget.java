@@ -20,15 +20,19 @@
  */
 package org.squashtest.ta.plugin.db.targets;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
@@ -36,12 +40,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.squashtest.ta.framework.annotations.TATarget;
 import org.squashtest.ta.framework.components.Target;
+import org.squashtest.ta.framework.exception.BrokenTestException;
 import org.squashtest.ta.plugin.db.exceptions.ConnectionCloseException;
 import org.squashtest.ta.plugin.db.exceptions.ConnectionOpenException;
 import org.squashtest.ta.plugin.db.exceptions.ResultCollectionException;
 import org.squashtest.ta.plugin.db.exceptions.StatementCreationException;
 import org.squashtest.ta.plugin.db.exceptions.StatementExecutionException;
+import org.squashtest.ta.plugin.db.library.sql.BatchChunk;
 import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer;
+import org.squashtest.ta.plugin.db.library.sql.SchemaMetadataCache;
+import org.squashtest.ta.plugin.db.library.sql.ScriptPartitioner;
 
 @TATarget("database")
 public class DatabaseTarget implements Target {
@@ -53,15 +61,40 @@ public class DatabaseTarget implements Target {
 	private static final String STATEMENT_EXECUTION_FAILED = "database : statement execution failed";
 	private static final String RESULT_COLLECTION_FAILED = "database : could not gather the result set";
 	private static final String CONNECTION_CLOSE_FAILED = "database : error occured while releasing connection";
+	private static final String CONNECTION_LEAKED = "database : reclaiming the connection of a thread that died without releasing it";
 	public static final String SQUASH_TA_DATABASE_SCHEMA_KEY = "squashtest.ta.database.schema";
+	/** 
+	 * Maximum number of prepared statements kept open per connection. 0 (the default) only caches the parameterized queries 
+	 * (see {@link #execute(String, List)}), up to {@link #PARAMETERIZED_STATEMENT_CACHE_SIZE} statements.
+	 * Otherwise, plain sql strings are prepared too : a literal <code>?</code> is then taken for a parameter marker,
+	 * and executing the same sql string again closes the result set of the previous execution.
+	 */
+	public static final String SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY = "squashtest.ta.database.statement.cache.size";
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 0;
+	/** Statements kept per connection for the parameterized queries when the statement cache size is 0. */
+	static final int PARAMETERIZED_STATEMENT_CACHE_SIZE = 16;
+	/** Number of rows fetched from the database per round trip when reading a result set. 0 leaves the driver default. */
+	public static final String SQUASH_TA_DATABASE_FETCH_SIZE_KEY = "squashtest.ta.database.fetch.size";
+	/** Directory of the on-disk cache of the schema metadata, kept across test runs. Requires the schema version query. */
+	public static final String SQUASH_TA_DATABASE_METADATA_CACHE_DIR_KEY = "squashtest.ta.database.metadata.cache.dir";
+	/** Query whose result changes whenever the structure of the schema changes, for instance the last DDL time of its objects. */
+	public static final String SQUASH_TA_DATABASE_METADATA_VERSION_QUERY_KEY = "squashtest.ta.database.metadata.version.query";
+	/** Number of statements per JDBC batch when sending a script, which may be streamed, if neither a batch size nor a commit interval is given. */
+	static final int STREAMED_BATCH_SIZE = 1000;
 	
 	private DatasourceLifecycleManager manager;
 	private Properties effectiveConfiguration;
 	
 	//Instead of a threadlocal variable I prefer an explicit handle on the connections.
-	private Map<Long, Connection> threadsConnection = new HashMap<Long, Connection>(); 
+	private final ThreadConnectionRegistry threadsConnection = new ThreadConnectionRegistry();
+	
+	private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+	private int fetchSize = 0;
+	private final AtomicLong statementCacheHits = new AtomicLong();
+	private final AtomicLong statementCacheMisses = new AtomicLong();
 
 	private DatabaseMetadataExplorer metadataExplorer;
+	private SchemaMetadataCache metadataCache;
 	
 	public DatabaseTarget(){
 		super();
@@ -70,6 +103,34 @@ public class DatabaseTarget implements Target {
 	public DatabaseTarget(DatasourceLifecycleManager manager, Properties configuration){            
 		this.effectiveConfiguration=configuration;
 		this.manager=manager;
+		this.statementCacheSize=readSize(configuration, SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY, DEFAULT_STATEMENT_CACHE_SIZE);
+		this.fetchSize=readSize(configuration, SQUASH_TA_DATABASE_FETCH_SIZE_KEY, 0);
+		this.metadataCache=readMetadataCache(configuration);
+	}
+	
+	private SchemaMetadataCache readMetadataCache(Properties configuration){
+		String directory = configuration.getProperty(SQUASH_TA_DATABASE_METADATA_CACHE_DIR_KEY);
+		if (directory==null || directory.trim().isEmpty()){
+			return null;
+		}
+		String versionQuery = configuration.getProperty(SQUASH_TA_DATABASE_METADATA_VERSION_QUERY_KEY);
+		if (versionQuery==null || versionQuery.trim().isEmpty()){
+			throw new BrokenTestException("database : setting '"+SQUASH_TA_DATABASE_METADATA_CACHE_DIR_KEY+"' requires setting '"
+					+SQUASH_TA_DATABASE_METADATA_VERSION_QUERY_KEY+"', the query telling whether the cached metadata is still valid");
+		}
+		return new SchemaMetadataCache(new File(directory.trim()), versionQuery.trim());
+	}
+	
+	private int readSize(Properties configuration, String key, int defaultValue){
+		String size = configuration.getProperty(key);
+		if (size==null){
+			return defaultValue;
+		}
+		try{
+			return Math.max(0, Integer.parseInt(size.trim()));
+		}catch(NumberFormatException ex){
+			throw new BrokenTestException("database : '"+size+"' is not a valid value for setting '"+key+"', an integer is expected", ex);
+		}
 	}
 	
 	
@@ -81,18 +142,14 @@ public class DatabaseTarget implements Target {
 
 	@Override
 	public void reset() {
-		Long threadId = Thread.currentThread().getId();
-		Connection connection = threadsConnection.get(threadId);
-		if (connection!=null){
-			closeConnection(connection);
-		}
+		releaseConnection(threadsConnection.release());
 	}
 
 	@Override
 	public void cleanup() {
 		try{
-			for (Connection con : threadsConnection.values()){
-				closeConnection(con);
+			for (StatementCache con : threadsConnection.drain()){
+				releaseConnection(con);
 			}
 			synchronized(this){
 				if(metadataExplorer!=null){
@@ -100,7 +157,6 @@ public class DatabaseTarget implements Target {
 					metadataExplorer=null;
 				}
 			}
-			threadsConnection.clear();
 			manager.release();
 		}catch(Exception ex){
 			if (LOGGER.isErrorEnabled()){
@@ -118,13 +174,14 @@ public class DatabaseTarget implements Target {
 	
 	public Connection getConnection() throws ConnectionOpenException{
 		try{
-			Long threadId = Thread.currentThread().getId();
-			Connection connection = threadsConnection.get(threadId);
-			if ((connection==null) || (connection.isClosed())){
-				connection = manager.getDatasource().getConnection();
-				threadsConnection.put(threadId, connection);
+			StatementCache connection = threadsConnection.current();
+			if ((connection==null) || (connection.getConnection().isClosed())){
+				int capacity = statementCacheSize > 0 ? statementCacheSize : PARAMETERIZED_STATEMENT_CACHE_SIZE;
+				connection = new StatementCache(manager.getDatasource().getConnection(), capacity, statementCacheHits, statementCacheMisses);
+				releaseConnection(threadsConnection.register(connection));
+				closeOrphanConnections();
 			}
-			return connection;
+			return connection.getConnection();
 		}catch(SQLException ex){
 			if (LOGGER.isErrorEnabled()){
 				LOGGER.error(CONNECTION_OPEN_FAILED, ex);
@@ -133,9 +190,29 @@ public class DatabaseTarget implements Target {
 		}
 	}
 	
+	/**
+	 * Opens a connection for some work done outside of the calling thread (see {@link #executeInParallel(Iterator, ScriptPartitioner, int, int)}).
+	 * The connection is taken from the datasource and is not registered for the calling thread : the caller must close it.
+	 *
+	 * @return a new pooled connection.
+	 * @throws ConnectionOpenException if the connection could not be opened.
+	 */
+	public Connection openPooledConnection() throws ConnectionOpenException{
+		try{
+			return manager.getDatasource().getConnection();
+		}catch(SQLException ex){
+			if (LOGGER.isErrorEnabled()){
+				LOGGER.error(CONNECTION_OPEN_FAILED, ex);
+			}
+			throw new ConnectionOpenException(CONNECTION_OPEN_FAILED+". "+ex.getMessage(), ex);
+		}
+	}
+
 	protected Statement createStatement(Connection connection) throws StatementCreationException{
 		try{
-			return connection.createStatement();
+			Statement statement = connection.createStatement();
+			applyFetchSize(statement);
+			return statement;
 		}catch(SQLException ex){
 			if (LOGGER.isErrorEnabled()){
 				LOGGER.error(STATEMENT_CREATION_FAILED, ex);
@@ -144,6 +221,46 @@ public class DatabaseTarget implements Target {
 		}
 	}
 	
+	/**
+	 * @param sql the sql text to prepare.
+	 * @return a statement prepared on the connection of the current thread, taken from the statement cache if possible.
+	 * @throws StatementCreationException
+	 */
+	protected PreparedStatement prepareStatement(String sql) throws StatementCreationException{
+		getConnection();
+		try{
+			PreparedStatement statement = threadsConnection.current().prepare(sql);
+			applyFetchSize(statement);
+			return statement;
+		}catch(SQLException ex){
+			if (LOGGER.isErrorEnabled()){
+				LOGGER.error(STATEMENT_CREATION_FAILED, ex);
+			}
+			throw new StatementCreationException(STATEMENT_CREATION_FAILED+". "+ex.getMessage(), ex);
+		}
+	}
+	
+	/*
+	 * The fetch size is only a hint : drivers are free to ignore it (some need further settings, e.g. Postgres only uses
+	 * a cursor outside of auto-commit mode).
+	 */
+	private void applyFetchSize(Statement statement) throws SQLException{
+		if (fetchSize > 0){
+			statement.setFetchSize(fetchSize);
+		}
+	}
+	
+	protected boolean executePreparedStatement(PreparedStatement statement) throws StatementExecutionException{
+		try{
+			return statement.execute();
+		}catch(SQLException ex){
+			if (LOGGER.isErrorEnabled()){
+				LOGGER.error(STATEMENT_EXECUTION_FAILED, ex);
+			}
+			throw new StatementExecutionException(STATEMENT_EXECUTION_FAILED+". "+ex.getMessage(), ex);
+		}
+	}
+	
 	protected boolean executeStatement(Statement statement, String sql) throws StatementExecutionException{
 		try{
 			return statement.execute(sql);
@@ -156,27 +273,123 @@ public class DatabaseTarget implements Target {
 	}
 	
 	protected int[] executeBatch(Statement statement, List<String> batch){
-
+		return executeBatch(statement, batch.iterator());
+	}
+	
+	protected int[] executeBatch(Statement statement, Iterator<String> batch){
+		return updateCounts(executeBatch(statement, batch, 0, 0));
+	}
+	
+	/**
+	 * Executes the statements in JDBC batches of at most <code>batchSize</code> statements, and commits every <code>commitInterval</code>
+	 * statements (at the end of the batch reaching that count) and at the end. If the execution fails, the work done since the 
+	 * last commit is rolled back.
+	 * 
+	 * @param batchSize the maximum number of statements per JDBC batch. If 0 or less, the commit interval is used, and if it is
+	 * 0 or less too, {@link #STREAMED_BATCH_SIZE} : the script may be streamed, its statements are never all held by the driver.
+	 * @param commitInterval the number of statements between two commits. If 0 or less, the transaction is committed at the end only.
+	 * @return the outcome of each batch
+	 */
+	protected List<BatchChunk> executeBatch(Statement statement, Iterator<String> batch, int batchSize, int commitInterval){
+		
+		int chunkSize = batchSize > 0 ? batchSize : commitInterval > 0 ? commitInterval : STREAMED_BATCH_SIZE;
+		List<BatchChunk> chunks = new ArrayList<BatchChunk>();
+		Connection connection = getConnection();
+		int first = 0;
+		int pending = 0;
+		int uncommitted = 0;
+		int committed = 0;
+		
 		try{
-			Connection connection = getConnection();
 			connection.setAutoCommit(false);
 			
-			for (String instruction : batch){
+			while (batch.hasNext()){
+				String instruction = batch.next();
 				LOGGER.debug("execution of the query: "+instruction);
 				statement.addBatch(instruction);
+				pending++;
+				if (pending >= chunkSize){
+					uncommitted += pending;
+					boolean commit = commitInterval > 0 && uncommitted >= commitInterval;
+					chunks.add(executeChunk(connection, statement, first, commit));
+					if (commit){
+						committed = first + pending;
+						uncommitted = 0;
+					}
+					first += pending;
+					pending = 0;
+				}
 			}
 			
-			int res[] = statement.executeBatch();
+			if (pending > 0 || chunks.isEmpty()){
+				chunks.add(executeChunk(connection, statement, first, true));
+			}else if (uncommitted > 0){
+				long start = System.nanoTime();
+				connection.commit();
+				BatchChunk last = chunks.remove(chunks.size()-1);
+				chunks.add(new BatchChunk(last.getFirstStatement(), last.getUpdateCounts(), last.getElapsedMillis()+elapsedMillis(start), true));
+			}
 			
+			return chunks;
+		}catch(SQLException ex){
+			String message = STATEMENT_EXECUTION_FAILED+" in the batch starting at statement #"+first+", "+committed+" statements were committed before the failure";
+			if (LOGGER.isErrorEnabled()){
+				LOGGER.error(message, ex);
+			}
+			rollback(connection);
+			throw new StatementExecutionException(message+". "+ex.getMessage(), ex);
+		}finally{
+			restoreAutoCommit(connection);
+		}
+	}
+	
+	private BatchChunk executeChunk(Connection connection, Statement statement, int first, boolean commit) throws SQLException{
+		long start = System.nanoTime();
+		int[] counts = statement.executeBatch();
+		if (commit){
 			connection.commit();
+		}
+		BatchChunk chunk = new BatchChunk(first, counts, elapsedMillis(start), commit);
+		LOGGER.debug("database : executed batch of {}", chunk);
+		return chunk;
+	}
+	
+	private static long elapsedMillis(long nanoStart){
+		return (System.nanoTime() - nanoStart) / 1000000L;
+	}
+	
+	private static int[] updateCounts(List<BatchChunk> chunks){
+		int total = 0;
+		for (BatchChunk chunk : chunks){
+			total += chunk.getStatementCount();
+		}
+		int[] counts = new int[total];
+		int offset = 0;
+		for (BatchChunk chunk : chunks){
+			int[] chunkCounts = chunk.getUpdateCounts();
+			System.arraycopy(chunkCounts, 0, counts, offset, chunkCounts.length);
+			offset += chunkCounts.length;
+		}
+		return counts;
+	}
+	
+	private void rollback(Connection connection){
+		try{
+			connection.rollback();
+		}catch(SQLException ex){
+			if (LOGGER.isWarnEnabled()){
+				LOGGER.warn("database : rollback failed", ex);
+			}
+		}
+	}
+	
+	private void restoreAutoCommit(Connection connection){
+		try{
 			connection.setAutoCommit(true);
-			
-			return res;
 		}catch(SQLException ex){
-			if (LOGGER.isErrorEnabled()){
-				LOGGER.error(STATEMENT_EXECUTION_FAILED, ex);
+			if (LOGGER.isWarnEnabled()){
+				LOGGER.warn("database : failed to restore the auto-commit mode", ex);
 			}
-			throw new StatementExecutionException(STATEMENT_EXECUTION_FAILED+". "+ex.getMessage(), ex);
 		}
 	}
 	
@@ -203,11 +416,52 @@ public class DatabaseTarget implements Target {
 		}
 	}
 
+	/*
+	 * The statements which are not cached are closed once their result set has been read, or when the connection is 
+	 * released : the result set returned by execute() may still be read after later executions.
+	 */
+	private void trackStatement(Statement statement, ResultSet resultSet){
+		StatementCache connection = threadsConnection.current();
+		if (connection!=null){
+			connection.handedOut(statement, resultSet);
+		}
+	}
+	
+	private void closeFinishedStatements(){
+		StatementCache connection = threadsConnection.current();
+		if (connection!=null){
+			connection.closeFinished();
+		}
+	}
+
+	private void releaseConnection(StatementCache connection){
+		if (connection!=null){
+			connection.close();
+			closeConnection(connection.getConnection());
+		}
+	}
+	
+	/**
+	 * Connections are registered per thread and only released by {@link #reset()} or {@link #cleanup()} :
+	 * if a thread died before that, its connection would stay open until the end of the campaign.
+	 */
+	private void closeOrphanConnections(){
+		for (StatementCache orphan : threadsConnection.reclaimOrphans()){
+			if (LOGGER.isWarnEnabled()){
+				LOGGER.warn(CONNECTION_LEAKED);
+			}
+			releaseConnection(orphan);
+		}
+	}
 	
 	/**
 	 * <p>Will execute a sql string and return a {@link ResultSet} if the given sql string if it was actually a query (select), or null
 	 * for other operations (insert, update etc).</p>
 	 * <p>The sql string will be executed with no flag whatsoever : if you need finer tuning you should just get the connection and do the job yourself.</p> 
+	 * <p>When the statement cache is enabled (see {@link #SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY}), the statement is prepared once per connection 
+	 * and reused by later executions of the same sql string. Executing the same sql string again therefore closes the {@link ResultSet} 
+	 * returned by the previous execution. Otherwise, the statement is closed by the first execution following the closing of 
+	 * the {@link ResultSet}, or when the connection is released.</p>
 	 * 
 	 * @param sqlString : a preconfigured, ready to use sql string
 	 * @return ResultSet : grouping the result
@@ -223,14 +477,31 @@ public class DatabaseTarget implements Target {
 																 ConnectionCloseException{
 		LOGGER.debug("execution of the query: "+sqlString);
 		Connection connection = getConnection();		
+		closeFinishedStatements();
 		
-		Statement statement = createStatement(connection);				
-		boolean res = executeStatement(statement, sqlString);	
-		
-		if(res){
-			return collectResults(statement);
-		}else{
-			return null;
+		Statement statement = null;
+		ResultSet result = null;
+		try{
+			boolean res;
+			if (statementCacheSize > 0){
+				PreparedStatement prepared = prepareStatement(sqlString);
+				statement = prepared;
+				res = executePreparedStatement(prepared);
+			}else{
+				statement = createStatement(connection);				
+				res = executeStatement(statement, sqlString);	
+			}
+			if(res){
+				result = collectResults(statement);
+			}
+			return result;
+		}finally{
+			if (statement!=null){
+				trackStatement(statement, result);
+			}
+			if (StructureChangeWatcher.changesStructure(sqlString)){
+				invalidateMetadata();
+			}
 		}
 		
 		//note that we don't close the connection here. Open connections will be closed when the engine call reset() or cleanup()
@@ -238,18 +509,153 @@ public class DatabaseTarget implements Target {
 	}
 	
 	
+	/**
+	 * Executes a parameterized sql query : the query is prepared (through the statement cache) and the parameters are bound to it.
+	 * The statement cache is used even when its size is 0, so executing the same query again reuses the statement and closes
+	 * the {@link ResultSet} returned by the previous execution. Like {@link #execute(String)}, the connection is not closed.
+	 * 
+	 * @param sqlString the sql query, with <code>?</code> parameter markers.
+	 * @param parameters the values to bind, in parameter index order. <code>null</code> values are bound as sql NULL.
+	 * @return the {@link ResultSet} if any, or <code>null</code> if the query did not return one.
+	 */
+	public ResultSet execute(String sqlString, List<Object> parameters) throws ConnectionOpenException, 
+																 StatementCreationException, 
+																 StatementExecutionException,
+																 ResultCollectionException, 
+																 ConnectionCloseException{
+		LOGGER.debug("execution of the query: "+sqlString+" with parameters "+parameters);
+		getConnection();
+		closeFinishedStatements();
+		PreparedStatement statement = prepareStatement(sqlString);
+		ResultSet result = null;
+		try{
+			bindParameters(statement, parameters);
+			if(executePreparedStatement(statement)){
+				result = collectResults(statement);
+			}
+			return result;
+		}finally{
+			trackStatement(statement, result);
+		}
+		
+		//note that we don't close the connection here. Open connections will be closed when the engine call reset() or cleanup()
+	}
+	
+	protected void bindParameters(PreparedStatement statement, List<Object> parameters) throws StatementExecutionException{
+		try{
+			int index = 1;
+			for (Object parameter : parameters){
+				if (parameter==null){
+					statement.setNull(index, Types.NULL);
+				}else{
+					statement.setObject(index, parameter);
+				}
+				index++;
+			}
+		}catch(SQLException ex){
+			if (LOGGER.isErrorEnabled()){
+				LOGGER.error(STATEMENT_EXECUTION_FAILED, ex);
+			}
+			throw new StatementExecutionException(STATEMENT_EXECUTION_FAILED+". "+ex.getMessage(), ex);
+		}
+	}
+	
 	public int[] execute(List<String> batch) throws ConnectionOpenException,
                                                         StatementCreationException,
                                                         StatementExecutionException,
                                                         ResultCollectionException,
                                                         ConnectionCloseException{
+		return execute(batch.iterator());
+	}
+	
+	/**
+	 * Same as {@link #execute(List)}, the statements being consumed as they come : this is meant for scripts streamed from their source.
+	 */
+	public int[] execute(Iterator<String> batch) throws ConnectionOpenException,
+                                                        StatementCreationException,
+                                                        StatementExecutionException,
+                                                        ResultCollectionException,
+                                                        ConnectionCloseException{
 		Connection connection = getConnection();		
+		closeFinishedStatements();
 		Statement statement = createStatement(connection);				
-		return executeBatch(statement, batch);	
+		StructureChangeWatcher statements = new StructureChangeWatcher(batch);
+		try{
+			return executeBatch(statement, statements);	
+		}finally{
+			trackStatement(statement, null);
+			invalidateMetadataIfChanged(statements);
+		}
 
 		//note that we don't close the connection here. Open connections will be closed when the engine call reset() or cleanup()
 	}
+	
+	/**
+	 * Executes the statements in chunks, see {@link #executeBatch(Statement, Iterator, int, int)}.
+	 * 
+	 * @param batch the statements
+	 * @param batchSize the maximum number of statements per JDBC batch
+	 * @param commitInterval the number of statements between two commits
+	 * @return the outcome of each chunk
+	 */
+	public List<BatchChunk> execute(Iterator<String> batch, int batchSize, int commitInterval) throws ConnectionOpenException,
+                                                        StatementCreationException,
+                                                        StatementExecutionException,
+                                                        ResultCollectionException,
+                                                        ConnectionCloseException{
+		Connection connection = getConnection();		
+		closeFinishedStatements();
+		Statement statement = createStatement(connection);				
+		StructureChangeWatcher statements = new StructureChangeWatcher(batch);
+		try{
+			return executeBatch(statement, statements, batchSize, commitInterval);	
+		}finally{
+			trackStatement(statement, null);
+			invalidateMetadataIfChanged(statements);
+		}
 
+		//note that we don't close the connection here. Open connections will be closed when the engine call reset() or cleanup()
+	}
+	
+	/**
+	 * Executes the statements of a script concurrently : the partitions found by the partitioner between two barrier statements
+	 * run at the same time, each one on its own connection taken from the datasource and in its own transaction. Barrier statements
+	 * run on the connection of the calling thread.
+	 * 
+	 * @param batch the statements
+	 * @param partitioner assigns the statements to partitions
+	 * @param connections the maximum number of partitions running at the same time. The datasource pool must allow that many 
+	 * connections on top of the one of the calling thread.
+	 * @param batchSize the maximum number of statements per JDBC batch, 0 or less for no limit
+	 * @return the outcome of each chunk, in script order
+	 */
+	public List<BatchChunk> executeInParallel(Iterator<String> batch, ScriptPartitioner partitioner, int connections, int batchSize) throws ConnectionOpenException,
+                                                        StatementCreationException,
+                                                        StatementExecutionException,
+                                                        ResultCollectionException,
+                                                        ConnectionCloseException{
+		StructureChangeWatcher statements = new StructureChangeWatcher(batch);
+		try{
+			return new ParallelScriptExecutor(this, manager.getDatasource(), connections, batchSize).execute(statements, partitioner);
+		}finally{
+			invalidateMetadataIfChanged(statements);
+		}
+	}
+
+	/**
+	 * @return the number of statements found in the statement cache, over all connections of this target.
+	 */
+	public long getStatementCacheHits(){
+		return statementCacheHits.get();
+	}
+	
+	/**
+	 * @return the number of statements that had to be prepared because they were not in the statement cache, over all connections of this target.
+	 */
+	public long getStatementCacheMisses(){
+		return statementCacheMisses.get();
+	}
+	
 	/**
 	 * Get the list of primary keys for a table. If the table has a composite
 	 * key, the list is ordered like the columns in the composite key, as far as
@@ -267,11 +673,36 @@ public class DatabaseTarget implements Target {
 			 */
 			Connection connection = manager.getDatasource().getConnection();
 			DatabaseMetaData metadata = connection.getMetaData();
-			metadataExplorer=new DatabaseMetadataExplorer(metadata, getConfiguration().getProperty(SQUASH_TA_DATABASE_SCHEMA_KEY));
+			metadataExplorer=new DatabaseMetadataExplorer(metadata, getConfiguration().getProperty(SQUASH_TA_DATABASE_SCHEMA_KEY), metadataCache);
 		}
 		return metadataExplorer;
 	}
 	
+	/**
+	 * @return <code>true</code> if the metadata of the schema is kept on disk across test runs.
+	 */
+	public boolean hasMetadataCache(){
+		return metadataCache != null;
+	}
+	
+	/**
+	 * Forgets the metadata cached by the {@link #getMetadataExplorer() metadata explorer}, to be used when the structure of 
+	 * the database changed. The metadata is read again when next requested. This is done by the target itself after it 
+	 * executed a <code>CREATE</code>, <code>ALTER</code>, <code>DROP</code> or <code>RENAME</code> statement.
+	 */
+	public synchronized void invalidateMetadata(){
+		if (metadataExplorer != null) {
+			metadataExplorer.invalidate();
+		}
+	}
+	
+	private void invalidateMetadataIfChanged(StructureChangeWatcher statements){
+		if (statements.hasChanged()){
+			LOGGER.debug("database : the script changed the structure of the database, its metadata will be read again");
+			invalidateMetadata();
+		}
+	}
+	
 	//We try a get connection
 	private boolean testConnection() {
 		try{
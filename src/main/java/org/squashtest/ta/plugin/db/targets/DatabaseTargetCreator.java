@@ -43,8 +43,6 @@ import org.squashtest.ta.framework.exception.BrokenTestException;
 import org.squashtest.ta.plugin.commons.library.ShebangCheck;
 import org.squashtest.ta.plugin.db.targets.DatabaseTarget.DatasourceLifecycleManager;
 
-import com.mchange.v2.c3p0.DataSources;
-
 @TATargetCreator("target.creator.database")
 public class DatabaseTargetCreator extends FileBasedCreator implements TargetCreator<DatabaseTarget> {
 
@@ -62,6 +60,9 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 	private static final String DATABASE_POOL_CONF_PREFIX = "squashtest.ta.database.pool.";
 	public static final String DATABASE_POOL_CONF_PATTERN = "squashtest\\.ta\\.database\\.pool\\.((?!(user)|(password)).*)";
 	
+	/** Selects the connection pool implementation : 'c3p0' (default) or 'hikari'. Not forwarded to the pool itself. */
+	public static final String DATABASE_POOL_PROVIDER_KEY = "squashtest.ta.database.pool.provider";
+	
 
 	
 	
@@ -72,7 +73,7 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 	private boolean hasCorrectShebang;
 	
 	public DatabaseTargetCreator(){
-		helper.setKeys(DATABASE_DRIVER_KEY, DATABASE_URL_KEY, DATABASE_USERNAME_KEY, DATABASE_PASSWORD_KEY, DatabaseTarget.SQUASH_TA_DATABASE_SCHEMA_KEY);
+		helper.setKeys(DATABASE_DRIVER_KEY, DATABASE_URL_KEY, DATABASE_USERNAME_KEY, DATABASE_PASSWORD_KEY, DatabaseTarget.SQUASH_TA_DATABASE_SCHEMA_KEY, DatabaseTarget.SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY, DatabaseTarget.SQUASH_TA_DATABASE_FETCH_SIZE_KEY, DatabaseTarget.SQUASH_TA_DATABASE_METADATA_CACHE_DIR_KEY, DatabaseTarget.SQUASH_TA_DATABASE_METADATA_VERSION_QUERY_KEY);
 		helper.setKeysRegExp(DATABASE_POOL_CONF_PATTERN);
 	}
 	
@@ -109,8 +110,9 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 		//get the properties for the DatasourceLifecycleManager that will manage the datasource under the hood
 		Properties basicProperties = extractBasicProperties(properties);
 		Properties poolingProperties = extractPoolingProperties(properties);
+		DatasourcePoolProvider provider = DatasourcePoolProvider.forName(properties.getProperty(DATABASE_POOL_PROVIDER_KEY));
 		
-		DatasourceLifecycleManager manager = new LocallyCreatedDatasourceManager(basicProperties, poolingProperties);
+		DatasourceLifecycleManager manager = new LocallyCreatedDatasourceManager(basicProperties, poolingProperties, provider);
 		
 		//now get anonymized properties for the front Target that will use it
 		Properties anonymised = helper.anonymize(properties, 1, DATABASE_USERNAME_KEY, DATABASE_PASSWORD_KEY);
@@ -170,7 +172,7 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 		
 		while(keys.hasMoreElements()){
 			String key = keys.nextElement();
-			if (! basicKeys.contains(key)){
+			if (key.startsWith(DATABASE_POOL_CONF_PREFIX) && ! DATABASE_POOL_PROVIDER_KEY.equals(key)){
 				String strippedKey = stripKeyPrefix(key);
 				pooling.setProperty(strippedKey, effective.getProperty(key));
 			}
@@ -218,10 +220,12 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 		private DataSource datasource;
 		private Properties basicProperties;
 		private Properties poolProperties;
+		private DatasourcePoolProvider provider;
 		
-		LocallyCreatedDatasourceManager(Properties basicProperties, Properties poolProperties){
+		LocallyCreatedDatasourceManager(Properties basicProperties, Properties poolProperties, DatasourcePoolProvider provider){
 			this.basicProperties=basicProperties;
 			this.poolProperties=poolProperties;
+			this.provider=provider;
 		}
 		
 		@Override
@@ -230,11 +234,7 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 
 				loadDrivers();
 				
-				DataSource source = createBasicDataSource();
-				
-				source = makePoolWith(source);
-				
-				datasource=source;
+				datasource = createPool();
 				
 			} catch (SQLException e) {
 				LOGGER.error(INIT_ERROR_MESSAGE, e);
@@ -242,22 +242,19 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 			}
 		}
 	
-		private DataSource createBasicDataSource() throws SQLException{
+		private DataSource createPool() throws SQLException{
 			
 			String jdbcUrl = basicProperties.getProperty(DATABASE_URL_KEY);
 			String username = basicProperties.getProperty(DATABASE_USERNAME_KEY);
 			String password = basicProperties.getProperty(DATABASE_PASSWORD_KEY);
 			password = (password==null) ? "" : password;
 			
-			if (username!=null){
-				return DataSources.unpooledDataSource(jdbcUrl, username, password);
-			}else{
-				return DataSources.unpooledDataSource(jdbcUrl);
-			}
+			return provider.createPool(jdbcUrl, username, password, poolProperties);
 			
 		}
-		private DataSource makePoolWith(DataSource unpooledDS) throws SQLException{
-			return DataSources.pooledDataSource(unpooledDS, poolProperties);
+		
+		DatasourcePoolProvider getProvider(){
+			return provider;
 		}
 		
 		
@@ -286,7 +283,7 @@ public class DatabaseTargetCreator extends FileBasedCreator implements TargetCre
 		@Override
 		public final void release() {
 			try{
-				DataSources.destroy(datasource);
+				provider.destroy(datasource);
 				datasource=null;
 			}catch(SQLException ex){
 				LOGGER.error(RELEASE_ERROR_MESSAGE, ex);
@@ -0,0 +1,107 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.targets;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.squashtest.ta.framework.exception.BrokenTestException;
+
+import com.mchange.v2.c3p0.DataSources;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The connection pool implementations a {@link DatabaseTarget} can be backed by. The implementation is chosen through
+ * the {@link DatabaseTargetCreator#DATABASE_POOL_PROVIDER_KEY} setting, the remaining
+ * <code>squashtest.ta.database.pool.*</code> settings are handed over to the selected pool.
+ */
+enum DatasourcePoolProvider {
+
+	/**
+	 * The historical C3P0 pool. Pool settings are C3P0 properties (eg <code>maxPoolSize</code>).
+	 */
+	C3P0(){
+		@Override
+		DataSource createPool(String jdbcUrl, String username, String password, Properties poolProperties) throws SQLException {
+			DataSource unpooled;
+			if (username!=null){
+				unpooled = DataSources.unpooledDataSource(jdbcUrl, username, password);
+			}else{
+				unpooled = DataSources.unpooledDataSource(jdbcUrl);
+			}
+			return DataSources.pooledDataSource(unpooled, poolProperties);
+		}
+
+		@Override
+		void destroy(DataSource pool) throws SQLException {
+			DataSources.destroy(pool);
+		}
+	},
+	/**
+	 * The HikariCP pool, with a much lower connection checkout overhead. Pool settings are HikariCP properties (eg <code>maximumPoolSize</code>).
+	 */
+	HIKARI(){
+		@Override
+		DataSource createPool(String jdbcUrl, String username, String password, Properties poolProperties) throws SQLException {
+			HikariConfig config;
+			try{
+				config = new HikariConfig(poolProperties);
+			}catch(RuntimeException ex){
+				throw new SQLException("Invalid HikariCP pool configuration : "+ex.getMessage(), ex);
+			}
+			config.setJdbcUrl(jdbcUrl);
+			if (username!=null){
+				config.setUsername(username);
+				config.setPassword(password);
+			}
+			return new HikariDataSource(config);
+		}
+
+		@Override
+		void destroy(DataSource pool) {
+			if (pool!=null){
+				((HikariDataSource) pool).close();
+			}
+		}
+	};
+
+	abstract DataSource createPool(String jdbcUrl, String username, String password, Properties poolProperties) throws SQLException;
+
+	abstract void destroy(DataSource pool) throws SQLException;
+
+	/**
+	 * @param name the provider name, case insensitive. If <code>null</code> or empty, C3P0 is used.
+	 * @return the matching provider.
+	 */
+	static DatasourcePoolProvider forName(String name){
+		if (name==null || name.trim().isEmpty()){
+			return C3P0;
+		}
+		try{
+			return valueOf(name.trim().toUpperCase());
+		}catch(IllegalArgumentException ex){
+			throw new BrokenTestException("database : unknown connection pool provider '"+name+"', should be one of 'c3p0' or 'hikari'", ex);
+		}
+	}
+}
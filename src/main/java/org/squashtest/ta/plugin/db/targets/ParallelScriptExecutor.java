@@ -0,0 +1,302 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.targets;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.exceptions.StatementExecutionException;
+import org.squashtest.ta.plugin.db.library.sql.BatchChunk;
+import org.squashtest.ta.plugin.db.library.sql.ScriptPartitioner;
+
+/**
+ * <p>Executes a script whose statements are split in partitions by a {@link ScriptPartitioner}. The partitions found between
+ * two barrier statements form a segment : they run concurrently, each one on its own pooled connection and in its own transaction.
+ * Barrier statements run on the connection of the calling thread, once the previous segment is done.</p>
+ * 
+ * <p>Statements are handed to their partition as they are read : a partition starts as soon as its first statement is read and
+ * a connection is free, and sends its statements in batches of <code>batchSize</code> (or {@link DatabaseTarget#STREAMED_BATCH_SIZE}
+ * if no batch size is given), so that the statements of a segment are not held in memory while it runs. Only the statements 
+ * of partitions waiting for a connection, and the barrier statements, are buffered.</p>
+ * 
+ * <p>If partitions of a segment fail, the others are still committed, and the failure reported is the one of the failed partition 
+ * coming first in the script, so that the outcome does not depend on thread scheduling.</p>
+ */
+class ParallelScriptExecutor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParallelScriptExecutor.class);
+
+	private static final String STATEMENT_EXECUTION_FAILED = "database : statement execution failed";
+
+	private static final Comparator<BatchChunk> SCRIPT_ORDER = new Comparator<BatchChunk>() {
+		@Override
+		public int compare(BatchChunk o1, BatchChunk o2) {
+			return Integer.compare(o1.getFirstStatement(), o2.getFirstStatement());
+		}
+	};
+
+	private final DatabaseTarget target;
+	private final DataSource datasource;
+	private final int connections;
+	private final int batchSize;
+
+	/**
+	 * @param target the target, used for barrier statements
+	 * @param datasource the datasource partitions take their connections from
+	 * @param connections the maximum number of partitions running at the same time
+	 * @param batchSize the maximum number of statements per JDBC batch, 0 or less for the default size
+	 */
+	ParallelScriptExecutor(DatabaseTarget target, DataSource datasource, int connections, int batchSize){
+		this.target = target;
+		this.datasource = datasource;
+		this.connections = connections;
+		this.batchSize = batchSize;
+	}
+
+	List<BatchChunk> execute(Iterator<String> script, ScriptPartitioner partitioner){
+		List<BatchChunk> chunks = new ArrayList<BatchChunk>();
+		Map<String, Partition> segment = new LinkedHashMap<String, Partition>();
+		List<String> barrier = new ArrayList<String>();
+		int barrierStart = 0;
+		int index = 0;
+
+		ExecutorService pool = Executors.newFixedThreadPool(connections, new WorkerFactory());
+		try{
+			while (script.hasNext()){
+				String statement = script.next();
+				String key = partitioner.partitionOf(statement);
+				if (key == null){
+					if (!segment.isEmpty()){
+						chunks.addAll(completeSegment(segment));
+						segment.clear();
+					}
+					if (barrier.isEmpty()){
+						barrierStart = index;
+					}
+					barrier.add(statement);
+				}else{
+					if (!barrier.isEmpty()){
+						chunks.addAll(executeBarrier(barrier, barrierStart));
+						barrier.clear();
+					}
+					Partition partition = segment.get(key);
+					if (partition == null){
+						partition = new Partition(key, index);
+						partition.start(pool);
+						segment.put(key, partition);
+					}
+					partition.add(index, statement);
+				}
+				index++;
+			}
+			if (!segment.isEmpty()){
+				chunks.addAll(completeSegment(segment));
+			}
+			if (!barrier.isEmpty()){
+				chunks.addAll(executeBarrier(barrier, barrierStart));
+			}
+			return chunks;
+		}finally{
+			pool.shutdownNow();
+		}
+	}
+
+	private List<BatchChunk> executeBarrier(List<String> barrier, int barrierStart){
+		List<BatchChunk> chunks = new ArrayList<BatchChunk>();
+		for (BatchChunk chunk : target.execute(barrier.iterator(), batchSize, 0)){
+			chunks.add(new BatchChunk(barrierStart + chunk.getFirstStatement(), chunk.getUpdateCounts(), chunk.getElapsedMillis(), chunk.isCommitted()));
+		}
+		return chunks;
+	}
+
+	/*
+	 * Tells the partitions of the segment that all their statements were read, and waits for them.
+	 */
+	private List<BatchChunk> completeSegment(Map<String, Partition> segment){
+		LOGGER.debug("database : completing {} script partitions on up to {} connections", segment.size(), connections);
+		for (Partition partition : segment.values()){
+			partition.end();
+		}
+
+		List<BatchChunk> chunks = new ArrayList<BatchChunk>();
+		Partition firstFailed = null;
+		Throwable firstFailure = null;
+		int failures = 0;
+		for (Partition partition : segment.values()){
+			try{
+				chunks.addAll(partition.result.get());
+			}catch(ExecutionException ex){
+				failures++;
+				if (LOGGER.isErrorEnabled()){
+					LOGGER.error(STATEMENT_EXECUTION_FAILED+" in script partition '"+partition.key+"'", ex.getCause());
+				}
+				//partitions are in script order : the first failure found is the first one in the script
+				if (firstFailed == null){
+					firstFailed = partition;
+					firstFailure = ex.getCause();
+				}
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				throw new StatementExecutionException(STATEMENT_EXECUTION_FAILED+" : interrupted while waiting for the script partitions", ex);
+			}
+		}
+		if (firstFailed != null){
+			throw new StatementExecutionException(STATEMENT_EXECUTION_FAILED+" in script partition '"+firstFailed.key+"' (starting at statement #"
+					+firstFailed.firstStatement+"). "+failures+" of "+segment.size()+" partitions failed and were rolled back, the other ones were committed. "
+					+firstFailure.getMessage(), firstFailure);
+		}
+		Collections.sort(chunks, SCRIPT_ORDER);
+		return chunks;
+	}
+
+	/*
+	 * Runs on a pooled connection, taking the statements of the partition as they are read. The chunks of a partition 
+	 * are not contiguous in the script : they are identified by the index of their first statement.
+	 */
+	private List<BatchChunk> executePartition(BlockingQueue<IndexedStatement> statements) throws SQLException, InterruptedException{
+		List<BatchChunk> chunks = new ArrayList<BatchChunk>();
+		int chunkSize = batchSize > 0 ? batchSize : DatabaseTarget.STREAMED_BATCH_SIZE;
+		Connection connection = datasource.getConnection();
+		try{
+			connection.setAutoCommit(false);
+			Statement statement = connection.createStatement();
+			try{
+				int first = -1;
+				int pending = 0;
+				long start = System.nanoTime();
+				IndexedStatement next = statements.take();
+				while (next != IndexedStatement.END){
+					if (pending == 0){
+						first = next.index;
+						start = System.nanoTime();
+					}
+					statement.addBatch(next.statement);
+					pending++;
+					next = statements.take();
+					boolean last = next == IndexedStatement.END;
+					if (pending >= chunkSize || last){
+						int[] counts = statement.executeBatch();
+						if (last){
+							connection.commit();
+						}
+						chunks.add(new BatchChunk(first, counts, (System.nanoTime() - start) / 1000000L, last));
+						pending = 0;
+					}
+				}
+				return chunks;
+			}catch(SQLException ex){
+				rollback(connection);
+				throw ex;
+			}finally{
+				statement.close();
+			}
+		}finally{
+			connection.close();
+		}
+	}
+
+	private void rollback(Connection connection){
+		try{
+			connection.rollback();
+		}catch(SQLException ex){
+			if (LOGGER.isWarnEnabled()){
+				LOGGER.warn("database : rollback failed", ex);
+			}
+		}
+	}
+
+	private static final class IndexedStatement{
+		/** marks the end of the statements of a partition */
+		private static final IndexedStatement END = new IndexedStatement(-1, null);
+
+		private final int index;
+		private final String statement;
+
+		private IndexedStatement(int index, String statement){
+			this.index = index;
+			this.statement = statement;
+		}
+	}
+
+	private final class Partition{
+		private final String key;
+		private final int firstStatement;
+		private final BlockingQueue<IndexedStatement> statements = new LinkedBlockingQueue<IndexedStatement>();
+		private Future<List<BatchChunk>> result;
+
+		private Partition(String key, int firstStatement){
+			this.key = key;
+			this.firstStatement = firstStatement;
+		}
+
+		private void start(ExecutorService pool){
+			result = pool.submit(new Callable<List<BatchChunk>>() {
+				@Override
+				public List<BatchChunk> call() throws SQLException, InterruptedException {
+					return executePartition(statements);
+				}
+			});
+		}
+
+		private void add(int index, String statement){
+			//once failed, the partition reads no more statements
+			if (!result.isDone()){
+				statements.add(new IndexedStatement(index, statement));
+			}
+		}
+
+		private void end(){
+			statements.add(IndexedStatement.END);
+		}
+	}
+
+	private static final class WorkerFactory implements ThreadFactory{
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "database-script-"+count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.targets;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.squashtest.ta.plugin.db.library.sql.SQLFormatUtils;
+
+/**
+ * Bounded LRU cache of the {@link PreparedStatement}s of one connection, keyed by normalized sql text.
+ * Statements are closed when they are evicted and when the cache is closed.
+ * <p>The cache also tracks the statements of the connection handed out without being cached (see {@link #handedOut(Statement, ResultSet)}) :
+ * they are closed once their result set is closed, or when the cache is closed.</p>
+ * <p>Only the thread owning the connection uses the cache, the locking is there for {@link DatabaseTarget#cleanup()}
+ * which may close it from another thread.</p>
+ */
+class StatementCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StatementCache.class);
+
+	private final Connection connection;
+	private final int capacity;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final Map<String, PreparedStatement> statements;
+	private final List<UncachedStatement> uncached = new ArrayList<UncachedStatement>();
+
+	/**
+	 * @param connection the connection the statements are prepared on.
+	 * @param capacity the maximum number of statements kept open.
+	 * @param hits counter incremented when a statement is found in the cache.
+	 * @param misses counter incremented when a statement has to be prepared.
+	 */
+	StatementCache(Connection connection, final int capacity, AtomicLong hits, AtomicLong misses){
+		this.connection = connection;
+		this.capacity = capacity;
+		this.hits = hits;
+		this.misses = misses;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				boolean evict = size() > capacity;
+				if (evict){
+					closeStatement(eldest.getValue());
+				}
+				return evict;
+			}
+		};
+	}
+
+	Connection getConnection(){
+		return connection;
+	}
+
+	/**
+	 * @param sql the sql text.
+	 * @return a statement prepared for this sql text, reused from the cache if possible.
+	 * @throws SQLException if the statement could not be prepared.
+	 */
+	synchronized PreparedStatement prepare(String sql) throws SQLException{
+		String key = SQLFormatUtils.normalizeWhitespaces(sql);
+		PreparedStatement statement = statements.get(key);
+		if (statement != null && !statement.isClosed()){
+			hits.incrementAndGet();
+			statement.clearParameters();
+			return statement;
+		}
+		misses.incrementAndGet();
+		statement = connection.prepareStatement(sql);
+		if (capacity > 0){
+			statements.put(key, statement);
+		}
+		return statement;
+	}
+
+	synchronized int size(){
+		return statements.size();
+	}
+
+	/**
+	 * Records a statement that has been executed : if it is not cached, it is closed by {@link #closeFinished()} once its 
+	 * result set is closed, or by {@link #close()}.
+	 * @param statement the statement.
+	 * @param resultSet the result set returned by the execution, <code>null</code> if none.
+	 */
+	synchronized void handedOut(Statement statement, ResultSet resultSet){
+		if (!statements.containsValue(statement)){
+			uncached.add(new UncachedStatement(statement, resultSet));
+		}
+	}
+
+	/**
+	 * Closes the uncached statements whose result set has been closed or which returned none. The others are still read by 
+	 * their caller.
+	 */
+	synchronized void closeFinished(){
+		for (Iterator<UncachedStatement> handed = uncached.iterator(); handed.hasNext();){
+			UncachedStatement statement = handed.next();
+			if (statement.isFinished()){
+				handed.remove();
+				closeStatement(statement.statement);
+			}
+		}
+	}
+
+	/**
+	 * Closes all cached and uncached statements. The connection itself is left open.
+	 */
+	synchronized void close(){
+		List<Statement> toClose = new ArrayList<Statement>(statements.values());
+		statements.clear();
+		for (UncachedStatement statement : uncached){
+			toClose.add(statement.statement);
+		}
+		uncached.clear();
+		for (Statement statement : toClose){
+			closeStatement(statement);
+		}
+	}
+
+	private static final class UncachedStatement{
+		private final Statement statement;
+		private final ResultSet resultSet;
+
+		private UncachedStatement(Statement statement, ResultSet resultSet){
+			this.statement = statement;
+			this.resultSet = resultSet;
+		}
+
+		private boolean isFinished(){
+			try{
+				return resultSet == null || resultSet.isClosed();
+			}catch(SQLException ex){
+				// the result set cannot be used any more
+				return true;
+			}
+		}
+	}
+
+	private static void closeStatement(Statement statement){
+		try{
+			statement.close();
+		}catch(SQLException ex){
+			if (LOGGER.isWarnEnabled()){
+				LOGGER.warn("database : error occured while closing a statement", ex);
+			}
+		}
+	}
+}
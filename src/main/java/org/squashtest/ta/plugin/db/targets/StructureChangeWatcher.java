@@ -0,0 +1,80 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.targets;
+
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+/**
+ * Passes the statements of a script through, noting whether one of them changes the structure of the database 
+ * (<code>CREATE</code>, <code>ALTER</code>, <code>DROP</code> or <code>RENAME</code>), in which case the cached metadata 
+ * must be forgotten once the script ran.
+ */
+class StructureChangeWatcher implements Iterator<String> {
+
+	/** leading whitespaces and comments, then a statement changing the structure of the database */
+	private static final Pattern STRUCTURE_CHANGE = Pattern.compile(
+			"^\\s*(?:(?:/\\*.*?\\*/|--[^\\n]*)\\s*)*(?:create|alter|drop|rename)\\b", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	private final Iterator<String> statements;
+	private volatile boolean changed;
+
+	/**
+	 * @param statements the statements of the script.
+	 */
+	StructureChangeWatcher(Iterator<String> statements){
+		this.statements = statements;
+	}
+
+	/**
+	 * @param statement a sql statement.
+	 * @return <code>true</code> if the statement changes the structure of the database.
+	 */
+	static boolean changesStructure(String statement){
+		return STRUCTURE_CHANGE.matcher(statement).find();
+	}
+
+	/**
+	 * @return <code>true</code> if one of the statements read so far changes the structure of the database.
+	 */
+	boolean hasChanged(){
+		return changed;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return statements.hasNext();
+	}
+
+	@Override
+	public String next() {
+		String statement = statements.next();
+		if (!changed && changesStructure(statement)){
+			changed = true;
+		}
+		return statement;
+	}
+
+	@Override
+	public void remove() {
+		statements.remove();
+	}
+}
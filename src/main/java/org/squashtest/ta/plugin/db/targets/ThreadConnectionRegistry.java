@@ -0,0 +1,134 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.targets;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the connections owned by the threads using a {@link DatabaseTarget}. Each connection is registered together
+ * with its {@link StatementCache}.
+ * <p>Each thread only ever reads and writes its own entry, so the engine threads do not contend with each other.
+ * The owner thread is weakly referenced : entries whose thread has died (or whose thread id has been reused by another thread)
+ * are detected as orphans and handed back to the caller, which is responsible for closing the connections.</p>
+ */
+class ThreadConnectionRegistry {
+
+	private final ConcurrentMap<Long, OwnedConnection> connections = new ConcurrentHashMap<Long, OwnedConnection>();
+
+	/**
+	 * @return the connection registered by the current thread, or <code>null</code> if it has none.
+	 */
+	StatementCache current(){
+		OwnedConnection owned = connections.get(currentThreadId());
+		if (owned != null && owned.isOwnedBy(Thread.currentThread())){
+			return owned.connection;
+		}
+		return null;
+	}
+
+	/**
+	 * Registers a connection for the current thread.
+	 *
+	 * @param connection the connection to register.
+	 * @return the connection previously registered under the current thread id, if any. The caller must close it.
+	 */
+	StatementCache register(StatementCache connection){
+		OwnedConnection previous = connections.put(currentThreadId(), new OwnedConnection(Thread.currentThread(), connection));
+		return previous == null || previous.connection == connection ? null : previous.connection;
+	}
+
+	/**
+	 * Unregisters the connection of the current thread.
+	 *
+	 * @return the released connection, or <code>null</code> if the thread had none. The caller must close it.
+	 */
+	StatementCache release(){
+		OwnedConnection owned = connections.remove(currentThreadId());
+		return owned == null ? null : owned.connection;
+	}
+
+	/**
+	 * Unregisters every connection whose owner thread is no longer alive.
+	 *
+	 * @return the leaked connections. The caller must close them.
+	 */
+	List<StatementCache> reclaimOrphans(){
+		List<StatementCache> orphans = new ArrayList<StatementCache>();
+		for (Map.Entry<Long, OwnedConnection> entry : connections.entrySet()){
+			OwnedConnection owned = entry.getValue();
+			if (!owned.isOwnerAlive() && connections.remove(entry.getKey(), owned)){
+				orphans.add(owned.connection);
+			}
+		}
+		return orphans;
+	}
+
+	/**
+	 * Unregisters all connections. Threads still working on the target may register new connections meanwhile,
+	 * those will be left in the registry.
+	 *
+	 * @return the unregistered connections. The caller must close them.
+	 */
+	List<StatementCache> drain(){
+		List<StatementCache> drained = new ArrayList<StatementCache>();
+		Iterator<Map.Entry<Long, OwnedConnection>> iterator = connections.entrySet().iterator();
+		while (iterator.hasNext()){
+			Map.Entry<Long, OwnedConnection> entry = iterator.next();
+			if (connections.remove(entry.getKey(), entry.getValue())){
+				drained.add(entry.getValue().connection);
+			}
+		}
+		return drained;
+	}
+
+	int size(){
+		return connections.size();
+	}
+
+	private Long currentThreadId(){
+		return Thread.currentThread().getId();
+	}
+
+	private static final class OwnedConnection{
+		private final WeakReference<Thread> owner;
+		private final StatementCache connection;
+
+		private OwnedConnection(Thread owner, StatementCache connection){
+			this.owner = new WeakReference<Thread>(owner);
+			this.connection = connection;
+		}
+
+		private boolean isOwnedBy(Thread thread){
+			return owner.get() == thread;
+		}
+
+		private boolean isOwnerAlive(){
+			Thread thread = owner.get();
+			return thread != null && thread.isAlive();
+		}
+	}
+}
@@ -48,6 +48,7 @@ import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableIterator;
 import org.dbunit.dataset.ITableMetaData;
 import org.dbunit.dataset.NoSuchTableException;
+import org.dbunit.dataset.RowOutOfBoundsException;
 import org.dbunit.dataset.datatype.DataType;
 import org.dbunit.dataset.filter.IColumnFilter;
 import org.dbunit.dataset.filter.ITableFilter;
@@ -275,6 +276,64 @@ class DbUnitDatasetContainsTest extends Specification {
 			//failure.getFailureContext().get(0).resource instanceof FileResource
 	}
 	
+	def forwardOnlyTable(ITableMetaData metadata, List<Map<String, String>> rows){
+		def lastRow=-1
+		ITable table=Mock()
+		table.getTableMetaData()>>metadata
+		table.getRowCount()>>{ throw new UnsupportedOperationException("forward only table") }
+		table.getValue(_,_)>>{ int row, String column ->
+			if (row<lastRow){
+				throw new UnsupportedOperationException("forward only table")
+			}
+			lastRow=row
+			if (row>=rows.size()){
+				throw new RowOutOfBoundsException()
+			}
+			rows[row][column]
+		}
+		return table
+	}
+	
+	def "a streamed dataset should be read forward only"(){
+		given:
+			def streamedTable2=forwardOnlyTable(metadata2, [
+				[column21:"x_21", column22:"x_22"],
+				[column21:"1_21", column22:"1_22"],
+				[column21:"y_21", column22:"y_22"],
+				[column21:"0_21", column22:"0_22"]
+			])
+		and:
+			actual=new DefaultDataSet([table1, streamedTable2].toArray(new ITable[0]))
+		and:
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,false))
+			testee.setActualResult(new DbUnitDatasetResource(actual,false,true))
+		when:
+			def ok=false
+			testee.test()
+			ok=true
+		then:
+			ok
+	}
+	
+	def "missing lines in a streamed dataset should be reported"(){
+		given:
+			def streamedTable2=forwardOnlyTable(metadata2, [
+				[column21:"0_21", column22:"0_22"],
+				[column21:"1_21_different", column22:"1_22"]
+			])
+		and:
+			actual=new DefaultDataSet([table1, streamedTable2].toArray(new ITable[0]))
+		and:
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,false))
+			testee.setActualResult(new DbUnitDatasetResource(actual,false,true))
+		when:
+			testee.test()
+		then:
+			BinaryAssertionFailedException failure=thrown()
+			failure.getFailureContext().size()==1
+			failure.getFailureContext().get(0).resource instanceof FileResource
+	}
+	
 	def "fix[894]: should report missing line when one of the line in expected does not exist in actual and expected less lines than actual"(){
 		given:
 			Column cal_id=Mock()
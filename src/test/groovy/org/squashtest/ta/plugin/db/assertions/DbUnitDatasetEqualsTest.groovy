@@ -42,6 +42,7 @@ package org.squashtest.ta.plugin.db.assertions
 
 import org.dbunit.dataset.Column;
 import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableIterator;
@@ -52,12 +53,16 @@ import org.dbunit.dataset.datatype.DataType;
 import org.dbunit.dataset.filter.IColumnFilter;
 import org.dbunit.dataset.filter.ITableFilter;
 import org.squashtest.ta.plugin.db.assertions.DbUnitDatasetEquals;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet;
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable;
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum;
 import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource;
 import org.squashtest.ta.plugin.db.resources.DbUnitFilterResource;
 import org.squashtest.ta.framework.components.FileResource;
 import org.squashtest.ta.framework.exception.AssertionFailedException;
 import org.squashtest.ta.framework.exception.BadDataException;
 import org.squashtest.ta.framework.exception.BinaryAssertionFailedException;
+import org.squashtest.ta.framework.exception.IllegalConfigurationException;
 
 import spock.lang.Specification
 
@@ -374,4 +379,251 @@ class DbUnitDatasetEqualsTest extends Specification {
 			failure.getFailureContext().get(0).resource instanceof FileResource
 	}
 	
+	def "tables compared in parallel should give the same report as a sequential comparison"(){
+		given:
+			def table2_a=Mock(ITable)
+			def metadata2_a=Mock(ITableMetaData)
+			table2_a.getTableMetaData()>>metadata2_a
+			metadata2_a.getTableName()>>"table2"
+			metadata2_a.getColumns()>>[column21,column22]
+			table2_a.getRowCount()>>2
+			table2_a.getValue(0,"column21")>>"0_21"
+			table2_a.getValue(0,"column22")>>"0_22_different"
+			table2_a.getValue(1,"column21")>>"1_21"
+			table2_a.getValue(1,"column22")>>"1_22"
+		and:
+			actual=new DefaultDataSet([table1, table2_a].toArray(new ITable[0]))
+		and:
+			def parallelTestee=new DbUnitDatasetEquals()
+			parallelTestee.addConfiguration([options("parallelism:2")])
+			[testee, parallelTestee].each {
+				it.setExpectedResult(new DbUnitDatasetResource(expected,false))
+				it.setActualResult(new DbUnitDatasetResource(actual,false))
+			}
+		when:
+			def sequentialReport=report { testee.test() }
+			def parallelReport=report { parallelTestee.test() }
+		then:
+			parallelReport.contains("0_22_different")
+			parallelReport==sequentialReport
+	}
+	
+	def "parallelism should be a positive number"(){
+		when:
+			testee.addConfiguration([options("parallelism:0")])
+		then:
+			thrown(IllegalConfigurationException)
+	}
+	
+	def "fail fast comparison should stop at the first difference"(){
+		given:
+			def table1_a=Mock(ITable)
+			table1_a.getTableMetaData()>>metadata1
+			table1_a.getRowCount()>>3
+			table1_a.getValue(_, "column11")>>"different"
+			table1_a.getValue(_, "column12")>>"different"
+		and:
+			actual=new DefaultDataSet([table1_a, table2].toArray(new ITable[0]))
+			testee.addConfiguration([options("fail.fast:true")])
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,false))
+			testee.setActualResult(new DbUnitDatasetResource(actual,false))
+		when:
+			def report=report { testee.test() }
+		then:
+			report.contains("2 row(s) were not compared")
+			report.contains("not compared, the maximum number of differences having been reached\ntable2")
+	}
+	
+	def "a machine readable report should be attached next to the text report"(){
+		given:
+			def table1_a=Mock(ITable)
+			table1_a.getTableMetaData()>>metadata1
+			table1_a.getRowCount()>>3
+			table1_a.getValue(_, "column11")>>{ int row, String column -> table1.getValue(row, column) }
+			table1_a.getValue(_, "column12")>>"different"
+		and:
+			actual=new DefaultDataSet([table1_a, table2].toArray(new ITable[0]))
+			testee.addConfiguration([options("report.format:"+format)])
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,false))
+			testee.setActualResult(new DbUnitDatasetResource(actual,false))
+		when:
+			testee.test()
+		then:
+			BinaryAssertionFailedException failure=thrown()
+			def context=failure.getFailureContext()
+			context.size()==2
+			context[0].resource.file.name.endsWith(".diff")
+			context[1].resource.file.name.endsWith("."+format)
+			context[1].resource.file.readLines().findAll { it.contains("table1") && it.contains("different") }.size()==3
+		where:
+			format << ["jsonl", "csv"]
+	}
+	
+	def "the differences of a table should be written to the reports before the next table is compared"(){
+		given:
+			def writers=[]
+			testee=new DbUnitDatasetEquals(){
+				@Override
+				protected Writer openReportWriter(File reportFile){
+					def writer=new StringWriter()
+					writers << writer
+					return writer
+				}
+			}
+		and:
+			def table1_a=Mock(ITable)
+			table1_a.getTableMetaData()>>metadata1
+			table1_a.getRowCount()>>3
+			table1_a.getValue(_, "column11")>>{ int row, String column -> table1.getValue(row, column) }
+			table1_a.getValue(_, "column12")>>"different"
+		and:
+			def writtenWhenTable2WasRead=null
+			def table2_a=Mock(ITable)
+			table2_a.getTableMetaData()>>metadata2
+			table2_a.getRowCount()>>2
+			table2_a.getValue(_, _)>>{ int row, String column ->
+				if (writtenWhenTable2WasRead==null) {
+					writtenWhenTable2WasRead=writers*.toString()
+				}
+				return table2.getValue(row, column)
+			}
+		and:
+			actual=new DefaultDataSet([table1_a, table2_a].toArray(new ITable[0]))
+			testee.addConfiguration([options("report.format:jsonl")])
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,false))
+			testee.setActualResult(new DbUnitDatasetResource(actual,false))
+		when:
+			testee.test()
+		then:
+			thrown(BinaryAssertionFailedException)
+			writtenWhenTable2WasRead.size()==2
+			writtenWhenTable2WasRead.every { written -> ["0_12", "1_12", "2_12"].every { written.contains(it) } }
+	}
+	
+	def "sorted option should be auto, true or false"(){
+		when:
+			testee.addConfiguration([options("sorted:maybe")])
+		then:
+			thrown(IllegalConfigurationException)
+	}
+	
+	def "tables trusted to be sorted should be compared as they are"(){
+		given:
+			def unsorted=new DefaultTable("table1", [new Column("column11", DataType.VARCHAR), new Column("column12", DataType.VARCHAR)].toArray(new Column[0]))
+			unsorted.addRow(["1_11", "1_12"].toArray())
+			unsorted.addRow(["0_11", "0_12"].toArray())
+			unsorted.addRow(["2_11", "2_12"].toArray())
+		and:
+			expected=new DefaultDataSet([table1].toArray(new ITable[0]))
+			actual=new DefaultDataSet([unsorted].toArray(new ITable[0]))
+		and:
+			def sortingTestee=new DbUnitDatasetEquals()
+			testee.addConfiguration([options("sorted:true,fingerprint:false")])
+			[testee, sortingTestee].each {
+				it.setExpectedResult(new DbUnitDatasetResource(expected,false))
+				it.setActualResult(new DbUnitDatasetResource(actual,false))
+			}
+		when:
+			sortingTestee.test()
+			def report=report { testee.test() }
+		then:
+			report.contains("1_11")
+	}
+	
+	def "tables holding the same rows in another order should be equal"(){
+		given:
+			def unsorted=new DefaultTable("table1", [new Column("column11", DataType.VARCHAR), new Column("column12", DataType.VARCHAR)].toArray(new Column[0]))
+			unsorted.addRow(["2_11", "2_12"].toArray())
+			unsorted.addRow(["0_11", "0_12"].toArray())
+			unsorted.addRow(["1_11", "1_12"].toArray())
+		and:
+			expected=new DefaultDataSet([table1].toArray(new ITable[0]))
+			actual=new DefaultDataSet([unsorted].toArray(new ITable[0]))
+			testee.addConfiguration([options(configuration)])
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,false))
+			testee.setActualResult(new DbUnitDatasetResource(actual,false))
+		when:
+			testee.test()
+		then:
+			notThrown(BinaryAssertionFailedException)
+		where:
+			configuration << ["fingerprint:true", "fingerprint.bits:64", "fingerprint:false"]
+	}
+	
+	def "fingerprint size should be 64 or 128 bits"(){
+		when:
+			testee.addConfiguration([options("fingerprint.bits:32")])
+		then:
+			thrown(IllegalConfigurationException)
+	}
+	
+	def "tables with the same checksum in both databases should not be compared"(){
+		given:
+			def table1_a=Mock(ITable)
+			table1_a.getTableMetaData()>>metadata1
+			table1_a.getRowCount()>>3
+			table1_a.getValue(_, _)>>"different"
+			actual=new DefaultDataSet([table1_a, table2].toArray(new ITable[0]))
+		and:
+			TableChecksum checksum=Mock()
+			checksum.isComparableWith(_)>>true
+			checksum.compute(_, _, _)>>"3/12/34"
+		and:
+			testee.addConfiguration([options(configuration)])
+			testee.setExpectedResult(new DbUnitDatasetResource(expected,true,checksum))
+			testee.setActualResult(new DbUnitDatasetResource(actual,true,checksum))
+		when:
+			def report=report { testee.test() }
+		then:
+			(report==null)==identical
+		where:
+			configuration     | identical
+			"checksum:true"   | true
+			"checksum:false"  | false
+	}
+	
+	def "copied tables should only be compared through the checksums taken when they were copied"(){
+		given:
+			def table1_a=Mock(ITable)
+			table1_a.getTableMetaData()>>metadata1
+			table1_a.getRowCount()>>3
+			table1_a.getValue(_, _)>>"different"
+			def expectedCopy=new ColumnarDataSet(["table1", "table2"] as String[], 
+				[new ColumnarTable(table1), new ColumnarTable(table2)] as ColumnarTable[], expectedSignatures as String[], false)
+			def actualCopy=new ColumnarDataSet(["table1", "table2"] as String[], 
+				[new ColumnarTable(table1_a), new ColumnarTable(table2)] as ColumnarTable[], actualSignatures as String[], false)
+		and:
+			TableChecksum checksum=Mock()
+			checksum.isComparableWith(_)>>true
+			checksum.compute(_, _, _)>>"3/12/34"
+		and:
+			testee.setExpectedResult(new DbUnitDatasetResource(expectedCopy,true,checksum))
+			testee.setActualResult(new DbUnitDatasetResource(actualCopy,true,checksum))
+		when:
+			def report=report { testee.test() }
+		then:
+			(report==null)==identical
+			0 * checksum.compute(_, _, _)
+		where:
+			expectedSignatures | actualSignatures    | identical
+			[null, null]       | [null, null]        | false
+			["a,b,1", "c,d,2"] | ["a,b,1", "c,d,2"]  | true
+			["a,b,1", "c,d,2"] | ["a,b,9", "c,d,2"]  | false
+	}
+	
+	def options(String content){
+		def file=File.createTempFile("options", ".txt")
+		file.deleteOnExit()
+		file.text=content
+		return new FileResource(file)
+	}
+	
+	def report(Closure assertion){
+		try{
+			assertion()
+		}catch(BinaryAssertionFailedException failure){
+			return failure.getFailureContext().get(0).resource.file.text
+		}
+		return null
+	}
 }
@@ -0,0 +1,145 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.commands
+
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.DefaultTable
+import org.dbunit.dataset.DefaultTableMetaData
+import org.dbunit.dataset.IDataSet
+import org.dbunit.dataset.datatype.DataType
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarDataSet
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable
+import org.squashtest.ta.plugin.db.library.sql.TableChecksum
+import org.squashtest.ta.plugin.db.resources.DbUnitDatasetResource
+
+import spock.lang.Specification
+
+class DumpSnapshotTest extends Specification {
+
+	def columns=[new Column("ID", DataType.INTEGER)].toArray(new Column[0])
+	
+	IDataSet discovered
+	TableChecksum checksum
+	ColumnarTable baselineT
+	ColumnarTable baselineU
+	
+	def setup(){
+		discovered=Mock()
+		discovered.getTableNames()>>(["T", "U", "V"] as String[])
+		discovered.getTableMetaData(_)>>{ String name -> new DefaultTableMetaData(name, columns) }
+		checksum=Mock()
+		checksum.isSupported()>>true
+		baselineT=copy("T")
+		baselineU=copy("U")
+	}
+	
+	def copy(String name){
+		def table=new DefaultTable(name, columns)
+		table.addRow([1].toArray())
+		return new ColumnarTable(table)
+	}
+	
+	def baseline(){
+		def dataset=new ColumnarDataSet(["T", "U"] as String[], [baselineT, baselineU] as ColumnarTable[], 
+			["id:INTEGER:4,1/1/1", "id:INTEGER:4,1/1/2"] as String[], false)
+		return new DbUnitDatasetResource(dataset, true, Mock(TableChecksum))
+	}
+
+	def "an unchanged table should be reused with the signature it was copied with"(){
+		given:
+			checksum.isComparableWith(_)>>true
+			checksum.compute("T", _, _)>>"1/1/1"
+			checksum.compute("U", _, _)>>"1/1/2"
+			def testee=new DumpSnapshot(checksum)
+		when:
+			testee.compare(discovered, baseline())
+		then:
+			testee.getUnchangedTables().keySet()==["T", "U"] as Set
+			testee.getUnchangedTables()["T"].is(baselineT)
+			testee.getUnchangedSignatures()==["T":"id:INTEGER:4,1/1/1", "U":"id:INTEGER:4,1/1/2"]
+	}
+
+	def "a changed table should be read again"(){
+		given:
+			checksum.isComparableWith(_)>>true
+			checksum.compute("T", _, _)>>"1/1/1"
+			checksum.compute("U", _, _)>>"2/2/2"
+			def testee=new DumpSnapshot(checksum)
+		when:
+			testee.compare(discovered, baseline())
+		then:
+			testee.getUnchangedTables().keySet()==["T"] as Set
+			testee.getUnchangedSignatures()==["T":"id:INTEGER:4,1/1/1"]
+	}
+
+	def "a table whose column type changed should be read again, even if its rows give the same checksum"(){
+		given:
+			IDataSet altered=Mock()
+			altered.getTableNames()>>(["T", "U"] as String[])
+			altered.getTableMetaData("T")>>new DefaultTableMetaData("T", columns)
+			altered.getTableMetaData("U")>>new DefaultTableMetaData("U", [new Column("ID", DataType.BIGINT)] as Column[])
+			checksum.isComparableWith(_)>>true
+			checksum.compute("T", _, _)>>"1/1/1"
+			checksum.compute("U", _, _)>>"1/1/2"
+			def testee=new DumpSnapshot(checksum)
+		when:
+			testee.compare(altered, baseline())
+		then:
+			testee.getUnchangedTables().keySet()==["T"] as Set
+	}
+
+	def "tables the baseline did not copy should be read without computing their checksum"(){
+		given:
+			checksum.isComparableWith(_)>>true
+			checksum.compute("T", _, _)>>"1/1/1"
+			checksum.compute("U", _, _)>>"1/1/2"
+			def testee=new DumpSnapshot(checksum)
+		when:
+			testee.compare(discovered, baseline())
+		then:
+			0 * checksum.compute("V", _, _)
+			!testee.getUnchangedTables().containsKey("V")
+	}
+
+	def "an incomparable baseline should be ignored"(){
+		given:
+			checksum.isComparableWith(_)>>false
+			def testee=new DumpSnapshot(checksum)
+		when:
+			testee.compare(discovered, baseline())
+		then:
+			0 * checksum.compute(_, _, _)
+			testee.getUnchangedTables().isEmpty()
+			testee.getUnchangedSignatures().isEmpty()
+	}
+
+	def "a baseline without checksum should be ignored"(){
+		given:
+			checksum.isComparableWith(_)>>true
+			def testee=new DumpSnapshot(checksum)
+			def dataset=new ColumnarDataSet(["T"] as String[], [baselineT] as ColumnarTable[], ["id:INTEGER:4,1/1/1"] as String[], false)
+		when:
+			testee.compare(discovered, new DbUnitDatasetResource(dataset, true))
+		then:
+			0 * checksum.compute(_, _, _)
+			testee.getUnchangedTables().isEmpty()
+	}
+}
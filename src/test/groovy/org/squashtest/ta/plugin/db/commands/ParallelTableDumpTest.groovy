@@ -0,0 +1,151 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.commands
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import org.dbunit.database.DatabaseConfig
+import org.dbunit.database.IDatabaseConnection
+import org.dbunit.database.IResultSetTable
+import org.dbunit.database.IResultSetTableFactory
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.DataSetException
+import org.dbunit.dataset.DefaultTableMetaData
+import org.dbunit.dataset.IDataSet
+import org.dbunit.dataset.ITableMetaData
+import org.dbunit.dataset.datatype.DataType
+import org.squashtest.ta.plugin.db.library.dbunit.helper.ColumnarTable
+
+import spock.lang.Specification
+
+class ParallelTableDumpTest extends Specification {
+
+	def columns=[new Column("ID", DataType.INTEGER)].toArray(new Column[0])
+	
+	IDataSet discovered
+	IResultSetTableFactory factory
+	IDatabaseConnection connection
+	
+	def setup(){
+		discovered=Mock()
+		discovered.getTableNames()>>(["A", "B", "C"] as String[])
+		discovered.getTableMetaData(_)>>{ String name -> new DefaultTableMetaData(name, columns) }
+		discovered.isCaseSensitiveTableNames()>>false
+		factory=Mock()
+		def config=new DatabaseConfig()
+		config.setProperty(DatabaseConfig.PROPERTY_RESULTSET_TABLE_FACTORY, factory)
+		connection=Mock()
+		connection.getConfig()>>config
+	}
+	
+	def testee(int connections){
+		return new ParallelTableDump({ connection } as ParallelTableDump.ConnectionProvider, connections, false)
+	}
+	
+	def table(ITableMetaData metaData){
+		IResultSetTable table=Stub()
+		table.getTableMetaData()>>metaData
+		table.getRowCount()>>1
+		table.getValue(0, "ID")>>metaData.getTableName()
+		return table
+	}
+
+	def "the tables should keep the order of the dataset, whichever order they are read in"(){
+		given:
+			def lastRead=new CountDownLatch(1)
+			factory.createTable(_, _)>>{ ITableMetaData metaData, IDatabaseConnection worker ->
+				if (metaData.getTableName()=="A"){
+					lastRead.await(10, TimeUnit.SECONDS)
+				} else if (metaData.getTableName()=="C"){
+					lastRead.countDown()
+				}
+				return table(metaData)
+			}
+		when:
+			def dataset=testee(2).dump(discovered)
+		then:
+			dataset.getTableNames()==["A", "B", "C"] as String[]
+			dataset.getTables().collect{ it.getValue(0, "ID") }==["A", "B", "C"]
+			2 * connection.close()
+	}
+
+	def "the reported failure should be the one of the first failed table in the dataset order"(){
+		given:
+			def laterFailure=new CountDownLatch(1)
+			factory.createTable(_, _)>>{ ITableMetaData metaData, IDatabaseConnection worker ->
+				switch (metaData.getTableName()){
+					case "B":
+						laterFailure.await(10, TimeUnit.SECONDS)
+						throw new DataSetException("B is broken")
+					case "C":
+						laterFailure.countDown()
+						throw new DataSetException("C is broken")
+					default:
+						return table(metaData)
+				}
+			}
+		when:
+			testee(2).dump(discovered)
+		then:
+			DataSetException ex=thrown()
+			ex.getMessage().contains("'B'")
+			ex.getMessage().contains("B is broken")
+			2 * connection.close()
+	}
+
+	def "a failure to open a connection should be reported"(){
+		given:
+			def testee=new ParallelTableDump({ throw new java.sql.SQLException("no more connections") } as ParallelTableDump.ConnectionProvider, 2, false)
+		when:
+			testee.dump(discovered)
+		then:
+			DataSetException ex=thrown()
+			ex.getMessage().contains("no more connections")
+			0 * factory.createTable(_, _)
+	}
+
+	def "tables already copied should be reused without being read again"(){
+		given:
+			def copied=new ColumnarTable(table(new DefaultTableMetaData("B", columns)))
+		when:
+			def dataset=testee(2).dump(discovered, ["B":copied], ["B":"id:INTEGER:4,1/1/1"])
+		then:
+			1 * factory.createTable({ it.getTableName()=="A" }, _)>>{ ITableMetaData metaData, IDatabaseConnection worker -> table(metaData) }
+			1 * factory.createTable({ it.getTableName()=="C" }, _)>>{ ITableMetaData metaData, IDatabaseConnection worker -> table(metaData) }
+			0 * factory.createTable(_, _)
+			0 * discovered.getTableMetaData("B")
+			dataset.getCopiedTable("B").is(copied)
+			dataset.getCopiedSignature("B")=="id:INTEGER:4,1/1/1"
+			dataset.getTables().collect{ it.getValue(0, "ID") }==["A", "B", "C"]
+	}
+
+	def "nothing should be read when all tables were already copied"(){
+		given:
+			def copies=["A", "B", "C"].collectEntries{ [(it):new ColumnarTable(table(new DefaultTableMetaData(it, columns)))] }
+		when:
+			def dataset=testee(2).dump(discovered, copies, [:])
+		then:
+			0 * factory.createTable(_, _)
+			0 * connection.close()
+			dataset.getTables().collect{ it.getValue(0, "ID") }==["A", "B", "C"]
+	}
+}
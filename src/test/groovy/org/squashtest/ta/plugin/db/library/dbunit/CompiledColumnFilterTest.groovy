@@ -0,0 +1,83 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit
+
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.filter.IColumnFilter;
+
+import spock.lang.Specification
+
+class CompiledColumnFilterTest extends Specification {
+	def id
+	def label
+	def table
+	
+	def setup(){
+		id=new Column("ID",DataType.INTEGER)
+		label=new Column("LABEL",DataType.VARCHAR)
+		table=new DefaultTable(new DefaultTableMetaData("Toto",[id,label] as Column[],[id] as Column[]))
+		table.addRow([1,"one"] as Object[])
+	}
+	
+	def "should evaluate the filter once per table column"(){
+		given:
+			def filter=Mock(IColumnFilter)
+		and:
+			def testee=CompiledColumnFilter.compile(filter)
+		when:
+			def first=testee.filter(table)
+			def second=testee.filter(table)
+		then:
+			1 * filter.accept("Toto",id) >> false
+			1 * filter.accept("Toto",label) >> true
+			0 * filter._
+		and:
+			first.getTableMetaData().getColumns()==[label] as Column[]
+			first.getTableMetaData().getPrimaryKeys().length==0
+			second.getTableMetaData().is(first.getTableMetaData())
+			second.getValue(0,"LABEL")=="one"
+	}
+	
+	def "should evaluate the filter again for a table whose columns changed"(){
+		given:
+			def filter=Mock(IColumnFilter)
+			def testee=CompiledColumnFilter.compile(filter)
+		and:
+			def otherTable=new DefaultTable(new DefaultTableMetaData("Toto",[label] as Column[],[] as Column[]))
+		when:
+			testee.filter(table)
+			def result=testee.filter(otherTable)
+		then:
+			3 * filter.accept(_,_) >> true
+		and:
+			result.getTableMetaData().getColumns()==[label] as Column[]
+	}
+	
+	def "should not compile a compiled filter again"(){
+		given:
+			def compiled=CompiledColumnFilter.compile(new YesColumnFilter())
+		expect:
+			CompiledColumnFilter.compile(compiled).is(compiled)
+	}
+}
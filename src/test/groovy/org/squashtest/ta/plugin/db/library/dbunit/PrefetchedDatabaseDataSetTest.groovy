@@ -0,0 +1,139 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit
+
+import java.sql.DatabaseMetaData
+import java.sql.Types
+
+import org.dbunit.database.DatabaseConfig
+import org.dbunit.database.IDatabaseConnection
+import org.dbunit.database.IResultSetTableFactory
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.NoSuchTableException
+import org.dbunit.dataset.datatype.DataType
+import org.dbunit.dataset.datatype.DefaultDataTypeFactory
+import org.dbunit.dataset.filter.IColumnFilter
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer.ColumnDescription
+
+import spock.lang.Specification
+
+class PrefetchedDatabaseDataSetTest extends Specification {
+	DatabaseMetadataExplorer explorer
+	IDatabaseConnection connection
+	IResultSetTableFactory factory
+	IColumnFilter primaryKeyFilter
+	
+	def setup(){
+		explorer=Mock()
+		explorer.getPrefetchedTableNames()>>["T1", "T2"]
+		explorer.getColumns("T1")>>[new ColumnDescription("ID", Types.INTEGER, "INT"), new ColumnDescription("LABEL", Types.VARCHAR, "VARCHAR")]
+		explorer.getColumns("T2")>>[new ColumnDescription("CODE", Types.CHAR, "CHAR")]
+		explorer.getPrimaryKeyNames("T1")>>["id"]
+		explorer.getPrimaryKeyNames("T2")>>[]
+		factory=Mock()
+		def config=Mock(DatabaseConfig)
+		config.getProperty(DatabaseConfig.PROPERTY_RESULTSET_TABLE_FACTORY)>>factory
+		config.getProperty(DatabaseConfig.PROPERTY_DATATYPE_FACTORY)>>new DefaultDataTypeFactory()
+		config.getProperty(DatabaseConfig.PROPERTY_PRIMARY_KEY_FILTER)>>{ primaryKeyFilter }
+		config.getFeature(DatabaseConfig.FEATURE_CASE_SENSITIVE_TABLE_NAMES)>>false
+		connection=Mock()
+		connection.getConfig()>>config
+	}
+	
+	def "tables should be described from the prefetched metadata"(){
+		given:
+			def testee=new PrefetchedDatabaseDataSet(explorer, connection)
+		when:
+			def names=testee.getTableNames()
+			def t1=testee.getTableMetaData("t1")
+		then:
+			names==["T1", "T2"] as String[]
+			t1.getTableName()=="T1"
+			t1.getColumns()*.getColumnName()==["ID", "LABEL"]
+			t1.getColumns()*.getDataType()==[DataType.INTEGER, DataType.VARCHAR]
+			t1.getPrimaryKeys()*.getColumnName()==["ID"]
+	}
+	
+	def "the primary key filter of the connection should override the prefetched primary keys"(){
+		given:
+			primaryKeyFilter=[accept:{ table, column -> column.getColumnName()=="CODE" }] as IColumnFilter
+			def testee=new PrefetchedDatabaseDataSet(explorer, connection)
+		when:
+			def t2=testee.getTableMetaData("T2")
+		then:
+			t2.getPrimaryKeys()*.getColumnName()==["CODE"]
+			0 * explorer.getPrimaryKeyNames(_)
+	}
+	
+	def "tables should be read through the table factory of the connection, from metadata described once"(){
+		given:
+			def testee=new PrefetchedDatabaseDataSet(explorer, connection)
+		when:
+			testee.getTable("T1")
+			testee.getTable("T1")
+		then:
+			1 * explorer.getColumns("T1")>>[new ColumnDescription("ID", Types.INTEGER, "INT")]
+			2 * factory.createTable({ it.getTableName()=="T1" && it.getColumns()*.getColumnName()==["ID"] }, connection)
+	}
+	
+	def "columns of an unknown type should be left out, as DbUnit does"(){
+		given:
+			def testee=new PrefetchedDatabaseDataSet(explorer, connection)
+		when:
+			def t1=testee.getTableMetaData("T1")
+		then:
+			1 * explorer.getColumns("T1")>>[new ColumnDescription("ID", Types.INTEGER, "INT"), new ColumnDescription("DOC", Types.OTHER, "XMLTYPE"), 
+				new ColumnDescription("LABEL", Types.VARCHAR, "VARCHAR")]
+			t1.getColumns()*.getColumnName()==["ID", "LABEL"]
+	}
+	
+	def "columns should keep their nullability, default value and auto-increment"(){
+		given:
+			def testee=new PrefetchedDatabaseDataSet(explorer, connection)
+		when:
+			def column=testee.getTableMetaData("T1").getColumns()[0]
+		then:
+			1 * explorer.getColumns("T1")>>[new ColumnDescription("ID", Types.INTEGER, "INT", DatabaseMetaData.columnNoNulls, "0", null, "YES")]
+			column.getSqlTypeName()=="INT"
+			column.getNullable()==Column.NO_NULLS
+			column.getDefaultValue()=="0"
+			column.getAutoIncrement()==Column.AutoIncrement.YES
+	}
+	
+	def "unknown tables should be reported as such"(){
+		given:
+			def testee=new PrefetchedDatabaseDataSet(explorer, connection)
+		when:
+			testee.getTableMetaData("T3")
+		then:
+			thrown(NoSuchTableException)
+	}
+	
+	def "the schema must have been prefetched"(){
+		given:
+			DatabaseMetadataExplorer notPrefetched=Mock()
+		when:
+			new PrefetchedDatabaseDataSet(notPrefetched, connection)
+		then:
+			thrown(IllegalArgumentException)
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit
+
+import org.dbunit.database.DatabaseConfig;
+import org.dbunit.database.IDatabaseConnection;
+import org.dbunit.database.IResultSetTableFactory;
+import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.DefaultTableMetaData;
+import org.dbunit.dataset.NoSuchTableException;
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.filter.IColumnFilter;
+import org.dbunit.dataset.filter.ITableFilter;
+
+import spock.lang.Specification
+
+class SelectiveDatabaseDataSetTest extends Specification {
+	def discovered
+	def connection
+	def factory
+	
+	def setup(){
+		discovered=new DefaultDataSet()
+		["KEPT","DROPPED"].each { name ->
+			def id=new Column("ID",DataType.INTEGER)
+			discovered.addTable(new DefaultTable(new DefaultTableMetaData(name,[id,new Column("LABEL",DataType.VARCHAR),new Column("UPDATED",DataType.TIMESTAMP)] as Column[],[id] as Column[])))
+		}
+		factory=Mock(IResultSetTableFactory)
+		def config=Mock(DatabaseConfig)
+		config.getProperty(DatabaseConfig.PROPERTY_RESULTSET_TABLE_FACTORY)>>factory
+		connection=Mock(IDatabaseConnection)
+		connection.getConfig()>>config
+	}
+	
+	def "refused tables should neither be listed nor read"(){
+		given:
+			def tableFilter=new CompositeTableFilter([[accept:{ name -> name=="KEPT" }] as ITableFilter])
+			def testee=new SelectiveDatabaseDataSet(discovered, connection, tableFilter, null)
+		when:
+			def names=testee.getTableNames()
+			testee.getTable("DROPPED")
+		then:
+			names==["KEPT"] as String[]
+			thrown(NoSuchTableException)
+			0 * factory._
+	}
+	
+	def "refused columns should not be selected"(){
+		given:
+			def columnFilter=new NoTimestampColumnFilter(["timeStamp"])
+			def testee=new SelectiveDatabaseDataSet(discovered, connection, null, columnFilter)
+		when:
+			testee.getTable("kept")
+		then:
+			1 * factory.createTable({ it.getColumns()*.getColumnName()==["ID","LABEL"] && it.getPrimaryKeys()*.getColumnName()==["ID"] }, connection)
+	}
+	
+	def "primary keys should be selected even if the column filter refuses them"(){
+		given:
+			def columnFilter=[accept:{ table, column -> column.getColumnName()=="LABEL" }] as IColumnFilter
+			def testee=new SelectiveDatabaseDataSet(discovered, connection, null, columnFilter)
+		when:
+			def metaData=testee.getTableMetaData("KEPT")
+			testee.getTable("KEPT")
+		then:
+			metaData.getColumns()*.getColumnName()==["ID","LABEL"]
+			metaData.getPrimaryKeys()*.getColumnName()==["ID"]
+			1 * factory.createTable({ it.getColumns()*.getColumnName()==["ID","LABEL"] && it.getPrimaryKeys()*.getColumnName()==["ID"] }, connection)
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.assertion
+
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.DataSetException
+import org.dbunit.dataset.DefaultTable
+import org.dbunit.dataset.datatype.DataType
+
+import spock.lang.Specification
+
+class DbUnitAssertExtensionTest extends Specification {
+
+	def testee=new DbUnitAssertExtension()
+	def handler=new FailureHandlerExtension()
+
+	def table(Class<?> idClass, List<List<Object>> rows){
+		def columns=[new Column("ID", DataType.INTEGER), new Column("LABEL", DataType.VARCHAR)].toArray(new Column[0])
+		def table=new DefaultTable("T", columns)
+		rows.each { table.addRow([it[0].asType(idClass), it[1]].toArray()) }
+		return table
+	}
+
+	def "values should be matched through their data type"(){
+		given:
+			def expected=table(String, [[12, "a"], [7, "b"]])
+			def actual=table(Integer, [[1, "z"], [7, "b"], [12, "a"]])
+		when:
+			testee.assertContains(expected, actual, handler, ["ID"])
+		then:
+			handler.getSize()==0
+	}
+
+	def "a value its data type cannot cast should fail the comparison instead of being a missing row"(){
+		given:
+			def expected=table(String, [["twelve", "a"]])
+			def actual=table(Integer, [[12, "a"]])
+		when:
+			comparison(expected, actual)
+		then:
+			DataSetException ex=thrown()
+			ex.getMessage().contains("'ID'")
+			handler.getSize()==0
+		where:
+			comparison << [
+				{ expected, actual -> testee.assertContains(expected, actual, handler, ["ID"]) },
+				{ expected, actual -> testee.assertContainsStreamed(expected, actual, handler, ["ID"]) }
+			]
+	}
+
+	def "each actual row should match one expected row only, the first one"(){
+		given:
+			def expected=table(Integer, [[1, "a"], [1, "a"], [2, "b"]])
+			def actual=table(Integer, [[1, "x"], [1, "a"], [2, "b"], [3, "c"]])
+		when:
+			testee.assertContains(expected, actual, handler, ["ID"])
+		then:
+			def diffs=handler.getDiffList("T")
+			diffs*.rowIndex==[1]
+			diffs[0].potentialMatchstatus==DifferenceExtension.PotentialMatchStatus.ONE_MATCH
+			diffs[0].possibleRowIndex==0
+	}
+
+	def "streamed and indexed comparisons should report the same differences"(){
+		given:
+			def expected=table(Integer, [[1, "a"], [2, "b"], [2, "c"], [4, "d"]])
+			def actual=table(Integer, [[2, "b"], [2, "x"], [2, "y"], [1, "a"], [3, "d"]])
+			def streamedHandler=new FailureHandlerExtension()
+		when:
+			testee.assertContains(expected, actual, handler, ["ID"])
+			new DbUnitAssertExtension().assertContainsStreamed(expected, actual, streamedHandler, ["ID"])
+		then:
+			handler.getDiffList("T")*.rowIndex==[2, 3]
+			streamedHandler.getDiffList("T")*.rowIndex==[2, 3]
+			handler.getDiffList("T")*.potentialMatchstatus==[DifferenceExtension.PotentialMatchStatus.MANY_MATCH, DifferenceExtension.PotentialMatchStatus.NO_MATCH]
+			streamedHandler.getDiffList("T")*.potentialMatchstatus==handler.getDiffList("T")*.potentialMatchstatus
+	}
+
+	def "potential matches should only be searched for the first missing rows"(){
+		given:
+			def expected=table(Integer, [[1, "a"], [2, "b"], [3, "c"], [4, "d"]])
+			def actual=table(Integer, [[1, "x"], [2, "y"], [3, "z"], [3, "t"], [4, "d"]])
+			def streamedHandler=new FailureHandlerExtension()
+		and:
+			testee.setMaxPotentialMatchSearches(2)
+			def streamedTestee=new DbUnitAssertExtension()
+			streamedTestee.setMaxPotentialMatchSearches(2)
+		when:
+			testee.assertContains(expected, actual, handler, ["ID"])
+			streamedTestee.assertContainsStreamed(expected, actual, streamedHandler, ["ID"])
+		then:
+			handler.getDiffList("T")*.potentialMatchstatus==[DifferenceExtension.PotentialMatchStatus.ONE_MATCH, DifferenceExtension.PotentialMatchStatus.ONE_MATCH, DifferenceExtension.PotentialMatchStatus.SKIPPED]
+			handler.getDiffList("T")*.possibleRowIndex[0..1]==[0, 1]
+			streamedHandler.getDiffList("T")*.potentialMatchstatus==handler.getDiffList("T")*.potentialMatchstatus
+	}
+
+	def "comparison should stop once the maximum number of differences of the table is reached"(){
+		given:
+			def expected=table(Integer, [[1, "a"], [2, "b"], [3, "c"], [4, "d"], [5, "e"]])
+			def actual=table(Integer, [[1, "a"], [2, "x"], [3, "y"], [4, "z"], [5, "e"]])
+			def fullHandler=new FailureHandlerExtension(2)
+			def streamedHandler=new FailureHandlerExtension(2)
+		when:
+			testee.assertContains(expected, actual, fullHandler, ["ID"])
+			new DbUnitAssertExtension().assertContainsStreamed(expected, actual, streamedHandler, ["ID"])
+		then:
+			fullHandler.getDiffList("T")*.rowIndex==[1, 2]
+			fullHandler.getSkippedRows("T")==2
+			streamedHandler.getDiffList("T")*.rowIndex==[1, 2]
+			streamedHandler.getSkippedRows("T")==2
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.assertion
+
+import org.squashtest.ta.plugin.db.library.dbunit.assertion.DiffRecordWriter.Format
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DiffRecordWriterTest extends Specification {
+
+	def write(Format format, Closure records){
+		def out=new StringWriter()
+		def writer=DiffRecordWriter.create(out, format)
+		records(writer)
+		writer.close()
+		return out.toString()
+	}
+
+	def "should write one json object per line"(){
+		when:
+			def result=write(Format.JSONL) {
+				it.write("T", 3, "LABEL", "a \"quoted\"\tvalue", null, "different")
+				it.write("T", 4, "ID", 12, 13, "different")
+			}
+		then:
+			result=='{"table":"T","row":3,"column":"LABEL","expected":"a \\"quoted\\"\\tvalue","actual":null,"status":"different"}\n'+
+				'{"table":"T","row":4,"column":"ID","expected":"12","actual":"13","status":"different"}\n'
+	}
+
+	def "should write a csv header and quote the fields when needed"(){
+		when:
+			def result=write(Format.CSV) {
+				it.write("T", 3, "LABEL", "a, \"b\"", null, "no_match")
+				it.write("T", 4, "LABEL", "", "x", "one_match")
+			}
+		then:
+			result=="table,row,column,expected,actual,status\r\n"+
+				"T,3,LABEL,\"a, \"\"b\"\"\",,no_match\r\n"+
+				"T,4,LABEL,\"\",x,one_match\r\n"
+	}
+
+	@Unroll
+	def "format name #name should be #format"(){
+		expect:
+			Format.forName(name)==format
+		where:
+			name    | format
+			"jsonl" | Format.JSONL
+			" CSV " | Format.CSV
+			"xml"   | null
+	}
+}
@@ -22,6 +22,7 @@ package org.squashtest.ta.plugin.db.library.dbunit.helper
 
 import org.dbunit.dataset.Column;
 import org.dbunit.dataset.DefaultTable;
+import org.dbunit.dataset.NoSuchColumnException;
 import org.dbunit.dataset.datatype.DataType;
 
 import spock.lang.Specification
@@ -74,4 +75,34 @@ class AugmentedTableTest extends Specification {
 			"Third".equals(newRows.get(0))
 			"Fourth".equals(newRows.get(1))
 	}
+	
+	def "columns are found whatever their case, and may be read by index"(){
+		given:
+			testee.registerValue(2,"COL1","Third")
+		when:
+			def index=testee.getColumnIndex("col1")
+		then:
+			index==0
+			testee.getValue(1,index)=="Second"
+			testee.getValue(2,index)=="Third"
+			testee.getValue(2,"cOl1")=="Third"
+	}
+	
+	def "unknown columns are rejected"(){
+		when:
+			testee.registerValue(2,"Col2","Third")
+		then:
+			thrown(NoSuchColumnException)
+	}
+	
+	def "lower cased table reads the augmented table by index"(){
+		given:
+			testee.registerValue(2,col.getColumnName(),"Third")
+			def lowerCased=new LowerCasedTable(testee)
+		when:
+			def index=lowerCased.getColumnIndex("COL1")
+		then:
+			lowerCased.getValue(2,index)=="Third"
+			lowerCased.getValue(0,"col1")=="First"
+	}
 }
@@ -0,0 +1,141 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper
+
+import java.sql.Timestamp
+
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.DefaultTable
+import org.dbunit.dataset.IDataSet
+import org.dbunit.dataset.ITable
+import org.dbunit.dataset.RowOutOfBoundsException
+import org.dbunit.dataset.datatype.DataType
+
+import spock.lang.Specification
+
+class ColumnarTableTest extends Specification {
+
+	def columns=[
+		new Column("ID", DataType.INTEGER),
+		new Column("LABEL", DataType.VARCHAR),
+		new Column("AMOUNT", DataType.DECIMAL),
+		new Column("CREATED", DataType.TIMESTAMP),
+		new Column("MIXED", DataType.UNKNOWN)
+	].toArray(new Column[0])
+
+	def "values should be read back equal to the copied ones"(){
+		given:
+			def source=new DefaultTable("T", columns)
+			def created=Timestamp.valueOf("2018-03-04 05:06:07.123456789")
+			source.addRow([1, "a", new BigDecimal("10.50"), created, 1L].toArray())
+			source.addRow([null, "b", null, created, "one"].toArray())
+			source.addRow([3, "a", new BigDecimal("-0.001"), null, null].toArray())
+		when:
+			def testee=new ColumnarTable(source)
+		then:
+			testee.getRowCount()==3
+			(0..2).every { row -> columns.every { column -> 
+				def value=testee.getValue(row, column.getColumnName())
+				def original=source.getValue(row, column.getColumnName())
+				value==original && value?.getClass()==original?.getClass()
+			} }
+	}
+
+	def "columns of single typed values should be encoded, mixed ones should not"(){
+		given:
+			def source=new DefaultTable("T", columns)
+			source.addRow([1, "a", new BigDecimal("1"), new Timestamp(0L), 1L].toArray())
+			source.addRow([2, "a", new BigDecimal("2"), new Timestamp(1L), "two"].toArray())
+		when:
+			def testee=new ColumnarTable(source)
+		then:
+			(0..3).every { testee.isEncoded(it) }
+			!testee.isEncoded(4)
+			testee.getValue(1, "MIXED")=="two"
+			testee.getValue(0, "MIXED")==1L
+	}
+
+	def "a forward only table should be copied in one pass"(){
+		given:
+			def rows=[["ID":1, "LABEL":"a"], ["ID":2, "LABEL":"b"]]
+			def lastRow=-1
+			ITable source=Mock()
+			source.getTableMetaData()>>new DefaultTable("T", columns[0..1].toArray(new Column[0])).getTableMetaData()
+			source.getRowCount()>>{ throw new UnsupportedOperationException() }
+			source.getValue(_,_)>>{ int row, String column ->
+				assert row>=lastRow
+				lastRow=row
+				if (row>=rows.size()){
+					throw new RowOutOfBoundsException()
+				}
+				rows[row][column]
+			}
+		when:
+			def testee=new ColumnarTable(source)
+		then:
+			testee.getRowCount()==2
+			testee.getValue(1, "LABEL")=="b"
+	}
+
+	def "reading past the last row should fail as in dbunit tables"(){
+		given:
+			def testee=new ColumnarTable(new DefaultTable("T", columns))
+		when:
+			testee.getValue(0, "ID")
+		then:
+			thrown(RowOutOfBoundsException)
+	}
+
+	def "a columnar dataset should read each source table once"(){
+		given:
+			def table=new DefaultTable("T", columns)
+			table.addRow([1, "a", null, null, null].toArray())
+			IDataSet source=Mock()
+			source.isCaseSensitiveTableNames()>>false
+		when:
+			def testee=new ColumnarDataSet(source)
+			def first=testee.getTable("t")
+			def second=testee.getTable("T")
+		then:
+			1 * source.getTable(_)>>table
+			first.is(second)
+			first instanceof ColumnarTable
+			first.getValue(0, "LABEL")=="a"
+	}
+
+	def "tables copied beforehand should not be read from the source dataset"(){
+		given:
+			def table=new DefaultTable("T", columns)
+			table.addRow([1, "a", null, null, null].toArray())
+			def copied=new ColumnarTable(table)
+			IDataSet source=Mock()
+			source.isCaseSensitiveTableNames()>>false
+		when:
+			def testee=new ColumnarDataSet(source, null, ["T":copied], ["T":"id:INTEGER:4,1/2/3"])
+			def read=testee.getTable("t")
+		then:
+			0 * source.getTable(_)
+			read.is(copied)
+			testee.getCopiedTable("T").is(copied)
+			testee.getCopiedSignature("T")=="id:INTEGER:4,1/2/3"
+			testee.getCopiedTable("U")==null
+	}
+}
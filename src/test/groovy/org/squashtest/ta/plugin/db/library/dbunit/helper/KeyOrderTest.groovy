@@ -0,0 +1,71 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper
+
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.DefaultTable
+import org.dbunit.dataset.datatype.DataType
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class KeyOrderTest extends Specification {
+
+	def columns=[
+		new Column("ID", DataType.INTEGER),
+		new Column("LABEL", DataType.VARCHAR)
+	].toArray(new Column[0])
+
+	def table(List<List<Object>> rows){
+		def table=new DefaultTable("T", columns)
+		rows.each { table.addRow(it.toArray()) }
+		return table
+	}
+
+	@Unroll
+	def "rows #rows should be sorted on the id : #sorted"(){
+		expect:
+			KeyOrder.isSorted(table(rows), [columns[0]].toArray(new Column[0]))==sorted
+		where:
+			rows                                 | sorted
+			[]                                   | true
+			[[1, "a"]]                           | true
+			[[2, "a"], [10, "b"], [10, "a"]]     | true
+			["2", "10"].collect { [it, "a"] }    | true
+			[[10, "a"], [2, "b"]]                | false
+			[[null, "a"], [1, "b"]]              | true
+	}
+
+	def "rows with the same first key should be ordered on the next one"(){
+		expect:
+			KeyOrder.isSorted(table([[1, "a"], [1, "b"], [2, "a"]]), columns)
+			!KeyOrder.isSorted(table([[1, "b"], [1, "a"], [2, "a"]]), columns)
+	}
+
+	def "all tables should be sorted"(){
+		given:
+			def sorted=table([[1, "a"], [2, "b"]])
+			def unsorted=table([[2, "b"], [1, "a"]])
+		expect:
+			KeyOrder.areSorted(columns, sorted, sorted)
+			!KeyOrder.areSorted(columns, sorted, unsorted)
+	}
+}
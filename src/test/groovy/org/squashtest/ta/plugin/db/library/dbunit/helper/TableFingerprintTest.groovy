@@ -0,0 +1,68 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.dbunit.helper
+
+import org.dbunit.dataset.Column
+import org.dbunit.dataset.DefaultTable
+import org.dbunit.dataset.datatype.DataType
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TableFingerprintTest extends Specification {
+
+	def table(DataType type, List<Object> values, String columnName="VALUE"){
+		def table=new DefaultTable("T", [new Column(columnName, type)].toArray(new Column[0]))
+		values.each { table.addRow([it].toArray()) }
+		return table
+	}
+
+	@Unroll
+	def "#type rows #expected and #actual should have the same fingerprint on #bits bits : #same"(){
+		expect:
+			TableFingerprint.haveSameRows(table(type, expected), table(type, actual), bits)==same
+		where:
+			type             | expected         | actual           | bits                     | same
+			DataType.VARCHAR | ["a", "b", "c"]  | ["c", "a", "b"]  | TableFingerprint.WIDE    | true
+			DataType.VARCHAR | ["a", "b", "c"]  | ["c", "a", "b"]  | TableFingerprint.NARROW  | true
+			DataType.VARCHAR | ["a", null]      | [null, "a"]      | TableFingerprint.WIDE    | true
+			DataType.VARCHAR | ["a", "b"]       | ["a", "B"]       | TableFingerprint.WIDE    | false
+			DataType.VARCHAR | ["a", null]      | ["a", ""]        | TableFingerprint.WIDE    | false
+			DataType.VARCHAR | ["a", "a"]       | ["b", "b"]       | TableFingerprint.WIDE    | false
+			DataType.VARCHAR | ["a", "b"]       | ["a"]            | TableFingerprint.WIDE    | false
+			DataType.INTEGER | [12, 3]          | ["3", "12"]      | TableFingerprint.WIDE    | true
+			DataType.NUMERIC | [1.0, 2]         | [2.00, 1]        | TableFingerprint.WIDE    | true
+			DataType.NUMERIC | [1.0]            | [1.01]           | TableFingerprint.NARROW  | false
+			DataType.UNKNOWN | ["a"]            | ["a"]            | TableFingerprint.WIDE    | false
+	}
+
+	def "tables with different columns should have no matching fingerprint"(){
+		expect:
+			!TableFingerprint.haveSameRows(table(DataType.VARCHAR, ["a"], "FIRST"), table(DataType.VARCHAR, ["a"], "SECOND"), TableFingerprint.WIDE)
+	}
+
+	def "fingerprint size should be 64 or 128 bits"(){
+		when:
+			TableFingerprint.haveSameRows(table(DataType.VARCHAR, []), table(DataType.VARCHAR, []), 32)
+		then:
+			thrown(IllegalArgumentException)
+	}
+}
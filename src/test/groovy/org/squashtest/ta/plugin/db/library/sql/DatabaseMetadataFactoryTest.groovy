@@ -22,12 +22,16 @@ package org.squashtest.ta.plugin.db.library.sql
 
 import java.sql.DatabaseMetaData
 import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Types
 
 import org.dbunit.dataset.IDataSet
 import org.dbunit.dataset.ITable
 import org.dbunit.dataset.xml.FlatXmlDataSet
 import org.dbunit.dataset.xml.FlatXmlProducer
 import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer;
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer.ColumnDescription
+import org.squashtest.ta.plugin.db.library.sql.SchemaMetadataCache.CachedSchema
 import org.xml.sax.InputSource
 
 import spock.lang.Specification
@@ -69,4 +73,124 @@ class DatabaseMetadataFactoryTest extends Specification {
 		then:
 			pks.equals(["ANOTHER","ONE"])
 	}
+
+	def "primary keys should be read once per table"(){
+		given:
+			ResultSet primaryKeysRs=Mock()
+			primaryKeysRs.next()>>>[true,false]
+			primaryKeysRs.getString(_)>>"ID"
+			primaryKeysRs.getInt(_)>>1
+		when:
+			testee.getPrimaryKeyNames("knownTable")
+			List<String> pks=testee.getPrimaryKeyNames("knownTable")
+		then:
+			1 * metadata.getPrimaryKeys(_, _, "knownTable")>>primaryKeysRs
+			pks.equals(["ID"])
+	}
+	
+	def "prefetch should read the whole schema at once"(){
+		given:
+			ResultSet columnsRs=resultSet([
+				[2:"S", 3:"T1", 4:"ID", 5:Types.INTEGER, 6:"INT"],
+				[2:"S", 3:"T1", 4:"LABEL", 5:Types.VARCHAR, 6:"VARCHAR"],
+				[2:"S", 3:"T2", 4:"CODE", 5:Types.CHAR, 6:"CHAR"]
+			])
+			ResultSet primaryKeysRs=resultSet([
+				[2:"S", 3:"T1", 4:"ID", 5:1]
+			])
+			metadata.getTables(null, null, "%", _)>>resultSet([[3:"T1"], [3:"T2"]])
+		when:
+			testee.prefetch()
+			def t1Keys=testee.getPrimaryKeyNames("T1")
+			def t2Keys=testee.getPrimaryKeyNames("T2")
+			def t1Columns=testee.getColumns("T1")
+		then:
+			1 * metadata.getColumns(null, null, null, null)>>columnsRs
+			1 * metadata.getPrimaryKeys(null, null, null)>>primaryKeysRs
+			0 * metadata.getPrimaryKeys(_, _, "T1")
+			0 * metadata.getPrimaryKeys(_, _, "T2")
+			testee.getPrefetchedTableNames()==["T1","T2"]
+			t1Keys==["ID"]
+			t2Keys==[]
+			t1Columns*.name==["ID","LABEL"]
+			t1Columns*.sqlType==[Types.INTEGER,Types.VARCHAR]
+	}
+	
+	def "primary keys should be read table by table if the driver cannot list them for the whole schema"(){
+		given:
+			ResultSet columnsRs=resultSet([[2:"S", 3:"T1", 4:"ID", 5:Types.INTEGER, 6:"INT"]])
+			ResultSet primaryKeysRs=Mock()
+			primaryKeysRs.next()>>>[true,false]
+			primaryKeysRs.getString(_)>>"ID"
+			primaryKeysRs.getInt(_)>>1
+		and:
+			metadata.getTables(null, null, "%", _)>>resultSet([[3:"T1"]])
+			metadata.getColumns(null, null, null, null)>>columnsRs
+			metadata.getPrimaryKeys(null, null, null)>>{ throw new SQLException("table name required") }
+		when:
+			testee.prefetch()
+			def pks=testee.getPrimaryKeyNames("T1")
+		then:
+			1 * metadata.getPrimaryKeys(_, _, "T1")>>primaryKeysRs
+			pks==["ID"]
+	}
+	
+	def "invalidated metadata should be read again"(){
+		given:
+			ResultSet first=resultSet([[4:"ID", 5:1]])
+			ResultSet second=resultSet([[4:"CODE", 5:1]])
+			metadata.getPrimaryKeys(_, _, "T1")>>>[first, second]
+		when:
+			def before=testee.getPrimaryKeyNames("T1")
+			testee.invalidate()
+			def after=testee.getPrimaryKeyNames("T1")
+		then:
+			before==["ID"]
+			after==["CODE"]
+	}
+	
+	def "prefetched metadata should be kept until invalidated when there is no schema version query"(){
+		given:
+			metadata.getColumns(null, null, null, null)>>{ resultSet([]) }
+			metadata.getPrimaryKeys(null, null, null)>>{ resultSet([]) }
+		when:
+			testee.prefetch()
+			testee.prefetch()
+			testee.invalidate()
+			testee.prefetch()
+		then:
+			2 * metadata.getTables(null, null, "%", _)>>{ resultSet([[3:"T1"]]) }
+	}
+	
+	def "prefetched metadata should be read again once the schema version changed"(){
+		given:
+			SchemaMetadataCache cache=Mock()
+			cache.version(_)>>>["v1", "v1", "v2"]
+			cache.load(_, "S", "v2")>>new CachedSchema(["T1", "T2"], [:], [:])
+			testee=new DatabaseMetadataExplorer(metadata, "S", cache)
+		when:
+			testee.prefetch()
+			testee.prefetch()
+			def before=testee.getPrefetchedTableNames()
+			testee.prefetch()
+		then:
+			1 * cache.load(_, "S", "v1")>>new CachedSchema(["T1"], ["T1":[new ColumnDescription("ID", Types.INTEGER, "INT")]], [:])
+			before==["T1"]
+			testee.getPrefetchedTableNames()==["T1", "T2"]
+			0 * metadata.getTables(_, _, _, _)
+	}
+	
+	/*
+	 * result set mock over rows of values by column index
+	 */
+	private ResultSet resultSet(List<Map<Integer, Object>> rows){
+		def row=-1
+		ResultSet rs=Mock()
+		rs.next()>>{ ++row<rows.size() }
+		rs.getString(_)>>{ int index -> rows[row][index] }
+		rs.getInt(_)>>{ int index -> rows[row][index] ?: 0 }
+		rs.wasNull()>>false
+		rs.getRow()>>{ row+1 }
+		return rs
+	}
 }
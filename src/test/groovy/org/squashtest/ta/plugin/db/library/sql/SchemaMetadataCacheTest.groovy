@@ -0,0 +1,102 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql
+
+import java.sql.DatabaseMetaData
+import java.sql.Types
+
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer.ColumnDescription
+import org.squashtest.ta.plugin.db.library.sql.SchemaMetadataCache.CachedSchema
+
+import spock.lang.Specification
+
+class SchemaMetadataCacheTest extends Specification {
+	File directory
+	SchemaMetadataCache testee
+	CachedSchema schema
+	
+	def setup(){
+		directory=File.createTempFile("metadata", "")
+		directory.delete()
+		testee=new SchemaMetadataCache(directory, "select 1")
+		schema=new CachedSchema(["T1", "T2"], 
+			["T1":[new ColumnDescription("ID", Types.INTEGER, "INT"), new ColumnDescription("LABEL", Types.VARCHAR, null, DatabaseMetaData.columnNoNulls, "'none'", null, "NO")], 
+			 "T2":[new ColumnDescription("CODE", Types.CHAR, "CHAR")]],
+			["T1":["ID"]])
+	}
+	
+	def cleanup(){
+		directory.listFiles()?.each { it.delete() }
+		directory.delete()
+	}
+	
+	def "cached metadata should be read back for the same version"(){
+		when:
+			testee.store("jdbc:x:db", "S", "v1", schema)
+			def cached=testee.load("jdbc:x:db", "S", "v1")
+		then:
+			cached.tableNames==["T1", "T2"]
+			cached.columns["T1"]*.name==["ID", "LABEL"]
+			cached.columns["T1"]*.sqlType==[Types.INTEGER, Types.VARCHAR]
+			cached.columns["T1"][1].typeName==null
+			cached.columns["T1"][1].nullable==DatabaseMetaData.columnNoNulls
+			cached.columns["T1"][1].defaultValue=="'none'"
+			cached.columns["T1"][1].remarks==null
+			cached.columns["T1"][1].autoIncrement=="NO"
+			cached.columns["T1"][0].nullable==DatabaseMetaData.columnNullableUnknown
+			cached.columns["T1"][0].autoIncrement==""
+			cached.primaryKeys==["T1":["ID"]]
+	}
+	
+	def "cached metadata should be ignored once the schema version changed"(){
+		when:
+			testee.store("jdbc:x:db", "S", "v1", schema)
+		then:
+			testee.load("jdbc:x:db", "S", "v2")==null
+	}
+	
+	def "each database and schema should have its own cache"(){
+		when:
+			testee.store("jdbc:x:db", "S", "v1", schema)
+		then:
+			testee.load("jdbc:x:db", "OTHER", "v1")==null
+			testee.load("jdbc:x:other", "S", "v1")==null
+			testee.load("jdbc:x:db", "S", "v1")!=null
+	}
+	
+	def "a cache file written in another format should be ignored"(){
+		given:
+			testee.store("jdbc:x:db", "S", "v1", schema)
+			def file=directory.listFiles()[0]
+			file.text=file.text.replaceAll(/(?m)^format=.*$/, "")
+		expect:
+			testee.load("jdbc:x:db", "S", "v1")==null
+	}
+	
+	def "a corrupted cache file should be ignored"(){
+		given:
+			testee.store("jdbc:x:db", "S", "v1", schema)
+			def file=directory.listFiles()[0]
+			file.text=file.text.replaceAll(/table\.0\.name=.*/, "")
+		expect:
+			testee.load("jdbc:x:db", "S", "v1")==null
+	}
+}
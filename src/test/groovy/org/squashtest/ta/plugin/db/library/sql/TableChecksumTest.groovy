@@ -0,0 +1,116 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql
+
+import java.sql.Connection
+import java.sql.DatabaseMetaData
+import java.sql.ResultSet
+import java.sql.ResultSetMetaData
+import java.sql.Statement
+import java.sql.Types
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TableChecksumTest extends Specification {
+
+	def connection(String product){
+		DatabaseMetaData metadata=Mock()
+		metadata.getDatabaseProductName()>>product
+		metadata.getIdentifierQuoteString()>>"\""
+		Connection connection=Mock()
+		connection.getMetaData()>>metadata
+		return connection
+	}
+
+	@Unroll
+	def "#product checksum query should hash with #function"(){
+		given:
+			def testee=new TableChecksum(connection(product), "APP")
+		when:
+			def query=testee.query("T", ["ID", "LABEL"].toArray(new String[0]), [Types.INTEGER, Types.VARCHAR] as int[])
+		then:
+			query.startsWith("SELECT COUNT(*), ")
+			query.contains(function)
+			query.contains("\"LABEL\" IS NULL THEN 'N'")
+			query.endsWith(" FROM \"APP\".\"T\"")
+		where:
+			product                | function
+			"H2"                   | "ORA_HASH("
+			"PostgreSQL"           | "MD5("
+			"Oracle"               | "ORA_HASH("
+			"MySQL"                | "MD5(CONCAT("
+			"Microsoft SQL Server" | "HASHBYTES('MD5', "
+	}
+
+	def "unknown databases should not support checksums"(){
+		given:
+			def testee=new TableChecksum(connection("SQLite"), null)
+		expect:
+			!testee.isSupported()
+			testee.query("T", ["ID"].toArray(new String[0]), [Types.INTEGER] as int[])==null
+	}
+
+	def "tables with unsupported column types should have no checksum"(){
+		given:
+			def testee=new TableChecksum(connection("H2"), null)
+		expect:
+			testee.query("T", ["ID", "DATA"].toArray(new String[0]), [Types.INTEGER, Types.BLOB] as int[])==null
+			testee.compute("T", ["ID", "DATA"].toArray(new String[0]), [Types.INTEGER, Types.BLOB] as int[])==null
+	}
+
+	def "qualified table names should not be qualified again"(){
+		given:
+			def testee=new TableChecksum(connection("H2"), "APP")
+		expect:
+			testee.query("OTHER.T", ["ID"].toArray(new String[0]), [Types.INTEGER] as int[]).endsWith(" FROM \"OTHER\".\"T\"")
+	}
+
+	def "checksums should only be comparable between databases of the same vendor"(){
+		expect:
+			new TableChecksum(connection("H2"), null).isComparableWith(new TableChecksum(connection("H2"), "APP"))
+			!new TableChecksum(connection("H2"), null).isComparableWith(new TableChecksum(connection("Oracle"), null))
+			!new TableChecksum(connection("SQLite"), null).isComparableWith(new TableChecksum(connection("SQLite"), null))
+	}
+
+	def "checksum should be the count and the hash sums"(){
+		given:
+			def connection=connection("PostgreSQL")
+			Statement statement=Mock()
+			ResultSet result=Mock()
+			ResultSetMetaData resultMetadata=Mock()
+			connection.createStatement()>>statement
+			statement.executeQuery(_)>>result
+			result.next()>>true
+			result.getMetaData()>>resultMetadata
+			resultMetadata.getColumnCount()>>3
+			result.getString(1)>>"2"
+			result.getString(2)>>"123"
+			result.getString(3)>>"-456"
+		and:
+			def testee=new TableChecksum(connection, null)
+		when:
+			def checksum=testee.compute("T", ["ID"].toArray(new String[0]), [Types.INTEGER] as int[])
+		then:
+			checksum=="2/123/-456"
+			1 * statement.close()
+	}
+}
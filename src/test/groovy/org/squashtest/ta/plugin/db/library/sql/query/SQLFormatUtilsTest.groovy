@@ -0,0 +1,102 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql.query
+
+import org.squashtest.ta.plugin.db.library.sql.SQLFormatUtils
+import org.squashtest.ta.plugin.db.library.sql.SQLLexer
+
+import spock.lang.Specification
+
+class SQLFormatUtilsTest extends Specification {
+
+	def "should split instructions on delimiters outside values, comments and dollar quotes"(){
+		given :
+			def script = """insert into T values ('a;b', "it's;");
+				-- not ; a statement
+				/* neither ; this */ create function f() returns int as \$body\$ begin return 1; end; \$body\$ language plpgsql;
+				select 1"""
+		when :
+			def res = SQLFormatUtils.splitInstructions(script)
+		then :
+			res.size() == 3
+			res[0] == """insert into T values ('a;b', "it's;");"""
+			res[1].endsWith("language plpgsql;")
+			res[2] == "select 1"
+	}
+
+	def "should give statement offsets"(){
+		when :
+			def res = SQLLexer.statementOffsets("a;b ; c", null)
+		then :
+			res*.toList() == [[0, 2], [2, 5], [5, 7]]
+	}
+
+	def "should strip comments but not comment markers in values"(){
+		expect :
+			SQLFormatUtils.stripComments("select '/* x */' /* comment */from T -- end") == "select '/* x */' from T "
+	}
+
+	def "should collapse spaces outside values only"(){
+		expect :
+			SQLFormatUtils.stripWhiteLines("select   'a   b'  from    T") == "select 'a   b' from T"
+	}
+
+	def "should not blow the stack on long runs of spaces"(){
+		given :
+			def text = "select" + (" " * 1000000) + "1"
+		expect :
+			SQLFormatUtils.stripWhiteLines(text) == "select 1"
+	}
+
+	def "should split a script given line by line"(){
+		given :
+			def lines = [
+				" -- a comment",
+				" insert into T values ('a;",
+				" b');",
+				" select 1 -- trailing comment",
+				" from T; -- done",
+				" @@ begin",
+				" x := 1;",
+				" end; @@",
+				" set define off",
+				" select 2;"
+			]
+		when :
+			def res = SQLFormatUtils.splitSQLScript(lines)
+		then :
+			res == [
+				" insert into T values ('a;  b');",
+				" select 1   from T;",
+				"   begin x := 1; end;  ",
+				" select 2;"
+			]
+	}
+
+	def "should split a script on a custom delimiter"(){
+		given :
+			def lines = [ "begin", "  x := 1;", "end;", "/", "select 1 from dual", "/" ]
+		when :
+			def res = SQLFormatUtils.splitSQLScript(lines, "/")
+		then :
+			res == [ "begin   x := 1; end; ", "select 1 from dual " ]
+	}
+}
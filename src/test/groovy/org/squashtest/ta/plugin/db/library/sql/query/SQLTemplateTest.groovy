@@ -0,0 +1,88 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql.query
+
+import org.squashtest.ta.plugin.db.library.sql.SQLTemplate
+
+import spock.lang.Specification
+
+class SQLTemplateTest extends Specification {
+
+	def "should index positional parameters"(){
+		when :
+			def template = SQLTemplate.parse("select * from T where a = ? and b = ?")
+		then :
+			template.getSql() == "select * from T where a = ? and b = ?"
+			template.getParameterCount() == 2
+			template.getPositionalIndexes() == [1, 2]
+			template.getNamedIndexes().isEmpty()
+	}
+
+	def "should map named parameters to positional indexes, once per occurrence"(){
+		when :
+			def template = SQLTemplate.parse("select * from T where a = :first and b = :second or c = :first")
+		then :
+			template.getSql() == "select * from T where a = ? and b = ? or c = ?"
+			template.getParameterCount() == 3
+			template.getNamedIndexes() == [first : [1, 3], second : [2]]
+	}
+
+	def "should ignore markers in quoted values, comments and casts"(){
+		when :
+			def template = SQLTemplate.parse("select '?', 'it''s :no', \"c?\" -- :nope ?\n from T /* ? :none */ where a::int = :yes")
+		then :
+			template.getSql() == "select '?', 'it''s :no', \"c?\" -- :nope ?\n from T /* ? :none */ where a::int = ?"
+			template.getParameterCount() == 1
+			template.getNamedIndexes() == [yes : [1]]
+	}
+
+	def "should convert inlined values to bind values"(){
+		expect :
+			SQLTemplate.toBindValue(value) == expected
+		where :
+			value          | expected
+			"'bob'"        | "bob"
+			" 'it''s' "    | "it's"
+			"'42'"         | "42"
+			"NULL"         | null
+			"'null'"       | "null"
+			"CURRENT_DATE" | "CURRENT_DATE"
+	}
+
+	def "should bind unquoted numbers and booleans with their type"(){
+		when :
+			def bound = SQLTemplate.toBindValue(value)
+		then :
+			bound == expected
+			bound.getClass() == expected.getClass()
+		where :
+			value                    | expected
+			"42"                     | 42L
+			" -7 "                   | -7L
+			"+3"                     | 3L
+			"12345678901234567890"   | new BigDecimal("12345678901234567890")
+			"10.50"                  | new BigDecimal("10.50")
+			".5"                     | new BigDecimal("0.5")
+			"1e3"                    | new BigDecimal("1e3")
+			"TRUE"                   | Boolean.TRUE
+			"false"                  | Boolean.FALSE
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.library.sql.query
+
+import org.squashtest.ta.plugin.db.library.sql.ScriptPartitioner
+
+import spock.lang.Specification
+
+class ScriptPartitionerTest extends Specification {
+
+	def "should partition data modification statements by target table"(){
+		given :
+			def partitioner = ScriptPartitioner.byTable()
+		expect :
+			partitioner.partitionOf(statement) == partition
+		where :
+			statement                                 | partition
+			" insert into T values (1);"              | "T"
+			" INSERT INTO s.t(a) values(1);"          | "S.T"
+			" delete from x where 1=1;"               | "X"
+			" update \"Mixed\" set a=1;"              | "\"Mixed\""
+			" /* c */ insert into m values (1);"      | "M"
+			" create table z(a int);"                 | null
+			" select 1;"                              | null
+	}
+
+	def "statements reading other tables than their target should be barriers"(){
+		given :
+			def partitioner = ScriptPartitioner.byTable()
+		expect :
+			partitioner.partitionOf(statement) == partition
+		where :
+			statement                                                    | partition
+			"insert into T select * from U;"                             | null
+			"insert into T (a) (SELECT a FROM U);"                       | null
+			"update T set a=(select max(b) from U);"                     | null
+			"delete from T where id in (select id from U);"              | null
+			"update T set a=1 from T join U on T.id=U.id;"               | null
+			"merge into M using D on (M.id=D.id) when matched then delete;" | null
+			"insert into T values ('select * from U');"                  | "T"
+			"update T set a=1 /* from U */ where id=2;"                  | "T"
+			"insert into FROM_U values (1);"                             | "FROM_U"
+	}
+
+	def "should partition statements by section marker"(){
+		given :
+			def partitioner = ScriptPartitioner.bySection()
+		when :
+			def res = [
+				" insert into a;",
+				" /* @section one */ insert into a;",
+				" insert into b;",
+				"/*@section two*/ insert into c;",
+				" /* @section serial */ create index i on c(x);",
+				" insert into d;"
+			].collect { partitioner.partitionOf(it) }
+		then :
+			res == [null, "one", "one", "two", null, null]
+	}
+
+	def "should reject unknown partitioning"(){
+		when :
+			ScriptPartitioner.forName("rows")
+		then :
+			thrown(IllegalArgumentException)
+	}
+}
@@ -41,10 +41,13 @@
 package org.squashtest.ta.plugin.db.resources
 
 import org.dbunit.dataset.Column;
+import org.dbunit.dataset.DefaultDataSet;
+import org.dbunit.dataset.DefaultTable;
 import org.dbunit.dataset.IDataSet;
 import org.dbunit.dataset.ITable;
 import org.dbunit.dataset.ITableIterator;
 import org.dbunit.dataset.ITableMetaData;
+import org.dbunit.dataset.datatype.DataType;
 import org.dbunit.dataset.filter.IColumnFilter;
 import org.dbunit.dataset.filter.ITableFilter;
 import org.squashtest.ta.plugin.db.resources.DbUnitFilterResource;
@@ -180,6 +183,20 @@ class DbUnitFilterResourceTest extends Specification {
 			columns==[column23]
 	}
 	
+	def "should evaluate its column filter once per table, whichever dataset it filters"(){
+		given:
+			def columns=[new Column("ID",DataType.INTEGER),new Column("LABEL",DataType.VARCHAR)] as Column[]
+			def source=new DefaultDataSet(new DefaultTable("T",columns))
+			testee=new DbUnitFilterResource(null, columnFilter,false,null)
+		when:
+			def first=testee.apply(source).getTable("T").getTableMetaData().getColumns()
+			def second=testee.apply(source).getTable("T").getTableMetaData().getColumns()
+		then:
+			2 * columnFilter.accept("T", _)>>{ tableName, column -> column.getColumnName()=="LABEL" }
+			first*.getColumnName()==["LABEL"]
+			second*.getColumnName()==["LABEL"]
+	}
+	
 	def "should still filter tables when built without columns filter"(){
 		given:
 		testee=new DbUnitFilterResource(tableFilter, null,false,null)
@@ -0,0 +1,66 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.resources
+
+import java.nio.charset.Charset
+
+import spock.lang.Specification
+
+class StreamedSQLScriptTest extends Specification {
+
+	File file
+
+	def setup(){
+		file = File.createTempFile("streamed", ".sql")
+		file.deleteOnExit()
+	}
+
+	def cleanup(){
+		file.delete()
+	}
+
+	def "should read the same statements as the in-memory script"(){
+		given :
+			def lines = [
+				"-- seed",
+				"insert into T values ('a;",
+				"b');",
+				"select 1",
+				"from T;",
+				"select 2;"
+			]
+			file.text = lines.join("\n")
+			def inMemory = new SQLScript(lines.collect { " " + it })
+		when :
+			def streamed = new StreamedSQLScript(file, Charset.forName("UTF-8"), null)
+		then :
+			streamed.statements().collect { it } == inMemory.getBatch()
+			streamed.getBatch() == inMemory.getBatch()
+			streamed.copy().getBatch() == inMemory.getBatch()
+	}
+
+	def "should split on a custom delimiter"(){
+		given :
+			file.text = "begin\n x := 1;\nend;\n/\n"
+		expect :
+			new StreamedSQLScript(file, Charset.forName("UTF-8"), "/").getBatch() == [ " begin   x := 1;  end;  " ]
+	}
+}
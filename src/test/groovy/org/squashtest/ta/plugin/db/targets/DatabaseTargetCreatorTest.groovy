@@ -20,6 +20,8 @@
  */
 package org.squashtest.ta.plugin.db.targets
 
+import org.squashtest.ta.framework.exception.BrokenTestException
+
 import spock.lang.Specification;
 
 class DatabaseTargetCreatorTest extends Specification {
@@ -103,4 +105,45 @@ class DatabaseTargetCreatorTest extends Specification {
 			prop.getProperty("squashtest.ta.database.driver") == "com.mysql.jdbc.Driver"
 			prop.getProperty("squashtest.ta.database.url") == "jdbc:mysql://test"		
 	}
+
+	def "target should use c3p0 when no pool provider is set"(){
+		given :
+			URL url = getClass().getClassLoader().getResource("org/squashtest/ta/plugin/db/properties/db.properties")
+		when :
+			def target = testee.createTarget(url)
+		then :
+			target.@manager.getProvider() == DatasourcePoolProvider.C3P0
+	}
+	
+	def "target should use the configured pool provider"(){
+		given :
+			URL url = getClass().getClassLoader().getResource("org/squashtest/ta/plugin/db/properties/db_hikari.properties")
+		when :
+			def target = testee.createTarget(url)
+		then :
+			target.@manager.getProvider() == DatasourcePoolProvider.HIKARI
+	}
+	
+	def "pool provider should not be forwarded to the pool"(){
+		given :
+			def properties = new Properties()
+			properties.setProperty("squashtest.ta.database.url", "jdbc:mysql://test")
+			properties.setProperty("squashtest.ta.database.schema", "test")
+			properties.setProperty("squashtest.ta.database.pool.provider", "hikari")
+			properties.setProperty("squashtest.ta.database.pool.maximumPoolSize", "4")
+		when :
+			def pooling = testee.extractPoolingProperties(properties)
+		then :
+			pooling.size() == 1
+			pooling.getProperty("maximumPoolSize") == "4"
+	}
+	
+	def "unknown pool provider should be rejected"(){
+		given :
+			URL url = getClass().getClassLoader().getResource("org/squashtest/ta/plugin/db/properties/db_unknownPool.properties")
+		when :
+			testee.createTarget(url)
+		then :
+			thrown(BrokenTestException)
+	}
 }
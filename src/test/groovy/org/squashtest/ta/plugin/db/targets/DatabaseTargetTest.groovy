@@ -0,0 +1,534 @@
+/**
+ *     This file is part of the Squashtest platform.
+ *     Copyright (C) 2011 - 2018 Henix
+ *
+ *     See the NOTICE file distributed with this work for additional
+ *     information regarding copyright ownership.
+ *
+ *     This is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     this software is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this software.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.squashtest.ta.plugin.db.targets
+
+import java.sql.BatchUpdateException
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.Statement
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+import javax.sql.DataSource
+
+import org.squashtest.ta.framework.exception.BrokenTestException
+import org.squashtest.ta.plugin.db.exceptions.StatementExecutionException
+import org.squashtest.ta.plugin.db.library.sql.DatabaseMetadataExplorer
+import org.squashtest.ta.plugin.db.library.sql.ScriptPartitioner
+import org.squashtest.ta.plugin.db.targets.DatabaseTarget.DatasourceLifecycleManager
+
+import spock.lang.Specification
+
+class DatabaseTargetTest extends Specification {
+
+	DatabaseTarget testee
+	DatasourceLifecycleManager manager
+	List<AtomicBoolean> closedFlags
+	List<AtomicBoolean> closedStatementFlags
+	List<AtomicBoolean> closedPlainStatementFlags
+	List<String> preparedSql
+	List<Integer> executedBatches
+	List<String> transactionEvents
+	Map<String, Integer> executedOn
+	List<Integer> fetchSizes
+	AtomicInteger connectionIds = new AtomicInteger()
+
+	def setup(){
+		closedFlags = new CopyOnWriteArrayList<AtomicBoolean>()
+		closedStatementFlags = new CopyOnWriteArrayList<AtomicBoolean>()
+		closedPlainStatementFlags = new CopyOnWriteArrayList<AtomicBoolean>()
+		preparedSql = new CopyOnWriteArrayList<String>()
+		executedBatches = new CopyOnWriteArrayList<Integer>()
+		transactionEvents = new CopyOnWriteArrayList<String>()
+		executedOn = new ConcurrentHashMap<String, Integer>()
+		fetchSizes = new CopyOnWriteArrayList<Integer>()
+		def datasource = [getConnection : { -> newConnection() }] as DataSource
+		manager = [init : { -> }, getDatasource : { -> datasource }, release : { -> }] as DatasourceLifecycleManager
+		testee = new DatabaseTarget(manager, new Properties())
+	}
+
+	def newConnection(){
+		def closed = new AtomicBoolean(false)
+		closedFlags.add(closed)
+		def pending = []
+		def connectionId = connectionIds.incrementAndGet()
+		return [
+			createStatement : { -> newStatement(pending, connectionId) },
+			setAutoCommit : { boolean auto -> transactionEvents << "autocommit=$auto".toString() },
+			commit : { -> transactionEvents << "commit" },
+			rollback : { -> transactionEvents << "rollback" },
+			getAutoCommit : { -> true },
+			prepareStatement : { String sql -> newPreparedStatement(sql) },
+			isClosed : { -> closed.get() },
+			close : { -> closed.set(true) }
+		] as Connection
+	}
+
+	def newStatement(List pending, int connectionId){
+		def closed = new AtomicBoolean(false)
+		closedPlainStatementFlags.add(closed)
+		def resultSetClosed = new AtomicBoolean(false)
+		return [
+			execute : { String sql -> sql.startsWith("query") },
+			getResultSet : { -> [isClosed : { -> resultSetClosed.get() }, close : { -> resultSetClosed.set(true) }] as ResultSet },
+			setFetchSize : { int size -> fetchSizes << size },
+			addBatch : { String sql -> pending << sql },
+			executeBatch : { ->
+				if (pending.any { it.startsWith("fail") }){
+					pending.clear()
+					throw new BatchUpdateException()
+				}
+				executedBatches << pending.size()
+				pending.each { executedOn.put(it, connectionId) }
+				def counts = pending.collect { 1 } as int[]
+				pending.clear()
+				counts
+			},
+			close : { -> closed.set(true) }
+		] as Statement
+	}
+
+	def newPreparedStatement(String sql){
+		def closed = new AtomicBoolean(false)
+		closedStatementFlags.add(closed)
+		preparedSql.add(sql)
+		return [
+			execute : { -> false },
+			setFetchSize : { int size -> fetchSizes << size },
+			clearParameters : { -> },
+			setObject : { int index, Object value -> },
+			isClosed : { -> closed.get() },
+			close : { -> closed.set(true) }
+		] as PreparedStatement
+	}
+
+	def withCacheSize(int size){
+		def conf = new Properties()
+		conf.setProperty(DatabaseTarget.SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY, "$size")
+		return new DatabaseTarget(manager, conf)
+	}
+
+	def "each thread should get its own connection when 64 threads hammer the target"(){
+		given :
+			def nbThreads = 64
+			def nbQueries = 200
+			def start = new CountDownLatch(1)
+			def done = new CountDownLatch(nbThreads)
+			def connectionsByThread = new ConcurrentHashMap<Long, Set<Connection>>()
+			def errors = new CopyOnWriteArrayList<Throwable>()
+			def threads = (1..nbThreads).collect {
+				Thread.start {
+					try{
+						start.await()
+						def seen = Collections.newSetFromMap(new IdentityHashMap<Connection, Boolean>())
+						nbQueries.times {
+							testee.execute("select 1")
+							seen.add(testee.getConnection())
+						}
+						connectionsByThread.put(Thread.currentThread().getId(), seen)
+					}catch(Throwable t){
+						errors.add(t)
+					}finally{
+						done.countDown()
+					}
+				}
+			}
+		when :
+			start.countDown()
+			done.await()
+		then :
+			errors.isEmpty()
+			connectionsByThread.size() == nbThreads
+			connectionsByThread.values().every { it.size() == 1 }
+			connectionsByThread.values().collect { it.iterator().next() }.toSet().size() == nbThreads
+			closedFlags.size() == nbThreads
+		cleanup :
+			threads*.join()
+	}
+
+	def "cleanup should close every connection while other threads are still running"(){
+		given :
+			def running = new AtomicBoolean(true)
+			def errors = new CopyOnWriteArrayList<Throwable>()
+			def threads = (1..64).collect {
+				Thread.start {
+					try{
+						while(running.get()){
+							testee.execute("select 1")
+						}
+						testee.reset()
+					}catch(Throwable t){
+						errors.add(t)
+					}
+				}
+			}
+			Thread.sleep(50)
+		when :
+			testee.cleanup()
+			running.set(false)
+			threads*.join()
+		then :
+			errors.isEmpty()
+			closedFlags.every { it.get() }
+	}
+
+	def "connections of dead threads should be reclaimed"(){
+		given :
+			def worker = Thread.start { testee.execute("select 1") }
+			worker.join()
+		when :
+			testee.execute("select 1")
+		then :
+			closedFlags.size() == 2
+			closedFlags[0].get()
+			!closedFlags[1].get()
+	}
+
+	def "reset should close the connection of the calling thread only"(){
+		given :
+			def worker = Thread.start { testee.execute("select 1") ; sleep(200) }
+			sleep(50)
+			testee.execute("select 1")
+		when :
+			testee.reset()
+		then :
+			closedFlags.count { it.get() } == 1
+		cleanup :
+			worker.join()
+	}
+
+	def "pooled connections should not be bound to the calling thread"(){
+		given :
+			def threadConnection = testee.getConnection()
+		when :
+			def pooled = [testee.openPooledConnection(), testee.openPooledConnection()]
+			testee.reset()
+		then :
+			pooled.every { !it.is(threadConnection) }
+			!pooled[0].is(pooled[1])
+			threadConnection.isClosed()
+			pooled.every { !it.isClosed() }
+	}
+
+	def "repeated queries should reuse the prepared statement, whatever their layout"(){
+		given :
+			testee = withCacheSize(32)
+		when :
+			testee.execute("select 1 from T")
+			testee.execute("  select 1\n\tfrom   T ")
+			testee.execute("select 2 from T")
+		then :
+			preparedSql.size() == 2
+			testee.getStatementCacheHits() == 1
+			testee.getStatementCacheMisses() == 2
+	}
+
+	def "whitespaces in quoted values should be significant for the statement cache"(){
+		given :
+			testee = withCacheSize(32)
+		when :
+			testee.execute("select 1 from T where A='x  y'")
+			testee.execute("select 1 from T where A='x y'")
+		then :
+			preparedSql.size() == 2
+	}
+
+	def "the line break ending a comment should be significant for the statement cache"(){
+		given :
+			testee = withCacheSize(32)
+		when :
+			testee.execute("select A from T -- first\nwhere ID=1")
+			testee.execute("select A from T -- first where ID=1")
+			testee.execute("select A from T -- first\r\n   where ID=1")
+		then :
+			preparedSql.size() == 2
+			testee.getStatementCacheHits() == 1
+	}
+
+	def "the least recently used statement should be closed when the cache is full"(){
+		given :
+			testee = withCacheSize(2)
+		when :
+			testee.execute("select 1")
+			testee.execute("select 2")
+			testee.execute("select 1")
+			testee.execute("select 3")
+		then :
+			closedStatementFlags.size() == 3
+			!closedStatementFlags[0].get()
+			closedStatementFlags[1].get()
+			!closedStatementFlags[2].get()
+	}
+
+	def "cached statements should be closed with their connection"(){
+		given :
+			testee = withCacheSize(32)
+			testee.execute("select 1")
+			testee.execute("select 2")
+		when :
+			testee.reset()
+		then :
+			closedStatementFlags.every { it.get() }
+			closedFlags.every { it.get() }
+	}
+
+	def "plain sql strings should not be prepared by default nor with a cache size of 0"(){
+		given :
+			if (explicitSize){
+				testee = withCacheSize(0)
+			}
+		when :
+			testee.execute("select 1")
+			testee.execute("select 1")
+		then :
+			preparedSql.isEmpty()
+			testee.getStatementCacheMisses() == 0
+		where :
+			explicitSize << [false, true]
+	}
+
+	def "uncached statements should be closed by the next execution, and by reset"(){
+		when :
+			testee.execute("insert 1")
+			testee.execute("insert 2")
+		then :
+			closedPlainStatementFlags*.get() == [true, false]
+		when :
+			testee.reset()
+		then :
+			closedPlainStatementFlags*.get() == [true, true]
+	}
+
+	def "an uncached statement should stay open while its result set is read"(){
+		given :
+			def result = testee.execute("query 1")
+		when :
+			testee.execute("insert 2")
+		then :
+			closedPlainStatementFlags*.get() == [false, false]
+		when :
+			result.close()
+			testee.execute("insert 3")
+		then :
+			closedPlainStatementFlags*.get() == [true, true, false]
+	}
+
+	def "the statement sending a script should be closed by the next execution, and by cleanup"(){
+		when :
+			testee.execute(["insert 1"].iterator())
+			testee.execute(["insert 2"].iterator(), 0, 0)
+		then :
+			closedPlainStatementFlags*.get() == [true, false]
+		when :
+			testee.cleanup()
+		then :
+			closedPlainStatementFlags*.get() == [true, true]
+	}
+
+	def "parameterized queries should reuse their statement by default and close it with the connection"(){
+		given :
+			if (explicitSize){
+				testee = withCacheSize(0)
+			}
+		when :
+			testee.execute("select * from T where ID = ?", [1])
+			testee.execute("select * from T where ID = ?", [2])
+		then :
+			preparedSql.size() == 1
+			testee.getStatementCacheHits() == 1
+			!closedStatementFlags[0].get()
+		when :
+			testee.reset()
+		then :
+			closedStatementFlags[0].get()
+		where :
+			explicitSize << [false, true]
+	}
+
+	def "an invalid cache size should be rejected"(){
+		given :
+			def conf = new Properties()
+			conf.setProperty(DatabaseTarget.SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY, "lots")
+		when :
+			new DatabaseTarget(manager, conf)
+		then :
+			thrown(BrokenTestException)
+	}
+
+	def "the fetch size should be applied to cached and uncached statements"(){
+		given :
+			def conf = new Properties()
+			conf.setProperty(DatabaseTarget.SQUASH_TA_DATABASE_STATEMENT_CACHE_SIZE_KEY, "$cacheSize")
+			conf.setProperty(DatabaseTarget.SQUASH_TA_DATABASE_FETCH_SIZE_KEY, "500")
+			testee = new DatabaseTarget(manager, conf)
+		when :
+			testee.execute("select 1")
+			testee.execute("select 1")
+		then :
+			fetchSizes == [500, 500]
+		where :
+			cacheSize << [0, 32]
+	}
+
+	def "no fetch size should be set by default"(){
+		when :
+			testee.execute("select 1")
+		then :
+			fetchSizes.isEmpty()
+	}
+
+	def "a script should be sent in one batch and committed once by default"(){
+		when :
+			def res = testee.execute((1..5).collect { "insert $it".toString() }.iterator())
+		then :
+			res == [1, 1, 1, 1, 1] as int[]
+			executedBatches == [5]
+			transactionEvents == ["autocommit=false", "commit", "autocommit=true"]
+	}
+
+	def "a long script should be sent in batches of bounded size and committed once by default"(){
+		when :
+			def chunks = testee.execute((1..2500).collect { "insert $it".toString() }.iterator(), 0, 0)
+		then :
+			executedBatches == [1000, 1000, 500]
+			chunks*.committed == [false, false, true]
+			transactionEvents == ["autocommit=false", "commit", "autocommit=true"]
+	}
+
+	def "a script should be sent in chunks and committed at the commit interval"(){
+		when :
+			def chunks = testee.execute((1..7).collect { "insert $it".toString() }.iterator(), 2, 4)
+		then :
+			executedBatches == [2, 2, 2, 1]
+			chunks*.firstStatement == [0, 2, 4, 6]
+			chunks*.committed == [false, true, false, true]
+			transactionEvents == ["autocommit=false", "commit", "commit", "autocommit=true"]
+	}
+
+	def "the commit interval alone should size the chunks"(){
+		when :
+			def chunks = testee.execute((1..6).collect { "insert $it".toString() }.iterator(), 0, 3)
+		then :
+			executedBatches == [3, 3]
+			chunks*.committed == [true, true]
+			transactionEvents == ["autocommit=false", "commit", "commit", "autocommit=true"]
+	}
+
+	def "a failing chunk should be rolled back and reported"(){
+		when :
+			testee.execute(["insert 1", "insert 2", "fail 3", "insert 4"].iterator(), 2, 2)
+		then :
+			def ex = thrown(StatementExecutionException)
+			ex.message.contains("#2")
+			ex.message.contains(", 2 statements were committed before the failure")
+			executedBatches == [2]
+			transactionEvents == ["autocommit=false", "commit", "rollback", "autocommit=true"]
+	}
+
+	def "no statement should be reported as committed when the first chunk fails"(){
+		when :
+			testee.execute(["insert 1", "fail 2", "insert 3"].iterator(), 0, 0)
+		then :
+			def ex = thrown(StatementExecutionException)
+			ex.message.contains("#0, 0 statements were committed before the failure")
+			transactionEvents == ["autocommit=false", "rollback", "autocommit=true"]
+	}
+
+	def "independent tables should be loaded on separate connections, barriers on the calling thread's one"(){
+		given :
+			def script = [
+				"create table A",
+				"insert into A values (1)",
+				"insert into B values (1)",
+				"insert into A values (2)",
+				"create index I on A",
+				"insert into C values (1)"
+			]
+		when :
+			def chunks = testee.executeInParallel(script.iterator(), ScriptPartitioner.byTable(), 4, 0)
+		then :
+			chunks*.firstStatement == [0, 1, 2, 4, 5]
+			chunks*.statementCount == [1, 2, 1, 1, 1]
+			executedOn["create table A"] == executedOn["create index I on A"]
+			executedOn["insert into A values (1)"] == executedOn["insert into A values (2)"]
+			executedOn["insert into A values (1)"] != executedOn["insert into B values (1)"]
+			executedOn["insert into A values (1)"] != executedOn["create table A"]
+	}
+
+	def "partitions should send their statements in batches of bounded size as they are read"(){
+		given :
+			def script = (0..<2500).collect { "insert into ${it % 2 == 0 ? 'A' : 'B'} values ($it)".toString() }
+		when :
+			def chunks = testee.executeInParallel(script.iterator(), ScriptPartitioner.byTable(), 2, 0)
+		then :
+			executedBatches.sort() == [250, 250, 1000, 1000]
+			chunks*.committed == [false, false, true, true]
+	}
+
+	def "the failure of the first failing partition in the script should be reported"(){
+		given :
+			def script = [
+				"insert into A values (1)",
+				"fail into B values (1)",
+				"insert into C values (1)",
+				"fail into D values (1)"
+			]
+			def partitioner = [ partitionOf : { String sql -> sql.split(" ")[2] } ] as ScriptPartitioner
+		when :
+			testee.executeInParallel(script.iterator(), partitioner, 4, 0)
+		then :
+			def ex = thrown(StatementExecutionException)
+			ex.message.contains("'B'")
+			ex.message.contains("2 of 4 partitions failed")
+			transactionEvents.count { it == "rollback" } == 2
+			transactionEvents.count { it == "commit" } == 2
+	}
+
+	def "the metadata should be forgotten once a script changed the structure of the database"(){
+		given :
+			DatabaseMetadataExplorer explorer=Mock()
+			testee.metadataExplorer=explorer
+		when :
+			testee.execute(script.iterator(), 0, 0)
+		then :
+			invalidations * explorer.invalidate()
+		where :
+			script                                                                   | invalidations
+			["insert into A values (1)", "/* new */\n-- table\nCREATE TABLE B (ID int)"] | 1
+			["insert into A values (1)", "drop index I", "alter table A add X int"]  | 1
+			["insert into A values ('create')", "update A set DROPPED=1"]            | 0
+	}
+
+	def "the metadata should be forgotten once a query changed the structure of the database"(){
+		given :
+			DatabaseMetadataExplorer explorer=Mock()
+			testee.metadataExplorer=explorer
+		when :
+			testee.execute("select 1 from A")
+			testee.execute("rename table A to B")
+		then :
+			1 * explorer.invalidate()
+	}
+}